@@ -0,0 +1,85 @@
+package com.person98.prismPack;
+
+import net.kyori.adventure.text.Component;
+import org.bukkit.Material;
+import org.bukkit.block.ShulkerBox;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.BlockStateMeta;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.List;
+
+/**
+ * Backpack contents as they are found on real servers, from empty to full of heavy items.
+ */
+public enum BackpackFixtures {
+
+    EMPTY {
+        @Override
+        ItemStack item(int slot) {
+            return null;
+        }
+    },
+
+    HALF_FULL {
+        @Override
+        ItemStack item(int slot) {
+            if (slot % 2 == 1) return null;
+            return new ItemStack(BLOCKS[slot % BLOCKS.length], 1 + slot % 64);
+        }
+    },
+
+    FULL_ENCHANTED {
+        @Override
+        ItemStack item(int slot) {
+            ItemStack item = new ItemStack(GEAR[slot % GEAR.length]);
+            item.addUnsafeEnchantment(Enchantment.DURABILITY, 3);
+            item.addUnsafeEnchantment(Enchantment.MENDING, 1);
+            item.addUnsafeEnchantment(slot % 2 == 0 ? Enchantment.DAMAGE_ALL : Enchantment.PROTECTION_ENVIRONMENTAL, 4);
+            ItemMeta meta = item.getItemMeta();
+            meta.displayName(Component.text("Season gear #" + slot));
+            meta.lore(List.of(Component.text("Crafted by a player"), Component.text("Slot " + slot)));
+            item.setItemMeta(meta);
+            return item;
+        }
+    },
+
+    FULL_SHULKERS {
+        @Override
+        ItemStack item(int slot) {
+            ItemStack box = new ItemStack(Material.SHULKER_BOX);
+            BlockStateMeta meta = (BlockStateMeta) box.getItemMeta();
+            ShulkerBox shulkerBox = (ShulkerBox) meta.getBlockState();
+            for (int i = 0; i < 27; i++) {
+                shulkerBox.getInventory().setItem(i, i % 3 == 0 ?
+                        FULL_ENCHANTED.item(slot + i) :
+                        HALF_FULL.item(i * 2));
+            }
+            meta.setBlockState(shulkerBox);
+            box.setItemMeta(meta);
+            return box;
+        }
+    };
+
+    private static final Material[] BLOCKS = {
+            Material.STONE, Material.OAK_LOG, Material.DIAMOND, Material.IRON_INGOT, Material.REDSTONE, Material.COBBLESTONE
+    };
+    private static final Material[] GEAR = {
+            Material.DIAMOND_SWORD, Material.NETHERITE_CHESTPLATE, Material.DIAMOND_PICKAXE, Material.ELYTRA
+    };
+
+    abstract ItemStack item(int slot);
+
+    /**
+     * @param size The number of slots
+     * @return New backpack contents of the given size
+     */
+    public ItemStack[] create(int size) {
+        ItemStack[] items = new ItemStack[size];
+        for (int slot = 0; slot < size; slot++) {
+            items[slot] = item(slot);
+        }
+        return items;
+    }
+}
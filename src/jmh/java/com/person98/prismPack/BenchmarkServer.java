@@ -0,0 +1,38 @@
+package com.person98.prismPack;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import com.person98.prismPack.manager.Database;
+
+/**
+ * Starts a mocked server with the plugin enabled, once per benchmark JVM.
+ * The plugin runs on its default config, so backpacks are stored in an SQLite file
+ * inside the mocked plugin folder.
+ */
+public final class BenchmarkServer {
+
+    private static PrismPack plugin;
+
+    private BenchmarkServer() {
+    }
+
+    /**
+     * Starts the server and enables the plugin if that didn't happen yet,
+     * then waits until the storage has started in the background.
+     *
+     * @return The enabled plugin
+     */
+    public static synchronized PrismPack start() {
+        if (plugin == null) {
+            ServerMock server = MockBukkit.mock();
+            plugin = MockBukkit.load(PrismPack.class);
+
+            server.getScheduler().waitAsyncTasksFinished();
+            if (!Database.isReady()) {
+                throw new IllegalStateException("The backpack storage failed to start");
+            }
+            server.getScheduler().performOneTick(); // Runs the tasks scheduled once the storage is ready
+        }
+        return plugin;
+    }
+}
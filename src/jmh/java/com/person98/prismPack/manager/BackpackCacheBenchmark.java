@@ -0,0 +1,70 @@
+package com.person98.prismPack.manager;
+
+import com.person98.prismPack.BackpackFixtures;
+import com.person98.prismPack.BenchmarkServer;
+import org.bukkit.Bukkit;
+import org.bukkit.inventory.Inventory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures cache hits of {@link BackpackManager#loadInventory(UUID, int)} from many threads.
+ * Every hit also refreshes the page's access time, so readers contend on both cache maps,
+ * and in the cleanup group one thread sweeps the cache at the same time.
+ */
+@State(Scope.Benchmark)
+public class BackpackCacheBenchmark {
+
+    private static final int OWNERS = 1000;
+
+    private UUID[] owners;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkServer.start();
+        owners = new UUID[OWNERS];
+        List<BackpackManager.PageSave> saves = new ArrayList<>(OWNERS);
+        for (int i = 0; i < OWNERS; i++) {
+            owners[i] = UUID.randomUUID();
+            Inventory inventory = Bukkit.createInventory(null, 54);
+            inventory.setContents(BackpackFixtures.HALF_FULL.create(54));
+            saves.add(new BackpackManager.PageSave(owners[i], 0, inventory));
+        }
+        BackpackManager.saveInventoriesNow(saves);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Inventory hit() {
+        return BackpackManager.loadInventory(randomOwner(), 0);
+    }
+
+    @Benchmark
+    @Group("withCleanup")
+    @GroupThreads(7)
+    public Inventory hitDuringCleanup() {
+        return BackpackManager.loadInventory(randomOwner(), 0);
+    }
+
+    @Benchmark
+    @Group("withCleanup")
+    @GroupThreads(1)
+    public void cleanup() {
+        BackpackManager.cleanupCache();
+    }
+
+    private UUID randomOwner() {
+        return owners[ThreadLocalRandom.current().nextInt(OWNERS)];
+    }
+}
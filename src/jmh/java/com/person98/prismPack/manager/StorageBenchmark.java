@@ -0,0 +1,71 @@
+package com.person98.prismPack.manager;
+
+import com.person98.prismPack.BackpackFixtures;
+import com.person98.prismPack.BenchmarkServer;
+import com.person98.prismPack.PrismPack;
+import com.person98.prismPack.util.ItemSerializationUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Measures saving and loading one page end to end against the plugin's SQLite file,
+ * including history and index updates on save and deserialization on load.
+ * Saves alternate between two versions of the page, so every save has something to write.
+ */
+@State(Scope.Benchmark)
+public class StorageBenchmark {
+
+    @Param({"blob", "slots"})
+    private String layout;
+
+    @Param({"EMPTY", "HALF_FULL", "FULL_ENCHANTED", "FULL_SHULKERS"})
+    private BackpackFixtures contents;
+
+    private final UUID owner = UUID.randomUUID();
+    private final Inventory[] versions = new Inventory[2];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        PrismPack plugin = BenchmarkServer.start();
+        plugin.getConfig().set("storage.layout", layout);
+        ConfigManager.reload();
+
+        for (int i = 0; i < versions.length; i++) {
+            ItemStack[] items = contents.create(54);
+            items[i] = new ItemStack(Material.DIRT, 1 + i); // The versions differ in two slots
+            versions[i] = Bukkit.createInventory(null, 54);
+            versions[i].setContents(items);
+        }
+        BackpackManager.saveInventoriesNow(List.of(new BackpackManager.PageSave(owner, 0, versions[0])));
+    }
+
+    @Benchmark
+    public void save() {
+        next ^= 1;
+        BackpackManager.saveInventoriesNow(List.of(new BackpackManager.PageSave(owner, 0, versions[next])));
+    }
+
+    /**
+     * Reads and deserializes the page like a cache miss does, without caching it.
+     */
+    @Benchmark
+    public ItemStack[] load() throws SQLException {
+        BackpackManager.StoredBackpack stored = BackpackManager.readBackpack(Database.getShard(owner), owner, 0);
+        return stored.slotPayloads() != null ?
+                ItemSerializationUtil.deserializeItems(stored.slotPayloads()) :
+                ItemSerializationUtil.deserializeInventory(stored.itemstacks());
+    }
+}
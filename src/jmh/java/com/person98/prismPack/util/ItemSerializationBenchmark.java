@@ -0,0 +1,64 @@
+package com.person98.prismPack.util;
+
+import com.person98.prismPack.BackpackFixtures;
+import com.person98.prismPack.BenchmarkServer;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures serializing and deserializing one full page in both storage layouts:
+ * a single blob for the whole page and one payload per slot. The payload view benchmarks
+ * measure counting the occupied slots of a blob without deserializing it.
+ */
+@State(Scope.Benchmark)
+public class ItemSerializationBenchmark {
+
+    @Param({"EMPTY", "HALF_FULL", "FULL_ENCHANTED", "FULL_SHULKERS"})
+    private BackpackFixtures contents;
+
+    private ItemStack[] items;
+    private String blob;
+    private String[] payloads;
+
+    @Setup
+    public void setup() {
+        BenchmarkServer.start();
+        items = contents.create(54);
+        blob = ItemSerializationUtil.serializeInventory(items);
+        payloads = ItemSerializationUtil.serializeItems(items);
+    }
+
+    @Benchmark
+    public String serializeBlob() {
+        return ItemSerializationUtil.serializeInventory(items);
+    }
+
+    @Benchmark
+    public ItemStack[] deserializeBlob() {
+        return ItemSerializationUtil.deserializeInventory(blob);
+    }
+
+    @Benchmark
+    public String[] serializeSlots() {
+        return ItemSerializationUtil.serializeItems(items);
+    }
+
+    @Benchmark
+    public ItemStack[] deserializeSlots() {
+        return ItemSerializationUtil.deserializeItems(payloads);
+    }
+
+    @Benchmark
+    public int countOccupiedBlob() {
+        return PayloadView.ofBlob(blob).countOccupied();
+    }
+
+    @Benchmark
+    public ItemStack firstItemBlob() {
+        return PayloadView.ofBlob(blob).get(0);
+    }
+}
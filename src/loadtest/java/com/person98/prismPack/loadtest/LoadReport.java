@@ -0,0 +1,87 @@
+package com.person98.prismPack.loadtest;
+
+import com.person98.prismPack.util.LogHistogram;
+import com.person98.prismPack.util.Metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects the latency of every simulated operation and the duration of every simulated tick,
+ * and prints them together with the plugin's own {@link Metrics} at the end of a run.
+ */
+public class LoadReport {
+
+    private static final long TICK_NANOS = 50_000_000L;
+
+    private final Map<String, LogHistogram> operations = new LinkedHashMap<>();
+    private final Map<String, Long> failures = new LinkedHashMap<>();
+    private final LogHistogram ticks = new LogHistogram();
+    private long stallNanos;
+    private long overloadedTicks;
+    private final long started = System.nanoTime();
+
+    /**
+     * Records one operation.
+     *
+     * @param operation The name of the operation
+     * @param nanos How long it took
+     */
+    public void record(String operation, long nanos) {
+        operations.computeIfAbsent(operation, name -> new LogHistogram()).record(nanos);
+    }
+
+    /**
+     * Counts an operation that didn't complete, e.g. a page that never opened.
+     *
+     * @param operation The name of the operation
+     */
+    public void fail(String operation) {
+        failures.merge(operation, 1L, Long::sum);
+    }
+
+    /**
+     * Records how long one tick kept the main thread busy. Anything above 50ms is a stall.
+     *
+     * @param nanos The duration of the tick
+     */
+    public void recordTick(long nanos) {
+        ticks.record(nanos);
+        if (nanos > TICK_NANOS) {
+            overloadedTicks++;
+            stallNanos += nanos - TICK_NANOS;
+        }
+    }
+
+    /**
+     * Prints the report to standard output.
+     */
+    public void print() {
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.println();
+        System.out.printf("Load test finished in %.1fs%n", seconds);
+        System.out.printf("%-22s %9s %9s %10s %10s %10s %10s%n", "operation", "count", "ops/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Map.Entry<String, LogHistogram> entry : operations.entrySet()) {
+            printRow(entry.getKey(), entry.getValue().snapshot(), seconds);
+        }
+        printRow("main thread tick", ticks.snapshot(), seconds);
+
+        System.out.printf("Ticks over 50ms: %d, main thread stalled for %.1fms in total%n", overloadedTicks, stallNanos / 1e6);
+        for (Map.Entry<String, Long> entry : failures.entrySet()) {
+            System.out.printf("Failed %s: %d%n", entry.getKey(), entry.getValue());
+        }
+
+        System.out.println();
+        System.out.println("Plugin metrics:");
+        for (Map.Entry<String, Long> entry : Metrics.toMap().entrySet()) {
+            System.out.printf("  %s=%d%n", entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static void printRow(String name, LogHistogram.Snapshot snapshot, double seconds) {
+        System.out.printf("%-22s %9d %9.1f %10.2f %10.2f %10.2f %10.2f%n", name, snapshot.getCount(),
+                snapshot.getCount() / seconds,
+                snapshot.getPercentile(50) / 1e6, snapshot.getPercentile(99) / 1e6,
+                snapshot.getPercentile(99.9) / 1e6, snapshot.getMax() / 1e6);
+    }
+}
@@ -0,0 +1,315 @@
+package com.person98.prismPack.loadtest;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.entity.PlayerMock;
+import com.person98.prismPack.BackpackFixtures;
+import com.person98.prismPack.BenchmarkServer;
+import com.person98.prismPack.PrismPack;
+import com.person98.prismPack.manager.BackpackManager;
+import com.person98.prismPack.manager.ui.BackpackSession;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.event.inventory.ClickType;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryView;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Drives scripted workloads against the plugin on a mocked server with an SQLite database,
+ * so load regressions show up without a live server.
+ * <p>
+ * Like on a real server, every player action runs on the main thread, one tick at a time, while
+ * loads and saves run on the scheduler's asynchronous worker threads. Each tick is timed as a whole,
+ * including the plugin's own scheduled tasks, and every tick above 50ms counts as main thread stall.
+ * Operations that finish asynchronously, like a prefetch or an admin opening another backpack,
+ * are timed from the action until the result is visible on the main thread.
+ * <p>
+ * Run with {@code ./gradlew loadTest -PloadTestArgs="--players=5000 --workloads=login_storm,churn"},
+ * see {@link LoadTestOptions} for all settings.
+ */
+public final class LoadTest {
+
+    private static final long TICK_NANOS = 50_000_000L;
+    private static final int DRAIN_TICKS = 200;
+    private static final int DEATH_WAVE_TICKS = 40;
+
+    private final LoadTestOptions options;
+    private final ServerMock server;
+    private final LoadReport report = new LoadReport();
+    private final Random random;
+    private final List<UUID> playerIds = new ArrayList<>();
+    private final List<PlayerMock> online = new ArrayList<>();
+    private final List<PlayerMock> admins = new ArrayList<>();
+    private final Map<PlayerMock, Integer> openUntil = new HashMap<>();
+    private int tick;
+
+    private LoadTest(LoadTestOptions options, ServerMock server) {
+        this.options = options;
+        this.server = server;
+        this.random = new Random(options.seed());
+    }
+
+    public static void main(String[] args) {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        PrismPack plugin = BenchmarkServer.start();
+
+        // Players are only limited by the tick rate, as if every action came from a separate client
+        plugin.getConfig().set("limits.open.interval", 0);
+        plugin.getConfig().set("limits.admin-open.interval", 0);
+        plugin.saveConfig();
+        plugin.reload().join();
+
+        LoadTest loadTest = new LoadTest(options, MockBukkit.getMock());
+        try {
+            loadTest.run();
+        } finally {
+            MockBukkit.unmock();
+        }
+        loadTest.report.print();
+    }
+
+    private void run() {
+        System.out.printf("Seeding %d backpacks%n", options.players());
+        seed();
+
+        for (int i = 0; i < options.admins(); i++) {
+            PlayerMock admin = new PlayerMock(server, "admin" + i, UUID.randomUUID());
+            admin.setOp(true);
+            server.addPlayer(admin);
+            admins.add(admin);
+        }
+
+        for (LoadTestOptions.Workload workload : options.workloads()) {
+            System.out.printf("Running %s%n", workload.name().toLowerCase());
+            switch (workload) {
+                case LOGIN_STORM -> loginStorm();
+                case CHURN -> churn();
+                case DEATH_WAVE -> deathWave();
+                case ADMIN_AUDIT -> adminAudit();
+            }
+        }
+
+        // Close what is still open and let the last saves finish
+        for (PlayerMock player : new ArrayList<>(openUntil.keySet())) {
+            close(player);
+        }
+        runTicks(DRAIN_TICKS, t -> false);
+        server.getScheduler().waitAsyncTasksFinished();
+    }
+
+    /**
+     * Stores a half full backpack for every simulated player, so joins and opens hit real rows.
+     */
+    private void seed() {
+        List<BackpackManager.PageSave> saves = new ArrayList<>();
+        for (int i = 0; i < options.players(); i++) {
+            UUID playerId = UUID.nameUUIDFromBytes(("loadtest-" + i).getBytes());
+            playerIds.add(playerId);
+
+            Inventory inventory = Bukkit.createInventory(null, BackpackManager.PAGE_SLOTS);
+            inventory.setContents(BackpackFixtures.HALF_FULL.create(BackpackManager.PAGE_SLOTS));
+            saves.add(new BackpackManager.PageSave(playerId, 0, inventory));
+
+            if (saves.size() == 500) {
+                BackpackManager.saveInventoriesNow(saves);
+                saves = new ArrayList<>();
+            }
+        }
+        BackpackManager.saveInventoriesNow(saves);
+    }
+
+    /**
+     * Every player that isn't online yet joins, spread evenly over the storm ticks.
+     * The join itself and the time until the backpack is prefetched into the cache are timed.
+     */
+    private void loginStorm() {
+        List<Integer> joining = new ArrayList<>();
+        for (int i = 0; i < playerIds.size(); i++) {
+            if (server.getPlayer(playerIds.get(i)) == null) {
+                joining.add(i);
+            }
+        }
+
+        Map<UUID, Long> prefetching = new HashMap<>();
+        int perTick = Math.max(1, (joining.size() + options.stormTicks() - 1) / options.stormTicks());
+        Iterator<Integer> next = joining.iterator();
+
+        int budget = options.stormTicks() + DRAIN_TICKS;
+        runTicks(budget, t -> {
+            for (int i = 0; i < perTick && next.hasNext(); i++) {
+                int index = next.next();
+                UUID playerId = playerIds.get(index);
+                PlayerMock player = new PlayerMock(server, "p" + index, playerId);
+                player.addAttachment(PrismPack.getInstance(), "backpack.use", true);
+                player.addAttachment(PrismPack.getInstance(), "backpack.noCooldown", true);
+                player.addAttachment(PrismPack.getInstance(), "backpack.size.6", true);
+
+                long start = System.nanoTime();
+                server.addPlayer(player);
+                report.record("join", System.nanoTime() - start);
+                online.add(player);
+                prefetching.put(playerId, start);
+            }
+
+            prefetching.entrySet().removeIf(entry -> {
+                if (BackpackManager.getCachedPages(entry.getKey()) == null) return false;
+                report.record("prefetch", System.nanoTime() - entry.getValue());
+                return true;
+            });
+            return !next.hasNext() && prefetching.isEmpty();
+        });
+
+        for (int i = 0; i < prefetching.size(); i++) {
+            report.fail("prefetch");
+        }
+    }
+
+    /**
+     * Idle players open their backpack at random, move an item and close it again a few ticks later.
+     */
+    private void churn() {
+        runTicks(options.churnTicks(), t -> {
+            closeDue();
+            for (PlayerMock player : online) {
+                if (openUntil.containsKey(player) || random.nextDouble() >= options.openChance()) continue;
+
+                long start = System.nanoTime();
+                player.performCommand("bp");
+                InventoryView view = player.getOpenInventory();
+                if (!(view.getTopInventory().getHolder() instanceof BackpackSession)) {
+                    report.fail("open");
+                    continue;
+                }
+                report.record("open", System.nanoTime() - start);
+
+                int slot = random.nextInt(view.getTopInventory().getSize());
+                start = System.nanoTime();
+                player.simulateInventoryClick(view, ClickType.LEFT, slot);
+                view.getTopInventory().setItem(slot, new ItemStack(Material.DIAMOND, 1 + random.nextInt(64)));
+                report.record("click", System.nanoTime() - start);
+
+                openUntil.put(player, tick + 1 + random.nextInt(40));
+            }
+            return false;
+        });
+    }
+
+    /**
+     * A share of the online players dies in the same tick and respawns in the next one.
+     * The wave runs for two seconds so the saves of the dropped backpacks show up in the tick times.
+     */
+    private void deathWave() {
+        for (PlayerMock player : new ArrayList<>(openUntil.keySet())) {
+            close(player);
+        }
+
+        List<PlayerMock> dying = new ArrayList<>(online);
+        Collections.shuffle(dying, random);
+        List<PlayerMock> wave = dying.subList(0, (int) (dying.size() * options.deathShare()));
+
+        runTicks(DEATH_WAVE_TICKS, t -> {
+            if (t == 0) {
+                for (PlayerMock player : wave) {
+                    long start = System.nanoTime();
+                    player.setHealth(0);
+                    report.record("death", System.nanoTime() - start);
+                }
+            } else if (t == 1) {
+                wave.forEach(PlayerMock::respawn);
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Admins open the backpacks of random players, online or not, and close them again.
+     * Opening another player's backpack loads it asynchronously, so it is timed until the page is shown.
+     */
+    private void adminAudit() {
+        Map<PlayerMock, Long> opening = new HashMap<>();
+        runTicks(options.auditTicks(), t -> {
+            closeDue();
+            for (PlayerMock admin : admins) {
+                Long start = opening.get(admin);
+                if (start != null) {
+                    if (admin.getOpenInventory().getTopInventory().getHolder() instanceof BackpackSession) {
+                        report.record("admin open", System.nanoTime() - start);
+                        opening.remove(admin);
+                        openUntil.put(admin, tick + 1 + random.nextInt(20));
+                    } else if (System.nanoTime() - start > 10_000_000_000L) {
+                        report.fail("admin open");
+                        opening.remove(admin);
+                    }
+                    continue;
+                }
+                if (openUntil.containsKey(admin)) continue;
+
+                int target = random.nextInt(playerIds.size());
+                opening.put(admin, System.nanoTime());
+                admin.performCommand("bp open p" + target);
+            }
+            return false;
+        });
+    }
+
+    private void closeDue() {
+        for (PlayerMock player : new ArrayList<>(openUntil.keySet())) {
+            if (openUntil.get(player) <= tick) {
+                close(player);
+            }
+        }
+    }
+
+    private void close(PlayerMock player) {
+        openUntil.remove(player);
+        long start = System.nanoTime();
+        player.closeInventory();
+        report.record("close", System.nanoTime() - start);
+    }
+
+    /**
+     * Runs ticks until the budget is used up or the workload reports it is done.
+     * Each tick runs the workload's actions for that tick followed by the plugin's scheduled tasks.
+     *
+     * @param budget The maximum number of ticks
+     * @param workload Called once per tick with the tick number within the workload, returns true when done
+     */
+    private void runTicks(int budget, TickAction workload) {
+        for (int t = 0; t < budget; t++) {
+            long start = System.nanoTime();
+            boolean done = workload.run(t);
+            server.getScheduler().performOneTick();
+            long duration = System.nanoTime() - start;
+            report.recordTick(duration);
+            tick++;
+
+            if (done) return;
+            if (options.realtime() && duration < TICK_NANOS) {
+                sleep(TICK_NANOS - duration);
+            }
+        }
+    }
+
+    private static void sleep(long nanos) {
+        try {
+            Thread.sleep(nanos / 1_000_000L, (int) (nanos % 1_000_000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    private interface TickAction {
+        boolean run(int tick);
+    }
+}
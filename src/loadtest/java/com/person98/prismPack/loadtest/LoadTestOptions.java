@@ -0,0 +1,69 @@
+package com.person98.prismPack.loadtest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Settings of a load test run, parsed from {@code --name=value} arguments.
+ *
+ * @param players The number of simulated players
+ * @param admins The number of simulated admins auditing backpacks
+ * @param workloads The workloads to run, in order
+ * @param stormTicks The ticks over which all players join during a login storm
+ * @param churnTicks The ticks the open/close churn runs
+ * @param openChance The chance per tick that an idle player opens their backpack
+ * @param deathShare The share of online players that die in a death wave
+ * @param auditTicks The ticks the admin audit runs
+ * @param realtime Whether ticks are paced at 20 per second like a real server
+ * @param seed The random seed, so runs can be repeated
+ */
+public record LoadTestOptions(int players, int admins, List<Workload> workloads, int stormTicks, int churnTicks,
+                              double openChance, double deathShare, int auditTicks, boolean realtime, long seed) {
+
+    /**
+     * Parses the arguments, using defaults for anything not given.
+     *
+     * @param args Arguments like {@code --players=5000 --workloads=login_storm,churn}
+     * @return The options
+     */
+    public static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            int split = arg.indexOf('=');
+            values.put(arg.substring(2, split), arg.substring(split + 1));
+        }
+
+        List<Workload> workloads = new ArrayList<>();
+        for (String name : values.getOrDefault("workloads", "login_storm,churn,death_wave,admin_audit").split(",")) {
+            workloads.add(Workload.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+        }
+
+        return new LoadTestOptions(
+                Integer.parseInt(values.getOrDefault("players", "2000")),
+                Integer.parseInt(values.getOrDefault("admins", "5")),
+                workloads,
+                Integer.parseInt(values.getOrDefault("storm-ticks", "20")),
+                Integer.parseInt(values.getOrDefault("churn-ticks", "600")),
+                Double.parseDouble(values.getOrDefault("open-chance", "0.01")),
+                Double.parseDouble(values.getOrDefault("death-share", "0.25")),
+                Integer.parseInt(values.getOrDefault("audit-ticks", "200")),
+                Boolean.parseBoolean(values.getOrDefault("realtime", "true")),
+                Long.parseLong(values.getOrDefault("seed", "98")));
+    }
+
+    /**
+     * The scripted workloads the load test can run.
+     */
+    public enum Workload {
+        LOGIN_STORM,
+        CHURN,
+        DEATH_WAVE,
+        ADMIN_AUDIT
+    }
+}
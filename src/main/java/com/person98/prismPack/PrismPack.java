@@ -1,17 +1,38 @@
 package com.person98.prismPack;
 
 import co.aikar.commands.PaperCommandManager;
+import com.person98.prismPack.api.BackpackService;
 import com.person98.prismPack.commands.BackPackCommand;
+import com.person98.prismPack.manager.ActionLimiter;
+import com.person98.prismPack.manager.BackpackEvents;
 import com.person98.prismPack.manager.BackpackManager;
+import com.person98.prismPack.manager.BulkOperations;
 import com.person98.prismPack.manager.ConfigManager;
 import com.person98.prismPack.manager.Database;
+import com.person98.prismPack.manager.HistoryManager;
+import com.person98.prismPack.manager.ItemIndexManager;
+import com.person98.prismPack.manager.MetricsReporter;
+import com.person98.prismPack.manager.PlayerCapabilities;
+import com.person98.prismPack.manager.PlayerNameIndex;
+import com.person98.prismPack.manager.PrismBackpackService;
+import com.person98.prismPack.manager.StartupPreloader;
 import com.person98.prismPack.manager.event.BackpackDeathHandler;
+import com.person98.prismPack.manager.event.LuckPermsListener;
+import com.person98.prismPack.manager.event.PlayerConnectionListener;
+import com.person98.prismPack.manager.ui.BackpackAutosave;
+import com.person98.prismPack.manager.ui.SessionRegistry;
 import com.person98.prismPack.util.Lang;
 import com.person98.prismPack.util.PLogger;
+import com.person98.prismPack.util.TaskScheduler;
 import lombok.Getter;
 import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+
 public final class PrismPack extends JavaPlugin {
 
     @Getter
@@ -24,33 +45,109 @@ public final class PrismPack extends JavaPlugin {
         saveDefaultConfig();
 
         PLogger.setup(this.getLogger(), "PrismPack" , PLogger.ConsoleColor.CYAN);
+        TaskScheduler.initialize(this);
 
         ConfigManager.initialize();
 
         Lang.setup();
+        ActionLimiter.initialize();
 
-        Database.initialize();
-        BackpackManager.initialize();
+        TaskScheduler.runAsync(this::startStorage);
 
         PaperCommandManager commandManager = new PaperCommandManager(this);
+        commandManager.getCommandCompletions().registerAsyncCompletion("backpackplayers",
+                context -> PlayerNameIndex.complete(context.getInput()));
         commandManager.registerCommand(new BackPackCommand());
+        BackpackAutosave.start();
 
+        SessionRegistry.initialize();
         new BackpackDeathHandler();
+        new PlayerConnectionListener();
+        if (Bukkit.getPluginManager().isPluginEnabled("LuckPerms")) {
+            new LuckPermsListener();
+        }
+
+        Bukkit.getServicesManager().register(BackpackService.class, new PrismBackpackService(), this, ServicePriority.Normal);
+    }
 
-        Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> {
+    /**
+     * Connects to the database, updates the schema and warms up the connection pools without
+     * blocking the server start. Until this has finished, commands report that the storage is
+     * still starting and joining players are prefetched afterwards. If a shard can't be reached or
+     * its schema can't be updated, the storage is marked as failed.
+     */
+    private void startStorage() {
+        long start = System.currentTimeMillis();
+        try {
+            Database.initialize();
+            BackpackManager.initialize();
+            HistoryManager.initialize();
+            ItemIndexManager.initialize();
+            Database.warmUp();
+        } catch (SQLException | RuntimeException e) {
+            Database.setState(Database.State.FAILED);
+            PLogger.severe("Failed to start the backpack storage, backpacks can't be used until the next restart", e);
+            return;
+        }
+        if (!isEnabled()) {
+            Database.close(); // Disabled while starting
+            return;
+        }
+
+        PlayerNameIndex.load();
+        Database.setState(Database.State.READY);
+        PLogger.info("Backpack storage ready in " + (System.currentTimeMillis() - start) + "ms");
+        TaskScheduler.runGlobal(this::onStorageReady);
+    }
+
+    /**
+     * Starts everything that needs the database once it is ready.
+     */
+    private void onStorageReady() {
+        // Players who joined while the storage was starting, or before a reload
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            PlayerNameIndex.update(player.getUniqueId(), player.getName());
+            BackpackManager.prefetch(player.getUniqueId());
+        }
+        TaskScheduler.runAsync(StartupPreloader::preload);
+        MetricsReporter.start();
+
+        TaskScheduler.runAsyncTimer(() -> {
             BackpackManager.cleanupCache();
+            HistoryManager.cleanup();
+            ActionLimiter.cleanup();
         }, 20 * 60 * 5, 20 * 60 * 5); // Run every 5 minutes
 
+        long compactionTicks = 20L * 60 * ConfigManager.getInstance().getHistoryCompactionInterval();
+        TaskScheduler.runAsyncTimer(HistoryManager::compact, compactionTicks, compactionTicks);
     }
 
     @Override
     public void onDisable() {
+        StartupPreloader.saveOnlinePlayers();
+        Bukkit.getServicesManager().unregisterAll(this);
+        BackpackEvents.clear();
+        BulkOperations.cancel();
+        BackpackAutosave.flush();
+        MetricsReporter.stop();
         Database.close();
+        PLogger.shutdown();
+    }
+
+    /**
+     * Reloads config.yml and lang.yml off the main thread and applies them.
+     * Database and shard settings only take effect after a restart.
+     *
+     * @return Completes once the new config is in use, or exceptionally if it couldn't be loaded
+     */
+    public CompletableFuture<Void> reload() {
+        return ConfigManager.reload().thenRun(PrismPack::applyConfig);
     }
 
-    public void reload() {
-        reloadConfig();
-        ConfigManager.reload();
+    private static void applyConfig() {
         Lang.reloadLang();
+        ActionLimiter.initialize();
+        PlayerCapabilities.invalidateAll();
+        MetricsReporter.reload();
     }
 }
@@ -0,0 +1,12 @@
+package com.person98.prismPack.api;
+
+import java.util.UUID;
+
+/**
+ * A backpack page that was saved.
+ *
+ * @param owner The UUID of the backpack owner
+ * @param page The zero-based page number
+ */
+public record BackpackChange(UUID owner, int page) {
+}
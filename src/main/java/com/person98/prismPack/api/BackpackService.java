@@ -0,0 +1,110 @@
+package com.person98.prismPack.api;
+
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Lets other plugins read and change backpacks without blocking the server.
+ * Registered with the Bukkit services manager while PrismPack is enabled:
+ * <pre>{@code
+ * BackpackService backpacks = Bukkit.getServicesManager().load(BackpackService.class);
+ * }</pre>
+ * Calls for the same player run one after another in the order they were made, so a
+ * {@link #modifyPage} always sees the result of the previous one. Calls for different players
+ * run in parallel. Every future completes off the main thread unless stated otherwise, and fails
+ * with an {@link IllegalStateException} while the storage is still starting.
+ * <p>
+ * Contents are always handed out as copies, changing them has no effect on the stored backpack.
+ */
+public interface BackpackService {
+
+    /**
+     * @return true once the storage has started and backpacks can be read and changed
+     */
+    boolean isReady();
+
+    /**
+     * Reads one page of a player's backpack, from the cache if it is loaded.
+     *
+     * @param owner The UUID of the backpack owner
+     * @param page The zero-based page number
+     * @return A copy of the page contents, or an empty array if the page was never saved
+     */
+    CompletableFuture<ItemStack[]> getPage(UUID owner, int page);
+
+    /**
+     * Reads every stored page of several players' backpacks at once.
+     *
+     * @param owners The UUIDs of the backpack owners
+     * @return Copies of the pages per owner, in page order, with an empty array for pages that
+     *         were skipped. Owners without a backpack map to an empty list.
+     */
+    CompletableFuture<Map<UUID, List<ItemStack[]>>> getBackpacks(Collection<UUID> owners);
+
+    /**
+     * Changes one page of a player's backpack atomically: no other change made through this service
+     * can happen between reading the page and saving it. The modifier runs on the main thread (the
+     * global region on Folia), since the player's open backpack pages are closed and saved first,
+     * so edits the player is making can't be lost or overwrite the change.
+     * <p>
+     * A {@link com.person98.prismPack.api.event.BackpackModifyEvent} is fired before the change is saved.
+     *
+     * @param plugin The plugin making the change
+     * @param owner The UUID of the backpack owner
+     * @param page The zero-based page number
+     * @param modifier Changes the contents in place
+     * @return true if the page was changed and saved, false if the modifier made no change or the
+     *         change was cancelled
+     */
+    CompletableFuture<Boolean> modifyPage(Plugin plugin, UUID owner, int page, PageModifier modifier);
+
+    /**
+     * Calls a listener whenever a page of any backpack was saved, whether it was changed by a player,
+     * an admin command or another plugin. The listener runs on the thread that wrote the page, which
+     * is usually not the main thread, and should return quickly.
+     *
+     * @param listener Receives the saved pages
+     * @return The subscription, cancel it to stop receiving changes
+     */
+    Subscription subscribe(Consumer<BackpackChange> listener);
+
+    /**
+     * Calls a listener whenever a page of one player's backpack was saved, see {@link #subscribe(Consumer)}.
+     *
+     * @param owner The UUID of the backpack owner
+     * @param listener Receives the saved pages
+     * @return The subscription, cancel it to stop receiving changes
+     */
+    Subscription subscribe(UUID owner, Consumer<BackpackChange> listener);
+
+    /**
+     * Changes the contents of a backpack page.
+     */
+    @FunctionalInterface
+    interface PageModifier {
+
+        /**
+         * @param contents The page contents, with null for empty slots. The array can't be resized.
+         * @return true if anything was changed and the page has to be saved
+         */
+        boolean modify(ItemStack[] contents);
+    }
+
+    /**
+     * A registered change listener.
+     */
+    interface Subscription {
+
+        /**
+         * Stops calling the listener.
+         */
+        void cancel();
+    }
+}
@@ -0,0 +1,37 @@
+package com.person98.prismPack.api.event;
+
+import lombok.Getter;
+import org.bukkit.Bukkit;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+import java.util.UUID;
+
+/**
+ * Called when a backpack page was read from the database, not when it was served from the cache.
+ * Usually called off the main thread.
+ */
+public class BackpackLoadEvent extends Event {
+
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    @Getter
+    private final UUID owner;
+    @Getter
+    private final int page;
+
+    public BackpackLoadEvent(UUID owner, int page) {
+        super(!Bukkit.isPrimaryThread());
+        this.owner = owner;
+        this.page = page;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
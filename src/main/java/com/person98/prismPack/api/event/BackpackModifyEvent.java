@@ -0,0 +1,55 @@
+package com.person98.prismPack.api.event;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
+
+import java.util.UUID;
+
+/**
+ * Called on the main thread, or the global region on Folia, when another plugin changed a backpack page
+ * through the {@link com.person98.prismPack.api.BackpackService}, before the change is saved.
+ * Cancelling the event discards the change.
+ */
+public class BackpackModifyEvent extends Event implements Cancellable {
+
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    /**
+     * The plugin that made the change.
+     */
+    @Getter
+    private final Plugin plugin;
+    @Getter
+    private final UUID owner;
+    @Getter
+    private final int page;
+    /**
+     * The changed page contents that will be saved. Listeners may change them further.
+     */
+    @Getter
+    private final ItemStack[] contents;
+    @Getter
+    @Setter
+    private boolean cancelled;
+
+    public BackpackModifyEvent(Plugin plugin, UUID owner, int page, ItemStack[] contents) {
+        this.plugin = plugin;
+        this.owner = owner;
+        this.page = page;
+        this.contents = contents;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
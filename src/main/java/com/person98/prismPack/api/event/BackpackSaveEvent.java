@@ -0,0 +1,42 @@
+package com.person98.prismPack.api.event;
+
+import lombok.Getter;
+import org.bukkit.Bukkit;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+import java.util.UUID;
+
+/**
+ * Called after a backpack page was written to the database. Usually called off the main thread.
+ */
+public class BackpackSaveEvent extends Event {
+
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    @Getter
+    private final UUID owner;
+    @Getter
+    private final int page;
+    /**
+     * Whether the page was emptied, e.g. by /bp clean or a bulk clean.
+     */
+    @Getter
+    private final boolean cleared;
+
+    public BackpackSaveEvent(UUID owner, int page, boolean cleared) {
+        super(!Bukkit.isPrimaryThread());
+        this.owner = owner;
+        this.page = page;
+        this.cleared = cleared;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
@@ -2,119 +2,646 @@ package com.person98.prismPack.commands;
 
 import co.aikar.commands.BaseCommand;
 import co.aikar.commands.annotation.CommandAlias;
+import co.aikar.commands.annotation.CommandCompletion;
 import co.aikar.commands.annotation.CommandPermission;
 import co.aikar.commands.annotation.Default;
 import co.aikar.commands.annotation.Subcommand;
 
 import com.person98.prismPack.PrismPack;
+import com.person98.prismPack.manager.ActionLimiter;
 import com.person98.prismPack.manager.BackpackManager;
+import com.person98.prismPack.manager.BulkOperations;
 import com.person98.prismPack.manager.ConfigManager;
+import com.person98.prismPack.manager.Database;
+import com.person98.prismPack.manager.HistoryManager;
+import com.person98.prismPack.manager.ItemIndexManager;
+import com.person98.prismPack.manager.PlayerCapabilities;
+import com.person98.prismPack.manager.PlayerNameIndex;
+import com.person98.prismPack.manager.ShardRebalancer;
 import com.person98.prismPack.manager.ui.AdminBackpack;
 import com.person98.prismPack.manager.ui.Backpack;
+import com.person98.prismPack.manager.ui.BackpackAutosave;
+import com.person98.prismPack.manager.ui.SessionRegistry;
 import com.person98.prismPack.util.Lang;
+import com.person98.prismPack.util.LogHistogram;
+import com.person98.prismPack.util.Metrics;
+import com.person98.prismPack.util.PayloadView;
+import com.person98.prismPack.util.PLogger;
+import com.person98.prismPack.util.TaskScheduler;
 import org.bukkit.Bukkit;
-import org.bukkit.OfflinePlayer;
+import org.bukkit.Material;
+import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
 
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 @CommandAlias("prismpack|backpack|bp")
 public class BackPackCommand extends BaseCommand {
 
     private final Backpack backpack = new Backpack();
     private final AdminBackpack adminBackpack = new AdminBackpack();
-    private final Map<UUID, Long> lastOpenedTime = new HashMap<>(); // Track last open time for players
+    private static final int HISTORY_PAGE_SIZE = 10;
+    private static final int FIND_PAGE_SIZE = 10;
+    private static final long BULK_CONFIRM_TIMEOUT = 30_000;
+    private final Map<String, PendingBulk> pendingBulk = new ConcurrentHashMap<>();
 
     @Subcommand("reload")
     @CommandPermission("prismpack.command.reload")
     public void onReload(Player player) {
+        PrismPack.getInstance().reload().whenComplete((ignored, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                PLogger.severe("Failed to reload the config, keeping the previous one", cause);
+                Lang.sendMessage(player, Lang.LANG.RELOAD_FAILED, "%error%", String.valueOf(cause.getMessage()));
+            } else {
+                Lang.sendMessage(player, Lang.LANG.RELOADED_CONFIG);
+            }
+        });
+    }
+
+    @Subcommand("save")
+    @CommandPermission("prismpack.command.save")
+    public void onSave(Player player) {
+        if (isStorageUnavailable(player)) return;
 
-        PrismPack.getInstance().reload();
+        int saved = BackpackAutosave.saveAll();
+        Lang.sendMessage(player, Lang.LANG.SAVED_OPEN_BACKPACKS, "%count%", String.valueOf(saved));
+    }
+
+    @Subcommand("rebalance")
+    @CommandPermission("prismpack.command.rebalance")
+    public void onRebalance(Player player) {
+        if (isStorageUnavailable(player)) return;
+
+        if (ShardRebalancer.isRunning()) {
+            Lang.sendMessage(player, Lang.LANG.REBALANCE_RUNNING);
+            return;
+        }
 
-        Lang.sendMessage(player, Lang.LANG.RELOADED_CONFIG);
+        Lang.sendMessage(player, Lang.LANG.REBALANCE_STARTED);
+        TaskScheduler.runAsync(() -> {
+            int moved = ShardRebalancer.rebalance();
+            if (moved == -1) {
+                Lang.sendMessage(player, Lang.LANG.REBALANCE_RUNNING);
+            } else {
+                Lang.sendMessage(player, Lang.LANG.REBALANCE_FINISHED, "%moved%", String.valueOf(moved));
+            }
+        });
     }
 
     @Subcommand("clean")
     @CommandPermission("backpack.clean")
     public void onClean(Player player) {
+        if (isStorageUnavailable(player)) return;
+
+        if (isRateLimited(player, ActionLimiter.Action.CLEAN)) return;
+
         // Clean the player's own backpack
-        Inventory inventory = BackpackManager.loadInventory(player.getUniqueId());
-        if (inventory != null) {
-            inventory.clear();
-            BackpackManager.saveInventory(player.getUniqueId(), inventory);
-            Lang.sendMessage(player, Lang.LANG.CLEANED_BACKPACK);
-        } else {
-            Lang.sendMessage(player, Lang.LANG.NO_BACKPACK);
-        }
+        findOccupiedPages(player, player.getUniqueId(), (pages, occupied) -> {
+            if (cleanPages(player.getUniqueId(), pages, occupied)) {
+                Lang.sendMessage(player, Lang.LANG.CLEANED_BACKPACK);
+            } else {
+                Lang.sendMessage(player, Lang.LANG.NO_BACKPACK);
+            }
+        });
     }
 
     @Subcommand("clean")
     @CommandPermission("backpack.clean.others")
+    @CommandCompletion("@backpackplayers")
     public void onCleanOther(Player player, String targetName) {
-        OfflinePlayer targetPlayer = Bukkit.getOfflinePlayer(targetName);
-        if (targetPlayer != null) {
-            Inventory inventory = BackpackManager.loadInventory(targetPlayer.getUniqueId());
-            if (inventory != null) {
-                inventory.clear();
-                BackpackManager.saveInventory(targetPlayer.getUniqueId(), inventory);
-                Lang.sendMessage(player, Lang.LANG.CLEANED_OTHERS_BACKPACK, "%player%", targetPlayer.getName());
+        if (isStorageUnavailable(player)) return;
+
+        if (isRateLimited(player, ActionLimiter.Action.CLEAN)) return;
+
+        resolveTarget(player, targetName, target -> findOccupiedPages(player, target.uuid(), (pages, occupied) -> {
+            if (cleanPages(target.uuid(), pages, occupied)) {
+                Lang.sendMessage(player, Lang.LANG.CLEANED_OTHERS_BACKPACK, "%player%", target.name());
             } else {
                 Lang.sendMessage(player, Lang.LANG.NO_BACKPACK);
             }
-        } else {
-            Lang.sendMessage(player, Lang.LANG.PLAYER_NOT_FOUND);
-        }
+        }));
     }
 
     @Subcommand("open")
     @CommandPermission("backpack.open.others")
+    @CommandCompletion("@backpackplayers")
     public void onOpenOther(Player admin, String targetName) {
-        OfflinePlayer targetPlayer = Bukkit.getOfflinePlayer(targetName);
-        if (targetPlayer != null) {
-            adminBackpack.openBackpackForAdmin(admin, targetPlayer);
-            Lang.sendMessage(admin, Lang.LANG.OPENED_BACKPACK_OTHER, "%player%", targetPlayer.getName());
+        if (isStorageUnavailable(admin)) return;
+
+        if (isRateLimited(admin, ActionLimiter.Action.ADMIN_OPEN)) return;
+
+        resolveTarget(admin, targetName, target -> loadPages(admin, target.uuid(), pages -> {
+            adminBackpack.openBackpackForAdmin(admin, target.uuid(), target.name(), pages);
+            Lang.sendMessage(admin, Lang.LANG.OPENED_BACKPACK_OTHER, "%player%", target.name());
+        }));
+    }
+
+    @Subcommand("history list")
+    @CommandPermission("backpack.history")
+    @CommandCompletion("@backpackplayers")
+    public void onHistoryList(Player player, String targetName, @Default("1") int page) {
+        if (isStorageUnavailable(player)) return;
+
+        int shownPage = Math.max(1, page);
+
+        resolveTarget(player, targetName, target -> TaskScheduler.runAsync(() -> {
+            try {
+                List<HistoryManager.VersionInfo> versions = HistoryManager.listVersions(target.uuid(),
+                        HISTORY_PAGE_SIZE, (shownPage - 1) * HISTORY_PAGE_SIZE);
+                if (versions.isEmpty()) {
+                    Lang.sendMessage(player, Lang.LANG.HISTORY_EMPTY, "%player%", target.name());
+                    return;
+                }
+
+                SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+                Lang.sendMessage(player, Lang.LANG.HISTORY_HEADER, "%player%", target.name(), "%page%", String.valueOf(shownPage));
+                for (HistoryManager.VersionInfo version : versions) {
+                    Lang.sendMessage(player, Lang.LANG.HISTORY_ENTRY,
+                            "%version%", String.valueOf(version.version()),
+                            "%date%", dateFormat.format(version.created()),
+                            "%type%", version.checkpoint() ? "full" : "delta",
+                            "%changed%", String.valueOf(version.changed()));
+                }
+            } catch (SQLException e) {
+                PLogger.severe("Failed to list backpack history", e);
+                Lang.sendMessage(player, Lang.LANG.STORAGE_ERROR);
+            }
+        }));
+    }
+
+    @Subcommand("history diff")
+    @CommandPermission("backpack.history")
+    @CommandCompletion("@backpackplayers")
+    public void onHistoryDiff(Player player, String targetName, int from, int to) {
+        if (isStorageUnavailable(player)) return;
+
+        resolveTarget(player, targetName, target -> TaskScheduler.runAsync(() -> {
+            try {
+                List<HistoryManager.SlotChange> changes = HistoryManager.diff(target.uuid(), from, to);
+                if (changes == null) {
+                    Lang.sendMessage(player, Lang.LANG.HISTORY_VERSION_NOT_FOUND, "%player%", target.name());
+                    return;
+                }
+                if (changes.isEmpty()) {
+                    Lang.sendMessage(player, Lang.LANG.HISTORY_DIFF_NONE);
+                    return;
+                }
+
+                Lang.sendMessage(player, Lang.LANG.HISTORY_DIFF_HEADER, "%player%", target.name(),
+                        "%from%", String.valueOf(from), "%to%", String.valueOf(to));
+                for (HistoryManager.SlotChange change : changes) {
+                    Lang.sendMessage(player, Lang.LANG.HISTORY_DIFF_ENTRY,
+                            "%slot%", String.valueOf(change.slot()),
+                            "%before%", describe(change.before()),
+                            "%after%", describe(change.after()));
+                }
+            } catch (SQLException e) {
+                PLogger.severe("Failed to diff backpack history", e);
+                Lang.sendMessage(player, Lang.LANG.STORAGE_ERROR);
+            }
+        }));
+    }
+
+    @Subcommand("history restore")
+    @CommandPermission("backpack.history.restore")
+    @CommandCompletion("@backpackplayers")
+    public void onHistoryRestore(Player player, String targetName, int version) {
+        if (isStorageUnavailable(player)) return;
+
+        resolveTarget(player, targetName, target -> TaskScheduler.runAsync(() -> {
+            UUID targetUUID = target.uuid();
+            try {
+                List<ItemStack[]> pages = HistoryManager.reconstructPages(targetUUID, version);
+                if (pages == null) {
+                    Lang.sendMessage(player, Lang.LANG.HISTORY_VERSION_NOT_FOUND, "%player%", target.name());
+                    return;
+                }
+                int storedPages = BackpackManager.getStoredPageCount(targetUUID);
+
+                TaskScheduler.runFor(player, () -> {
+                    SessionRegistry.closeSessions(targetUUID); // Open pages would overwrite the restored ones
+
+                    // Pages come back with the size they had, pages the version didn't have are removed
+                    List<Integer> removed = new ArrayList<>();
+                    for (int page = 0; page < Math.max(pages.size(), storedPages); page++) {
+                        ItemStack[] contents = page < pages.size() ? pages.get(page) : null;
+                        if (contents == null) {
+                            removed.add(page);
+                            continue;
+                        }
+                        Inventory inventory = Bukkit.createInventory(null, contents.length);
+                        inventory.setContents(contents);
+                        BackpackManager.saveInventory(targetUUID, page, inventory);
+                    }
+                    BackpackManager.removePages(targetUUID, removed);
+                    Lang.sendMessage(player, Lang.LANG.HISTORY_RESTORED, "%player%", target.name(),
+                            "%version%", String.valueOf(version));
+                });
+            } catch (SQLException e) {
+                PLogger.severe("Failed to restore backpack history", e);
+                Lang.sendMessage(player, Lang.LANG.STORAGE_ERROR);
+            }
+        }));
+    }
+
+    @Subcommand("find")
+    @CommandPermission("backpack.find")
+    public void onFind(Player player, String materialName, @Default("*") String filter, @Default("1") int page) {
+        if (isStorageUnavailable(player)) return;
+
+        Material material = Material.matchMaterial(materialName);
+        if (material == null) {
+            Lang.sendMessage(player, Lang.LANG.INVALID_MATERIAL, "%material%", materialName);
+            return;
+        }
+
+        String itemKey = filter.equals("*") ? "" : filter.toLowerCase();
+        if (itemKey.startsWith("ench:") && itemKey.indexOf(':', 5) == -1) {
+            itemKey = "ench:minecraft:" + itemKey.substring(5);
+        }
+        String itemName = itemKey.isEmpty() ? material.name() : material.name() + " " + itemKey;
+        int shownPage = Math.max(1, page);
+        String key = itemKey;
+
+        TaskScheduler.runAsync(() -> {
+            try {
+                List<ItemIndexManager.IndexHit> hits = ItemIndexManager.find(material.name(), key,
+                        FIND_PAGE_SIZE, (shownPage - 1) * FIND_PAGE_SIZE);
+                if (hits.isEmpty()) {
+                    Lang.sendMessage(player, Lang.LANG.FIND_NONE, "%item%", itemName);
+                    return;
+                }
+
+                Lang.sendMessage(player, Lang.LANG.FIND_HEADER, "%item%", itemName, "%page%", String.valueOf(shownPage));
+                for (ItemIndexManager.IndexHit hit : hits) {
+                    String ownerName = PlayerNameIndex.getName(hit.owner());
+                    Lang.sendMessage(player, Lang.LANG.FIND_ENTRY,
+                            "%player%", ownerName != null ? ownerName : hit.owner().toString(),
+                            "%amount%", String.valueOf(hit.amount()));
+                }
+            } catch (SQLException e) {
+                PLogger.severe("Failed to query the item index", e);
+                Lang.sendMessage(player, Lang.LANG.STORAGE_ERROR);
+            }
+        });
+    }
+
+    @Subcommand("index rebuild")
+    @CommandPermission("prismpack.command.index")
+    public void onIndexRebuild(Player player) {
+        if (isStorageUnavailable(player)) return;
+
+        if (ItemIndexManager.isBackfillRunning()) {
+            Lang.sendMessage(player, Lang.LANG.INDEX_REBUILD_RUNNING);
+            return;
+        }
+
+        Lang.sendMessage(player, Lang.LANG.INDEX_REBUILD_STARTED);
+        TaskScheduler.runAsync(() -> {
+            int indexed = ItemIndexManager.backfill();
+            if (indexed == -1) {
+                Lang.sendMessage(player, Lang.LANG.INDEX_REBUILD_RUNNING);
+            } else {
+                Lang.sendMessage(player, Lang.LANG.INDEX_REBUILD_FINISHED, "%count%", String.valueOf(indexed));
+            }
+        });
+    }
+
+    @Subcommand("stats")
+    @CommandPermission("prismpack.command.stats")
+    public void onStats(CommandSender sender) {
+        Lang.sendMessage(sender, Lang.LANG.STATS_HEADER);
+
+        long hits = Metrics.get(Metrics.Counter.CACHE_HITS);
+        long lookups = hits + Metrics.get(Metrics.Counter.CACHE_MISSES);
+        Lang.sendMessage(sender, Lang.LANG.STATS_VALUE, "%name%", "cache_hit_rate",
+                "%value%", lookups == 0 ? "-" : String.format("%.1f%%", hits * 100.0 / lookups));
+        for (Metrics.Counter counter : Metrics.Counter.values()) {
+            Lang.sendMessage(sender, Lang.LANG.STATS_VALUE, "%name%", Metrics.name(counter),
+                    "%value%", String.valueOf(Metrics.get(counter)));
+        }
+
+        for (Metrics.Timer timer : Metrics.Timer.values()) {
+            LogHistogram.Snapshot snapshot = Metrics.snapshot(timer);
+            Lang.sendMessage(sender, Lang.LANG.STATS_HISTOGRAM, "%name%", Metrics.name(timer),
+                    "%count%", String.valueOf(snapshot.getCount()),
+                    "%p50%", formatNanos(snapshot.getPercentile(50)),
+                    "%p99%", formatNanos(snapshot.getPercentile(99)),
+                    "%max%", formatNanos(snapshot.getMax()));
+        }
+        for (Metrics.Size size : Metrics.Size.values()) {
+            LogHistogram.Snapshot snapshot = Metrics.snapshot(size);
+            Lang.sendMessage(sender, Lang.LANG.STATS_HISTOGRAM, "%name%", Metrics.name(size) + "_size",
+                    "%count%", String.valueOf(snapshot.getCount()),
+                    "%p50%", formatBytes(snapshot.getPercentile(50)),
+                    "%p99%", formatBytes(snapshot.getPercentile(99)),
+                    "%max%", formatBytes(snapshot.getMax()));
+        }
+
+        for (Map.Entry<String, Long> gauge : Metrics.readGauges().entrySet()) {
+            Lang.sendMessage(sender, Lang.LANG.STATS_VALUE, "%name%", gauge.getKey(),
+                    "%value%", String.valueOf(gauge.getValue()));
+        }
+    }
+
+    @Subcommand("bulk clean all")
+    @CommandPermission("prismpack.command.bulk")
+    public void onBulkCleanAll(CommandSender sender) {
+        if (isStorageUnavailable(sender)) return;
+        requestBulk(sender, BulkOperations.Operation.cleanAll());
+    }
+
+    @Subcommand("bulk clean inactive")
+    @CommandPermission("prismpack.command.bulk")
+    public void onBulkCleanInactive(CommandSender sender, int days) {
+        if (isStorageUnavailable(sender)) return;
+        requestBulk(sender, BulkOperations.Operation.cleanInactive(Math.max(1, days)));
+    }
+
+    @Subcommand("bulk remove")
+    @CommandPermission("prismpack.command.bulk")
+    public void onBulkRemove(CommandSender sender, String materialName) {
+        if (isStorageUnavailable(sender)) return;
+
+        Material material = Material.matchMaterial(materialName);
+        if (material == null) {
+            Lang.sendMessage(sender, Lang.LANG.INVALID_MATERIAL, "%material%", materialName);
+            return;
+        }
+        requestBulk(sender, BulkOperations.Operation.removeMaterial(material));
+    }
+
+    @Subcommand("bulk confirm")
+    @CommandPermission("prismpack.command.bulk")
+    public void onBulkConfirm(CommandSender sender) {
+        if (isStorageUnavailable(sender)) return;
+
+        PendingBulk pending = pendingBulk.remove(sender.getName());
+        if (pending == null || pending.expiresAt() < System.currentTimeMillis()) {
+            Lang.sendMessage(sender, Lang.LANG.BULK_NOTHING_TO_CONFIRM);
+            return;
+        }
+        if (BulkOperations.isRunning()) {
+            Lang.sendMessage(sender, Lang.LANG.BULK_RUNNING);
+            return;
+        }
+
+        BulkOperations.Operation operation = pending.operation();
+        String name = operation.describe();
+        Lang.sendMessage(sender, Lang.LANG.BULK_STARTED, "%operation%", name);
+        TaskScheduler.runAsync(() -> {
+            BulkOperations.Result result = BulkOperations.run(operation, (done, total, etaMillis) -> {
+                if (done == 0) return;
+                String percent = (total > 0 ? done * 100 / total : 100) + "%";
+                Lang.sendMessage(sender, Lang.LANG.BULK_PROGRESS, "%operation%", name,
+                        "%done%", String.valueOf(done), "%total%", String.valueOf(total),
+                        "%percent%", percent, "%eta%", formatDuration(etaMillis));
+                PLogger.info("Bulk " + name + ": " + done + "/" + total + " pages (" + percent + ")");
+            });
+
+            if (result == null) {
+                Lang.sendMessage(sender, Lang.LANG.BULK_RUNNING);
+                return;
+            }
+            switch (result.status()) {
+                case FINISHED -> Lang.sendMessage(sender, Lang.LANG.BULK_FINISHED, "%operation%", name,
+                        "%done%", String.valueOf(result.pages()), "%changed%", String.valueOf(result.changed()),
+                        "%time%", formatDuration(result.durationMillis()));
+                case CANCELLED -> Lang.sendMessage(sender, Lang.LANG.BULK_CANCELLED, "%operation%", name,
+                        "%done%", String.valueOf(result.pages()), "%changed%", String.valueOf(result.changed()));
+                case FAILED -> Lang.sendMessage(sender, Lang.LANG.STORAGE_ERROR);
+            }
+        });
+    }
+
+    @Subcommand("bulk cancel")
+    @CommandPermission("prismpack.command.bulk")
+    public void onBulkCancel(CommandSender sender) {
+        if (BulkOperations.cancel()) {
+            Lang.sendMessage(sender, Lang.LANG.BULK_CANCELLING);
         } else {
-            Lang.sendMessage(admin, Lang.LANG.PLAYER_NOT_FOUND);
+            Lang.sendMessage(sender, Lang.LANG.BULK_NOT_RUNNING);
         }
     }
 
     @Default
     @CommandPermission("backpack.use")
     public void onDefault(Player player) {
-        if (isOnCooldown(player)) {
-            long timeLeft = getCooldownTimeLeft(player);
-            Lang.sendMessage(player, Lang.LANG.ONCOOLDOWN, "%time_left%", String.valueOf(timeLeft));
-            return;
+        if (isStorageUnavailable(player)) return;
+
+        if (!PlayerCapabilities.get(player).noCooldown()) {
+            long waitMillis = ActionLimiter.tryAcquire(player.getUniqueId(), ActionLimiter.Action.OPEN);
+            if (waitMillis > 0) {
+                Lang.sendMessage(player, Lang.LANG.ONCOOLDOWN, "%time_left%", String.valueOf(toSeconds(waitMillis)));
+                return;
+            }
         }
 
-        // Open the backpack and update the last opened time
         backpack.openBackpack(player);
-        lastOpenedTime.put(player.getUniqueId(), System.currentTimeMillis());
     }
 
-    private boolean isOnCooldown(Player player) {
-        if (player.hasPermission("backpack.noCooldown")) {
-            return false; // Bypass cooldown if player has permission
+    /**
+     * Tells the sender that backpacks can't be used yet if the storage is still starting or failed to start.
+     *
+     * @param sender The player or console running the command
+     * @return true if the command has to be skipped
+     */
+    private static boolean isStorageUnavailable(CommandSender sender) {
+        switch (Database.getState()) {
+            case STARTING -> Lang.sendMessage(sender, Lang.LANG.STORAGE_STARTING);
+            case FAILED -> Lang.sendMessage(sender, Lang.LANG.STORAGE_UNAVAILABLE);
+            case READY -> {
+                return false;
+            }
         }
+        return true;
+    }
 
-        int cooldownSeconds = ConfigManager.getInstance().getCooldown();
-        UUID playerUUID = player.getUniqueId();
-        if (!lastOpenedTime.containsKey(playerUUID)) {
-            return false; // First time opening the backpack
+    /**
+     * Takes a token for an action and tells the player how long to wait if none is left.
+     *
+     * @param player The player running the action
+     * @param action The rate limited action
+     * @return true if the player has to wait
+     */
+    private boolean isRateLimited(Player player, ActionLimiter.Action action) {
+        long waitMillis = ActionLimiter.tryAcquire(player.getUniqueId(), action);
+        if (waitMillis > 0) {
+            Lang.sendMessage(player, Lang.LANG.RATE_LIMITED, "%time_left%", String.valueOf(toSeconds(waitMillis)));
+            return true;
         }
+        return false;
+    }
+
+    private static long toSeconds(long millis) {
+        return (millis + 999) / 1000;
+    }
+
+    private static String formatDuration(long millis) {
+        if (millis < 0) return "?";
+        long seconds = toSeconds(millis);
+        if (seconds < 60) return seconds + "s";
+        if (seconds < 3600) return seconds / 60 + "m " + seconds % 60 + "s";
+        return seconds / 3600 + "h " + seconds / 60 % 60 + "m";
+    }
+
+    private static String formatNanos(long nanos) {
+        return String.format("%.2fms", nanos / 1_000_000.0);
+    }
+
+    private static String formatBytes(long bytes) {
+        return bytes < 1024 ? bytes + "B" : String.format("%.1fKB", bytes / 1024.0);
+    }
+
+    /**
+     * Remembers a bulk operation until the sender confirms it, since it can't be undone.
+     *
+     * @param sender The player or console who requested the operation
+     * @param operation The requested operation
+     */
+    private void requestBulk(CommandSender sender, BulkOperations.Operation operation) {
+        if (BulkOperations.isRunning()) {
+            Lang.sendMessage(sender, Lang.LANG.BULK_RUNNING);
+            return;
+        }
+        pendingBulk.put(sender.getName(), new PendingBulk(operation, System.currentTimeMillis() + BULK_CONFIRM_TIMEOUT));
+        Lang.sendMessage(sender, Lang.LANG.BULK_CONFIRM, "%operation%", operation.describe());
+    }
+
+    /**
+     * Loads the first page of a backpack into the cache off the main thread, within the limit on
+     * concurrent loads, and then runs the action on the sender's thread.
+     *
+     * @param sender The player who ran the command
+     * @param playerUUID The UUID of the backpack owner
+     * @param action The action to run with the number of stored pages
+     */
+    private void loadPages(Player sender, UUID playerUUID, IntConsumer action) {
+        TaskScheduler.runAsync(() -> {
+            int pages;
+            try (ActionLimiter.ColdLoadPermit permit = ActionLimiter.tryColdLoad()) {
+                if (permit == null) {
+                    Lang.sendMessage(sender, Lang.LANG.STORAGE_BUSY);
+                    return;
+                }
 
-        long lastOpened = lastOpenedTime.get(playerUUID);
-        long currentTime = System.currentTimeMillis();
-        return (currentTime - lastOpened) < (cooldownSeconds * 1000L); // Convert seconds to milliseconds
+                pages = BackpackManager.getStoredPageCount(playerUUID);
+                if (pages > 0) {
+                    BackpackManager.loadInventory(playerUUID, 0);
+                }
+            }
+            TaskScheduler.runFor(sender, () -> action.accept(pages));
+        });
+    }
+
+    /**
+     * Finds the pages of a backpack that hold items off the main thread, within the limit on
+     * concurrent loads, and then runs the action on the sender's thread. Pages are only checked
+     * for items, nothing is deserialized or cached.
+     *
+     * @param sender The player who ran the command
+     * @param playerUUID The UUID of the backpack owner
+     * @param action The action to run with the number of stored pages and the pages holding items
+     */
+    private void findOccupiedPages(Player sender, UUID playerUUID, BiConsumer<Integer, Map<Integer, Integer>> action) {
+        TaskScheduler.runAsync(() -> {
+            int pages;
+            Map<Integer, Integer> occupied = new HashMap<>();
+            try (ActionLimiter.ColdLoadPermit permit = ActionLimiter.tryColdLoad()) {
+                if (permit == null) {
+                    Lang.sendMessage(sender, Lang.LANG.STORAGE_BUSY);
+                    return;
+                }
+
+                pages = BackpackManager.getStoredPageCount(playerUUID);
+                for (int page = 0; page < pages; page++) {
+                    PayloadView view = BackpackManager.loadPayload(playerUUID, page);
+                    if (view != null && !view.isEmpty()) {
+                        occupied.put(page, view.size());
+                    }
+                }
+            } catch (SQLException e) {
+                PLogger.severe("Failed to read backpack of " + playerUUID, e);
+                Lang.sendMessage(sender, Lang.LANG.STORAGE_ERROR);
+                return;
+            }
+            TaskScheduler.runFor(sender, () -> action.accept(pages, occupied));
+        });
+    }
+
+    /**
+     * Empties the pages of a backpack that hold items.
+     *
+     * @param playerUUID The UUID of the backpack owner
+     * @param pages The number of stored pages
+     * @param occupied The pages that held items when they were checked, with their number of slots
+     * @return false if the player has no backpack
+     */
+    private boolean cleanPages(UUID playerUUID, int pages, Map<Integer, Integer> occupied) {
+        SessionRegistry.closeSessions(playerUUID); // Open pages would write their contents back
+
+        // Pages that were open while checking were cached with their new contents when they closed
+        Map<Integer, Integer> emptied = new HashMap<>(occupied);
+        for (int page = 0; page < pages; page++) {
+            Inventory cached = BackpackManager.getCachedPage(playerUUID, page);
+            if (cached != null && !cached.isEmpty()) {
+                emptied.putIfAbsent(page, cached.getSize());
+            }
+        }
+        BackpackManager.clearInventories(playerUUID, emptied);
+        return pages > 0;
+    }
+
+    /**
+     * Resolves a player name without blocking the main thread and runs the action
+     * on the sender's thread once the player is known.
+     *
+     * @param sender The player who ran the command
+     * @param targetName The name that was typed
+     * @param action The action to run with the resolved player
+     */
+    private void resolveTarget(Player sender, String targetName, Consumer<PlayerNameIndex.NameEntry> action) {
+        PlayerNameIndex.resolve(targetName).whenComplete((target, error) -> {
+            if (error != null) {
+                PLogger.severe("Failed to resolve player " + targetName, error);
+                Lang.sendMessage(sender, Lang.LANG.STORAGE_ERROR);
+            } else if (target == null) {
+                Lang.sendMessage(sender, Lang.LANG.PLAYER_NOT_FOUND);
+            } else if (TaskScheduler.isOwnedByCurrentThread(sender)) {
+                action.accept(target);
+            } else {
+                TaskScheduler.runFor(sender, () -> action.accept(target));
+            }
+        });
+    }
+
+    private String describe(ItemStack item) {
+        if (item == null) {
+            return "empty";
+        }
+        return item.getAmount() + "x " + item.getType().name();
     }
 
-    private long getCooldownTimeLeft(Player player) {
-        int cooldownSeconds = ConfigManager.getInstance().getCooldown();
-        long lastOpened = lastOpenedTime.get(player.getUniqueId());
-        long currentTime = System.currentTimeMillis();
-        return (cooldownSeconds - ((currentTime - lastOpened) / 1000)); // Return time left in seconds
+    /**
+     * A bulk operation waiting for confirmation.
+     *
+     * @param operation The requested operation
+     * @param expiresAt When the request expires, in epoch millis
+     */
+    private record PendingBulk(BulkOperations.Operation operation, long expiresAt) {
     }
 }
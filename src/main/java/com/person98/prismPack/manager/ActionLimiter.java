@@ -0,0 +1,191 @@
+package com.person98.prismPack.manager;
+
+import com.person98.prismPack.util.PLogger;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits how often players can run backpack actions and how many backpacks are loaded
+ * from the database at the same time.
+ * <p>
+ * Each action is a token bucket, implemented as the generic cell rate algorithm: per player
+ * and action only the time at which the bucket will be full again is stored, and it is updated
+ * with a compare-and-set, so checks never lock. Players whose buckets are all full again carry
+ * no state and are swept away periodically, which keeps the structure bounded by the players
+ * that were active within the last interval. A swept bucket is marked first, so a check that
+ * still holds it starts over with a new bucket instead of taking a token nobody keeps.
+ */
+public class ActionLimiter {
+
+    private static final Action[] ACTIONS = Action.values();
+    private static final long SWEPT = Long.MIN_VALUE;
+
+    private static final Map<UUID, AtomicLongArray> buckets = new ConcurrentHashMap<>();
+    private static final LongAdder[] rejected = new LongAdder[ACTIONS.length];
+    private static final LongAdder rejectedColdLoads = new LongAdder();
+    private static volatile Semaphore coldLoads = new Semaphore(8);
+
+    // Totals at the last report, only used by cleanup
+    private static final long[] reportedRejected = new long[ACTIONS.length];
+    private static long reportedColdLoads;
+
+    static {
+        for (int i = 0; i < rejected.length; i++) {
+            rejected[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Actions that are rate limited per player.
+     */
+    public enum Action {
+        OPEN,
+        CLEAN,
+        ADMIN_OPEN
+    }
+
+    /**
+     * Applies the configured limit on concurrent cold loads. Loads already running finish on the old limit.
+     */
+    public static void initialize() {
+        coldLoads = new Semaphore(ConfigManager.getInstance().getMaxColdLoads());
+    }
+
+    /**
+     * Takes a token for an action if the player has one left.
+     *
+     * @param playerUUID The UUID of the player
+     * @param action The action the player wants to run
+     * @return 0 if the action may run, otherwise the milliseconds until the next token is available
+     */
+    public static long tryAcquire(UUID playerUUID, Action action) {
+        ConfigManager.RateLimit limit = ConfigManager.getInstance().getRateLimit(action);
+        if (limit.getIntervalMillis() <= 0) return 0;
+
+        long interval = limit.getIntervalMillis();
+        long tolerance = interval * (limit.getBurst() - 1);
+        AtomicLongArray playerBuckets = buckets.computeIfAbsent(playerUUID, uuid -> new AtomicLongArray(ACTIONS.length));
+        int index = action.ordinal();
+
+        while (true) {
+            long now = System.currentTimeMillis();
+            long fullAt = playerBuckets.get(index);
+            if (fullAt == SWEPT) {
+                playerBuckets = buckets.computeIfAbsent(playerUUID, uuid -> new AtomicLongArray(ACTIONS.length));
+                continue;
+            }
+            long start = Math.max(fullAt, now);
+            if (start - now > tolerance) {
+                rejected[index].increment();
+                return start - now - tolerance;
+            }
+            if (playerBuckets.compareAndSet(index, fullAt, start + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Reserves one of the limited slots for loading backpacks from the database.
+     * Use with try-with-resources; a null permit means the database is busy and nothing should be loaded.
+     *
+     * @return The permit, or null if too many loads are already running
+     */
+    public static ColdLoadPermit tryColdLoad() {
+        Semaphore semaphore = coldLoads;
+        if (!semaphore.tryAcquire()) {
+            rejectedColdLoads.increment();
+            return null;
+        }
+        return new ColdLoadPermit(semaphore);
+    }
+
+    /**
+     * @param action The rate limited action
+     * @return How many times the action was rejected since startup
+     */
+    public static long getRejected(Action action) {
+        return rejected[action.ordinal()].sum();
+    }
+
+    /**
+     * @return How many loads were rejected because too many were running since startup
+     */
+    public static long getRejectedColdLoads() {
+        return rejectedColdLoads.sum();
+    }
+
+    /**
+     * Removes players whose buckets are all full again and logs the rejections since the last run,
+     * if there were any. Should be called periodically, from one thread at a time.
+     */
+    public static void cleanup() {
+        long now = System.currentTimeMillis();
+        for (UUID playerUUID : buckets.keySet()) {
+            // Atomic with the lookup in tryAcquire, which waits for the bucket to be removed
+            buckets.compute(playerUUID, (uuid, playerBuckets) ->
+                    playerBuckets == null || sweep(playerBuckets, now) ? null : playerBuckets);
+        }
+
+        long coldLoadsRejected = getRejectedColdLoads();
+        long coldLoadsDelta = coldLoadsRejected - reportedColdLoads;
+        reportedColdLoads = coldLoadsRejected;
+
+        long total = coldLoadsDelta;
+        StringBuilder summary = new StringBuilder();
+        for (Action action : ACTIONS) {
+            long count = getRejected(action);
+            long delta = count - reportedRejected[action.ordinal()];
+            reportedRejected[action.ordinal()] = count;
+            total += delta;
+            summary.append(action.name().toLowerCase()).append('=').append(delta).append(", ");
+        }
+        if (total > 0) {
+            PLogger.info("Rejected requests since the last cleanup: " + summary + "cold-loads=" + coldLoadsDelta);
+        }
+    }
+
+    /**
+     * Marks every bucket of a player as swept if all of them are full again. Nothing is marked
+     * if one isn't full or a token is taken meanwhile.
+     *
+     * @return true if the buckets were marked and can be removed
+     */
+    private static boolean sweep(AtomicLongArray playerBuckets, long now) {
+        for (int i = 0; i < playerBuckets.length(); i++) {
+            long fullAt = playerBuckets.get(i);
+            if (fullAt > now || !playerBuckets.compareAndSet(i, fullAt, SWEPT)) {
+                for (int marked = 0; marked < i; marked++) {
+                    playerBuckets.compareAndSet(marked, SWEPT, 0);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A reserved slot for loading backpacks from the database, released when closed.
+     */
+    public static class ColdLoadPermit implements AutoCloseable {
+        private final Semaphore semaphore;
+        private boolean released;
+
+        private ColdLoadPermit(Semaphore semaphore) {
+            this.semaphore = semaphore;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                semaphore.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.person98.prismPack.manager;
+
+import com.person98.prismPack.api.BackpackChange;
+import com.person98.prismPack.api.BackpackService;
+import com.person98.prismPack.api.event.BackpackLoadEvent;
+import com.person98.prismPack.api.event.BackpackSaveEvent;
+import com.person98.prismPack.util.PLogger;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Tells other plugins about loaded and saved backpack pages, through Bukkit events and the
+ * change listeners subscribed with the {@link BackpackService}.
+ * Events are only created when something listens to them, since loads and saves are frequent.
+ */
+public class BackpackEvents {
+
+    private static final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Fires a {@link BackpackLoadEvent} for a page that was read from the database.
+     *
+     * @param owner The UUID of the backpack owner
+     * @param page The zero-based page number
+     */
+    static void loaded(UUID owner, int page) {
+        if (BackpackLoadEvent.getHandlerList().getRegisteredListeners().length > 0) {
+            new BackpackLoadEvent(owner, page).callEvent();
+        }
+    }
+
+    /**
+     * Fires a {@link BackpackSaveEvent} for a page that was written and notifies the change listeners.
+     *
+     * @param owner The UUID of the backpack owner
+     * @param page The zero-based page number
+     * @param cleared Whether the page was emptied
+     */
+    static void saved(UUID owner, int page, boolean cleared) {
+        if (BackpackSaveEvent.getHandlerList().getRegisteredListeners().length > 0) {
+            new BackpackSaveEvent(owner, page, cleared).callEvent();
+        }
+        if (listeners.isEmpty()) return;
+
+        BackpackChange change = new BackpackChange(owner, page);
+        for (Listener listener : listeners) {
+            if (listener.owner() != null && !listener.owner().equals(owner)) continue;
+            try {
+                listener.callback().accept(change);
+            } catch (RuntimeException e) {
+                PLogger.severe("A backpack change listener threw an exception", e);
+            }
+        }
+    }
+
+    /**
+     * Registers a change listener.
+     *
+     * @param owner The UUID of the backpack owner to listen to, or null for every backpack
+     * @param callback Receives the saved pages
+     * @return The subscription
+     */
+    static BackpackService.Subscription subscribe(UUID owner, Consumer<BackpackChange> callback) {
+        Listener listener = new Listener(owner, callback);
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    /**
+     * Drops every change listener, e.g. when the plugin is disabled.
+     */
+    public static void clear() {
+        listeners.clear();
+    }
+
+    // Not a record so that two subscriptions with the same callback are removed separately
+    private static final class Listener {
+        private final UUID owner;
+        private final Consumer<BackpackChange> callback;
+
+        private Listener(UUID owner, Consumer<BackpackChange> callback) {
+            this.owner = owner;
+            this.callback = callback;
+        }
+
+        UUID owner() {
+            return owner;
+        }
+
+        Consumer<BackpackChange> callback() {
+            return callback;
+        }
+    }
+}
@@ -1,34 +1,52 @@
 package com.person98.prismPack.manager;
 
-import com.person98.prismPack.PrismPack;
 import com.person98.prismPack.util.ItemSerializationUtil;
+import com.person98.prismPack.util.Metrics;
+import com.person98.prismPack.util.PayloadView;
+import com.person98.prismPack.util.PLogger;
+import com.person98.prismPack.util.TaskScheduler;
 import org.bukkit.Bukkit;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Manages the storage and retrieval of player backpack inventories in the database.
  * Supports both MySQL and SQLite databases through a unified interface.
+ * Every player's rows live on the shard chosen by {@link Database#getShard(UUID)}.
  */
 public class BackpackManager {
 
     private static final String CREATE_BACKPACK_PLAYERS_TABLE_MYSQL = "CREATE TABLE IF NOT EXISTS backpack_players (" +
             "player_id INT AUTO_INCREMENT PRIMARY KEY," +
-            "uuid CHAR(36) UNIQUE NOT NULL" +
+            "uuid CHAR(36) UNIQUE NOT NULL," +
+            "name VARCHAR(16)," +
+            "name_lower VARCHAR(16)" +
             ")";
 
     private static final String CREATE_BACKPACK_PLAYERS_TABLE_SQLITE = "CREATE TABLE IF NOT EXISTS backpack_players (" +
             "player_id INTEGER PRIMARY KEY AUTOINCREMENT," +
-            "uuid CHAR(36) UNIQUE NOT NULL" +
+            "uuid CHAR(36) UNIQUE NOT NULL," +
+            "name VARCHAR(16)," +
+            "name_lower VARCHAR(16)" +
             ")";
 
+    private static final String PLAYERS_NAME_INDEX = "idx_players_name";
+
     private static final String CREATE_BACKPACKS_TABLE_MYSQL = "CREATE TABLE IF NOT EXISTS backpacks (" +
             "owner INT NOT NULL," +
+            "page INT NOT NULL DEFAULT 0," +
             "itemstacks LONGTEXT NOT NULL," +
             "version INT DEFAULT 0," +
             "lastupdate DATETIME," +
@@ -37,128 +55,746 @@ public class BackpackManager {
 
     private static final String CREATE_BACKPACKS_TABLE_SQLITE = "CREATE TABLE IF NOT EXISTS backpacks (" +
             "owner INTEGER NOT NULL," +
+            "page INTEGER NOT NULL DEFAULT 0," +
             "itemstacks TEXT NOT NULL," +
             "version INTEGER DEFAULT 0," +
             "lastupdate TIMESTAMP," +
             "FOREIGN KEY (owner) REFERENCES backpack_players(player_id)" +
             ")";
 
-    private static final Map<UUID, Inventory> backpackCache = new ConcurrentHashMap<>();
-    private static final Map<UUID, Long> lastAccessTime = new ConcurrentHashMap<>();
+    private static final String CREATE_BACKPACK_SLOTS_TABLE_MYSQL = "CREATE TABLE IF NOT EXISTS backpack_slots (" +
+            "owner INT NOT NULL," +
+            "slot INT NOT NULL," +
+            "item LONGTEXT," +
+            "PRIMARY KEY (owner, slot)," +
+            "FOREIGN KEY (owner) REFERENCES backpack_players(player_id)" +
+            ")";
+
+    private static final String CREATE_BACKPACK_SLOTS_TABLE_SQLITE = "CREATE TABLE IF NOT EXISTS backpack_slots (" +
+            "owner INTEGER NOT NULL," +
+            "slot INTEGER NOT NULL," +
+            "item TEXT," +
+            "PRIMARY KEY (owner, slot)," +
+            "FOREIGN KEY (owner) REFERENCES backpack_players(player_id)" +
+            ")";
+
+    private static final String BACKPACKS_OWNER_INDEX = "idx_backpacks_owner";
+    private static final String BACKPACKS_PAGE_INDEX = "idx_backpacks_owner_page";
+
+    /**
+     * Number of slot indexes reserved per page in the slot layout and in history,
+     * so slot {@code s} of page {@code p} is stored as {@code p * PAGE_SLOTS + s}.
+     */
+    public static final int PAGE_SLOTS = 54;
+
+    /**
+     * Marker stored in backpacks.itemstacks when the contents live in backpack_slots instead.
+     */
+    static final String SLOT_LAYOUT_MARKER = "";
+
+    private static final Map<PageKey, Inventory> backpackCache = new ConcurrentHashMap<>();
+    private static final Map<PageKey, PersistedSlots> persistedSlots = new ConcurrentHashMap<>();
+    private static final Map<PageKey, Long> lastAccessTime = new ConcurrentHashMap<>();
     private static final long CACHE_EXPIRY_TIME = 1000 * 60 * 15; // 15 minutes
+    private static final Set<UUID> pinnedOwners = ConcurrentHashMap.newKeySet(); // Online players, never expired
+    private static final Map<UUID, Integer> warmPageCounts = new ConcurrentHashMap<>(); // Pinned owners whose pages are all cached
+    private static final Map<Integer, String> emptyBlobs = new ConcurrentHashMap<>(); // Serialized empty page of each size
 
     /**
-     * Initializes the database tables required for backpack storage.
+     * Initializes the database tables required for backpack storage on every shard.
      * Creates the backpack_players and backpacks tables if they don't exist.
      * Automatically detects and uses the appropriate SQL syntax based on the database type.
+     *
+     * @throws SQLException if the schema of a shard couldn't be created or updated
      */
-    public static void initialize() {
-        try (Connection connection = Database.getConnection();
-             Statement statement = connection.createStatement()) {
+    public static void initialize() throws SQLException {
+        for (Database.Shard shard : Database.getShards()) {
+            try (Connection connection = shard.getConnection();
+                 Statement statement = connection.createStatement()) {
 
-            boolean usingSQLite = Database.isUsingSQLite();
-            
-            statement.executeUpdate(usingSQLite ? 
-                CREATE_BACKPACK_PLAYERS_TABLE_SQLITE : 
-                CREATE_BACKPACK_PLAYERS_TABLE_MYSQL);
-                
-            statement.executeUpdate(usingSQLite ? 
-                CREATE_BACKPACKS_TABLE_SQLITE : 
-                CREATE_BACKPACKS_TABLE_MYSQL);
+                boolean usingSQLite = shard.isUsingSQLite();
 
-        } catch (SQLException e) {
-            e.printStackTrace();
+                statement.executeUpdate(usingSQLite ?
+                    CREATE_BACKPACK_PLAYERS_TABLE_SQLITE :
+                    CREATE_BACKPACK_PLAYERS_TABLE_MYSQL);
+
+                statement.executeUpdate(usingSQLite ?
+                    CREATE_BACKPACKS_TABLE_SQLITE :
+                    CREATE_BACKPACKS_TABLE_MYSQL);
+
+                statement.executeUpdate(usingSQLite ?
+                    CREATE_BACKPACK_SLOTS_TABLE_SQLITE :
+                    CREATE_BACKPACK_SLOTS_TABLE_MYSQL);
+
+                ensureUniquePage(connection, statement, usingSQLite);
+                ensurePlayerNames(connection, statement);
+
+            } catch (SQLException e) {
+                throw new SQLException("Failed to create the backpack tables on shard " + shard.getIndex(), e);
+            }
         }
     }
 
     /**
-     * Saves a player's backpack inventory to the database asynchronously.
+     * Saves the first page of a player's backpack.
      *
      * @param playerUUID The UUID of the player whose inventory is being saved
      * @param inventory The inventory contents to save
+     * @see #saveInventory(UUID, int, Inventory)
      */
     public static void saveInventory(UUID playerUUID, Inventory inventory) {
-        backpackCache.put(playerUUID, inventory);
-        lastAccessTime.put(playerUUID, System.currentTimeMillis());
+        saveInventory(playerUUID, 0, inventory);
+    }
 
-        Bukkit.getScheduler().runTaskAsynchronously(PrismPack.getInstance(), () -> {
-            try (Connection connection = Database.getConnection()) {
-                int playerId = getPlayerId(connection, playerUUID);
-                if (playerId == -1) {
-                    String insertPlayerSQL = "INSERT INTO backpack_players (uuid) VALUES (?)";
-                    try (PreparedStatement ps = connection.prepareStatement(insertPlayerSQL, Statement.RETURN_GENERATED_KEYS)) {
-                        ps.setString(1, playerUUID.toString());
-                        ps.executeUpdate();
-
-                        try (ResultSet generatedKeys = ps.getGeneratedKeys()) {
-                            if (generatedKeys.next()) {
-                                playerId = generatedKeys.getInt(1);
-                            }
-                        }
+    /**
+     * Saves one page of a player's backpack to the database asynchronously.
+     * Other pages are left untouched. With the slot storage layout only the slots
+     * that changed since the last save are written.
+     *
+     * @param playerUUID The UUID of the player whose inventory is being saved
+     * @param page The zero-based page number
+     * @param inventory The inventory contents to save
+     */
+    public static void saveInventory(UUID playerUUID, int page, Inventory inventory) {
+        PendingWrite write = prepareWrite(new PageSave(playerUUID, page, inventory), false);
+        TaskScheduler.runAsync(() -> {
+            Database.Shard shard = Database.getShard(playerUUID);
+            try (Connection connection = shard.getConnection()) {
+                persist(connection, shard, write);
+            } catch (SQLException e) {
+                Metrics.increment(Metrics.Counter.SAVE_FAILURES);
+                PLogger.severe(() -> "Failed to save page " + page + " of " + playerUUID, e);
+            }
+        });
+    }
+
+    /**
+     * Saves several pages in one asynchronous task, using a single connection per shard.
+     * Must be called on the main thread so that saves of the same page keep their order.
+     *
+     * @param saves The pages to save
+     */
+    public static void saveInventories(List<PageSave> saves) {
+        if (saves.isEmpty()) return;
+
+        List<PendingWrite> writes = new ArrayList<>(saves.size());
+        for (PageSave save : saves) {
+            writes.add(prepareWrite(save, false));
+        }
+        TaskScheduler.runAsync(() -> persistAll(writes));
+    }
+
+    /**
+     * Saves several pages and blocks until they are written, e.g. while the plugin is disabled
+     * and asynchronous tasks can no longer be scheduled.
+     *
+     * @param saves The pages to save
+     */
+    public static void saveInventoriesNow(List<PageSave> saves) {
+        List<PendingWrite> writes = new ArrayList<>(saves.size());
+        for (PageSave save : saves) {
+            writes.add(prepareWrite(save, false));
+        }
+        persistAll(writes);
+    }
+
+    /**
+     * Caches a page that is about to be saved and numbers the save, so that an older
+     * snapshot finishing late never overwrites a newer one.
+     */
+    private static PendingWrite prepareWrite(PageSave save, boolean cleared) {
+        PageKey key = new PageKey(save.owner(), save.page());
+        // Numbered and cached at once, so a load that read the page before can tell it is outdated
+        long[] version = new long[1];
+        backpackCache.compute(key, (k, cached) -> {
+            version[0] = persistedSlots.computeIfAbsent(key, p -> new PersistedSlots()).requested.incrementAndGet();
+            return save.inventory();
+        });
+        lastAccessTime.put(key, System.currentTimeMillis());
+        warmPageCounts.computeIfPresent(save.owner(), (owner, pages) -> Math.max(pages, save.page() + 1));
+        return new PendingWrite(key, save.inventory(), cleared, version[0]);
+    }
+
+    private static void persistAll(List<PendingWrite> writes) {
+        Map<Database.Shard, List<PendingWrite>> byShard = new HashMap<>();
+        for (PendingWrite write : writes) {
+            byShard.computeIfAbsent(Database.getShard(write.key().owner()), shard -> new ArrayList<>()).add(write);
+        }
+
+        for (Map.Entry<Database.Shard, List<PendingWrite>> entry : byShard.entrySet()) {
+            try (Connection connection = entry.getKey().getConnection()) {
+                for (PendingWrite write : entry.getValue()) {
+                    try {
+                        persist(connection, entry.getKey(), write);
+                    } catch (SQLException e) {
+                        Metrics.increment(Metrics.Counter.SAVE_FAILURES);
+                        PLogger.severe(() -> "Failed to save page " + write.key().page() + " of " + write.key().owner(), e);
                     }
                 }
+            } catch (SQLException e) {
+                Metrics.increment(Metrics.Counter.SAVE_FAILURES);
+                PLogger.severe(() -> "Failed to save " + entry.getValue().size() + " pages on shard " + entry.getKey().getIndex(), e);
+            }
+        }
+    }
 
-                ItemStack[] items = inventory.getContents();
-                String serializedInventory = ItemSerializationUtil.serializeInventory(items);
+    /**
+     * Writes one saved page, its history and its index entries.
+     * Skipped if a newer save of the same page has already been written.
+     */
+    private static void persist(Connection connection, Database.Shard shard, PendingWrite write) throws SQLException {
+        PageKey key = write.key();
+        PersistedSlots persisted = persistedSlots.computeIfAbsent(key, k -> new PersistedSlots());
+        synchronized (persisted) {
+            if (write.version() <= persisted.written) {
+                Metrics.increment(Metrics.Counter.SAVES_SKIPPED);
+                return;
+            }
 
-                String upsertSQL = Database.isUsingSQLite() ?
-                        "INSERT OR REPLACE INTO backpacks (owner, itemstacks, lastupdate) VALUES (?, ?, ?)" :
-                        "INSERT INTO backpacks (owner, itemstacks, lastupdate) VALUES (?, ?, ?) " +
-                        "ON DUPLICATE KEY UPDATE itemstacks = VALUES(itemstacks), lastupdate = VALUES(lastupdate)";
+            long start = Metrics.start();
+            int playerId = getOrCreatePlayerId(connection, key.owner());
+            persisted.payloads = writePage(connection, shard, playerId, key, write.inventory().getContents(),
+                    write.cleared(), persisted.payloads);
+            persisted.written = write.version();
+            Metrics.stop(Metrics.Timer.DB_SAVE, start);
+            Metrics.increment(Metrics.Counter.SAVES_WRITTEN);
+        }
+        BackpackEvents.saved(key.owner(), key.page(), write.cleared());
+    }
 
-                try (PreparedStatement ps = connection.prepareStatement(upsertSQL)) {
-                    ps.setInt(1, playerId);
-                    ps.setString(2, serializedInventory);
-                    ps.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
-                    ps.executeUpdate();
+    /**
+     * Rewrites a stored page that isn't cached, without caching it, e.g. during a bulk operation.
+     * The write is numbered like a regular save, so saves prepared before it are skipped. A page
+     * that gets cached meanwhile keeps its cached contents, so callers must check the cache
+     * afterwards, see {@link #getCachedPage(UUID, int)}.
+     * This method blocks and must be called off the main thread.
+     *
+     * @param connection The connection to the owner's shard
+     * @param shard The owner's shard
+     * @param playerId The owner's ID on that shard
+     * @param playerUUID The UUID of the owner
+     * @param page The zero-based page number
+     * @param items The new contents
+     * @param cleared Whether the page is emptied, which is written without serializing
+     * @param stored The payloads read from the slot layout, or null if the page is stored as a blob
+     * @throws SQLException if a database error occurs
+     */
+    static void rewriteStored(Connection connection, Database.Shard shard, int playerId, UUID playerUUID, int page,
+                              ItemStack[] items, boolean cleared, String[] stored) throws SQLException {
+        PageKey key = new PageKey(playerUUID, page);
+        PersistedSlots persisted = persistedSlots.computeIfAbsent(key, k -> new PersistedSlots());
+        synchronized (persisted) {
+            long version = persisted.requested.incrementAndGet();
+            String[] previous = persisted.payloads != null ? persisted.payloads : stored;
+            persisted.payloads = writePage(connection, shard, playerId, key, items, cleared, previous);
+            persisted.written = version;
+        }
+        BackpackEvents.saved(playerUUID, page, cleared);
+
+        // Don't keep write state for every page a bulk operation touched
+        if (!backpackCache.containsKey(key)) {
+            persistedSlots.remove(key, persisted);
+            ItemIndexManager.forget(key);
+        }
+    }
+
+    /**
+     * Notes the write state of a page before it is read from storage outside the cache, e.g. to
+     * index it, so {@link #writeIfUnchanged} can tell whether the read is still current.
+     * Must be followed by {@link #release(WriteStamp)}.
+     *
+     * @param playerUUID The UUID of the owner
+     * @param page The zero-based page number
+     * @return The write state of the page
+     */
+    static WriteStamp stamp(UUID playerUUID, int page) {
+        PageKey key = new PageKey(playerUUID, page);
+        PersistedSlots persisted = persistedSlots.computeIfAbsent(key, k -> new PersistedSlots());
+        return new WriteStamp(key, persisted, persisted.requested.get(), persisted.written);
+    }
+
+    /**
+     * Runs a write derived from a page read after {@link #stamp}, unless the page was saved,
+     * rewritten or removed since, so it never overwrites what those writes stored.
+     * The write runs under the page's write lock.
+     *
+     * @param stamp The write state from before the page was read
+     * @param write The write to run
+     * @return false if the page changed and nothing was written
+     * @throws SQLException if the write fails
+     */
+    static boolean writeIfUnchanged(WriteStamp stamp, StorageWrite write) throws SQLException {
+        PersistedSlots persisted = stamp.persisted();
+        synchronized (persisted) {
+            if (persistedSlots.get(stamp.key()) != persisted || persisted.requested.get() != stamp.requested()
+                    || persisted.written != stamp.written()) {
+                return false;
+            }
+            write.run();
+            return true;
+        }
+    }
+
+    /**
+     * Drops the write state noted by {@link #stamp} unless the page is in use meanwhile.
+     *
+     * @param stamp The write state to release
+     */
+    static void release(WriteStamp stamp) {
+        dropIfUnused(stamp.key(), stamp.persisted());
+    }
+
+    /**
+     * Drops the write state of a page that isn't cached and has no save pending.
+     */
+    private static void dropIfUnused(PageKey key, PersistedSlots persisted) {
+        synchronized (persisted) {
+            if (!backpackCache.containsKey(key) && persisted.requested.get() == persisted.written) {
+                persistedSlots.remove(key, persisted);
+            }
+        }
+    }
+
+    /**
+     * Writes one page, its history and its index entries.
+     *
+     * @return The payloads now stored in the slot layout, or null if the page was stored as a blob
+     */
+    private static String[] writePage(Connection connection, Database.Shard shard, int playerId, PageKey key,
+                                      ItemStack[] items, boolean cleared, String[] previous) throws SQLException {
+        ConfigManager config = ConfigManager.getInstance();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        if (cleared) {
+            // Stored without serializing anything, in the configured layout
+            String[] empty = new String[items.length];
+            String[] written;
+            if (config.isSlotStorage()) {
+                writeSlots(connection, shard, playerId, key.page(), previous, empty, now);
+                written = empty;
+            } else {
+                writeEmptyBlob(connection, shard, playerId, key.page(), items.length, now);
+                written = null;
+            }
+
+            HistoryManager.record(connection, shard, playerId, key.owner(), key.page(), empty);
+            ItemIndexManager.update(connection, playerId, key, new ItemStack[0]);
+            return written;
+        }
+
+        String[] payloads = config.isSlotStorage() || config.isHistoryEnabled() ?
+                ItemSerializationUtil.serializeItems(items) : null;
+
+        String[] written;
+        if (config.isSlotStorage()) {
+            writeSlots(connection, shard, playerId, key.page(), previous, payloads, now);
+            written = payloads;
+        } else {
+            // Slots already serialized for the history are joined instead of serializing the page again
+            String serializedInventory = payloads != null ?
+                    ItemSerializationUtil.joinItems(payloads) :
+                    ItemSerializationUtil.serializeInventory(items);
+            writeBackpack(connection, shard, playerId, key.page(), serializedInventory, now);
+            written = null;
+        }
+
+        HistoryManager.record(connection, shard, playerId, key.owner(), key.page(), payloads);
+        ItemIndexManager.update(connection, playerId, key, items);
+        return written;
+    }
+
+    /**
+     * Keeps a player's pages cached while they are online and loads all of them,
+     * so that code running on the main thread, like the death handler, never waits for the database.
+     * The pages are loaded asynchronously.
+     *
+     * @param playerUUID The UUID of the player who joined
+     */
+    public static void prefetch(UUID playerUUID) {
+        pinnedOwners.add(playerUUID);
+        // In the owner's lane, so death drops and API changes wait until every page is loaded
+        OwnerLanes.submit(playerUUID, () -> {
+            int pages = getStoredPageCount(playerUUID);
+            for (int page = 0; page < pages; page++) {
+                loadInventory(playerUUID, page);
+            }
+            // The player may have left while loading
+            if (pinnedOwners.contains(playerUUID)) {
+                warmPageCounts.merge(playerUUID, pages, Math::max);
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /**
+     * Lets a player's pages expire from the cache again after they left.
+     *
+     * @param playerUUID The UUID of the player who left
+     */
+    public static void release(UUID playerUUID) {
+        pinnedOwners.remove(playerUUID);
+        warmPageCounts.remove(playerUUID);
+        long now = System.currentTimeMillis();
+        for (PageKey key : lastAccessTime.keySet()) {
+            if (key.owner().equals(playerUUID)) {
+                lastAccessTime.put(key, now); // Expire normally from now on
+            }
+        }
+    }
+
+    /**
+     * Returns every page of a player's backpack from the cache, without touching the database.
+     *
+     * @param playerUUID The UUID of the player
+     * @return The cached pages, with null for pages that were never saved, or null if the pages
+     *         have not been prefetched yet
+     */
+    public static Inventory[] getCachedPages(UUID playerUUID) {
+        Integer pages = warmPageCounts.get(playerUUID);
+        if (pages == null) return null;
+
+        Inventory[] inventories = new Inventory[pages];
+        for (int page = 0; page < pages; page++) {
+            inventories[page] = backpackCache.get(new PageKey(playerUUID, page));
+        }
+        return inventories;
+    }
+
+    /**
+     * @return The number of cached pages
+     */
+    public static int getCachedPageCount() {
+        return backpackCache.size();
+    }
+
+    /**
+     * @return The number of players whose pages are kept cached because they are online
+     */
+    public static int getPinnedOwnerCount() {
+        return pinnedOwners.size();
+    }
+
+    /**
+     * Returns one page from the cache, without touching the database.
+     *
+     * @param playerUUID The UUID of the player
+     * @param page The zero-based page number
+     * @return The cached page, or null if it isn't cached
+     */
+    public static Inventory getCachedPage(UUID playerUUID, int page) {
+        return backpackCache.get(new PageKey(playerUUID, page));
+    }
+
+    /**
+     * Empties pages of a player's backpack. Nothing is serialized: with the slot layout only the
+     * slots that held an item are written, with the blob layout a cached empty page is stored.
+     * Must be called on the main thread.
+     *
+     * @param playerUUID The UUID of the player
+     * @param pages The zero-based pages to empty, with their number of slots as stored, which is
+     *              only used for pages that aren't cached
+     */
+    public static void clearInventories(UUID playerUUID, Map<Integer, Integer> pages) {
+        if (pages.isEmpty()) return;
+
+        List<PendingWrite> writes = new ArrayList<>(pages.size());
+        for (Map.Entry<Integer, Integer> page : pages.entrySet()) {
+            Inventory cached = backpackCache.get(new PageKey(playerUUID, page.getKey()));
+            Inventory empty = Bukkit.createInventory(null, cached != null ? cached.getSize() : page.getValue());
+            writes.add(prepareWrite(new PageSave(playerUUID, page.getKey(), empty), true));
+        }
+        TaskScheduler.runAsync(() -> persistAll(writes));
+    }
+
+    /**
+     * Returns one page from the cache if it can be used without checking the database,
+     * like {@link #loadInventory(UUID, int)} would.
+     *
+     * @param playerUUID The UUID of the player
+     * @param page The zero-based page number
+     * @return The cached page, or null if it isn't cached or has to be read again
+     */
+    public static Inventory getFreshCachedPage(UUID playerUUID, int page) {
+        PageKey key = new PageKey(playerUUID, page);
+        Inventory cachedInventory = backpackCache.get(key);
+        return cachedInventory != null && isFresh(key) ? cachedInventory : null;
+    }
+
+    /**
+     * Removes pages of a player's backpack from the cache and from storage, along with their index
+     * entries, and records their removal in the history. The removal is numbered like a save, so
+     * saves of the same pages prepared before it are skipped.
+     * Must be called on the main thread.
+     *
+     * @param playerUUID The UUID of the player
+     * @param pages The zero-based pages to remove
+     */
+    public static void removePages(UUID playerUUID, List<Integer> pages) {
+        if (pages.isEmpty()) return;
+
+        Map<Integer, Long> versions = new HashMap<>();
+        for (int page : pages) {
+            PageKey key = new PageKey(playerUUID, page);
+            backpackCache.compute(key, (k, cached) -> {
+                versions.put(page, persistedSlots.computeIfAbsent(key, p -> new PersistedSlots()).requested.incrementAndGet());
+                return null;
+            });
+            lastAccessTime.remove(key);
+        }
+
+        TaskScheduler.runAsync(() -> {
+            Database.Shard shard = Database.getShard(playerUUID);
+            try (Connection connection = shard.getConnection()) {
+                int playerId = getPlayerId(connection, playerUUID);
+                List<Integer> removed = new ArrayList<>();
+                for (Map.Entry<Integer, Long> entry : versions.entrySet()) {
+                    PageKey key = new PageKey(playerUUID, entry.getKey());
+                    PersistedSlots persisted = persistedSlots.computeIfAbsent(key, k -> new PersistedSlots());
+                    synchronized (persisted) {
+                        if (entry.getValue() <= persisted.written) continue;
+                        if (playerId != -1) {
+                            deletePage(connection, playerId, entry.getKey());
+                            ItemIndexManager.remove(connection, playerId, key);
+                            removed.add(entry.getKey());
+                        }
+                        persisted.payloads = null;
+                        persisted.written = entry.getValue();
+                    }
+                    if (!backpackCache.containsKey(key)) {
+                        persistedSlots.remove(key, persisted);
+                    }
+                }
+                if (!removed.isEmpty()) {
+                    HistoryManager.recordRemoved(connection, shard, playerId, playerUUID, removed);
                 }
             } catch (SQLException e) {
-                e.printStackTrace();
+                Metrics.increment(Metrics.Counter.SAVE_FAILURES);
+                PLogger.severe(() -> "Failed to remove pages " + pages + " of " + playerUUID, e);
             }
         });
     }
 
     /**
-     * Loads a player's backpack inventory, first checking cache then database.
+     * Deletes the backpack row and slot rows of one page in a single transaction.
+     */
+    private static void deletePage(Connection connection, int playerId, int page) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "DELETE FROM backpack_slots WHERE owner = ? AND slot >= ? AND slot < ?")) {
+                ps.setInt(1, playerId);
+                ps.setInt(2, page * PAGE_SLOTS);
+                ps.setInt(3, (page + 1) * PAGE_SLOTS);
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = connection.prepareStatement("DELETE FROM backpacks WHERE owner = ? AND page = ?")) {
+                ps.setInt(1, playerId);
+                ps.setInt(2, page);
+                ps.executeUpdate();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Loads the first page of a player's backpack.
      *
      * @param playerUUID The UUID of the player whose inventory should be loaded
      * @return The loaded inventory, or null if no inventory exists for the player
+     * @see #loadInventory(UUID, int)
      */
     public static Inventory loadInventory(UUID playerUUID) {
-        Inventory cachedInventory = backpackCache.get(playerUUID);
-        if (cachedInventory != null) {
-            Long lastAccess = lastAccessTime.get(playerUUID);
-            if (lastAccess != null && System.currentTimeMillis() - lastAccess < CACHE_EXPIRY_TIME) {
-                lastAccessTime.put(playerUUID, System.currentTimeMillis());
-                return cachedInventory;
+        return loadInventory(playerUUID, 0);
+    }
+
+    /**
+     * Loads one page of a player's backpack, first checking cache then database.
+     * Only the requested page is read and deserialized.
+     * Both storage layouts are understood regardless of the configured one,
+     * so switching layouts takes effect on the next save.
+     *
+     * @param playerUUID The UUID of the player whose inventory should be loaded
+     * @param page The zero-based page number
+     * @return The loaded inventory, or null if the page was never saved or couldn't be read
+     */
+    public static Inventory loadInventory(UUID playerUUID, int page) {
+        try {
+            return loadInventoryChecked(playerUUID, page);
+        } catch (SQLException e) {
+            PLogger.severe(() -> "Failed to load page " + page + " of " + playerUUID, e);
+            return null;
+        }
+    }
+
+    /**
+     * Loads one page like {@link #loadInventory(UUID, int)}, but fails instead of returning null
+     * if the page couldn't be read, for callers that would otherwise overwrite it with an empty page.
+     *
+     * @param playerUUID The UUID of the player whose inventory should be loaded
+     * @param page The zero-based page number
+     * @return The loaded inventory, or null if the page was never saved
+     * @throws SQLException if a database error occurs
+     */
+    static Inventory loadInventoryChecked(UUID playerUUID, int page) throws SQLException {
+        PageKey key = new PageKey(playerUUID, page);
+        Inventory cachedInventory = backpackCache.get(key);
+        if (cachedInventory != null && isFresh(key)) {
+            lastAccessTime.put(key, System.currentTimeMillis());
+            Metrics.increment(Metrics.Counter.CACHE_HITS);
+            return cachedInventory;
+        }
+        Metrics.increment(Metrics.Counter.CACHE_MISSES);
+
+        while (true) {
+            // A save prepared while the page is read, e.g. the clear on death, makes the read outdated.
+            // Tracked before reading, so a rewrite that drops the write state afterwards is noticed too
+            PersistedSlots persistedBefore = persistedSlots.computeIfAbsent(key, k -> new PersistedSlots());
+            long requestedBefore = persistedBefore.requested.get();
+
+            long start = Metrics.start();
+            StoredBackpack stored = readBackpack(Database.getShard(playerUUID), playerUUID, page);
+            if (stored == null && migrateIfMissing(playerUUID)) {
+                stored = readBackpack(Database.getShard(playerUUID), playerUUID, page);
+            }
+            Metrics.stop(Metrics.Timer.DB_LOAD, start);
+            if (stored == null) {
+                dropIfUnused(key, persistedBefore);
+                return null;
+            }
+
+            String[] slotPayloads = stored.slotPayloads();
+            ItemStack[] items = slotPayloads != null ?
+                    ItemSerializationUtil.deserializeItems(slotPayloads) :
+                    ItemSerializationUtil.deserializeInventory(stored.itemstacks());
+            Inventory inventory = Bukkit.createInventory(null, items.length);
+            inventory.setContents(items);
+
+            boolean[] installed = new boolean[1];
+            Inventory current = backpackCache.compute(key, (k, cached) -> {
+                if (persistedSlots.get(key) != persistedBefore || persistedBefore.requested.get() != requestedBefore) {
+                    return cached;
+                }
+                persistedBefore.payloads = slotPayloads;
+                installed[0] = true;
+                return inventory;
+            });
+            if (installed[0]) {
+                lastAccessTime.put(key, System.currentTimeMillis());
+                BackpackEvents.loaded(playerUUID, page);
+                return inventory;
+            }
+            if (current != null) {
+                lastAccessTime.put(key, System.currentTimeMillis());
+                return current; // The newer save is cached
+            }
+
+            // Removed, or rewritten without being cached by a bulk operation
+            PersistedSlots persisted = persistedSlots.get(key);
+            if (persisted != null) {
+                synchronized (persisted) { // Waits until a rewrite in progress is written
+                    if (persisted.requested.get() != persisted.written) return null; // Removed, not deleted yet
+                }
             }
         }
+    }
 
-        try (Connection connection = Database.getConnection()) {
-            int playerId = getPlayerId(connection, playerUUID);
-            if (playerId == -1) return null;
+    /**
+     * Returns a view of one page that only deserializes the items that are accessed, for callers that
+     * only need to know whether a page is empty, or only need its items and not an inventory.
+     * A cached page is viewed as it is. A page read from the database is not cached.
+     * This method blocks and must be called off the main thread.
+     *
+     * @param playerUUID The UUID of the player
+     * @param page The zero-based page number
+     * @return The view, or null if the page was never saved
+     * @throws SQLException if a database error occurs
+     */
+    public static PayloadView loadPayload(UUID playerUUID, int page) throws SQLException {
+        PageKey key = new PageKey(playerUUID, page);
+        Inventory cachedInventory = backpackCache.get(key);
+        if (cachedInventory != null && isFresh(key)) {
+            Metrics.increment(Metrics.Counter.CACHE_HITS);
+            return PayloadView.ofItems(cachedInventory.getContents());
+        }
+        Metrics.increment(Metrics.Counter.CACHE_MISSES);
 
-            String selectBackpackSQL = "SELECT itemstacks FROM backpacks WHERE owner = ?";
-            try (PreparedStatement ps = connection.prepareStatement(selectBackpackSQL)) {
-                ps.setInt(1, playerId);
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.next()) {
-                        String serializedInventory = rs.getString("itemstacks");
-                        ItemStack[] items = ItemSerializationUtil.deserializeInventory(serializedInventory);
-                        Inventory inventory = Bukkit.createInventory(null, items.length);
-                        inventory.setContents(items);
-                        
-                        backpackCache.put(playerUUID, inventory);
-                        lastAccessTime.put(playerUUID, System.currentTimeMillis());
-                        
-                        return inventory;
+        long start = Metrics.start();
+        StoredBackpack stored = readBackpack(Database.getShard(playerUUID), playerUUID, page);
+        if (stored == null && migrateIfMissing(playerUUID)) {
+            stored = readBackpack(Database.getShard(playerUUID), playerUUID, page);
+        }
+        Metrics.stop(Metrics.Timer.DB_LOAD, start);
+        return stored != null ? stored.view() : null;
+    }
+
+    /**
+     * Moves a player's backpack to their shard if that shard holds nothing for them yet.
+     * After shards were appended, players who weren't rebalanced yet still live on the shard
+     * they were routed to before, and would otherwise look like they have no pages at all.
+     *
+     * @param playerUUID The UUID of the player
+     * @return true if a backpack was moved to the player's shard
+     * @throws SQLException if a database error occurs
+     */
+    private static boolean migrateIfMissing(UUID playerUUID) throws SQLException {
+        if (Database.getShards().size() < 2) return false;
+
+        try (Connection connection = Database.getConnection(playerUUID)) {
+            if (getPlayerId(connection, playerUUID) != -1) return false;
+        }
+        return ShardRebalancer.migratePlayer(playerUUID);
+    }
+
+    /**
+     * @return true if a cached page can be used without checking the database
+     */
+    private static boolean isFresh(PageKey key) {
+        if (pinnedOwners.contains(key.owner())) return true;
+
+        Long lastAccess = lastAccessTime.get(key);
+        return lastAccess != null && System.currentTimeMillis() - lastAccess < CACHE_EXPIRY_TIME;
+    }
+
+    /**
+     * Returns how many pages of a player's backpack have been stored, counting
+     * skipped pages in between. A player who wasn't rebalanced yet is moved to their shard first.
+     * This method blocks and should be called off the main thread where possible.
+     *
+     * @param playerUUID The UUID of the player
+     * @return The highest stored page number plus one, or 0 if nothing is stored
+     */
+    public static int getStoredPageCount(UUID playerUUID) {
+        int cached = 0;
+        for (PageKey key : backpackCache.keySet()) {
+            if (key.owner().equals(playerUUID)) {
+                cached = Math.max(cached, key.page() + 1);
+            }
+        }
+
+        try {
+            migrateIfMissing(playerUUID);
+            try (Connection connection = Database.getConnection(playerUUID)) {
+                int playerId = getPlayerId(connection, playerUUID);
+                if (playerId == -1) return cached;
+
+                try (PreparedStatement ps = connection.prepareStatement("SELECT MAX(page) AS last_page FROM backpacks WHERE owner = ?")) {
+                    ps.setInt(1, playerId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next() && rs.getObject("last_page") != null) {
+                            return Math.max(cached, rs.getInt("last_page") + 1);
+                        }
                     }
                 }
             }
         } catch (SQLException e) {
-            e.printStackTrace();
+            PLogger.severe(() -> "Failed to count the stored pages of " + playerUUID, e);
         }
-        return null;
+        return cached;
     }
 
     /**
@@ -167,14 +803,317 @@ public class BackpackManager {
     public static void cleanupCache() {
         long currentTime = System.currentTimeMillis();
         lastAccessTime.entrySet().removeIf(entry -> {
+            PersistedSlots persisted = persistedSlots.get(entry.getKey());
+            if (persisted != null && persisted.requested.get() != persisted.written) {
+                return false; // Keep the page until its pending save is written
+            }
+            if (pinnedOwners.contains(entry.getKey().owner())) {
+                return false; // Online players keep their pages cached
+            }
             if (currentTime - entry.getValue() > CACHE_EXPIRY_TIME) {
                 backpackCache.remove(entry.getKey());
+                persistedSlots.remove(entry.getKey());
+                ItemIndexManager.forget(entry.getKey());
+                Metrics.increment(Metrics.Counter.CACHE_EVICTIONS);
                 return true;
             }
             return false;
         });
     }
 
+    /**
+     * Reads one stored page of a player's backpack from a specific shard.
+     *
+     * @param shard The shard to read from
+     * @param playerUUID The UUID of the player
+     * @param page The zero-based page number
+     * @return The stored page, or null if the shard holds no such page for the player
+     * @throws SQLException if a database error occurs
+     */
+    static StoredBackpack readBackpack(Database.Shard shard, UUID playerUUID, int page) throws SQLException {
+        try (Connection connection = shard.getConnection()) {
+            int playerId = getPlayerId(connection, playerUUID);
+            if (playerId == -1) return null;
+
+            String selectBackpackSQL = "SELECT itemstacks FROM backpacks WHERE owner = ? AND page = ?";
+            try (PreparedStatement ps = connection.prepareStatement(selectBackpackSQL)) {
+                ps.setInt(1, playerId);
+                ps.setInt(2, page);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        String serializedInventory = rs.getString("itemstacks");
+                        if (!SLOT_LAYOUT_MARKER.equals(serializedInventory)) {
+                            return new StoredBackpack(serializedInventory, null);
+                        }
+                    } else {
+                        return null;
+                    }
+                }
+            }
+
+            return new StoredBackpack(SLOT_LAYOUT_MARKER, readSlots(connection, playerId, page));
+        }
+    }
+
+    /**
+     * Reads every slot row of one page, including empty ones, into a payload array.
+     *
+     * @param connection The active database connection
+     * @param playerId The player's ID on that shard
+     * @param page The zero-based page number
+     * @return The payload of each slot, null for empty slots
+     * @throws SQLException if a database error occurs
+     */
+    static String[] readSlots(Connection connection, int playerId, int page) throws SQLException {
+        Map<Integer, String> slots = new HashMap<>();
+        int size = 0;
+        int base = page * PAGE_SLOTS;
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT slot, item FROM backpack_slots WHERE owner = ? AND slot >= ? AND slot < ?")) {
+            ps.setInt(1, playerId);
+            ps.setInt(2, base);
+            ps.setInt(3, base + PAGE_SLOTS);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int slot = rs.getInt("slot") - base;
+                    slots.put(slot, rs.getString("item"));
+                    size = Math.max(size, slot + 1);
+                }
+            }
+        }
+
+        String[] payloads = new String[size];
+        for (Map.Entry<Integer, String> entry : slots.entrySet()) {
+            payloads[entry.getKey()] = entry.getValue();
+        }
+        return payloads;
+    }
+
+    /**
+     * Writes the slots of a page that differ from the previously persisted payloads in one batch
+     * and marks the page's backpack row as using the slot layout. Every slot is written when there is
+     * no previous state, and empty slots are stored as NULL so the slot count is preserved.
+     * Joins the transaction already open on the connection, if any.
+     *
+     * @param connection The active database connection
+     * @param shard The shard the connection belongs to, used to pick the SQL dialect
+     * @param playerId The player's ID on that shard
+     * @param page The zero-based page number
+     * @param previous The payloads currently in the database, or null if unknown
+     * @param payloads The payloads to persist
+     * @param lastUpdate The modification time to store
+     * @throws SQLException if a database error occurs
+     */
+    static void writeSlots(Connection connection, Database.Shard shard, int playerId, int page, String[] previous,
+                           String[] payloads, Timestamp lastUpdate) throws SQLException {
+        int base = page * PAGE_SLOTS;
+        String upsertSQL = shard.isUsingSQLite() ?
+                "INSERT OR REPLACE INTO backpack_slots (owner, slot, item) VALUES (?, ?, ?)" :
+                "INSERT INTO backpack_slots (owner, slot, item) VALUES (?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE item = VALUES(item)";
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            try (PreparedStatement ps = connection.prepareStatement(upsertSQL)) {
+                int changed = 0;
+                for (int slot = 0; slot < payloads.length; slot++) {
+                    if (previous == null || slot >= previous.length || !Objects.equals(previous[slot], payloads[slot])) {
+                        ps.setInt(1, playerId);
+                        ps.setInt(2, base + slot);
+                        ps.setString(3, payloads[slot]);
+                        ps.addBatch();
+                        changed++;
+                    }
+                }
+                if (changed > 0) {
+                    ps.executeBatch();
+                }
+            }
+
+            if (previous == null || previous.length > payloads.length) {
+                try (PreparedStatement ps = connection.prepareStatement(
+                        "DELETE FROM backpack_slots WHERE owner = ? AND slot >= ? AND slot < ?")) {
+                    ps.setInt(1, playerId);
+                    ps.setInt(2, base + payloads.length);
+                    ps.setInt(3, base + PAGE_SLOTS);
+                    ps.executeUpdate();
+                }
+            }
+
+            writeBackpack(connection, shard, playerId, page, SLOT_LAYOUT_MARKER, lastUpdate);
+            if (autoCommit) connection.commit(); // Otherwise part of the caller's transaction
+        } catch (SQLException e) {
+            if (autoCommit) connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Stores an empty page as a blob and deletes any slot rows left from the slot layout,
+     * in one transaction. The empty blob of each size is only serialized once.
+     * Joins the transaction already open on the connection, if any.
+     */
+    private static void writeEmptyBlob(Connection connection, Database.Shard shard, int playerId, int page,
+                                       int size, Timestamp lastUpdate) throws SQLException {
+        String emptyInventory = emptyBlobs.computeIfAbsent(size,
+                slots -> ItemSerializationUtil.serializeInventory(new ItemStack[slots]));
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "DELETE FROM backpack_slots WHERE owner = ? AND slot >= ? AND slot < ?")) {
+                ps.setInt(1, playerId);
+                ps.setInt(2, page * PAGE_SLOTS);
+                ps.setInt(3, (page + 1) * PAGE_SLOTS);
+                ps.executeUpdate();
+            }
+            writeBackpack(connection, shard, playerId, page, emptyInventory, lastUpdate);
+            if (autoCommit) connection.commit(); // Otherwise part of the caller's transaction
+        } catch (SQLException e) {
+            if (autoCommit) connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Inserts or replaces the backpack row of one page.
+     *
+     * @param connection The active database connection
+     * @param shard The shard the connection belongs to, used to pick the SQL dialect
+     * @param playerId The player's ID on that shard
+     * @param page The zero-based page number
+     * @param serializedInventory The serialized inventory contents
+     * @param lastUpdate The modification time to store
+     * @throws SQLException if a database error occurs
+     */
+    static void writeBackpack(Connection connection, Database.Shard shard, int playerId, int page,
+                              String serializedInventory, Timestamp lastUpdate) throws SQLException {
+        String upsertSQL = shard.isUsingSQLite() ?
+                "INSERT OR REPLACE INTO backpacks (owner, page, itemstacks, lastupdate) VALUES (?, ?, ?, ?)" :
+                "INSERT INTO backpacks (owner, page, itemstacks, lastupdate) VALUES (?, ?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE itemstacks = VALUES(itemstacks), lastupdate = VALUES(lastupdate)";
+
+        try (PreparedStatement ps = connection.prepareStatement(upsertSQL)) {
+            ps.setInt(1, playerId);
+            ps.setInt(2, page);
+            ps.setString(3, serializedInventory);
+            ps.setTimestamp(4, lastUpdate);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Adds the page column to backpacks created before pages existed, removes duplicate
+     * rows left behind by older versions and adds the unique (owner, page) index that the
+     * upserts rely on. Only does work the first time it runs on a shard.
+     *
+     * @param connection The active database connection
+     * @param statement A statement on that connection
+     * @param usingSQLite Whether the shard uses SQLite
+     * @throws SQLException if a database error occurs
+     */
+    private static void ensureUniquePage(Connection connection, Statement statement, boolean usingSQLite) throws SQLException {
+        if (!Database.hasColumn(connection, "backpacks", "page")) {
+            statement.executeUpdate("ALTER TABLE backpacks ADD COLUMN page INT NOT NULL DEFAULT 0");
+        }
+
+        if (!Database.hasIndex(connection, "backpacks", BACKPACKS_PAGE_INDEX)) {
+            if (usingSQLite) {
+                statement.executeUpdate("DELETE FROM backpacks WHERE rowid NOT IN " +
+                        "(SELECT MAX(rowid) FROM backpacks GROUP BY owner, page)");
+                statement.executeUpdate("CREATE UNIQUE INDEX IF NOT EXISTS " + BACKPACKS_PAGE_INDEX + " ON backpacks (owner, page)");
+            } else {
+                removeDuplicatePagesMySQL(connection, statement);
+                statement.executeUpdate("ALTER TABLE backpacks ADD UNIQUE INDEX " + BACKPACKS_PAGE_INDEX + " (owner, page)");
+            }
+        }
+
+        // The single page owner index would reject a second page
+        if (Database.hasIndex(connection, "backpacks", BACKPACKS_OWNER_INDEX)) {
+            statement.executeUpdate(usingSQLite ?
+                    "DROP INDEX " + BACKPACKS_OWNER_INDEX :
+                    "ALTER TABLE backpacks DROP INDEX " + BACKPACKS_OWNER_INDEX);
+        }
+    }
+
+    /**
+     * Keeps only the most recently updated row of every page. MySQL tables have no row id, so a
+     * temporary numbered column breaks ties between rows with the same or no update time.
+     */
+    private static void removeDuplicatePagesMySQL(Connection connection, Statement statement) throws SQLException {
+        boolean duplicates;
+        try (ResultSet rs = statement.executeQuery(
+                "SELECT 1 FROM backpacks GROUP BY owner, page HAVING COUNT(*) > 1 LIMIT 1")) {
+            duplicates = rs.next();
+        }
+        boolean numbered = Database.hasColumn(connection, "backpacks", "dedupe_id"); // Left behind by an interrupted run
+        if (!duplicates && !numbered) return;
+
+        if (!numbered) {
+            statement.executeUpdate("ALTER TABLE backpacks ADD COLUMN dedupe_id INT NOT NULL AUTO_INCREMENT UNIQUE");
+        }
+        statement.executeUpdate("DELETE b1 FROM backpacks b1 JOIN backpacks b2 " +
+                "ON b1.owner = b2.owner AND b1.page = b2.page " +
+                "AND (COALESCE(b1.lastupdate, '1000-01-01') < COALESCE(b2.lastupdate, '1000-01-01') " +
+                "OR (COALESCE(b1.lastupdate, '1000-01-01') = COALESCE(b2.lastupdate, '1000-01-01') " +
+                "AND b1.dedupe_id < b2.dedupe_id))");
+        statement.executeUpdate("ALTER TABLE backpacks DROP COLUMN dedupe_id");
+    }
+
+    /**
+     * Adds the last known name columns and their lookup index to backpack_players
+     * on databases created before names were stored.
+     *
+     * @param connection The active database connection
+     * @param statement A statement on that connection
+     * @throws SQLException if a database error occurs
+     */
+    private static void ensurePlayerNames(Connection connection, Statement statement) throws SQLException {
+        if (!Database.hasColumn(connection, "backpack_players", "name")) {
+            statement.executeUpdate("ALTER TABLE backpack_players ADD COLUMN name VARCHAR(16)");
+        }
+        if (!Database.hasColumn(connection, "backpack_players", "name_lower")) {
+            statement.executeUpdate("ALTER TABLE backpack_players ADD COLUMN name_lower VARCHAR(16)");
+        }
+        if (!Database.hasIndex(connection, "backpack_players", PLAYERS_NAME_INDEX)) {
+            statement.executeUpdate("CREATE INDEX " + PLAYERS_NAME_INDEX + " ON backpack_players (name_lower)");
+        }
+    }
+
+    /**
+     * Retrieves a player's ID, registering the player first if they don't exist yet.
+     *
+     * @param connection The active database connection
+     * @param playerUUID The UUID of the player
+     * @return The player's ID on the shard the connection belongs to
+     * @throws SQLException if a database error occurs
+     */
+    static int getOrCreatePlayerId(Connection connection, UUID playerUUID) throws SQLException {
+        int playerId = getPlayerId(connection, playerUUID);
+        if (playerId != -1) {
+            return playerId;
+        }
+
+        String insertPlayerSQL = "INSERT INTO backpack_players (uuid) VALUES (?)";
+        try (PreparedStatement ps = connection.prepareStatement(insertPlayerSQL, Statement.RETURN_GENERATED_KEYS)) {
+            ps.setString(1, playerUUID.toString());
+            ps.executeUpdate();
+
+            try (ResultSet generatedKeys = ps.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    playerId = generatedKeys.getInt(1);
+                }
+            }
+        }
+        return playerId;
+    }
+
     /**
      * Helper method to retrieve a player's ID from the database.
      *
@@ -183,7 +1122,7 @@ public class BackpackManager {
      * @return The player's ID, or -1 if the player doesn't exist
      * @throws SQLException if a database error occurs
      */
-    private static int getPlayerId(Connection connection, UUID playerUUID) throws SQLException {
+    static int getPlayerId(Connection connection, UUID playerUUID) throws SQLException {
         String selectPlayerSQL = "SELECT player_id FROM backpack_players WHERE uuid = ?";
         try (PreparedStatement ps = connection.prepareStatement(selectPlayerSQL)) {
             ps.setString(1, playerUUID.toString());
@@ -195,4 +1134,73 @@ public class BackpackManager {
         }
         return -1;
     }
+
+    /**
+     * Identifies one page of a player's backpack.
+     *
+     * @param owner The UUID of the player
+     * @param page The zero-based page number
+     */
+    record PageKey(UUID owner, int page) {
+    }
+
+    /**
+     * A page to save.
+     *
+     * @param owner The UUID of the backpack owner
+     * @param page The zero-based page number
+     * @param inventory The page contents, which must not be changed afterwards
+     */
+    public record PageSave(UUID owner, int page, Inventory inventory) {
+    }
+
+    /**
+     * A save waiting to be written.
+     *
+     * @param key The saved page
+     * @param inventory The page contents
+     * @param cleared Whether the page was emptied, which is written without serializing
+     * @param version The number of the save, increasing per page
+     */
+    private record PendingWrite(PageKey key, Inventory inventory, boolean cleared, long version) {
+    }
+
+    /**
+     * The write state of one page: the payloads last written in the slot layout, used to find
+     * the slots that changed, and the numbers of the latest requested and written save.
+     */
+    private static class PersistedSlots {
+        private String[] payloads;
+        private final AtomicLong requested = new AtomicLong();
+        private volatile long written;
+    }
+
+    /**
+     * The write state of a page when it was read from storage, see {@link #stamp(UUID, int)}.
+     */
+    record WriteStamp(PageKey key, PersistedSlots persisted, long requested, long written) {
+    }
+
+    /**
+     * A write to storage, run by {@link #writeIfUnchanged}.
+     */
+    interface StorageWrite {
+        void run() throws SQLException;
+    }
+
+    /**
+     * A backpack page as read from storage.
+     *
+     * @param itemstacks The serialized contents, or the slot layout marker
+     * @param slotPayloads The payload of each slot when the slot layout is used, otherwise null
+     */
+    record StoredBackpack(String itemstacks, String[] slotPayloads) {
+
+        /**
+         * @return A view that only deserializes the slots that are accessed
+         */
+        PayloadView view() {
+            return slotPayloads != null ? PayloadView.ofSlots(slotPayloads) : PayloadView.ofBlob(itemstacks);
+        }
+    }
 }
@@ -0,0 +1,469 @@
+package com.person98.prismPack.manager;
+
+import com.person98.prismPack.manager.ui.SessionRegistry;
+import com.person98.prismPack.util.PayloadView;
+import com.person98.prismPack.util.PLogger;
+import com.person98.prismPack.util.TaskScheduler;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.block.ShulkerBox;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.BlockStateMeta;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Runs admin operations over every stored backpack, e.g. for season resets.
+ * <p>
+ * Pages are streamed from each shard in keyset paginated batches, so memory use does not grow
+ * with the number of players, and the batches are processed off the main thread with a pause in
+ * between. Per batch, open pages that the operation changes are saved and closed on their viewers'
+ * threads, and pages that are cached are changed through the cache on the main thread. All other pages are rewritten directly in storage,
+ * after which pages that were loaded into the cache meanwhile are changed once more, so neither
+ * the cache nor a reopened page can write the old contents back.
+ */
+public class BulkOperations {
+
+    private static final long REPORT_INTERVAL = 5000;
+    private static final AtomicBoolean running = new AtomicBoolean(false);
+    private static volatile boolean cancelled;
+
+    /**
+     * The kinds of bulk operations.
+     */
+    public enum Type {
+        CLEAN_ALL,
+        CLEAN_INACTIVE,
+        REMOVE_MATERIAL
+    }
+
+    /**
+     * Walks every stored page and applies the operation to it.
+     * This method blocks and must be called off the main thread.
+     *
+     * @param operation The operation to run
+     * @param progress Called every few seconds while the operation runs
+     * @return The outcome, or null if a bulk operation is already running
+     */
+    public static Result run(Operation operation, ProgressListener progress) {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        cancelled = false;
+
+        long started = System.currentTimeMillis();
+        long lastReport = started;
+        long done = 0;
+        long changed = 0;
+        try {
+            ConfigManager config = ConfigManager.getInstance();
+            Window activity = new Window(new Timestamp(started - operation.inactiveDays() * 86_400_000L), new Timestamp(started));
+            long total = 0;
+            for (Database.Shard shard : Database.getShards()) {
+                total += count(shard, operation, activity);
+            }
+            progress.onProgress(0, total, -1);
+
+            for (Database.Shard shard : Database.getShards()) {
+                int lastOwner = 0;
+                int lastPage = -1;
+                while (!cancelled) {
+                    List<StoredPage> batch = readBatch(shard, operation, activity, lastOwner, lastPage, config.getBulkBatchSize());
+                    if (batch.isEmpty()) break;
+
+                    StoredPage last = batch.get(batch.size() - 1);
+                    lastOwner = last.playerId();
+                    lastPage = last.page();
+
+                    changed += processBatch(shard, operation, batch);
+                    done += batch.size();
+
+                    long now = System.currentTimeMillis();
+                    if (now - lastReport >= REPORT_INTERVAL) {
+                        lastReport = now;
+                        long eta = (now - started) * Math.max(0, total - done) / done;
+                        progress.onProgress(done, Math.max(total, done), eta);
+                    }
+
+                    if (batch.size() < config.getBulkBatchSize()) break;
+                    Thread.sleep(config.getBulkPauseMillis());
+                }
+            }
+        } catch (SQLException e) {
+            PLogger.severe("Bulk " + operation.describe() + " failed", e);
+            return new Result(Status.FAILED, done, changed, System.currentTimeMillis() - started);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled = true;
+        } finally {
+            running.set(false);
+        }
+
+        Status status = cancelled ? Status.CANCELLED : Status.FINISHED;
+        long duration = System.currentTimeMillis() - started;
+        PLogger.info("Bulk " + operation.describe() + " " + status.name().toLowerCase() + ": "
+                + changed + " of " + done + " pages changed in " + duration / 1000 + "s.");
+        return new Result(status, done, changed, duration);
+    }
+
+    /**
+     * Stops the running bulk operation after its current batch.
+     *
+     * @return false if no bulk operation is running
+     */
+    public static boolean cancel() {
+        if (!running.get()) return false;
+        cancelled = true;
+        return true;
+    }
+
+    /**
+     * @return true if a bulk operation is currently in progress
+     */
+    public static boolean isRunning() {
+        return running.get();
+    }
+
+    private static long count(Database.Shard shard, Operation operation, Window activity) throws SQLException {
+        try (Connection connection = shard.getConnection();
+             PreparedStatement ps = connection.prepareStatement(
+                     "SELECT COUNT(*) FROM backpacks b WHERE 1 = 1" + filterSQL(operation))) {
+            setFilter(ps, 1, operation, activity);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Reads the next pages after the given one, in (owner, page) order.
+     * Blob contents are always read in full, since telling an empty blob from an occupied one
+     * means walking all of its slots.
+     */
+    private static List<StoredPage> readBatch(Database.Shard shard, Operation operation, Window activity,
+                                              int lastOwner, int lastPage, int limit) throws SQLException {
+        List<StoredPage> batch = new ArrayList<>(limit);
+        try (Connection connection = shard.getConnection();
+             PreparedStatement ps = connection.prepareStatement(
+                     "SELECT b.owner, b.page, b.itemstacks, p.uuid FROM backpacks b " +
+                     "JOIN backpack_players p ON p.player_id = b.owner " +
+                     "WHERE (b.owner > ? OR (b.owner = ? AND b.page > ?))" + filterSQL(operation) +
+                     " ORDER BY b.owner, b.page LIMIT ?")) {
+            ps.setInt(1, lastOwner);
+            ps.setInt(2, lastOwner);
+            ps.setInt(3, lastPage);
+            int index = setFilter(ps, 4, operation, activity);
+            ps.setInt(index, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    batch.add(new StoredPage(rs.getInt("owner"), rs.getInt("page"),
+                            UUID.fromString(rs.getString("uuid")), rs.getString("itemstacks")));
+                }
+            }
+        }
+        return batch;
+    }
+
+    private static String filterSQL(Operation operation) {
+        if (operation.type() != Type.CLEAN_INACTIVE) return "";
+        // Owners count as inactive when none of their pages changed since the cutoff. Changes made
+        // after the operation started are ignored, otherwise cleaning an owner's first page would
+        // make the remaining pages look active.
+        return " AND NOT EXISTS (SELECT 1 FROM backpacks r WHERE r.owner = b.owner AND r.lastupdate >= ? AND r.lastupdate < ?)";
+    }
+
+    private static int setFilter(PreparedStatement ps, int index, Operation operation, Window activity) throws SQLException {
+        if (operation.type() == Type.CLEAN_INACTIVE) {
+            ps.setTimestamp(index++, activity.from());
+            ps.setTimestamp(index++, activity.until());
+        }
+        return index;
+    }
+
+    /**
+     * Applies the operation to one batch of stored pages.
+     *
+     * @return The number of pages that were changed
+     */
+    private static int processBatch(Database.Shard shard, Operation operation, List<StoredPage> batch) throws SQLException {
+        closeChanging(operation, batch);
+        BatchOutcome cachedOutcome = callSync(() -> applyCached(operation, batch));
+        if (cachedOutcome.uncached().isEmpty()) return cachedOutcome.changed();
+
+        List<StoredPage> rewritten = new ArrayList<>();
+        try (Connection connection = shard.getConnection()) {
+            for (StoredPage page : cachedOutcome.uncached()) {
+                try {
+                    if (rewrite(connection, shard, operation, page)) {
+                        rewritten.add(page);
+                    }
+                } catch (SQLException e) {
+                    PLogger.severe("Bulk " + operation.describe() + " failed for page " + page.page()
+                            + " of " + page.owner() + ": " + e);
+                }
+            }
+        }
+
+        // Pages loaded while they were rewritten still hold the old contents in the cache
+        if (!rewritten.isEmpty()) {
+            closeChanging(operation, rewritten);
+            callSync(() -> applyCached(operation, rewritten));
+        }
+        return cachedOutcome.changed() + rewritten.size();
+    }
+
+    /**
+     * Closes the open pages of the batch that the operation changes, after saving them into the
+     * cache on their viewers' threads, and waits until that is done. Open pages it leaves alone,
+     * e.g. pages without the material to remove, stay open.
+     */
+    private static void closeChanging(Operation operation, List<StoredPage> batch) {
+        Map<UUID, Set<Integer>> pages = new HashMap<>();
+        for (StoredPage page : batch) {
+            pages.computeIfAbsent(page.owner(), owner -> new HashSet<>()).add(page.page());
+        }
+        if (operation.type() == Type.CLEAN_INACTIVE) {
+            pages.keySet().removeIf(owner -> Bukkit.getPlayer(owner) != null); // Online players are active
+        }
+        SessionRegistry.closeChanging(pages, items -> changes(operation, items)).join();
+    }
+
+    /**
+     * Changes the cached pages of the batch. Pages that are still open were left alone by
+     * {@link #closeChanging(Operation, List)}, or opened since, and are skipped so they can't
+     * write the old contents back. Runs on the main thread.
+     */
+    private static BatchOutcome applyCached(Operation operation, List<StoredPage> batch) {
+        int changed = 0;
+        List<StoredPage> uncached = new ArrayList<>();
+        Map<UUID, Map<Integer, Integer>> clears = new HashMap<>();
+        List<BackpackManager.PageSave> saves = new ArrayList<>();
+        for (StoredPage page : batch) {
+            if (operation.type() == Type.CLEAN_INACTIVE && Bukkit.getPlayer(page.owner()) != null) continue;
+            if (SessionRegistry.isOpen(page.owner(), page.page())) continue;
+
+            Inventory cached = BackpackManager.getCachedPage(page.owner(), page.page());
+            if (cached == null) {
+                uncached.add(page);
+                continue;
+            }
+
+            ItemStack[] items = cached.getContents();
+            if (operation.clears()) {
+                if (isEmpty(items)) continue;
+                clears.computeIfAbsent(page.owner(), owner -> new HashMap<>()).put(page.page(), cached.getSize());
+            } else {
+                if (!removeMaterial(items, operation.material())) continue;
+                Inventory inventory = Bukkit.createInventory(null, cached.getSize());
+                inventory.setContents(items);
+                saves.add(new BackpackManager.PageSave(page.owner(), page.page(), inventory));
+            }
+            changed++;
+        }
+
+        for (Map.Entry<UUID, Map<Integer, Integer>> entry : clears.entrySet()) {
+            BackpackManager.clearInventories(entry.getKey(), entry.getValue());
+        }
+        BackpackManager.saveInventories(saves);
+        return new BatchOutcome(changed, uncached);
+    }
+
+    /**
+     * @return true if the operation would change a page with these contents, which are left untouched
+     */
+    private static boolean changes(Operation operation, ItemStack[] items) {
+        return operation.clears() ? !isEmpty(items) : removeMaterial(items.clone(), operation.material());
+    }
+
+    /**
+     * Applies the operation to a page that isn't cached, directly in storage.
+     *
+     * @return true if the page was changed
+     */
+    private static boolean rewrite(Connection connection, Database.Shard shard, Operation operation,
+                                   StoredPage page) throws SQLException {
+        boolean slotLayout = BackpackManager.SLOT_LAYOUT_MARKER.equals(page.contents());
+        String[] stored = slotLayout ? BackpackManager.readSlots(connection, page.playerId(), page.page()) : null;
+
+        // Empty pages are skipped without deserializing anything
+        PayloadView view = slotLayout ? PayloadView.ofSlots(stored) : PayloadView.ofBlob(page.contents());
+        if (view.isEmpty()) return false;
+
+        if (operation.clears()) {
+            BackpackManager.rewriteStored(connection, shard, page.playerId(), page.owner(), page.page(),
+                    new ItemStack[view.size()], true, stored);
+            return true;
+        }
+
+        ItemStack[] items = view.toArray();
+        if (!removeMaterial(items, operation.material())) return false;
+
+        BackpackManager.rewriteStored(connection, shard, page.playerId(), page.owner(), page.page(),
+                items, false, stored);
+        return true;
+    }
+
+    /**
+     * Removes every stack of a material, including stacks inside shulker boxes.
+     * Changed shulker boxes are replaced by copies, the given stacks are never modified.
+     *
+     * @return true if anything was removed
+     */
+    private static boolean removeMaterial(ItemStack[] items, Material material) {
+        boolean changed = false;
+        for (int i = 0; i < items.length; i++) {
+            ItemStack item = items[i];
+            if (item == null) continue;
+
+            if (item.getType() == material) {
+                items[i] = null;
+                changed = true;
+            } else if (item.hasItemMeta() && item.getItemMeta() instanceof BlockStateMeta meta && meta.hasBlockState()
+                    && meta.getBlockState() instanceof ShulkerBox shulkerBox) {
+                ItemStack[] contents = shulkerBox.getInventory().getContents();
+                if (removeMaterial(contents, material)) {
+                    shulkerBox.getInventory().setContents(contents);
+                    meta.setBlockState(shulkerBox);
+                    ItemStack copy = item.clone();
+                    copy.setItemMeta(meta);
+                    items[i] = copy;
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private static boolean isEmpty(Object[] slots) {
+        for (Object slot : slots) {
+            if (slot != null) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Runs a task on the main thread, or the global region on Folia, and waits for its result.
+     */
+    private static <T> T callSync(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, TaskScheduler::runGlobal).join();
+    }
+
+    /**
+     * A bulk operation and its criteria.
+     *
+     * @param type The kind of operation
+     * @param inactiveDays For {@link Type#CLEAN_INACTIVE}, the days for which owners must not have changed their backpack
+     * @param material For {@link Type#REMOVE_MATERIAL}, the material to remove
+     */
+    public record Operation(Type type, int inactiveDays, Material material) {
+
+        /**
+         * @return An operation that empties every backpack
+         */
+        public static Operation cleanAll() {
+            return new Operation(Type.CLEAN_ALL, 0, null);
+        }
+
+        /**
+         * @param days The number of days without changes after which a backpack is emptied
+         * @return An operation that empties the backpacks of inactive players
+         */
+        public static Operation cleanInactive(int days) {
+            return new Operation(Type.CLEAN_INACTIVE, days, null);
+        }
+
+        /**
+         * @param material The material to remove
+         * @return An operation that removes a material from every backpack
+         */
+        public static Operation removeMaterial(Material material) {
+            return new Operation(Type.REMOVE_MATERIAL, 0, material);
+        }
+
+        boolean clears() {
+            return type != Type.REMOVE_MATERIAL;
+        }
+
+        /**
+         * @return A short description for messages and logs
+         */
+        public String describe() {
+            return switch (type) {
+                case CLEAN_ALL -> "clean all";
+                case CLEAN_INACTIVE -> "clean inactive " + inactiveDays + "d";
+                case REMOVE_MATERIAL -> "remove " + material.name();
+            };
+        }
+    }
+
+    /**
+     * Receives the progress of a running bulk operation.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * @param done The number of pages processed so far
+         * @param total The number of pages to process
+         * @param etaMillis The estimated time left, or -1 if not known yet
+         */
+        void onProgress(long done, long total, long etaMillis);
+    }
+
+    /**
+     * How a bulk operation ended.
+     */
+    public enum Status {
+        FINISHED,
+        CANCELLED,
+        FAILED
+    }
+
+    /**
+     * The outcome of a bulk operation.
+     *
+     * @param status How the operation ended
+     * @param pages The number of pages processed
+     * @param changed The number of pages that were changed
+     * @param durationMillis How long the operation ran
+     */
+    public record Result(Status status, long pages, long changed, long durationMillis) {
+    }
+
+    /**
+     * A stored page as read by a batch.
+     *
+     * @param playerId The owner's ID on the shard
+     * @param page The zero-based page number
+     * @param owner The UUID of the owner
+     * @param contents The stored contents, or the slot layout marker
+     */
+    private record StoredPage(int playerId, int page, UUID owner, String contents) {
+    }
+
+    /**
+     * The time span in which changes mark an owner as active.
+     *
+     * @param from The cutoff of {@link Type#CLEAN_INACTIVE}
+     * @param until When the operation started
+     */
+    private record Window(Timestamp from, Timestamp until) {
+    }
+
+    private record BatchOutcome(int changed, List<StoredPage> uncached) {
+    }
+}
@@ -1,34 +1,65 @@
 package com.person98.prismPack.manager;
 
 import com.person98.prismPack.PrismPack;
+import com.person98.prismPack.util.MessageTemplate;
 import com.person98.prismPack.util.PLogger;
+import com.person98.prismPack.util.TaskScheduler;
+import lombok.AccessLevel;
 import lombok.Getter;
 import org.bukkit.Material;
 import org.bukkit.Sound;
 import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
 
-import java.util.HashSet;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Manages configuration settings for the PrismPack plugin.
- * This singleton class handles all configuration values including GUI settings,
+ * This class handles all configuration values including GUI settings,
  * sound effects, database connections, and blocked items.
+ * <p>
+ * Every instance is an immutable snapshot of the config file with everything that is derived
+ * from it already compiled, like the item filter and message templates. The current snapshot
+ * is published through one atomic reference, so readers should fetch it with
+ * {@link #getInstance()} whenever they need it instead of keeping it, and will see a reload
+ * right away. Reloads parse the file off the main thread and only replace the snapshot once
+ * the new one is complete.
  */
 @Getter
 public class ConfigManager {
-    private static ConfigManager instance;
-    
-    private final String backpackTitle;
-    private final Sound openSound;
-    private final float openSoundVolume;
-    private final float openSoundPitch;
-    private final Sound closeSound;
-    private final float closeSoundVolume;
-    private final float closeSoundPitch;
+    private static final AtomicReference<ConfigManager> current = new AtomicReference<>();
+
+    private final MessageTemplate backpackTitle;
+    private final SoundSettings openSound;
+    private final SoundSettings closeSound;
     private final int cooldown;
+    private final int maxPages;
+    private final List<SizeTier> sizeTiers;
+    private final int defaultSize;
+    private final int capabilityRefreshInterval;
+    private final MessageTemplate previousPageName;
+    private final MessageTemplate nextPageName;
+    private final MessageTemplate pageIndicatorName;
     private final Set<Material> blockedItems;
+    private final ItemFilter itemFilter;
     private final boolean usingSQLite;
     private final String sqlitePath;
     private final String mysqlHost;
@@ -37,92 +68,478 @@ public class ConfigManager {
     private final String mysqlUsername;
     private final String mysqlPassword;
     private final int mysqlPoolSize;
+    private final List<ShardDefinition> shards;
+    private final PoolSettings poolSettings;
+    private final boolean slotStorage;
+    private final boolean historyEnabled;
+    private final int historyCheckpointInterval;
+    private final int historyMaxVersions;
+    private final int historyMaxAgeDays;
+    private final int historyCompactionInterval;
+    private final boolean indexEnabled;
+    private final int autosaveInterval;
+    private final boolean deathDropsToEvent;
+    @Getter(AccessLevel.NONE)
+    private final Map<ActionLimiter.Action, RateLimit> rateLimits;
+    private final int maxColdLoads;
+    private final long autosaveTickBudgetMicros;
+    private final int bulkBatchSize;
+    private final long bulkPauseMillis;
+    private final boolean metricsEnabled;
+    private final int metricsDumpInterval;
+    private final String metricsDumpFile;
+    private final boolean preloadLastOnline;
+    private final int preloadLimit;
 
     /**
      * Private constructor that initializes all configuration values from the config file.
-     * This should only be called through the initialize() method.
+     * This should only be called through the initialize() and reload() methods.
+     *
+     * @param config The loaded config file
+     * @throws IllegalArgumentException if a required section is missing
      */
-    private ConfigManager() {
-        PrismPack plugin = PrismPack.getInstance();
-        
+    private ConfigManager(FileConfiguration config) {
         // Database settings
-        this.usingSQLite = plugin.getConfig().getBoolean("sqlite.enabled", false);
-        this.sqlitePath = plugin.getConfig().getString("sqlite.path", "database.db");
-        this.mysqlHost = plugin.getConfig().getString("mysql.host", "localhost");
-        this.mysqlPort = plugin.getConfig().getInt("mysql.port", 3306);
-        this.mysqlDatabase = plugin.getConfig().getString("mysql.database", "database");
-        this.mysqlUsername = plugin.getConfig().getString("mysql.username", "root");
-        this.mysqlPassword = plugin.getConfig().getString("mysql.password", "password");
-        this.mysqlPoolSize = plugin.getConfig().getInt("mysql.poolsize", 10);
+        this.usingSQLite = config.getBoolean("sqlite.enabled", false);
+        this.sqlitePath = config.getString("sqlite.path", "database.db");
+        this.mysqlHost = config.getString("mysql.host", "localhost");
+        this.mysqlPort = config.getInt("mysql.port", 3306);
+        this.mysqlDatabase = config.getString("mysql.database", "database");
+        this.mysqlUsername = config.getString("mysql.username", "root");
+        this.mysqlPassword = config.getString("mysql.password", "password");
+        this.mysqlPoolSize = config.getInt("mysql.poolsize", 10);
+        this.shards = loadShards(config);
+        this.poolSettings = loadPoolSettings(config);
+
+        // Storage layout
+        String layout = config.getString("storage.layout", "blob");
+        if (!layout.equalsIgnoreCase("blob") && !layout.equalsIgnoreCase("slots")) {
+            PLogger.warning("Unknown storage layout '" + layout + "', expected blob or slots. Using blob.");
+        }
+        this.slotStorage = layout.equalsIgnoreCase("slots");
+
+        // History settings
+        this.historyEnabled = config.getBoolean("history.enabled", true);
+        this.historyCheckpointInterval = Math.max(1, config.getInt("history.checkpoint-interval", 10));
+        this.historyMaxVersions = Math.max(1, config.getInt("history.max-versions", 50));
+        this.historyMaxAgeDays = config.getInt("history.max-age-days", 30);
+        this.historyCompactionInterval = Math.max(1, config.getInt("history.compaction-interval", 30));
+
+        // Item index
+        this.indexEnabled = config.getBoolean("index.enabled", true);
+
+        // Autosave of open backpacks
+        this.autosaveInterval = Math.max(0, config.getInt("autosave.interval", 300));
+        this.autosaveTickBudgetMicros = Math.max(1L, Math.round(config.getDouble("autosave.tick-budget", 2.0) * 1000));
+
+        // Bulk operations
+        this.bulkBatchSize = Math.max(1, config.getInt("bulk.batch-size", 200));
+        this.bulkPauseMillis = Math.max(0L, config.getLong("bulk.pause-millis", 50L));
+
+        // Metrics
+        this.metricsEnabled = config.getBoolean("metrics.enabled", true);
+        this.metricsDumpInterval = Math.max(0, config.getInt("metrics.dump-interval", 0));
+        this.metricsDumpFile = config.getString("metrics.dump-file", "metrics.log");
+
+        // Startup
+        this.preloadLastOnline = config.getBoolean("startup.preload-last-online", true);
+        this.preloadLimit = Math.max(0, config.getInt("startup.preload-limit", 500));
+
+        // Death drops
+        this.deathDropsToEvent = config.getBoolean("death.drops-to-event", false);
+
+        // Cached permission checks
+        this.capabilityRefreshInterval = Math.max(0, config.getInt("capabilities.refresh-interval", 60));
 
         // GUI settings
-        ConfigurationSection guiSection = plugin.getConfig().getConfigurationSection("BackPackGUI");
+        ConfigurationSection guiSection = config.getConfigurationSection("BackPackGUI");
         if(guiSection == null) {
-            PLogger.severe("BackPackGUI section not found in config file.");
+            throw new IllegalArgumentException("BackPackGUI section not found in config file.");
         }
-        this.backpackTitle = guiSection.getString("name", "%player%'s Backpack");// Keep placeholder for later replacement
+        this.backpackTitle = MessageTemplate.parse(guiSection.getString("name", "%player%'s Backpack"));// Placeholders are filled when opened
 
         // Sound settings
-        ConfigurationSection soundSection = guiSection.getConfigurationSection("sound");
-        if(soundSection == null) {
-            PLogger.severe("sound section not found in config file.");
-        }
-        this.openSound = Sound.valueOf(soundSection.getString("name", "ENTITY_SHULKER_OPEN"));
-        this.openSoundVolume = (float) soundSection.getDouble("volume", 1.0);
-        this.openSoundPitch = (float) soundSection.getDouble("pitch", 1.0);
-
-        ConfigurationSection closeSoundSection = guiSection.getConfigurationSection("close_sound");
-        if(closeSoundSection == null) {
-            PLogger.severe("close_sound section not found in config file.");
-        }
-        this.closeSound = Sound.valueOf(closeSoundSection.getString("name", "ENTITY_SHULKER_CLOSE"));
-        this.closeSoundVolume = (float) closeSoundSection.getDouble("volume", 1.0);
-        this.closeSoundPitch = (float) closeSoundSection.getDouble("pitch", 1.0);
+        this.openSound = loadSound(guiSection, "sound", Sound.ENTITY_SHULKER_OPEN);
+        this.closeSound = loadSound(guiSection, "close_sound", Sound.ENTITY_SHULKER_CLOSE);
 
         // Cooldown
         this.cooldown = guiSection.getInt("cooldown", 30);
 
+        // Rate limits, opening defaults to the cooldown
+        this.rateLimits = new EnumMap<>(ActionLimiter.Action.class);
+        this.rateLimits.put(ActionLimiter.Action.OPEN, loadRateLimit(config, "open", 1, cooldown));
+        this.rateLimits.put(ActionLimiter.Action.CLEAN, loadRateLimit(config, "clean", 1, 10));
+        this.rateLimits.put(ActionLimiter.Action.ADMIN_OPEN, loadRateLimit(config, "admin-open", 5, 2));
+        this.maxColdLoads = Math.max(1, config.getInt("limits.max-cold-loads", 8));
+
+        // Pages
+        this.maxPages = Math.max(1, guiSection.getInt("pages.max", 10));
+        this.previousPageName = MessageTemplate.parse(guiSection.getString("pages.previous", "<yellow>Previous page"));
+        this.nextPageName = MessageTemplate.parse(guiSection.getString("pages.next", "<yellow>Next page"));
+        this.pageIndicatorName = MessageTemplate.parse(guiSection.getString("pages.indicator", "<gray>Page %page%/%pages%"));
+
+        // Size tiers
+        this.defaultSize = toSlots(guiSection.getInt("default-size", 9), 9);
+        this.sizeTiers = loadSizeTiers(guiSection);
+
         // Blocked items
-        this.blockedItems = new HashSet<>();
+        Set<Material> blocked = EnumSet.noneOf(Material.class);
         List<String> blockedItemsList = guiSection.getStringList("blocked-items");
         for (String item : blockedItemsList) {
             try {
-                this.blockedItems.add(Material.valueOf(item.toUpperCase()));
+                blocked.add(Material.valueOf(item.toUpperCase()));
             } catch (IllegalArgumentException e) {
-                plugin.getLogger().warning("Invalid material in blocked-items: " + item);
+                PLogger.warning("Invalid material in blocked-items: " + item);
+            }
+        }
+        this.blockedItems = Collections.unmodifiableSet(blocked);
+        this.itemFilter = ItemFilter.compile(blockedItems, guiSection.getMapList("blocked-rules"));
+    }
+
+    /**
+     * Returns the rate limit of a player action.
+     *
+     * @param action The action
+     * @return The configured limit
+     */
+    public RateLimit getRateLimit(ActionLimiter.Action action) {
+        return rateLimits.get(action);
+    }
+
+    private static SoundSettings loadSound(ConfigurationSection guiSection, String path, Sound def) {
+        ConfigurationSection section = guiSection.getConfigurationSection(path);
+        if (section == null) {
+            PLogger.warning(path + " section not found in config file, using " + def.name() + ".");
+            return new SoundSettings(def, 1.0f, 1.0f);
+        }
+
+        String name = section.getString("name", def.name());
+        Sound sound = def;
+        try {
+            sound = Sound.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            PLogger.warning("Unknown sound '" + name + "' in " + path + ", using " + def.name() + ".");
+        }
+        return new SoundSettings(sound, (float) section.getDouble("volume", 1.0), (float) section.getDouble("pitch", 1.0));
+    }
+
+    private static RateLimit loadRateLimit(FileConfiguration config, String name, int defaultBurst, double defaultInterval) {
+        String path = "limits." + name;
+        int burst = Math.max(1, config.getInt(path + ".burst", defaultBurst));
+        double interval = config.getDouble(path + ".interval", defaultInterval);
+        return new RateLimit(burst, Math.max(0L, Math.round(interval * 1000)));
+    }
+
+    /**
+     * Reads the connection pool settings shared by every shard. Driver properties from the config
+     * are added to the defaults of their backend, so only the ones to change need to be listed.
+     *
+     * @param config The config file to read from
+     * @return The pool settings
+     */
+    private static PoolSettings loadPoolSettings(FileConfiguration config) {
+        return new PoolSettings(
+                config.getInt("database.pool.minimum-idle", -1),
+                Math.max(250L, config.getLong("database.pool.connection-timeout", 5000L)),
+                Math.max(0L, config.getLong("database.pool.idle-timeout", 600000L)),
+                Math.max(0L, config.getLong("database.pool.max-lifetime", 1800000L)),
+                Math.max(0L, config.getLong("database.pool.keepalive-time", 300000L)),
+                Math.max(0L, config.getLong("database.pool.leak-detection-threshold", 0L)),
+                config.getBoolean("database.pool.register-mbeans", true),
+                loadDriverProperties(config, "database.pool.mysql-properties", PoolSettings.MYSQL_DEFAULTS),
+                loadDriverProperties(config, "database.pool.sqlite-properties", PoolSettings.SQLITE_DEFAULTS));
+    }
+
+    private static Map<String, String> loadDriverProperties(FileConfiguration config, String path, Map<String, String> defaults) {
+        Map<String, String> properties = new LinkedHashMap<>(defaults);
+        ConfigurationSection section = config.getConfigurationSection(path);
+        if (section != null) {
+            for (String key : section.getKeys(false)) {
+                properties.put(key, String.valueOf(section.get(key)));
+            }
+        }
+        return Collections.unmodifiableMap(properties);
+    }
+
+    /**
+     * Reads the optional shards list from the config file.
+     * When no shards are configured, the single mysql/sqlite database above is used as the only shard.
+     *
+     * @param config The config file to read from
+     * @return The shard definitions in routing order
+     */
+    private List<ShardDefinition> loadShards(FileConfiguration config) {
+        List<ShardDefinition> definitions = new ArrayList<>();
+        for (Map<?, ?> entry : config.getMapList("shards")) {
+            String type = String.valueOf(entry.containsKey("type") ? entry.get("type") : "sqlite");
+            boolean sqlite = type.equalsIgnoreCase("sqlite");
+            if (!sqlite && !type.equalsIgnoreCase("mysql")) {
+                PLogger.warning("Unknown shard type '" + type + "', expected sqlite or mysql. Using sqlite.");
+                sqlite = true;
+            }
+            definitions.add(new ShardDefinition(
+                    sqlite,
+                    getString(entry, "path", "shard-" + definitions.size() + ".db"),
+                    getString(entry, "host", mysqlHost),
+                    getInt(entry, "port", mysqlPort),
+                    getString(entry, "database", mysqlDatabase),
+                    getString(entry, "username", mysqlUsername),
+                    getString(entry, "password", mysqlPassword),
+                    getInt(entry, "poolsize", mysqlPoolSize)));
+        }
+
+        if (definitions.isEmpty()) {
+            definitions.add(new ShardDefinition(usingSQLite, sqlitePath, mysqlHost, mysqlPort,
+                    mysqlDatabase, mysqlUsername, mysqlPassword, mysqlPoolSize));
+        }
+        return Collections.unmodifiableList(definitions);
+    }
+
+    /**
+     * Reads the permission based size tiers, largest first.
+     * Without a size-tiers list the original backpack.size.2 to backpack.size.6 permissions are used.
+     *
+     * @param guiSection The BackPackGUI section of the config
+     * @return The size tiers ordered by size, largest first
+     */
+    private List<SizeTier> loadSizeTiers(ConfigurationSection guiSection) {
+        List<SizeTier> tiers = new ArrayList<>();
+        if (guiSection.isList("size-tiers")) {
+            for (Map<?, ?> entry : guiSection.getMapList("size-tiers")) {
+                Object permission = entry.get("permission");
+                if (permission == null) {
+                    PLogger.warning("Ignoring a size-tiers entry without a permission: " + entry);
+                    continue;
+                }
+                tiers.add(new SizeTier(String.valueOf(permission), toSlots(getInt(entry, "size", defaultSize), defaultSize)));
             }
+        } else {
+            for (int rows = 2; rows <= 6; rows++) {
+                tiers.add(new SizeTier("backpack.size." + rows, rows * 9));
+            }
+        }
+        tiers.sort(Comparator.comparingInt(SizeTier::getSize).reversed());
+        return Collections.unmodifiableList(tiers);
+    }
+
+    private static int toSlots(int size, int def) {
+        if (size < 9 || size > 54 || size % 9 != 0) {
+            PLogger.warning("Invalid backpack size " + size + ", expected a multiple of 9 from 9 to 54. Using " + def + ".");
+            return def;
+        }
+        return size;
+    }
+
+    private static String getString(Map<?, ?> map, String key, String def) {
+        Object value = map.get(key);
+        return value != null ? String.valueOf(value) : def;
+    }
+
+    private static int getInt(Map<?, ?> map, String key, int def) {
+        Object value = map.get(key);
+        if (value instanceof Number number) {
+            return number.intValue();
+        }
+        try {
+            return value != null ? Integer.parseInt(String.valueOf(value)) : def;
+        } catch (NumberFormatException e) {
+            PLogger.warning("Invalid number for setting " + key + ": " + value);
+            return def;
+        }
+    }
+
+    /**
+     * Connection settings for a single storage shard.
+     * The position of a shard in the config list is its routing index.
+     */
+    @Getter
+    public static class ShardDefinition {
+        private final boolean sqlite;
+        private final String sqlitePath;
+        private final String host;
+        private final int port;
+        private final String database;
+        private final String username;
+        private final String password;
+        private final int poolSize;
+
+        public ShardDefinition(boolean sqlite, String sqlitePath, String host, int port,
+                               String database, String username, String password, int poolSize) {
+            this.sqlite = sqlite;
+            this.sqlitePath = sqlitePath;
+            this.host = host;
+            this.port = port;
+            this.database = database;
+            this.username = username;
+            this.password = password;
+            this.poolSize = poolSize;
+        }
+    }
+
+    /**
+     * HikariCP settings applied to every shard's pool, see the HikariCP documentation for details.
+     * All durations are in milliseconds and 0 disables the setting where HikariCP allows it.
+     */
+    @Getter
+    public static class PoolSettings {
+        /**
+         * Driver properties for MySQL: cache prepared statements on the client and the server, and
+         * send batched statements as one multi-row statement, which batched saves rely on.
+         */
+        static final Map<String, String> MYSQL_DEFAULTS = Map.of(
+                "cachePrepStmts", "true",
+                "prepStmtCacheSize", "250",
+                "prepStmtCacheSqlLimit", "2048",
+                "useServerPrepStmts", "true",
+                "rewriteBatchedStatements", "true",
+                "useLocalSessionState", "true",
+                "cacheResultSetMetadata", "true",
+                "cacheServerConfiguration", "true",
+                "elideSetAutoCommits", "true",
+                "maintainTimeStats", "false");
+        /**
+         * Driver properties for SQLite: write ahead logging, so reads don't wait for writes,
+         * and fewer disk syncs, which is still safe with WAL.
+         */
+        static final Map<String, String> SQLITE_DEFAULTS = Map.of(
+                "journal_mode", "WAL",
+                "synchronous", "NORMAL",
+                "busy_timeout", "5000");
+
+        private final int minimumIdle;
+        private final long connectionTimeout;
+        private final long idleTimeout;
+        private final long maxLifetime;
+        private final long keepaliveTime;
+        private final long leakDetectionThreshold;
+        private final boolean registerMbeans;
+        private final Map<String, String> mysqlProperties;
+        private final Map<String, String> sqliteProperties;
+
+        public PoolSettings(int minimumIdle, long connectionTimeout, long idleTimeout, long maxLifetime,
+                            long keepaliveTime, long leakDetectionThreshold, boolean registerMbeans,
+                            Map<String, String> mysqlProperties, Map<String, String> sqliteProperties) {
+            this.minimumIdle = minimumIdle;
+            this.connectionTimeout = connectionTimeout;
+            this.idleTimeout = idleTimeout;
+            this.maxLifetime = maxLifetime;
+            this.keepaliveTime = keepaliveTime;
+            this.leakDetectionThreshold = leakDetectionThreshold;
+            this.registerMbeans = registerMbeans;
+            this.mysqlProperties = mysqlProperties;
+            this.sqliteProperties = sqliteProperties;
+        }
+    }
+
+    /**
+     * How often a player action may run: up to burst times in a row, then once per interval.
+     */
+    @Getter
+    public static class RateLimit {
+        private final int burst;
+        private final long intervalMillis;
+
+        public RateLimit(int burst, long intervalMillis) {
+            this.burst = burst;
+            this.intervalMillis = intervalMillis;
+        }
+    }
+
+    /**
+     * A sound played to a player, e.g. when a backpack opens.
+     */
+    @Getter
+    public static class SoundSettings {
+        private final Sound sound;
+        private final float volume;
+        private final float pitch;
+
+        public SoundSettings(Sound sound, float volume, float pitch) {
+            this.sound = sound;
+            this.volume = volume;
+            this.pitch = pitch;
+        }
+
+        /**
+         * Plays the sound at the player's location.
+         *
+         * @param player The player to play the sound for
+         */
+        public void play(Player player) {
+            player.playSound(player.getLocation(), sound, volume, pitch);
         }
     }
 
     /**
-     * Initializes the ConfigManager singleton instance.
+     * A backpack size granted by a permission.
+     */
+    @Getter
+    public static class SizeTier {
+        private final String permission;
+        private final int size;
+
+        public SizeTier(String permission, int size) {
+            this.permission = permission;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Loads the first config snapshot from the plugin's config file.
      * This must be called before getInstance() can be used.
      */
     public static void initialize() {
-        if (instance == null) {
-            instance = new ConfigManager();
+        if (current.get() == null) {
+            current.set(new ConfigManager(PrismPack.getInstance().getConfig()));
         }
     }
 
     /**
-     * Returns the singleton instance of ConfigManager.
+     * Returns the current config snapshot.
      *
      * @return The ConfigManager instance
      * @throws IllegalStateException if the ConfigManager hasn't been initialized
      */
     public static ConfigManager getInstance() {
-        if (instance == null) {
+        ConfigManager config = current.get();
+        if (config == null) {
             throw new IllegalStateException("ConfigManager has not been initialized!");
         }
-        return instance;
+        return config;
     }
 
     /**
-     * Reloads the configuration from disk and recreates the ConfigManager instance.
-     * This should be called when the config file has been modified and needs to be reloaded.
+     * Reloads the configuration from disk off the main thread and replaces the current snapshot.
+     * If the file can't be read or is invalid, the current snapshot stays in place.
+     *
+     * @return Completes with the new snapshot, or exceptionally if the file couldn't be loaded
      */
-    public static void reload() {
-        PrismPack.getInstance().reloadConfig();
-        instance = new ConfigManager();
+    public static CompletableFuture<ConfigManager> reload() {
+        return CompletableFuture.supplyAsync(() -> {
+            ConfigManager config = new ConfigManager(loadFile());
+            current.set(config);
+            return config;
+        }, TaskScheduler::runAsync);
+    }
+
+    /**
+     * Reads config.yml with the defaults from the plugin jar, like the plugin's own config.
+     * Unlike {@link PrismPack#reloadConfig()}, a file with syntax errors fails instead of
+     * being read as empty.
+     */
+    private static FileConfiguration loadFile() {
+        PrismPack plugin = PrismPack.getInstance();
+        YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.load(new File(plugin.getDataFolder(), "config.yml"));
+        } catch (IOException | InvalidConfigurationException e) {
+            throw new IllegalArgumentException("Failed to read config.yml: " + e.getMessage(), e);
+        }
+
+        InputStream defaults = plugin.getResource("config.yml");
+        if (defaults != null) {
+            config.setDefaults(YamlConfiguration.loadConfiguration(new InputStreamReader(defaults, StandardCharsets.UTF_8)));
+        }
+        return config;
     }
-} 
\ No newline at end of file
+}
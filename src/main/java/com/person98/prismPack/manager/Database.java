@@ -1,74 +1,301 @@
 package com.person98.prismPack.manager;
 
 import com.person98.prismPack.PrismPack;
+import com.person98.prismPack.util.Metrics;
+import com.person98.prismPack.util.PLogger;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
 import lombok.Getter;
 
 import java.io.File;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
 
 /**
  * Database management class that handles database connections using HikariCP.
- * Supports both SQLite and MySQL database connections.
+ * Supports both SQLite and MySQL database connections, optionally split across
+ * several shards. Each player is routed to exactly one shard by a stable hash of their UUID.
+ * <p>
+ * The pools are created in the background when the plugin starts, so nothing may touch the
+ * database until {@link #isReady()} returns true.
  */
 public class Database {
 
-    private static HikariDataSource dataSource;
+    private static volatile List<Shard> shards = Collections.emptyList();
     @Getter
-    private static boolean usingSQLite;
+    private static volatile State state = State.STARTING;
 
     /**
-     * Initializes the database connection pool using HikariCP.
+     * Whether the storage can be used yet.
+     */
+    public enum State {
+        STARTING,
+        READY,
+        FAILED
+    }
+
+    /**
+     * Initializes one connection pool per configured shard using HikariCP.
      * Configuration is loaded from the plugin's config file.
      * For SQLite, creates a connection to a local database file.
      * For MySQL, creates a connection pool to a remote database server.
      */
     public static void initialize() {
-        HikariConfig config = new HikariConfig();
-        ConfigManager configManager = ConfigManager.getInstance();
-
-        usingSQLite = configManager.isUsingSQLite();
-        
-        if (usingSQLite) {
-            String dbPath = configManager.getSqlitePath();
-            File dataFolder = PrismPack.getInstance().getDataFolder();
-            File dbFile = new File(dataFolder, dbPath);
-            
-            config.setJdbcUrl("jdbc:sqlite:" + dbFile.getAbsolutePath());
-            config.setDriverClassName("org.sqlite.JDBC");
-            config.setMaximumPoolSize(1);
-        } else {
-            config.setJdbcUrl(String.format("jdbc:mysql://%s:%d/%s?useSSL=false&autoReconnect=true",
-                    configManager.getMysqlHost(),
-                    configManager.getMysqlPort(),
-                    configManager.getMysqlDatabase()));
-            config.setUsername(configManager.getMysqlUsername());
-            config.setPassword(configManager.getMysqlPassword());
-            config.setMaximumPoolSize(configManager.getMysqlPoolSize());
+        List<ConfigManager.ShardDefinition> definitions = ConfigManager.getInstance().getShards();
+        List<Shard> created = new ArrayList<>(definitions.size());
+
+        for (int i = 0; i < definitions.size(); i++) {
+            created.add(new Shard(i, definitions.get(i)));
+        }
+
+        shards = Collections.unmodifiableList(created);
+    }
+
+    /**
+     * Opens the minimum number of idle connections of every shard's pool up front,
+     * so the first queries after startup don't pay for connection setup.
+     */
+    public static void warmUp() {
+        for (Shard shard : shards) {
+            List<Connection> connections = new ArrayList<>();
+            try {
+                for (int i = 0; i < shard.dataSource.getMinimumIdle(); i++) {
+                    connections.add(shard.getConnection());
+                }
+            } catch (SQLException e) {
+                PLogger.warning("Failed to warm up the pool of shard " + shard.getIndex() + ": " + e.getMessage());
+            } finally {
+                for (Connection connection : connections) {
+                    try {
+                        connection.close();
+                    } catch (SQLException ignored) {
+                        // Returning a connection to the pool doesn't fail
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the storage as usable or as failed once startup has finished.
+     *
+     * @param state The new state
+     */
+    public static void setState(State state) {
+        Database.state = state;
+    }
+
+    /**
+     * @return true once the pools are created and the schema is up to date
+     */
+    public static boolean isReady() {
+        return state == State.READY;
+    }
+
+    /**
+     * Retrieves a connection to the shard that owns the given player.
+     *
+     * @param playerUUID The UUID of the player whose data is being accessed
+     * @return A database connection from the owning shard's pool
+     * @throws SQLException if a database access error occurs
+     */
+    public static Connection getConnection(UUID playerUUID) throws SQLException {
+        return getShard(playerUUID).getConnection();
+    }
+
+    /**
+     * Returns the shard that owns the given player.
+     *
+     * @param playerUUID The UUID of the player
+     * @return The owning shard
+     */
+    public static Shard getShard(UUID playerUUID) {
+        return shards.get(getShardIndex(playerUUID, shards.size()));
+    }
+
+    /**
+     * Returns every configured shard in routing order.
+     *
+     * @return An unmodifiable list of shards
+     */
+    public static List<Shard> getShards() {
+        return shards;
+    }
+
+    /**
+     * Computes the shard index for a player using jump consistent hashing.
+     * The result only depends on the UUID and the shard count, and growing the
+     * shard count from n to n+1 only moves roughly 1/(n+1) of the players.
+     *
+     * @param playerUUID The UUID of the player
+     * @param shardCount The number of shards
+     * @return The shard index in the range [0, shardCount)
+     */
+    public static int getShardIndex(UUID playerUUID, int shardCount) {
+        long key = playerUUID.getMostSignificantBits() ^ playerUUID.getLeastSignificantBits();
+        long bucket = -1;
+        long next = 0;
+        while (next < shardCount) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
         }
+        return (int) bucket;
+    }
 
-        dataSource = new HikariDataSource(config);
+    /**
+     * Checks whether a table has a column, used by schema migrations.
+     * Only the connection's own database is searched, so tables of the same name in other
+     * databases on a shared MySQL server are never mistaken for ours.
+     *
+     * @param connection The active database connection
+     * @param table The table name
+     * @param column The column name
+     * @return true if the column exists
+     * @throws SQLException if a database access error occurs
+     */
+    public static boolean hasColumn(Connection connection, String table, String column) throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getColumns(connection.getCatalog(), connection.getSchema(), table, null)) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("COLUMN_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     /**
-     * Retrieves a connection from the connection pool.
+     * Checks whether a table has an index, used by schema migrations.
      *
-     * @return A database connection from the pool
+     * @param connection The active database connection
+     * @param table The table name
+     * @param index The index name
+     * @return true if the index exists
      * @throws SQLException if a database access error occurs
      */
-    public static Connection getConnection() throws SQLException {
-        return dataSource.getConnection();
+    public static boolean hasIndex(Connection connection, String table, String index) throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getIndexInfo(connection.getCatalog(), connection.getSchema(), table, false, false)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     /**
-     * Closes the database connection pool.
+     * Closes every shard's connection pool.
      * Should be called when the plugin is being disabled.
      */
     public static void close() {
-        if (dataSource != null && !dataSource.isClosed()) {
-            dataSource.close();
+        for (Shard shard : shards) {
+            shard.close();
+        }
+    }
+
+    /**
+     * A single storage shard backed by its own HikariCP pool.
+     */
+    public static class Shard {
+        @Getter
+        private final int index;
+        @Getter
+        private final boolean usingSQLite;
+        private final HikariDataSource dataSource;
+
+        private Shard(int index, ConfigManager.ShardDefinition definition) {
+            this.index = index;
+            this.usingSQLite = definition.isSqlite();
+
+            ConfigManager.PoolSettings pool = ConfigManager.getInstance().getPoolSettings();
+            HikariConfig config = new HikariConfig();
+            config.setPoolName("PrismPack-shard-" + index);
+            config.setMetricsTrackerFactory((poolName, poolStats) -> new PoolMetricsTracker());
+            config.setRegisterMbeans(pool.isRegisterMbeans());
+            config.setConnectionTimeout(pool.getConnectionTimeout());
+            config.setIdleTimeout(pool.getIdleTimeout());
+            config.setMaxLifetime(pool.getMaxLifetime());
+            config.setKeepaliveTime(pool.getKeepaliveTime());
+            config.setLeakDetectionThreshold(pool.getLeakDetectionThreshold());
+
+            if (usingSQLite) {
+                File dataFolder = PrismPack.getInstance().getDataFolder();
+                File dbFile = new File(dataFolder, definition.getSqlitePath());
+
+                config.setJdbcUrl("jdbc:sqlite:" + dbFile.getAbsolutePath());
+                config.setDriverClassName("org.sqlite.JDBC");
+                config.setMaximumPoolSize(1); // SQLite allows one writer at a time
+                pool.getSqliteProperties().forEach(config::addDataSourceProperty);
+            } else {
+                config.setJdbcUrl(String.format("jdbc:mysql://%s:%d/%s?useSSL=false&autoReconnect=true",
+                        definition.getHost(),
+                        definition.getPort(),
+                        definition.getDatabase()));
+                config.setUsername(definition.getUsername());
+                config.setPassword(definition.getPassword());
+                config.setMaximumPoolSize(definition.getPoolSize());
+                if (pool.getMinimumIdle() >= 0) {
+                    config.setMinimumIdle(Math.min(pool.getMinimumIdle(), definition.getPoolSize()));
+                }
+                pool.getMysqlProperties().forEach(config::addDataSourceProperty);
+            }
+
+            this.dataSource = new HikariDataSource(config);
+        }
+
+        /**
+         * Retrieves a connection from this shard's pool.
+         *
+         * @return A database connection
+         * @throws SQLException if a database access error occurs
+         */
+        public Connection getConnection() throws SQLException {
+            return dataSource.getConnection();
+        }
+
+        /**
+         * @return The most connections this shard's pool opens
+         */
+        public int getMaximumPoolSize() {
+            return dataSource.getMaximumPoolSize();
+        }
+
+        /**
+         * @return Live statistics of this shard's pool, like active connections and waiting threads.
+         *         Also registered over JMX under com.zaxxer.hikari unless database.pool.register-mbeans is off.
+         */
+        public HikariPoolMXBean getPoolStats() {
+            return dataSource.getHikariPoolMXBean();
+        }
+
+        private void close() {
+            if (!dataSource.isClosed()) {
+                dataSource.close();
+            }
+        }
+    }
+
+    /**
+     * Records how long threads wait for a pooled connection.
+     */
+    private static class PoolMetricsTracker implements IMetricsTracker {
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            Metrics.record(Metrics.Timer.POOL_WAIT, elapsedAcquiredNanos);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            Metrics.increment(Metrics.Counter.POOL_TIMEOUTS);
         }
     }
 }
@@ -0,0 +1,877 @@
+package com.person98.prismPack.manager;
+
+import com.person98.prismPack.util.ItemSerializationUtil;
+import com.person98.prismPack.util.PLogger;
+import org.bukkit.inventory.ItemStack;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a version history of every backpack so staff can inspect and roll back changes.
+ * Each save records a version that only stores the slots that changed since the previous one,
+ * with a full checkpoint every few versions. Item payloads are stored once per shard and
+ * referenced by their SHA-256 hash, so identical stacks never take up space twice.
+ * Any version can be rebuilt with a single query that picks the latest row per slot
+ * between the closest checkpoint and the requested version.
+ */
+public class HistoryManager {
+
+    private static final String CREATE_HISTORY_TABLE_MYSQL = "CREATE TABLE IF NOT EXISTS backpack_history (" +
+            "owner INT NOT NULL," +
+            "version INT NOT NULL," +
+            "checkpoint BOOLEAN NOT NULL," +
+            "size INT NOT NULL," +
+            "changed INT NOT NULL," +
+            "created DATETIME NOT NULL," +
+            "page_sizes TEXT," +
+            "PRIMARY KEY (owner, version)," +
+            "FOREIGN KEY (owner) REFERENCES backpack_players(player_id)" +
+            ")";
+
+    private static final String CREATE_HISTORY_TABLE_SQLITE = "CREATE TABLE IF NOT EXISTS backpack_history (" +
+            "owner INTEGER NOT NULL," +
+            "version INTEGER NOT NULL," +
+            "checkpoint BOOLEAN NOT NULL," +
+            "size INTEGER NOT NULL," +
+            "changed INTEGER NOT NULL," +
+            "created TIMESTAMP NOT NULL," +
+            "page_sizes TEXT," +
+            "PRIMARY KEY (owner, version)," +
+            "FOREIGN KEY (owner) REFERENCES backpack_players(player_id)" +
+            ")";
+
+    private static final String CREATE_HISTORY_SLOTS_TABLE_MYSQL = "CREATE TABLE IF NOT EXISTS backpack_history_slots (" +
+            "owner INT NOT NULL," +
+            "version INT NOT NULL," +
+            "slot INT NOT NULL," +
+            "payload CHAR(64)," +
+            "PRIMARY KEY (owner, slot, version)," +
+            "INDEX idx_history_payload (payload)" +
+            ")";
+
+    private static final String CREATE_HISTORY_SLOTS_TABLE_SQLITE = "CREATE TABLE IF NOT EXISTS backpack_history_slots (" +
+            "owner INTEGER NOT NULL," +
+            "version INTEGER NOT NULL," +
+            "slot INTEGER NOT NULL," +
+            "payload CHAR(64)," +
+            "PRIMARY KEY (owner, slot, version)" +
+            ")";
+
+    private static final String CREATE_HISTORY_PAYLOAD_INDEX_SQLITE =
+            "CREATE INDEX IF NOT EXISTS idx_history_payload ON backpack_history_slots (payload)";
+
+    private static final String CREATE_PAYLOADS_TABLE_MYSQL = "CREATE TABLE IF NOT EXISTS backpack_item_payloads (" +
+            "hash CHAR(64) PRIMARY KEY," +
+            "payload LONGTEXT NOT NULL," +
+            "last_used BIGINT NOT NULL DEFAULT 0" +
+            ")";
+
+    private static final String CREATE_PAYLOADS_TABLE_SQLITE = "CREATE TABLE IF NOT EXISTS backpack_item_payloads (" +
+            "hash CHAR(64) PRIMARY KEY," +
+            "payload TEXT NOT NULL," +
+            "last_used BIGINT NOT NULL DEFAULT 0" +
+            ")";
+
+    private static final String SELECT_SLOTS_SQL = "SELECT s.slot, s.payload, p.payload AS data " +
+            "FROM backpack_history_slots s " +
+            "JOIN (SELECT slot, MAX(version) AS version FROM backpack_history_slots " +
+            "WHERE owner = ? AND version BETWEEN ? AND ? GROUP BY slot) latest " +
+            "ON s.slot = latest.slot AND s.version = latest.version " +
+            "LEFT JOIN backpack_item_payloads p ON p.hash = s.payload " +
+            "WHERE s.owner = ?";
+
+    private static final long STATE_EXPIRY_TIME = 1000 * 60 * 15; // 15 minutes
+
+    private static final Map<UUID, RecordedState> states = new ConcurrentHashMap<>();
+    private static final ThreadLocal<MessageDigest> digest = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    /**
+     * Creates the history tables on every shard if they don't exist.
+     *
+     * @throws SQLException if the schema of a shard couldn't be created or updated
+     */
+    public static void initialize() throws SQLException {
+        for (Database.Shard shard : Database.getShards()) {
+            try (Connection connection = shard.getConnection();
+                 Statement statement = connection.createStatement()) {
+
+                boolean usingSQLite = shard.isUsingSQLite();
+
+                statement.executeUpdate(usingSQLite ? CREATE_HISTORY_TABLE_SQLITE : CREATE_HISTORY_TABLE_MYSQL);
+                statement.executeUpdate(usingSQLite ? CREATE_HISTORY_SLOTS_TABLE_SQLITE : CREATE_HISTORY_SLOTS_TABLE_MYSQL);
+                statement.executeUpdate(usingSQLite ? CREATE_PAYLOADS_TABLE_SQLITE : CREATE_PAYLOADS_TABLE_MYSQL);
+                if (usingSQLite) {
+                    statement.executeUpdate(CREATE_HISTORY_PAYLOAD_INDEX_SQLITE);
+                }
+                // Versions recorded before page sizes were stored are split into full pages
+                if (!Database.hasColumn(connection, "backpack_history", "page_sizes")) {
+                    statement.executeUpdate("ALTER TABLE backpack_history ADD COLUMN page_sizes TEXT");
+                }
+                if (!Database.hasColumn(connection, "backpack_item_payloads", "last_used")) {
+                    statement.executeUpdate("ALTER TABLE backpack_item_payloads ADD COLUMN last_used BIGINT NOT NULL DEFAULT 0");
+                }
+            } catch (SQLException e) {
+                throw new SQLException("Failed to create history tables on shard " + shard.getIndex(), e);
+            }
+        }
+    }
+
+    /**
+     * Records a new history version for a backpack page that has just been saved.
+     * A version covers every page of the backpack: slot {@code s} of page {@code p} is
+     * recorded as slot {@code p * PAGE_SLOTS + s}, and the other pages carry over unchanged.
+     * Only slots that differ from the previous version are written, unless a checkpoint is due.
+     * Nothing is written if the contents did not change.
+     *
+     * @param connection The connection to the player's shard
+     * @param shard The player's shard
+     * @param playerId The player's ID on that shard
+     * @param playerUUID The UUID of the player
+     * @param page The zero-based page that was saved
+     * @param pagePayloads The serialized payload of each saved slot, null for empty slots
+     * @throws SQLException if a database error occurs
+     */
+    static void record(Connection connection, Database.Shard shard, int playerId, UUID playerUUID,
+                       int page, String[] pagePayloads) throws SQLException {
+        ConfigManager config = ConfigManager.getInstance();
+        if (!config.isHistoryEnabled()) return;
+
+        RecordedState state = states.computeIfAbsent(playerUUID, uuid -> new RecordedState());
+        synchronized (state) {
+            state.lastUsed = System.currentTimeMillis();
+            if (state.version == -1) {
+                loadState(connection, playerId, state);
+            }
+
+            // Lay the saved page over the last recorded state of the other pages
+            int base = page * BackpackManager.PAGE_SLOTS;
+            int end = base + pagePayloads.length;
+            int length = state.hashes != null && state.hashes.length > base + BackpackManager.PAGE_SLOTS ?
+                    state.hashes.length : end;
+            String[] hashes = new String[length];
+            String[] payloads = new String[length];
+            if (state.hashes != null) {
+                for (int i = 0; i < Math.min(length, state.hashes.length); i++) {
+                    if (i < base || i >= base + BackpackManager.PAGE_SLOTS) {
+                        hashes[i] = state.hashes[i];
+                    }
+                }
+            }
+            for (int i = 0; i < pagePayloads.length; i++) {
+                payloads[base + i] = pagePayloads[i];
+                hashes[base + i] = pagePayloads[i] != null ? hash(pagePayloads[i]) : null;
+            }
+
+            int[] pageSizes = Arrays.copyOf(state.pageSizes, Math.max(page + 1, state.pageSizes.length));
+            pageSizes[page] = pagePayloads.length;
+
+            writeVersion(connection, shard, playerId, state, config, hashes, payloads, pageSizes);
+        }
+    }
+
+    /**
+     * Records a new history version without some pages of a backpack, after they were removed from storage.
+     * Nothing is written if none of the pages were recorded.
+     *
+     * @param connection The connection to the player's shard
+     * @param shard The player's shard
+     * @param playerId The player's ID on that shard
+     * @param playerUUID The UUID of the player
+     * @param pages The zero-based pages that were removed
+     * @throws SQLException if a database error occurs
+     */
+    static void recordRemoved(Connection connection, Database.Shard shard, int playerId, UUID playerUUID,
+                              List<Integer> pages) throws SQLException {
+        ConfigManager config = ConfigManager.getInstance();
+        if (!config.isHistoryEnabled()) return;
+
+        RecordedState state = states.computeIfAbsent(playerUUID, uuid -> new RecordedState());
+        synchronized (state) {
+            state.lastUsed = System.currentTimeMillis();
+            if (state.version == -1) {
+                loadState(connection, playerId, state);
+            }
+
+            int[] pageSizes = state.pageSizes.clone();
+            for (int page : pages) {
+                if (page < pageSizes.length) pageSizes[page] = 0;
+            }
+            int pageCount = pageSizes.length;
+            while (pageCount > 0 && pageSizes[pageCount - 1] == 0) {
+                pageCount--;
+            }
+            pageSizes = Arrays.copyOf(pageSizes, pageCount);
+
+            int length = pageCount == 0 ? 0 : (pageCount - 1) * BackpackManager.PAGE_SLOTS + pageSizes[pageCount - 1];
+            String[] hashes = new String[length];
+            if (state.hashes != null) {
+                for (int i = 0; i < Math.min(length, state.hashes.length); i++) {
+                    if (pageSizes[i / BackpackManager.PAGE_SLOTS] > 0) {
+                        hashes[i] = state.hashes[i];
+                    }
+                }
+            }
+
+            // Only slots that were already recorded are kept, so their payloads are stored already
+            writeVersion(connection, shard, playerId, state, config, hashes, new String[length], pageSizes);
+        }
+    }
+
+    /**
+     * Writes a version with the given slot hashes and page sizes, diffed against the last recorded state.
+     * Must be called while holding the lock of the state.
+     */
+    private static void writeVersion(Connection connection, Database.Shard shard, int playerId, RecordedState state,
+                                     ConfigManager config, String[] hashes, String[] payloads,
+                                     int[] pageSizes) throws SQLException {
+        if (state.hashes != null && Arrays.equals(state.hashes, hashes) && Arrays.equals(state.pageSizes, pageSizes)) {
+            return;
+        }
+
+        boolean checkpoint = state.hashes == null
+                || state.hashes.length != hashes.length
+                || state.sinceCheckpoint + 1 >= config.getHistoryCheckpointInterval();
+
+        List<Integer> changedSlots = new ArrayList<>();
+        for (int i = 0; i < hashes.length; i++) {
+            boolean changed = state.hashes == null || i >= state.hashes.length
+                    ? hashes[i] != null
+                    : !Objects.equals(hashes[i], state.hashes[i]);
+            if (checkpoint ? hashes[i] != null : changed) {
+                changedSlots.add(i);
+            }
+        }
+
+        int version = state.version + 1;
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "INSERT INTO backpack_history (owner, version, checkpoint, size, changed, created, page_sizes) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+                ps.setInt(1, playerId);
+                ps.setInt(2, version);
+                ps.setBoolean(3, checkpoint);
+                ps.setInt(4, hashes.length);
+                ps.setInt(5, changedSlots.size());
+                ps.setTimestamp(6, new Timestamp(System.currentTimeMillis()));
+                ps.setString(7, formatPageSizes(pageSizes));
+                ps.executeUpdate();
+            }
+
+            insertSlots(connection, playerId, version, changedSlots, hashes);
+            insertPayloads(connection, shard, changedSlots, hashes, payloads);
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            state.version = -1;
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        state.version = version;
+        state.hashes = hashes;
+        state.pageSizes = pageSizes;
+        state.sinceCheckpoint = checkpoint ? 0 : state.sinceCheckpoint + 1;
+    }
+
+    /**
+     * Lists the most recent history versions of a player, newest first.
+     * This method blocks and should be called off the main thread.
+     *
+     * @param playerUUID The UUID of the player
+     * @param limit The maximum number of versions to return
+     * @param offset The number of versions to skip
+     * @return The versions, empty if the player has no history
+     * @throws SQLException if a database error occurs
+     */
+    public static List<VersionInfo> listVersions(UUID playerUUID, int limit, int offset) throws SQLException {
+        List<VersionInfo> versions = new ArrayList<>();
+        try (Connection connection = Database.getConnection(playerUUID)) {
+            int playerId = BackpackManager.getPlayerId(connection, playerUUID);
+            if (playerId == -1) return versions;
+
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "SELECT version, checkpoint, size, changed, created FROM backpack_history " +
+                    "WHERE owner = ? ORDER BY version DESC LIMIT ? OFFSET ?")) {
+                ps.setInt(1, playerId);
+                ps.setInt(2, limit);
+                ps.setInt(3, offset);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        versions.add(new VersionInfo(
+                                rs.getInt("version"),
+                                rs.getBoolean("checkpoint"),
+                                rs.getInt("size"),
+                                rs.getInt("changed"),
+                                rs.getTimestamp("created")));
+                    }
+                }
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * Rebuilds the contents of a backpack as they were at the given version.
+     * Pages follow each other, so page {@code p} starts at index {@code p * PAGE_SLOTS}.
+     * This method blocks and should be called off the main thread.
+     *
+     * @param playerUUID The UUID of the player
+     * @param version The version to rebuild
+     * @return The contents of all pages, or null if the version doesn't exist
+     * @throws SQLException if a database error occurs
+     */
+    public static ItemStack[] reconstruct(UUID playerUUID, int version) throws SQLException {
+        try (Connection connection = Database.getConnection(playerUUID)) {
+            int playerId = BackpackManager.getPlayerId(connection, playerUUID);
+            if (playerId == -1) return null;
+
+            int size = getSize(connection, playerId, version);
+            if (size == -1) return null;
+
+            ItemStack[] items = new ItemStack[size];
+            for (Map.Entry<Integer, SlotEntry> entry : loadSlots(connection, playerId, version, true).entrySet()) {
+                if (entry.getKey() < size) {
+                    items[entry.getKey()] = ItemSerializationUtil.deserializeItem(entry.getValue().payload());
+                }
+            }
+            return items;
+        }
+    }
+
+    /**
+     * Rebuilds the pages of a backpack as they were at the given version, each with the size it had.
+     * This method blocks and should be called off the main thread.
+     *
+     * @param playerUUID The UUID of the player
+     * @param version The version to rebuild
+     * @return The contents of each page, with null for pages that weren't stored at that version,
+     *         or null if the version doesn't exist
+     * @throws SQLException if a database error occurs
+     */
+    public static List<ItemStack[]> reconstructPages(UUID playerUUID, int version) throws SQLException {
+        try (Connection connection = Database.getConnection(playerUUID)) {
+            int playerId = BackpackManager.getPlayerId(connection, playerUUID);
+            if (playerId == -1) return null;
+
+            int[] pageSizes = getPageSizes(connection, playerId, version);
+            if (pageSizes == null) return null;
+
+            List<ItemStack[]> pages = new ArrayList<>(pageSizes.length);
+            for (int size : pageSizes) {
+                pages.add(size > 0 ? new ItemStack[size] : null);
+            }
+            for (Map.Entry<Integer, SlotEntry> entry : loadSlots(connection, playerId, version, true).entrySet()) {
+                int page = entry.getKey() / BackpackManager.PAGE_SLOTS;
+                int slot = entry.getKey() % BackpackManager.PAGE_SLOTS;
+                if (page < pages.size() && pages.get(page) != null && slot < pageSizes[page]) {
+                    pages.get(page)[slot] = ItemSerializationUtil.deserializeItem(entry.getValue().payload());
+                }
+            }
+            return pages;
+        }
+    }
+
+    /**
+     * Compares two versions of a backpack slot by slot.
+     * Only the slots that differ are decoded.
+     * This method blocks and should be called off the main thread.
+     *
+     * @param playerUUID The UUID of the player
+     * @param from The older version
+     * @param to The newer version
+     * @return The changed slots in slot order, or null if either version doesn't exist
+     * @throws SQLException if a database error occurs
+     */
+    public static List<SlotChange> diff(UUID playerUUID, int from, int to) throws SQLException {
+        try (Connection connection = Database.getConnection(playerUUID)) {
+            int playerId = BackpackManager.getPlayerId(connection, playerUUID);
+            if (playerId == -1) return null;
+
+            int fromSize = getSize(connection, playerId, from);
+            int toSize = getSize(connection, playerId, to);
+            if (fromSize == -1 || toSize == -1) return null;
+
+            Map<Integer, SlotEntry> before = loadSlots(connection, playerId, from, true);
+            Map<Integer, SlotEntry> after = loadSlots(connection, playerId, to, true);
+
+            List<SlotChange> changes = new ArrayList<>();
+            for (int slot = 0; slot < Math.max(fromSize, toSize); slot++) {
+                SlotEntry old = slot < fromSize ? before.get(slot) : null;
+                SlotEntry current = slot < toSize ? after.get(slot) : null;
+                String oldHash = old != null ? old.hash() : null;
+                String currentHash = current != null ? current.hash() : null;
+
+                if (!Objects.equals(oldHash, currentHash)) {
+                    changes.add(new SlotChange(slot,
+                            old != null ? ItemSerializationUtil.deserializeItem(old.payload()) : null,
+                            current != null ? ItemSerializationUtil.deserializeItem(current.payload()) : null));
+                }
+            }
+            return changes;
+        }
+    }
+
+    /**
+     * Applies the retention policy on every shard.
+     * Versions beyond the configured count or age are folded into a new checkpoint at the
+     * oldest kept version, then payloads that are no longer referenced are removed.
+     * Payloads written or reused after the compaction started are always kept, since a version
+     * referencing them may be committing while the unused ones are removed.
+     * This method blocks and should be called off the main thread.
+     */
+    public static void compact() {
+        ConfigManager config = ConfigManager.getInstance();
+        if (!config.isHistoryEnabled()) return;
+
+        Timestamp ageCutoff = config.getHistoryMaxAgeDays() > 0 ?
+                new Timestamp(System.currentTimeMillis() - config.getHistoryMaxAgeDays() * 24L * 60 * 60 * 1000) : null;
+
+        for (Database.Shard shard : Database.getShards()) {
+            long started = System.currentTimeMillis();
+            try (Connection connection = shard.getConnection()) {
+                Set<Integer> owners = new HashSet<>();
+                try (PreparedStatement ps = connection.prepareStatement(
+                        "SELECT owner FROM backpack_history GROUP BY owner HAVING COUNT(*) > ?")) {
+                    ps.setInt(1, config.getHistoryMaxVersions());
+                    collectOwners(ps, owners);
+                }
+                if (ageCutoff != null) {
+                    try (PreparedStatement ps = connection.prepareStatement(
+                            "SELECT DISTINCT owner FROM backpack_history WHERE created < ?")) {
+                        ps.setTimestamp(1, ageCutoff);
+                        collectOwners(ps, owners);
+                    }
+                }
+
+                for (int owner : owners) {
+                    compactOwner(connection, owner, config.getHistoryMaxVersions(), ageCutoff);
+                }
+
+                int removed;
+                try (PreparedStatement ps = connection.prepareStatement(
+                        "DELETE FROM backpack_item_payloads WHERE last_used < ? AND NOT EXISTS " +
+                        "(SELECT 1 FROM backpack_history_slots s WHERE s.payload = backpack_item_payloads.hash)")) {
+                    ps.setLong(1, started);
+                    removed = ps.executeUpdate();
+                }
+
+                if (!owners.isEmpty() || removed > 0) {
+                    PLogger.info("Compacted history of " + owners.size() + " players on shard " + shard.getIndex()
+                            + ", removed " + removed + " unused item payloads.");
+                }
+            } catch (SQLException e) {
+                PLogger.severe("Failed to compact history on shard " + shard.getIndex(), e);
+            }
+        }
+    }
+
+    /**
+     * Copies a player's history from one shard to another while the player is being rebalanced.
+     * If the target already has history for the player it is kept and the older history on the
+     * source is dropped, so version numbers never collide. The history is removed from the source
+     * with {@link #deleteHistory} once the copy is committed.
+     *
+     * @param source The connection to the shard currently holding the history
+     * @param sourceShard The source shard
+     * @param sourceId The player's ID on the source shard
+     * @param target The connection to the player's new shard
+     * @param targetShard The target shard
+     * @param targetId The player's ID on the target shard
+     * @param playerUUID The UUID of the player
+     * @throws SQLException if a database error occurs
+     */
+    static void copyHistory(Connection source, Database.Shard sourceShard, int sourceId,
+                            Connection target, Database.Shard targetShard, int targetId,
+                            UUID playerUUID) throws SQLException {
+        states.remove(playerUUID);
+
+        boolean targetHasHistory;
+        try (PreparedStatement ps = target.prepareStatement("SELECT 1 FROM backpack_history WHERE owner = ? LIMIT 1")) {
+            ps.setInt(1, targetId);
+            try (ResultSet rs = ps.executeQuery()) {
+                targetHasHistory = rs.next();
+            }
+        }
+
+        if (!targetHasHistory) {
+            try (PreparedStatement select = source.prepareStatement(
+                    "SELECT version, checkpoint, size, changed, created, page_sizes FROM backpack_history WHERE owner = ?");
+                 PreparedStatement insert = target.prepareStatement(
+                         "INSERT INTO backpack_history (owner, version, checkpoint, size, changed, created, page_sizes) " +
+                         "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+                select.setInt(1, sourceId);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        insert.setInt(1, targetId);
+                        insert.setInt(2, rs.getInt("version"));
+                        insert.setBoolean(3, rs.getBoolean("checkpoint"));
+                        insert.setInt(4, rs.getInt("size"));
+                        insert.setInt(5, rs.getInt("changed"));
+                        insert.setTimestamp(6, rs.getTimestamp("created"));
+                        insert.setString(7, rs.getString("page_sizes"));
+                        insert.addBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+
+            try (PreparedStatement select = source.prepareStatement(
+                    "SELECT s.version, s.slot, s.payload, p.payload AS data FROM backpack_history_slots s " +
+                    "LEFT JOIN backpack_item_payloads p ON p.hash = s.payload WHERE s.owner = ?");
+                 PreparedStatement insertSlot = target.prepareStatement(
+                         "INSERT INTO backpack_history_slots (owner, version, slot, payload) VALUES (?, ?, ?, ?)");
+                 PreparedStatement insertPayload = target.prepareStatement(insertPayloadSQL(targetShard))) {
+                select.setInt(1, sourceId);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        String hash = rs.getString("payload");
+                        insertSlot.setInt(1, targetId);
+                        insertSlot.setInt(2, rs.getInt("version"));
+                        insertSlot.setInt(3, rs.getInt("slot"));
+                        insertSlot.setString(4, hash);
+                        insertSlot.addBatch();
+
+                        String data = rs.getString("data");
+                        if (hash != null && data != null) {
+                            insertPayload.setString(1, hash);
+                            insertPayload.setString(2, data);
+                            insertPayload.setLong(3, System.currentTimeMillis());
+                            insertPayload.addBatch();
+                        }
+                    }
+                }
+                insertSlot.executeBatch();
+                insertPayload.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Removes a player's history from the shard they were moved away from.
+     * Payloads are left for the next compaction, since other players may still use them.
+     *
+     * @param source The connection to the shard the player was moved away from
+     * @param sourceId The player's ID on that shard
+     * @throws SQLException if a database error occurs
+     */
+    static void deleteHistory(Connection source, int sourceId) throws SQLException {
+        try (PreparedStatement ps = source.prepareStatement("DELETE FROM backpack_history_slots WHERE owner = ?")) {
+            ps.setInt(1, sourceId);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = source.prepareStatement("DELETE FROM backpack_history WHERE owner = ?")) {
+            ps.setInt(1, sourceId);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Drops the in-memory diff baselines of players that haven't saved for a while.
+     * They are reloaded from the database on the next save.
+     */
+    public static void cleanup() {
+        long currentTime = System.currentTimeMillis();
+        states.values().removeIf(state -> currentTime - state.lastUsed > STATE_EXPIRY_TIME);
+    }
+
+    private static void compactOwner(Connection connection, int owner, int maxVersions,
+                                     Timestamp ageCutoff) throws SQLException {
+        List<Integer> versions = new ArrayList<>();
+        List<Timestamp> created = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT version, created FROM backpack_history WHERE owner = ? ORDER BY version DESC")) {
+            ps.setInt(1, owner);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    versions.add(rs.getInt("version"));
+                    created.add(rs.getTimestamp("created"));
+                }
+            }
+        }
+        if (versions.isEmpty()) return;
+
+        // Always keep the newest version, then walk back until the count or age limit is reached
+        int kept = 1;
+        while (kept < versions.size() && kept < maxVersions
+                && (ageCutoff == null || !created.get(kept).before(ageCutoff))) {
+            kept++;
+        }
+        if (kept == versions.size()) return;
+
+        int cutoff = versions.get(kept - 1);
+        Map<Integer, SlotEntry> state = loadSlots(connection, owner, cutoff, false);
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "DELETE FROM backpack_history_slots WHERE owner = ? AND version <= ?")) {
+                ps.setInt(1, owner);
+                ps.setInt(2, cutoff);
+                ps.executeUpdate();
+            }
+
+            List<Integer> slots = new ArrayList<>();
+            String[] hashes = new String[state.isEmpty() ? 0 : Collections.max(state.keySet()) + 1];
+            for (Map.Entry<Integer, SlotEntry> entry : state.entrySet()) {
+                if (entry.getValue().hash() != null) {
+                    slots.add(entry.getKey());
+                    hashes[entry.getKey()] = entry.getValue().hash();
+                }
+            }
+            insertSlots(connection, owner, cutoff, slots, hashes);
+
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "UPDATE backpack_history SET checkpoint = ?, changed = ? WHERE owner = ? AND version = ?")) {
+                ps.setBoolean(1, true);
+                ps.setInt(2, slots.size());
+                ps.setInt(3, owner);
+                ps.setInt(4, cutoff);
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "DELETE FROM backpack_history WHERE owner = ? AND version < ?")) {
+                ps.setInt(1, owner);
+                ps.setInt(2, cutoff);
+                ps.executeUpdate();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static void collectOwners(PreparedStatement ps, Set<Integer> owners) throws SQLException {
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                owners.add(rs.getInt("owner"));
+            }
+        }
+    }
+
+    /**
+     * Loads the latest recorded version of a player into the in-memory diff baseline.
+     */
+    private static void loadState(Connection connection, int playerId, RecordedState state) throws SQLException {
+        state.version = 0;
+        state.hashes = null;
+        state.pageSizes = new int[0];
+        state.sinceCheckpoint = 0;
+
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT version, size, page_sizes FROM backpack_history WHERE owner = ? ORDER BY version DESC LIMIT 1")) {
+            ps.setInt(1, playerId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return;
+                state.version = rs.getInt("version");
+                state.hashes = new String[rs.getInt("size")];
+                state.pageSizes = parsePageSizes(rs.getString("page_sizes"), rs.getInt("size"));
+            }
+        }
+
+        int checkpoint = getCheckpoint(connection, playerId, state.version);
+        state.sinceCheckpoint = state.version - checkpoint;
+        for (Map.Entry<Integer, SlotEntry> entry : loadSlots(connection, playerId, state.version, false).entrySet()) {
+            if (entry.getKey() < state.hashes.length) {
+                state.hashes[entry.getKey()] = entry.getValue().hash();
+            }
+        }
+    }
+
+    /**
+     * Resolves the state of every slot at a version with one query, bounded below by the closest checkpoint.
+     */
+    private static Map<Integer, SlotEntry> loadSlots(Connection connection, int playerId, int version,
+                                                     boolean withPayload) throws SQLException {
+        int checkpoint = getCheckpoint(connection, playerId, version);
+        Map<Integer, SlotEntry> slots = new TreeMap<>();
+
+        try (PreparedStatement ps = connection.prepareStatement(SELECT_SLOTS_SQL)) {
+            ps.setInt(1, playerId);
+            ps.setInt(2, checkpoint);
+            ps.setInt(3, version);
+            ps.setInt(4, playerId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String hash = rs.getString("payload");
+                    if (hash != null) {
+                        slots.put(rs.getInt("slot"), new SlotEntry(hash, withPayload ? rs.getString("data") : null));
+                    }
+                }
+            }
+        }
+        return slots;
+    }
+
+    private static int getCheckpoint(Connection connection, int playerId, int version) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT MAX(version) AS version FROM backpack_history WHERE owner = ? AND checkpoint = ? AND version <= ?")) {
+            ps.setInt(1, playerId);
+            ps.setBoolean(2, true);
+            ps.setInt(3, version);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt("version") : 0;
+            }
+        }
+    }
+
+    private static int getSize(Connection connection, int playerId, int version) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT size FROM backpack_history WHERE owner = ? AND version = ?")) {
+            ps.setInt(1, playerId);
+            ps.setInt(2, version);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt("size") : -1;
+            }
+        }
+    }
+
+    /**
+     * @return The size of each page at a version, or null if the version doesn't exist
+     */
+    private static int[] getPageSizes(Connection connection, int playerId, int version) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT size, page_sizes FROM backpack_history WHERE owner = ? AND version = ?")) {
+            ps.setInt(1, playerId);
+            ps.setInt(2, version);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? parsePageSizes(rs.getString("page_sizes"), rs.getInt("size")) : null;
+            }
+        }
+    }
+
+    private static String formatPageSizes(int[] pageSizes) {
+        StringJoiner joiner = new StringJoiner(",");
+        for (int size : pageSizes) {
+            joiner.add(String.valueOf(size));
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * Parses the stored page sizes. Versions recorded before they were stored are split into
+     * full pages, with the last page holding the remaining slots.
+     */
+    private static int[] parsePageSizes(String stored, int size) {
+        if (stored == null) {
+            int[] pageSizes = new int[(size + BackpackManager.PAGE_SLOTS - 1) / BackpackManager.PAGE_SLOTS];
+            for (int page = 0; page < pageSizes.length; page++) {
+                pageSizes[page] = Math.min(BackpackManager.PAGE_SLOTS, size - page * BackpackManager.PAGE_SLOTS);
+            }
+            return pageSizes;
+        }
+        if (stored.isEmpty()) return new int[0];
+
+        String[] parts = stored.split(",");
+        int[] pageSizes = new int[parts.length];
+        for (int page = 0; page < parts.length; page++) {
+            pageSizes[page] = Integer.parseInt(parts[page]);
+        }
+        return pageSizes;
+    }
+
+    private static void insertSlots(Connection connection, int playerId, int version,
+                                    List<Integer> slots, String[] hashes) throws SQLException {
+        if (slots.isEmpty()) return;
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO backpack_history_slots (owner, version, slot, payload) VALUES (?, ?, ?, ?)")) {
+            for (int slot : slots) {
+                ps.setInt(1, playerId);
+                ps.setInt(2, version);
+                ps.setInt(3, slot);
+                ps.setString(4, hashes[slot]);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static void insertPayloads(Connection connection, Database.Shard shard, List<Integer> slots,
+                                       String[] hashes, String[] payloads) throws SQLException {
+        Set<String> written = new HashSet<>();
+        long now = System.currentTimeMillis();
+        try (PreparedStatement ps = connection.prepareStatement(insertPayloadSQL(shard))) {
+            for (int slot : slots) {
+                if (hashes[slot] != null && payloads[slot] != null && written.add(hashes[slot])) {
+                    ps.setString(1, hashes[slot]);
+                    ps.setString(2, payloads[slot]);
+                    ps.setLong(3, now);
+                    ps.addBatch();
+                }
+            }
+            if (!written.isEmpty()) {
+                ps.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Inserts a payload, or marks an existing one as used again so a running compaction keeps it.
+     */
+    private static String insertPayloadSQL(Database.Shard shard) {
+        return shard.isUsingSQLite() ?
+                "INSERT INTO backpack_item_payloads (hash, payload, last_used) VALUES (?, ?, ?) " +
+                "ON CONFLICT(hash) DO UPDATE SET last_used = excluded.last_used" :
+                "INSERT INTO backpack_item_payloads (hash, payload, last_used) VALUES (?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE last_used = VALUES(last_used)";
+    }
+
+    private static String hash(String payload) {
+        MessageDigest sha = digest.get();
+        sha.reset();
+        return HexFormat.of().formatHex(sha.digest(payload.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * The last recorded version of a player, used to diff the next save against.
+     */
+    private static class RecordedState {
+        private int version = -1;
+        private String[] hashes;
+        private int[] pageSizes = new int[0];
+        private int sinceCheckpoint;
+        private long lastUsed = System.currentTimeMillis();
+    }
+
+    private record SlotEntry(String hash, String payload) {
+    }
+
+    /**
+     * Summary of a single recorded version.
+     *
+     * @param version The version number, increasing per player
+     * @param checkpoint Whether this version stores every occupied slot
+     * @param size The size of the backpack at this version
+     * @param changed The number of slot rows stored for this version
+     * @param created When the version was recorded
+     */
+    public record VersionInfo(int version, boolean checkpoint, int size, int changed, Timestamp created) {
+    }
+
+    /**
+     * A slot that differs between two versions.
+     *
+     * @param slot The slot index
+     * @param before The item in the older version, or null if empty
+     * @param after The item in the newer version, or null if empty
+     */
+    public record SlotChange(int slot, ItemStack before, ItemStack after) {
+    }
+}
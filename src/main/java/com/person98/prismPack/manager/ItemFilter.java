@@ -0,0 +1,224 @@
+package com.person98.prismPack.manager;
+
+import com.person98.prismPack.util.PLogger;
+import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.block.ShulkerBox;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.BlockStateMeta;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Decides which items may not be stored in a backpack.
+ * The config is compiled once into a bitset over {@link Material} ordinals for materials that are
+ * always blocked, followed by an ordered chain of rules that look at item meta. The chain only runs
+ * for items whose material some rule applies to, so checking a plain item is a couple of array
+ * reads and never allocates.
+ * <p>
+ * Rules are read from {@code BackPackGUI.blocked-rules}. Every condition of a rule has to match:
+ * <ul>
+ *     <li>{@code materials}: the materials the rule applies to, all materials if omitted</li>
+ *     <li>{@code custom-model-data}: the exact custom model data</li>
+ *     <li>{@code name-contains}: text contained in the display name, case-insensitive</li>
+ *     <li>{@code pdc-key}: a persistent data key set by another plugin, e.g. {@code myplugin:soulbound}</li>
+ *     <li>{@code enchantment}: an enchantment the item carries, e.g. {@code minecraft:mending}</li>
+ *     <li>{@code contains-blocked}: true to block shulker boxes holding a blocked item</li>
+ * </ul>
+ */
+public class ItemFilter {
+
+    private static final int MATERIAL_COUNT = Material.values().length;
+
+    private final long[] blockedMaterials;
+    private final long[] ruleMaterials;
+    private final boolean hasUnrestrictedRule;
+    private final Rule[] rules;
+
+    private ItemFilter(long[] blockedMaterials, Rule[] rules) {
+        this.blockedMaterials = blockedMaterials;
+        this.rules = rules;
+
+        long[] candidates = new long[blockedMaterials.length];
+        boolean unrestricted = false;
+        for (Rule rule : rules) {
+            if (rule.materials() == null) {
+                unrestricted = true;
+            } else {
+                for (int i = 0; i < candidates.length; i++) {
+                    candidates[i] |= rule.materials()[i];
+                }
+            }
+        }
+        this.ruleMaterials = candidates;
+        this.hasUnrestrictedRule = unrestricted;
+    }
+
+    /**
+     * Compiles the blocked materials and rules from the config.
+     * Invalid entries are logged and skipped.
+     *
+     * @param blockedItems Materials that are always blocked
+     * @param ruleMaps The entries of the blocked-rules list
+     * @return The compiled filter
+     */
+    public static ItemFilter compile(Collection<Material> blockedItems, List<Map<?, ?>> ruleMaps) {
+        long[] blocked = toBitset(blockedItems);
+
+        List<Rule> rules = new ArrayList<>();
+        for (Map<?, ?> ruleMap : ruleMaps) {
+            Rule rule = compileRule(ruleMap);
+            if (rule == null) continue;
+
+            if (rule.conditions().length == 0) {
+                // Rules that only list materials block them outright
+                for (int i = 0; i < blocked.length; i++) {
+                    blocked[i] |= rule.materials()[i];
+                }
+            } else {
+                rules.add(rule);
+            }
+        }
+        return new ItemFilter(blocked, rules.toArray(new Rule[0]));
+    }
+
+    /**
+     * Checks whether an item may not be stored in a backpack.
+     *
+     * @param item The item to check, may be null
+     * @return true if the item is blocked
+     */
+    public boolean isBlocked(ItemStack item) {
+        return isBlocked(item, true);
+    }
+
+    private boolean isBlocked(ItemStack item, boolean openContainers) {
+        if (item == null) return false;
+
+        Material material = item.getType();
+        if (material.isAir()) return false;
+
+        int ordinal = material.ordinal();
+        if (isSet(blockedMaterials, ordinal)) return true;
+        if (!hasUnrestrictedRule && !isSet(ruleMaterials, ordinal)) return false;
+        if (!item.hasItemMeta()) return false;
+
+        // Only reached for items with meta that a rule may apply to
+        ItemMeta meta = item.getItemMeta();
+        for (Rule rule : rules) {
+            if (rule.materials() != null && !isSet(rule.materials(), ordinal)) continue;
+            if (rule.matches(this, item, meta, openContainers)) return true;
+        }
+        return false;
+    }
+
+    private static Rule compileRule(Map<?, ?> ruleMap) {
+        long[] materials = null;
+        Object materialNames = ruleMap.get("materials");
+        if (materialNames instanceof Collection<?> names) {
+            List<Material> parsed = new ArrayList<>();
+            for (Object name : names) {
+                try {
+                    parsed.add(Material.valueOf(String.valueOf(name).toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    PLogger.warning("Invalid material in blocked-rules: " + name);
+                }
+            }
+            materials = toBitset(parsed);
+        }
+
+        List<Condition> conditions = new ArrayList<>();
+        if (ruleMap.get("custom-model-data") instanceof Number number) {
+            int customModelData = number.intValue();
+            conditions.add((filter, item, meta, openContainers) ->
+                    meta.hasCustomModelData() && meta.getCustomModelData() == customModelData);
+        }
+        if (ruleMap.get("name-contains") != null) {
+            String text = String.valueOf(ruleMap.get("name-contains")).toLowerCase(Locale.ROOT);
+            conditions.add((filter, item, meta, openContainers) -> meta.hasDisplayName()
+                    && PlainTextComponentSerializer.plainText().serialize(meta.displayName()).toLowerCase(Locale.ROOT).contains(text));
+        }
+        if (ruleMap.get("pdc-key") != null) {
+            NamespacedKey key = NamespacedKey.fromString(String.valueOf(ruleMap.get("pdc-key")).toLowerCase(Locale.ROOT));
+            if (key == null) {
+                PLogger.warning("Invalid pdc-key in blocked-rules: " + ruleMap.get("pdc-key"));
+                return null;
+            }
+            conditions.add((filter, item, meta, openContainers) -> meta.getPersistentDataContainer().has(key));
+        }
+        if (ruleMap.get("enchantment") != null) {
+            NamespacedKey key = NamespacedKey.fromString(String.valueOf(ruleMap.get("enchantment")).toLowerCase(Locale.ROOT));
+            Enchantment enchantment = key != null ? Enchantment.getByKey(key) : null;
+            if (enchantment == null) {
+                PLogger.warning("Invalid enchantment in blocked-rules: " + ruleMap.get("enchantment"));
+                return null;
+            }
+            conditions.add((filter, item, meta, openContainers) -> meta.hasEnchant(enchantment));
+        }
+        if (Boolean.TRUE.equals(ruleMap.get("contains-blocked"))) {
+            conditions.add(ItemFilter::containsBlocked);
+        }
+
+        if (conditions.isEmpty() && materials == null) {
+            PLogger.warning("Ignoring a blocked-rules entry without any condition: " + ruleMap);
+            return null;
+        }
+        return new Rule(materials, conditions.toArray(new Condition[0]));
+    }
+
+    private static boolean containsBlocked(ItemFilter filter, ItemStack item, ItemMeta meta, boolean openContainers) {
+        if (!openContainers || !(meta instanceof BlockStateMeta blockStateMeta) || !blockStateMeta.hasBlockState()) {
+            return false;
+        }
+        if (!(blockStateMeta.getBlockState() instanceof ShulkerBox shulkerBox)) {
+            return false;
+        }
+
+        for (ItemStack content : shulkerBox.getInventory().getContents()) {
+            if (filter.isBlocked(content, false)) return true;
+        }
+        return false;
+    }
+
+    private static long[] toBitset(Collection<Material> materials) {
+        long[] bits = new long[(MATERIAL_COUNT + 63) >>> 6];
+        for (Material material : materials) {
+            bits[material.ordinal() >>> 6] |= 1L << material.ordinal();
+        }
+        return bits;
+    }
+
+    private static boolean isSet(long[] bits, int ordinal) {
+        return (bits[ordinal >>> 6] & (1L << ordinal)) != 0;
+    }
+
+    /**
+     * A single check against an item's meta.
+     */
+    @FunctionalInterface
+    private interface Condition {
+        boolean test(ItemFilter filter, ItemStack item, ItemMeta meta, boolean openContainers);
+    }
+
+    /**
+     * A compiled rule: all conditions must match for items of the given materials.
+     *
+     * @param materials Bitset of the materials the rule applies to, or null for all materials
+     * @param conditions The conditions to check in order
+     */
+    private record Rule(long[] materials, Condition[] conditions) {
+        boolean matches(ItemFilter filter, ItemStack item, ItemMeta meta, boolean openContainers) {
+            for (Condition condition : conditions) {
+                if (!condition.test(filter, item, meta, openContainers)) return false;
+            }
+            return true;
+        }
+    }
+}
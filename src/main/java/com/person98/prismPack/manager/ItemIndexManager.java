@@ -0,0 +1,432 @@
+package com.person98.prismPack.manager;
+
+import com.person98.prismPack.util.PayloadView;
+import com.person98.prismPack.util.PLogger;
+import com.person98.prismPack.util.TaskScheduler;
+import org.bukkit.block.ShulkerBox;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.BlockStateMeta;
+import org.bukkit.inventory.meta.EnchantmentStorageMeta;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Maintains a secondary index of what every backpack contains, so staff can find out which
+ * players hold a given item without deserializing every backpack.
+ * Each row stores the total amount of one material per owner and page, optionally narrowed down by a key:
+ * <ul>
+ *     <li>an empty key for the total of the material</li>
+ *     <li>{@code cmd:<id>} for items with custom model data</li>
+ *     <li>{@code ench:<namespace:key>} for items carrying an enchantment</li>
+ * </ul>
+ * Items inside shulker boxes are counted as well.
+ */
+public class ItemIndexManager {
+
+    private static final String CREATE_INDEX_TABLE_MYSQL = "CREATE TABLE IF NOT EXISTS backpack_item_index (" +
+            "owner INT NOT NULL," +
+            "page INT NOT NULL," +
+            "material VARCHAR(64) NOT NULL," +
+            "item_key VARCHAR(128) NOT NULL," +
+            "amount INT NOT NULL," +
+            "PRIMARY KEY (owner, page, material, item_key)," +
+            "INDEX idx_item_index_lookup (material, item_key, amount)," +
+            "FOREIGN KEY (owner) REFERENCES backpack_players(player_id)" +
+            ")";
+
+    private static final String CREATE_INDEX_TABLE_SQLITE = "CREATE TABLE IF NOT EXISTS backpack_item_index (" +
+            "owner INTEGER NOT NULL," +
+            "page INTEGER NOT NULL," +
+            "material VARCHAR(64) NOT NULL," +
+            "item_key VARCHAR(128) NOT NULL," +
+            "amount INTEGER NOT NULL," +
+            "PRIMARY KEY (owner, page, material, item_key)," +
+            "FOREIGN KEY (owner) REFERENCES backpack_players(player_id)" +
+            ")";
+
+    private static final String CREATE_LOOKUP_INDEX_SQLITE =
+            "CREATE INDEX IF NOT EXISTS idx_item_index_lookup ON backpack_item_index (material, item_key, amount)";
+
+    private static final int BACKFILL_BATCH_SIZE = 200;
+    private static final long BACKFILL_PAUSE_MILLIS = 50;
+
+    private static final Map<BackpackManager.PageKey, Map<IndexKey, Integer>> indexedTotals = new ConcurrentHashMap<>();
+    private static final AtomicBoolean backfillRunning = new AtomicBoolean(false);
+
+    /**
+     * Creates the index table on every shard if it doesn't exist.
+     * Tables from before backpacks had pages are dropped and rebuilt in the background,
+     * since the index only holds data derived from the backpacks themselves.
+     *
+     * @throws SQLException if the schema of a shard couldn't be created or updated
+     */
+    public static void initialize() throws SQLException {
+        boolean rebuild = false;
+        for (Database.Shard shard : Database.getShards()) {
+            try (Connection connection = shard.getConnection();
+                 Statement statement = connection.createStatement()) {
+
+                if (Database.hasColumn(connection, "backpack_item_index", "owner")
+                        && !Database.hasColumn(connection, "backpack_item_index", "page")) {
+                    statement.executeUpdate("DROP TABLE backpack_item_index");
+                    rebuild = true;
+                }
+
+                statement.executeUpdate(shard.isUsingSQLite() ? CREATE_INDEX_TABLE_SQLITE : CREATE_INDEX_TABLE_MYSQL);
+                if (shard.isUsingSQLite()) {
+                    statement.executeUpdate(CREATE_LOOKUP_INDEX_SQLITE);
+                }
+            } catch (SQLException e) {
+                throw new SQLException("Failed to create item index table on shard " + shard.getIndex(), e);
+            }
+        }
+
+        if (rebuild && ConfigManager.getInstance().isIndexEnabled()) {
+            PLogger.info("Rebuilding the item index for paged backpacks.");
+            TaskScheduler.runAsync(ItemIndexManager::backfill);
+        }
+    }
+
+    /**
+     * Updates the index rows of a backpack page that has just been saved.
+     * Nothing is written when the indexed totals didn't change since the last update.
+     *
+     * @param connection The connection to the player's shard
+     * @param playerId The player's ID on that shard
+     * @param page The saved page
+     * @param items The saved contents
+     * @throws SQLException if a database error occurs
+     */
+    static void update(Connection connection, int playerId, BackpackManager.PageKey page, ItemStack[] items) throws SQLException {
+        if (!ConfigManager.getInstance().isIndexEnabled()) return;
+
+        Map<IndexKey, Integer> totals = aggregate(items);
+        if (totals.equals(indexedTotals.get(page))) return;
+
+        write(connection, playerId, page.page(), totals);
+        indexedTotals.put(page, totals);
+    }
+
+    /**
+     * Finds the backpacks that contain an item, ordered by the amount they hold across all pages.
+     * Every shard is queried and the results are merged.
+     * This method blocks and should be called off the main thread.
+     *
+     * @param material The material name, e.g. DIAMOND_SWORD
+     * @param itemKey The key to narrow the search down, or an empty string for material totals
+     * @param limit The maximum number of results
+     * @param offset The number of results to skip
+     * @return The matching owners with the amount they hold
+     * @throws SQLException if a database error occurs
+     */
+    public static List<IndexHit> find(String material, String itemKey, int limit, int offset) throws SQLException {
+        List<IndexHit> hits = new ArrayList<>();
+        for (Database.Shard shard : Database.getShards()) {
+            try (Connection connection = shard.getConnection();
+                 PreparedStatement ps = connection.prepareStatement(
+                         "SELECT p.uuid, SUM(i.amount) AS amount FROM backpack_item_index i " +
+                         "JOIN backpack_players p ON p.player_id = i.owner " +
+                         "WHERE i.material = ? AND i.item_key = ? GROUP BY p.uuid ORDER BY amount DESC LIMIT ?")) {
+                ps.setString(1, material);
+                ps.setString(2, itemKey);
+                ps.setInt(3, offset + limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        hits.add(new IndexHit(UUID.fromString(rs.getString("uuid")), rs.getInt("amount")));
+                    }
+                }
+            }
+        }
+
+        hits.sort(Comparator.comparingInt(IndexHit::amount).reversed());
+        if (offset >= hits.size()) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(hits.subList(offset, Math.min(hits.size(), offset + limit)));
+    }
+
+    /**
+     * Rebuilds the index for every stored backpack in batches, pausing between batches
+     * to keep the load on the database low.
+     * This method blocks and should be called off the main thread.
+     *
+     * @return The number of backpack pages indexed, or -1 if a backfill is already running
+     */
+    public static int backfill() {
+        if (!backfillRunning.compareAndSet(false, true)) {
+            return -1;
+        }
+
+        int indexed = 0;
+        try {
+            for (Database.Shard shard : Database.getShards()) {
+                int lastOwner = 0;
+                int lastPage = -1;
+                while (true) {
+                    List<BackpackManager.WriteStamp> stamps = new ArrayList<>();
+                    List<StoredPage> batch;
+                    try {
+                        batch = readBatch(shard, lastOwner, lastPage, stamps);
+                        if (batch.isEmpty()) break;
+                        lastOwner = batch.get(batch.size() - 1).owner();
+                        lastPage = batch.get(batch.size() - 1).page();
+
+                        // Aggregated without holding a connection, so saves aren't stalled on a small pool
+                        List<Map<IndexKey, Integer>> totals = new ArrayList<>(batch.size());
+                        for (StoredPage stored : batch) {
+                            // Empty pages only clear their old entries, without deserializing anything
+                            totals.add(stored.view() == null || stored.view().isEmpty() ?
+                                    Map.of() : aggregate(stored.view().toArray()));
+                        }
+
+                        try (Connection connection = shard.getConnection()) {
+                            for (int i = 0; i < batch.size(); i++) {
+                                StoredPage stored = batch.get(i);
+                                Map<IndexKey, Integer> pageTotals = totals.get(i);
+                                // Pages saved or removed since they were read were indexed by that write
+                                if (stored.view() != null && BackpackManager.writeIfUnchanged(stored.stamp(),
+                                        () -> write(connection, stored.owner(), stored.page(), pageTotals))) {
+                                    indexed++;
+                                }
+                            }
+                        }
+                    } finally {
+                        stamps.forEach(BackpackManager::release);
+                    }
+
+                    if (batch.size() < BACKFILL_BATCH_SIZE) break;
+                    Thread.sleep(BACKFILL_PAUSE_MILLIS);
+                }
+                PLogger.info("Indexed backpacks on shard " + shard.getIndex() + ", " + indexed + " so far.");
+            }
+            indexedTotals.clear();
+        } catch (SQLException e) {
+            PLogger.severe("Item index backfill failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            backfillRunning.set(false);
+        }
+        return indexed;
+    }
+
+    /**
+     * Reads the next pages after the given one, in (owner, page) order. The write state of each
+     * page is noted before its contents are read, see {@link BackpackManager#stamp}.
+     *
+     * @param stamps Receives the noted write states, which the caller must release
+     * @return The pages, with a null view for pages removed before their contents were read
+     */
+    private static List<StoredPage> readBatch(Database.Shard shard, int lastOwner, int lastPage,
+                                              List<BackpackManager.WriteStamp> stamps) throws SQLException {
+        List<StoredPage> batch = new ArrayList<>();
+        try (Connection connection = shard.getConnection()) {
+            List<StoredPage> keys = new ArrayList<>();
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "SELECT b.owner, b.page, p.uuid FROM backpacks b " +
+                    "JOIN backpack_players p ON p.player_id = b.owner " +
+                    "WHERE b.owner > ? OR (b.owner = ? AND b.page > ?) ORDER BY b.owner, b.page LIMIT ?")) {
+                ps.setInt(1, lastOwner);
+                ps.setInt(2, lastOwner);
+                ps.setInt(3, lastPage);
+                ps.setInt(4, BACKFILL_BATCH_SIZE);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        BackpackManager.WriteStamp stamp = BackpackManager.stamp(UUID.fromString(rs.getString("uuid")), rs.getInt("page"));
+                        stamps.add(stamp);
+                        keys.add(new StoredPage(rs.getInt("owner"), rs.getInt("page"), stamp, null));
+                    }
+                }
+            }
+
+            try (PreparedStatement ps = connection.prepareStatement("SELECT itemstacks FROM backpacks WHERE owner = ? AND page = ?")) {
+                for (StoredPage key : keys) {
+                    ps.setInt(1, key.owner());
+                    ps.setInt(2, key.page());
+                    PayloadView view = null;
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) {
+                            String itemstacks = rs.getString("itemstacks");
+                            view = BackpackManager.SLOT_LAYOUT_MARKER.equals(itemstacks) ?
+                                    PayloadView.ofSlots(BackpackManager.readSlots(connection, key.owner(), key.page())) :
+                                    PayloadView.ofBlob(itemstacks);
+                        }
+                    }
+                    batch.add(new StoredPage(key.owner(), key.page(), key.stamp(), view));
+                }
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Copies a player's index rows to their new shard while the player is being rebalanced.
+     * They are removed from the source with {@link #deleteIndex} once the copy is committed.
+     *
+     * @param source The connection to the shard currently holding the rows
+     * @param sourceId The player's ID on the source shard
+     * @param target The connection to the player's new shard
+     * @param targetId The player's ID on the target shard
+     * @throws SQLException if a database error occurs
+     */
+    static void copyIndex(Connection source, int sourceId, Connection target, int targetId) throws SQLException {
+        Map<Integer, Map<IndexKey, Integer>> pages = new HashMap<>();
+        try (PreparedStatement ps = source.prepareStatement(
+                "SELECT page, material, item_key, amount FROM backpack_item_index WHERE owner = ?")) {
+            ps.setInt(1, sourceId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    pages.computeIfAbsent(rs.getInt("page"), page -> new HashMap<>())
+                            .put(new IndexKey(rs.getString("material"), rs.getString("item_key")), rs.getInt("amount"));
+                }
+            }
+        }
+
+        for (Map.Entry<Integer, Map<IndexKey, Integer>> entry : pages.entrySet()) {
+            write(target, targetId, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Removes a player's index rows from the shard they were moved away from.
+     *
+     * @param source The connection to the shard the player was moved away from
+     * @param sourceId The player's ID on that shard
+     * @throws SQLException if a database error occurs
+     */
+    static void deleteIndex(Connection source, int sourceId) throws SQLException {
+        try (PreparedStatement ps = source.prepareStatement("DELETE FROM backpack_item_index WHERE owner = ?")) {
+            ps.setInt(1, sourceId);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Removes the index rows of a backpack page that was removed from storage.
+     *
+     * @param connection The connection to the player's shard
+     * @param playerId The player's ID on that shard
+     * @param page The removed page
+     * @throws SQLException if a database error occurs
+     */
+    static void remove(Connection connection, int playerId, BackpackManager.PageKey page) throws SQLException {
+        indexedTotals.remove(page);
+        try (PreparedStatement ps = connection.prepareStatement("DELETE FROM backpack_item_index WHERE owner = ? AND page = ?")) {
+            ps.setInt(1, playerId);
+            ps.setInt(2, page.page());
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Drops the remembered index state of a backpack page that is no longer cached.
+     *
+     * @param page The page that was evicted
+     */
+    static void forget(BackpackManager.PageKey page) {
+        indexedTotals.remove(page);
+    }
+
+    /**
+     * @return true if a backfill is currently in progress
+     */
+    public static boolean isBackfillRunning() {
+        return backfillRunning.get();
+    }
+
+    /**
+     * Sums up the amount of every material and key found in the given items, including shulker box contents.
+     *
+     * @param items The items to index
+     * @return The total amount per index key
+     */
+    static Map<IndexKey, Integer> aggregate(ItemStack[] items) {
+        Map<IndexKey, Integer> totals = new HashMap<>();
+        for (ItemStack item : items) {
+            add(totals, item, true);
+        }
+        return totals;
+    }
+
+    private static void add(Map<IndexKey, Integer> totals, ItemStack item, boolean openContainers) {
+        if (item == null || item.getType().isAir()) return;
+
+        String material = item.getType().name();
+        int amount = item.getAmount();
+        totals.merge(new IndexKey(material, ""), amount, Integer::sum);
+
+        if (!item.hasItemMeta()) return;
+        ItemMeta meta = item.getItemMeta();
+
+        if (meta.hasCustomModelData()) {
+            totals.merge(new IndexKey(material, "cmd:" + meta.getCustomModelData()), amount, Integer::sum);
+        }
+        for (Enchantment enchantment : meta.getEnchants().keySet()) {
+            totals.merge(new IndexKey(material, "ench:" + enchantment.getKey().asString()), amount, Integer::sum);
+        }
+        if (meta instanceof EnchantmentStorageMeta storageMeta && storageMeta.hasStoredEnchants()) {
+            for (Enchantment enchantment : storageMeta.getStoredEnchants().keySet()) {
+                totals.merge(new IndexKey(material, "ench:" + enchantment.getKey().asString()), amount, Integer::sum);
+            }
+        }
+        if (openContainers && meta instanceof BlockStateMeta blockStateMeta && blockStateMeta.hasBlockState()
+                && blockStateMeta.getBlockState() instanceof ShulkerBox shulkerBox) {
+            for (ItemStack content : shulkerBox.getInventory().getContents()) {
+                add(totals, content, false);
+            }
+        }
+    }
+
+    private static void write(Connection connection, int playerId, int page, Map<IndexKey, Integer> totals) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            try (PreparedStatement ps = connection.prepareStatement("DELETE FROM backpack_item_index WHERE owner = ? AND page = ?")) {
+                ps.setInt(1, playerId);
+                ps.setInt(2, page);
+                ps.executeUpdate();
+            }
+
+            if (!totals.isEmpty()) {
+                try (PreparedStatement ps = connection.prepareStatement(
+                        "INSERT INTO backpack_item_index (owner, page, material, item_key, amount) VALUES (?, ?, ?, ?, ?)")) {
+                    for (Map.Entry<IndexKey, Integer> entry : totals.entrySet()) {
+                        ps.setInt(1, playerId);
+                        ps.setInt(2, page);
+                        ps.setString(3, entry.getKey().material());
+                        ps.setString(4, entry.getKey().itemKey());
+                        ps.setInt(5, entry.getValue());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+            if (autoCommit) connection.commit(); // Otherwise part of the caller's transaction
+        } catch (SQLException e) {
+            if (autoCommit) connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    record IndexKey(String material, String itemKey) {
+    }
+
+    private record StoredPage(int owner, int page, BackpackManager.WriteStamp stamp, PayloadView view) {
+    }
+
+    /**
+     * A backpack that contains the searched item.
+     *
+     * @param owner The UUID of the backpack owner
+     * @param amount The total amount held over all pages, including shulker box contents
+     */
+    public record IndexHit(UUID owner, int amount) {
+    }
+}
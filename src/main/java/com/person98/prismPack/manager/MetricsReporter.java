@@ -0,0 +1,193 @@
+package com.person98.prismPack.manager;
+
+import com.person98.prismPack.PrismPack;
+import com.person98.prismPack.manager.ui.BackpackAutosave;
+import com.person98.prismPack.manager.ui.SessionRegistry;
+import com.person98.prismPack.util.Metrics;
+import com.person98.prismPack.util.PLogger;
+import com.person98.prismPack.util.TaskScheduler;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Publishes the plugin's {@link Metrics}: registers the gauges that are read from the managers,
+ * exposes every metric as a read-only JMX attribute and optionally appends all values to a local
+ * file at a fixed interval. Nothing is computed until a metric is read.
+ */
+public class MetricsReporter {
+
+    private static final String OBJECT_NAME = "com.person98.prismPack:type=Metrics";
+    private static TaskScheduler.Task dumpTask;
+
+    /**
+     * Registers the gauges and the MBean and starts the periodic dump if configured.
+     */
+    public static void start() {
+        Metrics.setEnabled(ConfigManager.getInstance().isMetricsEnabled());
+        registerGauges();
+        registerMBean();
+        scheduleDump();
+    }
+
+    /**
+     * Applies changed metric settings after the config was reloaded.
+     */
+    public static void reload() {
+        Metrics.setEnabled(ConfigManager.getInstance().isMetricsEnabled());
+        scheduleDump();
+    }
+
+    /**
+     * Stops the periodic dump and removes the MBean.
+     */
+    public static void stop() {
+        if (dumpTask != null) {
+            dumpTask.cancel();
+            dumpTask = null;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            PLogger.warning("Failed to unregister the metrics MBean: " + e);
+        }
+    }
+
+    private static void registerGauges() {
+        Metrics.registerGauge("cache_pages", BackpackManager::getCachedPageCount);
+        Metrics.registerGauge("cache_pinned_owners", BackpackManager::getPinnedOwnerCount);
+        Metrics.registerGauge("open_sessions", SessionRegistry::getSessionCount);
+        Metrics.registerGauge("autosave_pending", BackpackAutosave::getPendingCount);
+        Metrics.registerGauge("rejected_cold_loads", ActionLimiter::getRejectedColdLoads);
+        for (ActionLimiter.Action action : ActionLimiter.Action.values()) {
+            Metrics.registerGauge("rejected_" + Metrics.name(action), () -> ActionLimiter.getRejected(action));
+        }
+
+        for (Database.Shard shard : Database.getShards()) {
+            String prefix = "pool_" + shard.getIndex() + "_";
+            Metrics.registerGauge(prefix + "active", () -> shard.getPoolStats().getActiveConnections());
+            Metrics.registerGauge(prefix + "idle", () -> shard.getPoolStats().getIdleConnections());
+            Metrics.registerGauge(prefix + "total", () -> shard.getPoolStats().getTotalConnections());
+            Metrics.registerGauge(prefix + "waiting", () -> shard.getPoolStats().getThreadsAwaitingConnection());
+            Metrics.registerGauge(prefix + "max", shard::getMaximumPoolSize);
+        }
+    }
+
+    private static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsMBean(), name);
+            }
+        } catch (Exception e) {
+            PLogger.warning("Failed to register the metrics MBean: " + e);
+        }
+    }
+
+    private static void scheduleDump() {
+        if (dumpTask != null) {
+            dumpTask.cancel();
+            dumpTask = null;
+        }
+
+        ConfigManager config = ConfigManager.getInstance();
+        long intervalTicks = 20L * 60 * config.getMetricsDumpInterval();
+        if (intervalTicks <= 0) return;
+
+        File file = new File(PrismPack.getInstance().getDataFolder(), config.getMetricsDumpFile());
+        dumpTask = TaskScheduler.runAsyncTimer(() -> dump(file), intervalTicks, intervalTicks);
+    }
+
+    /**
+     * Appends one line with the current value of every metric to the dump file.
+     */
+    private static void dump(File file) {
+        StringBuilder line = new StringBuilder(Instant.now().toString());
+        for (Map.Entry<String, Long> entry : Metrics.toMap().entrySet()) {
+            line.append(' ').append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        line.append(System.lineSeparator());
+
+        try {
+            Files.writeString(file.toPath(), line, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            PLogger.warning("Failed to write metrics to " + file.getName() + ": " + e);
+        }
+    }
+
+    /**
+     * Exposes every metric of {@link Metrics#toMap()} as a read-only attribute.
+     */
+    private static class MetricsMBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Long value = Metrics.toMap().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Long> values = Metrics.toMap();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                Long value = values.get(attribute);
+                if (value != null) {
+                    list.add(new Attribute(attribute, value));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            Map<String, Long> values = Metrics.toMap();
+            MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+            int i = 0;
+            for (String name : values.keySet()) {
+                attributes[i++] = new MBeanAttributeInfo(name, Long.class.getName(), name, true, false, false);
+            }
+            return new MBeanInfo(getClass().getName(), "PrismPack metrics, durations in microseconds",
+                    attributes, null, null, null);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.person98.prismPack.manager;
+
+import com.person98.prismPack.util.TaskScheduler;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Runs tasks that read a player's backpack off the main thread and change it on the main thread
+ * afterwards one at a time, in the order they were submitted. Without this, two such tasks could
+ * both start from the same contents and the second would undo the first.
+ * <p>
+ * Every owner has their own lane, so tasks for different players still run in parallel.
+ * Lanes only exist while tasks are queued.
+ */
+public class OwnerLanes {
+
+    private static final Map<UUID, CompletableFuture<Void>> lanes = new ConcurrentHashMap<>();
+
+    /**
+     * Runs a task in the owner's lane. The task starts on an async thread once the previous task
+     * for the same owner has completed, and the lane is held until the future it returns completes.
+     *
+     * @param owner The UUID of the backpack owner
+     * @param task The task, returning a future that completes once the task is done
+     * @return Completes with the task's result, or exceptionally if the task failed
+     */
+    public static <T> CompletableFuture<T> submit(UUID owner, Supplier<CompletableFuture<T>> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture<Void> done = result.handle((value, error) -> null);
+        lanes.compute(owner, (key, previous) -> {
+            CompletableFuture<Void> ready = previous != null ? previous : CompletableFuture.completedFuture(null);
+            ready.thenRun(() -> TaskScheduler.runAsync(() -> {
+                try {
+                    task.get().whenComplete((value, error) -> {
+                        if (error != null) {
+                            result.completeExceptionally(error);
+                        } else {
+                            result.complete(value);
+                        }
+                    });
+                } catch (CompletionException e) {
+                    result.completeExceptionally(e.getCause());
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }));
+            return done;
+        });
+        done.thenRun(() -> lanes.remove(owner, done));
+        return result;
+    }
+}
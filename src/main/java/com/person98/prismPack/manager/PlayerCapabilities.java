@@ -0,0 +1,98 @@
+package com.person98.prismPack.manager;
+
+import org.bukkit.entity.Player;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches what each online player is allowed to do with backpacks.
+ * Permission checks can be expensive with large permission trees, so they are resolved once
+ * into a {@link Snapshot} when a player joins and reused until their permissions change,
+ * they switch worlds, the config is reloaded or the configured refresh interval has passed.
+ */
+public class PlayerCapabilities {
+
+    private static final Map<UUID, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the capabilities of an online player, resolving them if they are not cached.
+     * Must be called on the main thread.
+     *
+     * @param player The player to get the capabilities for
+     * @return The player's capabilities
+     */
+    public static Snapshot get(Player player) {
+        long now = System.currentTimeMillis();
+        Snapshot snapshot = snapshots.get(player.getUniqueId());
+        if (snapshot == null || snapshot.isExpired(now)) {
+            snapshot = resolve(player, now);
+            snapshots.put(player.getUniqueId(), snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Drops the cached capabilities of a player so they are resolved again on next use.
+     * Safe to call from any thread.
+     *
+     * @param playerUUID The UUID of the player
+     */
+    public static void invalidate(UUID playerUUID) {
+        snapshots.remove(playerUUID);
+    }
+
+    /**
+     * Drops the cached capabilities of every player, e.g. after the config was reloaded.
+     */
+    public static void invalidateAll() {
+        snapshots.clear();
+    }
+
+    private static Snapshot resolve(Player player, long now) {
+        ConfigManager config = ConfigManager.getInstance();
+
+        int size = config.getDefaultSize();
+        for (ConfigManager.SizeTier tier : config.getSizeTiers()) {
+            if (player.hasPermission(tier.getPermission())) {
+                size = tier.getSize();
+                break;
+            }
+        }
+
+        int pages = 1;
+        for (int count = config.getMaxPages(); count > 1; count--) {
+            if (player.hasPermission("backpack.pages." + count)) {
+                pages = count;
+                break;
+            }
+        }
+
+        long expiresAt = config.getCapabilityRefreshInterval() > 0
+                ? now + config.getCapabilityRefreshInterval() * 1000L
+                : Long.MAX_VALUE;
+        return new Snapshot(size, pages,
+                player.hasPermission("backpack.noCooldown"),
+                player.hasPermission("backpack.keepOnDeath"),
+                player.hasPermission("backpack.others.edit"),
+                expiresAt);
+    }
+
+    /**
+     * The resolved backpack permissions of a player.
+     *
+     * @param size The number of slots of each backpack page
+     * @param pages The number of pages the player can use
+     * @param noCooldown Whether the open cooldown is bypassed
+     * @param keepOnDeath Whether the backpack is kept on death
+     * @param editOthers Whether other players' backpacks may be edited
+     * @param expiresAt When the snapshot has to be resolved again, in epoch millis
+     */
+    public record Snapshot(int size, int pages, boolean noCooldown, boolean keepOnDeath, boolean editOthers,
+                           long expiresAt) {
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.person98.prismPack.manager;
+
+import com.person98.prismPack.util.PLogger;
+import com.person98.prismPack.util.TaskScheduler;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Resolves player names to UUIDs without touching Mojang's profile service.
+ * The last known name of every player is stored in backpack_players and mirrored
+ * in a sorted in-memory map, so lookups and tab completion never block the main thread.
+ */
+public class PlayerNameIndex {
+
+    private static final int LOAD_BATCH_SIZE = 1000;
+    private static final int MAX_COMPLETIONS = 50;
+
+    private static final ConcurrentSkipListMap<String, NameEntry> byName = new ConcurrentSkipListMap<>();
+    private static final Map<UUID, String> byUUID = new ConcurrentHashMap<>();
+
+    /**
+     * Loads every stored name from all shards into memory.
+     * This method blocks and should be called off the main thread.
+     */
+    public static void load() {
+        int loaded = 0;
+        for (Database.Shard shard : Database.getShards()) {
+            int lastId = 0;
+            while (true) {
+                int read = 0;
+                try (Connection connection = shard.getConnection();
+                     PreparedStatement ps = connection.prepareStatement(
+                             "SELECT player_id, uuid, name FROM backpack_players " +
+                                     "WHERE player_id > ? AND name IS NOT NULL ORDER BY player_id LIMIT ?")) {
+                    ps.setInt(1, lastId);
+                    ps.setInt(2, LOAD_BATCH_SIZE);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            read++;
+                            lastId = rs.getInt("player_id");
+                            UUID playerUUID = UUID.fromString(rs.getString("uuid"));
+                            // A player who joined while loading already has a fresher entry
+                            if (!byUUID.containsKey(playerUUID)) {
+                                put(playerUUID, rs.getString("name"));
+                            }
+                        }
+                    }
+                } catch (SQLException e) {
+                    PLogger.severe("Failed to load player names from shard " + shard.getIndex(), e);
+                    break;
+                }
+                loaded += read;
+                if (read < LOAD_BATCH_SIZE) break;
+            }
+        }
+        PLogger.info("Loaded " + loaded + " player names.");
+    }
+
+    /**
+     * Records a player's current name in memory and, asynchronously, in storage.
+     * Any other player who previously held the same name loses it.
+     *
+     * @param playerUUID The UUID of the player
+     * @param name The player's current name
+     */
+    public static void update(UUID playerUUID, String name) {
+        if (name.equals(getName(playerUUID))) {
+            return;
+        }
+        put(playerUUID, name);
+
+        TaskScheduler.runAsync(() -> {
+            String lowerName = name.toLowerCase(Locale.ROOT);
+            try {
+                for (Database.Shard shard : Database.getShards()) {
+                    try (Connection connection = shard.getConnection();
+                         PreparedStatement ps = connection.prepareStatement(
+                                 "UPDATE backpack_players SET name = NULL, name_lower = NULL WHERE name_lower = ? AND uuid <> ?")) {
+                        ps.setString(1, lowerName);
+                        ps.setString(2, playerUUID.toString());
+                        ps.executeUpdate();
+                    }
+                }
+
+                try (Connection connection = Database.getConnection(playerUUID)) {
+                    int playerId = BackpackManager.getOrCreatePlayerId(connection, playerUUID);
+                    writeName(connection, playerId, name);
+                }
+            } catch (SQLException e) {
+                PLogger.severe("Failed to store the name of " + name, e);
+            }
+        });
+    }
+
+    /**
+     * Resolves a name to the player who last used it.
+     * Memory is checked first; on a miss the shards are queried off the main thread,
+     * falling back to the server's own profile cache. The server is never asked to
+     * look a profile up remotely.
+     *
+     * @param name The name to resolve, case-insensitive
+     * @return A future completing with the entry, or null if nobody is known by that name
+     */
+    public static CompletableFuture<NameEntry> resolve(String name) {
+        NameEntry cached = byName.get(name.toLowerCase(Locale.ROOT));
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<NameEntry> future = new CompletableFuture<>();
+        TaskScheduler.runAsync(() -> {
+            try {
+                NameEntry entry = query(name);
+                if (entry == null) {
+                    OfflinePlayer cachedPlayer = Bukkit.getOfflinePlayerIfCached(name);
+                    if (cachedPlayer != null && cachedPlayer.getName() != null) {
+                        entry = new NameEntry(cachedPlayer.getUniqueId(), cachedPlayer.getName());
+                    }
+                }
+                future.complete(entry);
+            } catch (SQLException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Lists known names starting with the given prefix, for tab completion.
+     *
+     * @param prefix The typed prefix, case-insensitive
+     * @return Up to 50 matching names in alphabetical order
+     */
+    public static List<String> complete(String prefix) {
+        String lowerPrefix = prefix.toLowerCase(Locale.ROOT);
+        List<String> names = new ArrayList<>();
+        for (Map.Entry<String, NameEntry> entry : byName.tailMap(lowerPrefix).entrySet()) {
+            if (names.size() >= MAX_COMPLETIONS || !entry.getKey().startsWith(lowerPrefix)) break;
+            names.add(entry.getValue().name());
+        }
+        return names;
+    }
+
+    /**
+     * Returns the last known name of a player.
+     *
+     * @param playerUUID The UUID of the player
+     * @return The name, or null if the player is unknown
+     */
+    public static String getName(UUID playerUUID) {
+        String lowerName = byUUID.get(playerUUID);
+        if (lowerName == null) return null;
+
+        NameEntry entry = byName.get(lowerName);
+        return entry != null && entry.uuid().equals(playerUUID) ? entry.name() : null;
+    }
+
+    /**
+     * Copies a player's stored name between shards. Used when rows are moved by the rebalancer.
+     *
+     * @param sourceConnection Connection to the shard holding the name
+     * @param sourceId The player ID on the source shard
+     * @param targetConnection Connection to the destination shard
+     * @param targetId The player ID on the destination shard
+     * @throws SQLException if a database error occurs
+     */
+    static void moveName(Connection sourceConnection, int sourceId, Connection targetConnection, int targetId) throws SQLException {
+        String name = null;
+        try (PreparedStatement ps = sourceConnection.prepareStatement("SELECT name FROM backpack_players WHERE player_id = ?")) {
+            ps.setInt(1, sourceId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    name = rs.getString("name");
+                }
+            }
+        }
+        if (name != null) {
+            writeName(targetConnection, targetId, name);
+        }
+    }
+
+    private static NameEntry query(String name) throws SQLException {
+        String lowerName = name.toLowerCase(Locale.ROOT);
+        for (Database.Shard shard : Database.getShards()) {
+            try (Connection connection = shard.getConnection();
+                 PreparedStatement ps = connection.prepareStatement(
+                         "SELECT uuid, name FROM backpack_players WHERE name_lower = ?")) {
+                ps.setString(1, lowerName);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        UUID playerUUID = UUID.fromString(rs.getString("uuid"));
+                        String storedName = rs.getString("name");
+                        if (!byUUID.containsKey(playerUUID)) {
+                            put(playerUUID, storedName);
+                        }
+                        return new NameEntry(playerUUID, storedName);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void writeName(Connection connection, int playerId, String name) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "UPDATE backpack_players SET name = ?, name_lower = ? WHERE player_id = ?")) {
+            ps.setString(1, name);
+            ps.setString(2, name.toLowerCase(Locale.ROOT));
+            ps.setInt(3, playerId);
+            ps.executeUpdate();
+        }
+    }
+
+    private static synchronized void put(UUID playerUUID, String name) {
+        String lowerName = name.toLowerCase(Locale.ROOT);
+        String previous = byUUID.put(playerUUID, lowerName);
+        if (previous != null && !previous.equals(lowerName)) {
+            NameEntry stale = byName.get(previous);
+            if (stale != null && stale.uuid().equals(playerUUID)) {
+                byName.remove(previous, stale);
+            }
+        }
+
+        NameEntry displaced = byName.put(lowerName, new NameEntry(playerUUID, name));
+        if (displaced != null && !displaced.uuid().equals(playerUUID)) {
+            byUUID.remove(displaced.uuid(), lowerName);
+        }
+    }
+
+    /**
+     * A known player name.
+     *
+     * @param uuid The UUID of the player
+     * @param name The name with its original capitalisation
+     */
+    public record NameEntry(UUID uuid, String name) {
+    }
+}
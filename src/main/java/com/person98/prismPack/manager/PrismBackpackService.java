@@ -0,0 +1,149 @@
+package com.person98.prismPack.manager;
+
+import com.person98.prismPack.api.BackpackChange;
+import com.person98.prismPack.api.BackpackService;
+import com.person98.prismPack.api.event.BackpackModifyEvent;
+import com.person98.prismPack.manager.ui.SessionRegistry;
+import com.person98.prismPack.util.TaskScheduler;
+import org.bukkit.Bukkit;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * The {@link BackpackService} registered for other plugins.
+ * <p>
+ * Every call is queued in the owner's {@link OwnerLanes lane}: a call only starts once the previous
+ * call for the same owner has finished, including the main thread part of {@link #modifyPage}.
+ */
+public class PrismBackpackService implements BackpackService {
+
+    private static final ItemStack[] EMPTY_PAGE = new ItemStack[0];
+
+    @Override
+    public boolean isReady() {
+        return Database.isReady();
+    }
+
+    @Override
+    public CompletableFuture<ItemStack[]> getPage(UUID owner, int page) {
+        return submit(owner, () -> CompletableFuture.completedFuture(copy(load(owner, page))));
+    }
+
+    @Override
+    public CompletableFuture<Map<UUID, List<ItemStack[]>>> getBackpacks(Collection<UUID> owners) {
+        Map<UUID, CompletableFuture<List<ItemStack[]>>> reads = new LinkedHashMap<>();
+        for (UUID owner : new LinkedHashSet<>(owners)) {
+            reads.put(owner, submit(owner, () -> CompletableFuture.completedFuture(readAll(owner))));
+        }
+
+        return CompletableFuture.allOf(reads.values().toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            Map<UUID, List<ItemStack[]>> backpacks = new LinkedHashMap<>();
+            reads.forEach((owner, read) -> backpacks.put(owner, read.join()));
+            return backpacks;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> modifyPage(Plugin plugin, UUID owner, int page, PageModifier modifier) {
+        Objects.requireNonNull(modifier, "modifier");
+        return submit(owner, () -> {
+            // Read off the main thread, and fail rather than overwrite a page that couldn't be read
+            Inventory loaded = load(owner, page);
+
+            CompletableFuture<Boolean> modified = new CompletableFuture<>();
+            TaskScheduler.runGlobal(() -> {
+                try {
+                    modified.complete(modify(plugin, owner, page, loaded, modifier));
+                } catch (RuntimeException e) {
+                    modified.completeExceptionally(e);
+                }
+            });
+            return modified;
+        });
+    }
+
+    @Override
+    public Subscription subscribe(Consumer<BackpackChange> listener) {
+        return BackpackEvents.subscribe(null, Objects.requireNonNull(listener, "listener"));
+    }
+
+    @Override
+    public Subscription subscribe(UUID owner, Consumer<BackpackChange> listener) {
+        return BackpackEvents.subscribe(Objects.requireNonNull(owner, "owner"), Objects.requireNonNull(listener, "listener"));
+    }
+
+    /**
+     * Applies a change on the main thread. Open pages of the owner are closed first, which saves
+     * and caches them, so the change starts from what the player last saw.
+     */
+    private static boolean modify(Plugin plugin, UUID owner, int page, Inventory loaded, PageModifier modifier) {
+        SessionRegistry.closeSessions(owner);
+
+        Inventory cached = BackpackManager.getCachedPage(owner, page);
+        Inventory stored = cached != null ? cached : loaded;
+        ItemStack[] contents = stored != null ? copy(stored) : new ItemStack[BackpackManager.PAGE_SLOTS];
+        if (!modifier.modify(contents)) return false;
+
+        BackpackModifyEvent event = new BackpackModifyEvent(plugin, owner, page, contents);
+        if (!event.callEvent()) return false;
+
+        Inventory inventory = Bukkit.createInventory(null, contents.length);
+        inventory.setContents(contents);
+        BackpackManager.saveInventory(owner, page, inventory);
+        return true;
+    }
+
+    private static List<ItemStack[]> readAll(UUID owner) {
+        int pages = BackpackManager.getStoredPageCount(owner);
+        List<ItemStack[]> contents = new ArrayList<>(pages);
+        for (int page = 0; page < pages; page++) {
+            contents.add(copy(load(owner, page)));
+        }
+        return contents;
+    }
+
+    private static Inventory load(UUID owner, int page) {
+        try {
+            return BackpackManager.loadInventoryChecked(owner, page);
+        } catch (SQLException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Runs a call in the owner's lane, see {@link OwnerLanes}.
+     */
+    private static <T> CompletableFuture<T> submit(UUID owner, Supplier<CompletableFuture<T>> call) {
+        if (!Database.isReady()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("The backpack storage is not ready"));
+        }
+        return OwnerLanes.submit(owner, call);
+    }
+
+    private static ItemStack[] copy(Inventory inventory) {
+        if (inventory == null) return EMPTY_PAGE.clone();
+
+        ItemStack[] contents = inventory.getContents();
+        for (int slot = 0; slot < contents.length; slot++) {
+            if (contents[slot] != null) {
+                contents[slot] = contents[slot].clone();
+            }
+        }
+        return contents;
+    }
+}
@@ -0,0 +1,230 @@
+package com.person98.prismPack.manager;
+
+import com.person98.prismPack.util.PLogger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Moves backpack rows to the shard their owner is routed to.
+ * This is needed after shards have been appended to the config, since some players
+ * are then routed to a new shard while their data still lives on the old one.
+ */
+public class ShardRebalancer {
+
+    private static final int BATCH_SIZE = 500;
+    private static final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * Walks every shard and moves all rows that belong to a different shard.
+     * This method blocks and should be called off the main thread.
+     *
+     * @return The number of players that were moved, or -1 if a rebalance is already running
+     */
+    public static int rebalance() {
+        if (!running.compareAndSet(false, true)) {
+            return -1;
+        }
+
+        int moved = 0;
+        try {
+            List<Database.Shard> shards = Database.getShards();
+            for (Database.Shard shard : shards) {
+                int lastId = 0;
+                List<UUID> misplaced = new ArrayList<>();
+
+                while (true) {
+                    int read = 0;
+                    try (Connection connection = shard.getConnection();
+                         PreparedStatement ps = connection.prepareStatement(
+                                 "SELECT player_id, uuid FROM backpack_players WHERE player_id > ? ORDER BY player_id LIMIT ?")) {
+                        ps.setInt(1, lastId);
+                        ps.setInt(2, BATCH_SIZE);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                read++;
+                                lastId = rs.getInt("player_id");
+                                UUID playerUUID = UUID.fromString(rs.getString("uuid"));
+                                if (Database.getShardIndex(playerUUID, shards.size()) != shard.getIndex()) {
+                                    misplaced.add(playerUUID);
+                                }
+                            }
+                        }
+                    }
+
+                    for (UUID playerUUID : misplaced) {
+                        if (moveRow(playerUUID, shard, Database.getShard(playerUUID))) {
+                            moved++;
+                        }
+                    }
+                    misplaced.clear();
+
+                    if (read < BATCH_SIZE) break;
+                }
+                PLogger.info("Rebalanced shard " + shard.getIndex() + ", " + moved + " players moved so far.");
+            }
+        } catch (SQLException e) {
+            PLogger.severe("Shard rebalance failed", e);
+        } finally {
+            running.set(false);
+        }
+        return moved;
+    }
+
+    /**
+     * Looks for a player's backpack on every shard except their current one and
+     * moves it over if found. Used when the owning shard has nothing for the player yet.
+     *
+     * @param playerUUID The UUID of the player
+     * @return true if a backpack was moved to the player's shard
+     * @throws SQLException if a database error occurs
+     */
+    static boolean migratePlayer(UUID playerUUID) throws SQLException {
+        Database.Shard target = Database.getShard(playerUUID);
+        for (Database.Shard shard : Database.getShards()) {
+            if (shard == target) continue;
+
+            if (moveRow(playerUUID, shard, target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies a player's backpack, history, index entries and name from one shard to another and then
+     * removes them from the source. Everything is written to the target in one transaction, and only
+     * once that is committed removed from the source in another, so a failure never loses data and
+     * the move is simply repeated later. Each page only overwrites the target if the source row is
+     * newer, so running this twice is harmless.
+     *
+     * @param playerUUID The UUID of the player
+     * @param source The shard currently holding the row
+     * @param target The shard the player is routed to
+     * @return true if the source had a backpack for the player
+     * @throws SQLException if a database error occurs
+     */
+    private static boolean moveRow(UUID playerUUID, Database.Shard source, Database.Shard target) throws SQLException {
+        try (Connection sourceConnection = source.getConnection();
+             Connection targetConnection = target.getConnection()) {
+            int sourceId = BackpackManager.getPlayerId(sourceConnection, playerUUID);
+            if (sourceId == -1) return false;
+
+            Map<Integer, BackpackRow> sourceRows = readRows(sourceConnection, sourceId);
+
+            boolean autoCommit = targetConnection.getAutoCommit();
+            targetConnection.setAutoCommit(false);
+            try {
+                copyToTarget(playerUUID, source, sourceConnection, sourceId, sourceRows, target, targetConnection);
+                targetConnection.commit();
+            } catch (SQLException e) {
+                targetConnection.rollback();
+                throw e;
+            } finally {
+                targetConnection.setAutoCommit(autoCommit);
+            }
+
+            autoCommit = sourceConnection.getAutoCommit();
+            sourceConnection.setAutoCommit(false);
+            try {
+                deleteFromSource(sourceConnection, sourceId);
+                sourceConnection.commit();
+            } catch (SQLException e) {
+                sourceConnection.rollback();
+                throw e;
+            } finally {
+                sourceConnection.setAutoCommit(autoCommit);
+            }
+            return !sourceRows.isEmpty();
+        }
+    }
+
+    /**
+     * Writes everything the source holds for a player to the target, within the caller's transaction.
+     */
+    private static void copyToTarget(UUID playerUUID, Database.Shard source, Connection sourceConnection, int sourceId,
+                                     Map<Integer, BackpackRow> sourceRows, Database.Shard target,
+                                     Connection targetConnection) throws SQLException {
+        int targetId = BackpackManager.getOrCreatePlayerId(targetConnection, playerUUID);
+        Map<Integer, BackpackRow> targetRows = readRows(targetConnection, targetId);
+
+        for (Map.Entry<Integer, BackpackRow> entry : sourceRows.entrySet()) {
+            int page = entry.getKey();
+            BackpackRow sourceRow = entry.getValue();
+            BackpackRow targetRow = targetRows.get(page);
+            if (targetRow != null && !isNewer(sourceRow.lastUpdate(), targetRow.lastUpdate())) continue;
+
+            Timestamp lastUpdate = sourceRow.lastUpdate() != null ?
+                    sourceRow.lastUpdate() : new Timestamp(System.currentTimeMillis());
+            if (BackpackManager.SLOT_LAYOUT_MARKER.equals(sourceRow.itemstacks())) {
+                String[] payloads = BackpackManager.readSlots(sourceConnection, sourceId, page);
+                BackpackManager.writeSlots(targetConnection, target, targetId, page, null, payloads, lastUpdate);
+            } else {
+                BackpackManager.writeBackpack(targetConnection, target, targetId, page, sourceRow.itemstacks(), lastUpdate);
+            }
+        }
+
+        // History and index rows can outlive the pages, e.g. after every page was removed
+        HistoryManager.copyHistory(sourceConnection, source, sourceId, targetConnection, target, targetId, playerUUID);
+        ItemIndexManager.copyIndex(sourceConnection, sourceId, targetConnection, targetId);
+        PlayerNameIndex.moveName(sourceConnection, sourceId, targetConnection, targetId);
+    }
+
+    /**
+     * Removes every row of a player from the shard they were moved away from, within the caller's transaction.
+     */
+    private static void deleteFromSource(Connection sourceConnection, int sourceId) throws SQLException {
+        try (PreparedStatement ps = sourceConnection.prepareStatement("DELETE FROM backpack_slots WHERE owner = ?")) {
+            ps.setInt(1, sourceId);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = sourceConnection.prepareStatement("DELETE FROM backpacks WHERE owner = ?")) {
+            ps.setInt(1, sourceId);
+            ps.executeUpdate();
+        }
+        HistoryManager.deleteHistory(sourceConnection, sourceId);
+        ItemIndexManager.deleteIndex(sourceConnection, sourceId);
+        try (PreparedStatement ps = sourceConnection.prepareStatement("DELETE FROM backpack_players WHERE player_id = ?")) {
+            ps.setInt(1, sourceId);
+            ps.executeUpdate();
+        }
+    }
+
+    private static Map<Integer, BackpackRow> readRows(Connection connection, int playerId) throws SQLException {
+        Map<Integer, BackpackRow> rows = new HashMap<>();
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT page, itemstacks, lastupdate FROM backpacks WHERE owner = ?")) {
+            ps.setInt(1, playerId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.put(rs.getInt("page"), new BackpackRow(rs.getString("itemstacks"), rs.getTimestamp("lastupdate")));
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static boolean isNewer(Timestamp candidate, Timestamp existing) {
+        if (existing == null) return true;
+        return candidate != null && candidate.after(existing);
+    }
+
+    /**
+     * @return true if a rebalance is currently in progress
+     */
+    public static boolean isRunning() {
+        return running.get();
+    }
+
+    private record BackpackRow(String itemstacks, Timestamp lastUpdate) {
+    }
+}
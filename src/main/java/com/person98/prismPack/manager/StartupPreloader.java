@@ -0,0 +1,90 @@
+package com.person98.prismPack.manager;
+
+import com.person98.prismPack.PrismPack;
+import com.person98.prismPack.util.PLogger;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Remembers who was online when the server stopped and loads their backpacks into the cache
+ * once the storage is ready after the next start, before most of them have reconnected.
+ * Preloaded pages are not pinned, so backpacks of players who don't come back expire normally.
+ */
+public class StartupPreloader {
+
+    private static final String FILE_NAME = "last-online.txt";
+
+    /**
+     * Writes the UUIDs of the online players to the data folder.
+     * Called when the plugin is disabled, which happens before players are kicked on shutdown.
+     */
+    public static void saveOnlinePlayers() {
+        List<String> lines = new ArrayList<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            lines.add(player.getUniqueId().toString());
+        }
+
+        try {
+            Files.write(getFile().toPath(), lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            PLogger.warning("Failed to remember the online players: " + e);
+        }
+    }
+
+    /**
+     * Loads the backpacks of the players that were online at the last shutdown, up to the configured limit.
+     * Players who are online again already have their backpack prefetched and are skipped.
+     * This method blocks and must be called off the main thread.
+     */
+    public static void preload() {
+        ConfigManager config = ConfigManager.getInstance();
+        File file = getFile();
+        if (!config.isPreloadLastOnline() || !file.exists()) return;
+
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            PLogger.warning("Failed to read the players online at the last shutdown: " + e);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        int limit = config.getPreloadLimit() > 0 ? config.getPreloadLimit() : Integer.MAX_VALUE;
+        int preloaded = 0;
+        for (String line : lines) {
+            if (preloaded >= limit) break;
+
+            UUID playerUUID;
+            try {
+                playerUUID = UUID.fromString(line.trim());
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            if (BackpackManager.getCachedPages(playerUUID) != null) continue;
+
+            int pages = BackpackManager.getStoredPageCount(playerUUID);
+            for (int page = 0; page < pages; page++) {
+                BackpackManager.loadInventory(playerUUID, page);
+            }
+            preloaded++;
+        }
+
+        if (preloaded > 0) {
+            PLogger.info("Preloaded the backpacks of " + preloaded + " players online at the last shutdown in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    private static File getFile() {
+        return new File(PrismPack.getInstance().getDataFolder(), FILE_NAME);
+    }
+}
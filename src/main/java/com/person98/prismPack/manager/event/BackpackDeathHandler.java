@@ -3,8 +3,17 @@ package com.person98.prismPack.manager.event;
 
 import com.person98.prismPack.PrismPack;
 import com.person98.prismPack.manager.BackpackManager;
+import com.person98.prismPack.manager.ConfigManager;
+import com.person98.prismPack.manager.Database;
+import com.person98.prismPack.manager.OwnerLanes;
+import com.person98.prismPack.manager.PlayerCapabilities;
+import com.person98.prismPack.manager.ui.SessionRegistry;
+import com.person98.prismPack.util.PLogger;
+import com.person98.prismPack.util.PayloadView;
+import com.person98.prismPack.util.TaskScheduler;
 import org.bukkit.Bukkit;
 import org.bukkit.GameRule;
+import org.bukkit.Location;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
@@ -12,10 +21,20 @@ import org.bukkit.event.entity.PlayerDeathEvent;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Handles the behavior of backpack contents when a player dies.
  * This class manages whether backpack items are kept or dropped based on
- * game rules and permissions.
+ * game rules and permissions. Pages are read from the cache filled when the player
+ * joined, similar items are merged into as few stacks as possible and the pages are
+ * emptied without serializing anything.
  */
 public class BackpackDeathHandler implements Listener {
 
@@ -33,12 +52,15 @@ public class BackpackDeathHandler implements Listener {
      * Items are kept if:
      * - The world has keepInventory enabled
      * - The player has the 'backpack.keepOnDeath' permission
-     * Otherwise, items are dropped at the player's death location.
+     * Otherwise, items are dropped at the player's death location, or added to the
+     * event's drops if configured.
      *
      * @param event The PlayerDeathEvent
      */
     @EventHandler
     public void onPlayerDeath(PlayerDeathEvent event) {
+        if (!Database.isReady()) return; // Nothing can be loaded or saved yet
+
         Player player = event.getEntity();
 
         // Check if the world has KeepInventory enabled
@@ -46,22 +68,144 @@ public class BackpackDeathHandler implements Listener {
                 player.getWorld().getGameRuleValue(GameRule.KEEP_INVENTORY);
 
         // Check if the player has the permission to keep their backpack on death
-        if (keepInventory || player.hasPermission("backpack.keepOnDeath")) {
+        if (keepInventory || PlayerCapabilities.get(player).keepOnDeath()) {
+            return;
+        }
+
+        // Otherwise, drop the items of every page, including changes on pages still open
+        SessionRegistry.closeSessions(player.getUniqueId());
+        Inventory[] pages = BackpackManager.getCachedPages(player.getUniqueId());
+        if (pages != null) {
+            PayloadView[] views = new PayloadView[pages.length];
+            for (int page = 0; page < pages.length; page++) {
+                views[page] = pages[page] != null ? PayloadView.ofItems(pages[page].getContents()) : null;
+            }
+            List<ItemStack> drops = collectDrops(player.getUniqueId(), views);
+            if (ConfigManager.getInstance().isDeathDropsToEvent()) {
+                event.getDrops().addAll(drops);
+            } else {
+                dropItems(player.getLocation(), drops);
+            }
             return;
         }
 
-        // Otherwise, drop the backpack items
-        Inventory backpack = BackpackManager.loadInventory(player.getUniqueId());
-        if (backpack != null) {
-            for (ItemStack item : backpack.getContents()) {
-                if (item != null) {
-                    player.getWorld().dropItemNaturally(player.getLocation(), item); // Drop items at player's location
+        // Died before the join prefetch finished, read the pages without blocking the tick.
+        // Only the items are needed, so empty slots and pages are never deserialized. The read and
+        // the clear run in the player's lane, so API changes can't land in between.
+        UUID playerUUID = player.getUniqueId();
+        Location location = player.getLocation();
+        OwnerLanes.submit(playerUUID, () -> {
+            PayloadView[] loaded = loadPages(playerUUID);
+            CompletableFuture<Void> dropped = new CompletableFuture<>();
+            TaskScheduler.runAt(location, () -> {
+                try {
+                    dropItems(location, collectDrops(playerUUID, freshest(playerUUID, loaded)));
+                } finally {
+                    dropped.complete(null);
+                }
+            });
+            return dropped;
+        }).exceptionally(e -> {
+            PLogger.severe("Failed to drop the backpack of " + playerUUID, e);
+            return null;
+        });
+    }
+
+    private static PayloadView[] loadPages(UUID playerUUID) {
+        int pageCount = BackpackManager.getStoredPageCount(playerUUID);
+        PayloadView[] loaded = new PayloadView[pageCount];
+        for (int page = 0; page < pageCount; page++) {
+            try {
+                loaded[page] = BackpackManager.loadPayload(playerUUID, page);
+                if (loaded[page] != null) loaded[page].getItems(); // Deserialize here, not on the region thread
+            } catch (SQLException e) {
+                PLogger.severe("Failed to load page " + page + " of " + playerUUID + " for the death drops", e);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Replaces pages read off the main thread with their cached contents where those exist.
+     * Pages opened while the read ran are closed first, and every save passes through the cache,
+     * so a cached page is always newer than what was read from storage.
+     *
+     * @param playerUUID The UUID of the player who died
+     * @param loaded The pages read from storage
+     * @return The current contents of every page
+     */
+    private static PayloadView[] freshest(UUID playerUUID, PayloadView[] loaded) {
+        SessionRegistry.closeSessions(playerUUID);
+
+        Inventory[] cached = BackpackManager.getCachedPages(playerUUID);
+        PayloadView[] pages = new PayloadView[cached != null ? cached.length : loaded.length];
+        for (int page = 0; page < pages.length; page++) {
+            Inventory inventory = cached != null ? cached[page] : BackpackManager.getCachedPage(playerUUID, page);
+            if (inventory != null) {
+                pages[page] = PayloadView.ofItems(inventory.getContents());
+            } else if (cached == null) {
+                pages[page] = loaded[page];
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Takes the items out of every page, merged into full stacks, and empties the pages that held any.
+     *
+     * @param playerUUID The UUID of the player who died
+     * @param pages The player's pages, null for pages that were never saved
+     * @return The merged items to drop
+     */
+    private List<ItemStack> collectDrops(UUID playerUUID, PayloadView[] pages) {
+        List<ItemStack> drops = new ArrayList<>();
+        Map<Integer, Integer> emptied = new HashMap<>();
+        for (int page = 0; page < pages.length; page++) {
+            PayloadView backpack = pages[page];
+            if (backpack == null || backpack.isEmpty()) continue;
+
+            for (ItemStack item : backpack.getItems()) {
+                mergeInto(drops, item);
+            }
+            emptied.put(page, backpack.size());
+        }
+
+        BackpackManager.clearInventories(playerUUID, emptied);
+        return drops;
+    }
+
+    /**
+     * Adds an item to a list of stacks, topping up similar stacks before starting new ones.
+     * The given item is never modified.
+     *
+     * @param stacks The merged stacks
+     * @param item The item to add
+     */
+    private static void mergeInto(List<ItemStack> stacks, ItemStack item) {
+        int maxStackSize = item.getMaxStackSize();
+        int left = item.getAmount();
+        if (maxStackSize > 1) {
+            for (ItemStack stack : stacks) {
+                if (stack.getAmount() < maxStackSize && stack.isSimilar(item)) {
+                    int moved = Math.min(left, maxStackSize - stack.getAmount());
+                    stack.setAmount(stack.getAmount() + moved);
+                    left -= moved;
+                    if (left == 0) return;
                 }
             }
+        }
+
+        while (left > 0) {
+            ItemStack stack = item.clone();
+            stack.setAmount(Math.min(left, Math.max(1, maxStackSize)));
+            left -= stack.getAmount();
+            stacks.add(stack);
+        }
+    }
 
-            // Optionally, clear the backpack inventory after death
-            backpack.clear();
-            BackpackManager.saveInventory(player.getUniqueId(), backpack); // Save the emptied backpack
+    private static void dropItems(Location location, List<ItemStack> items) {
+        for (ItemStack item : items) {
+            location.getWorld().dropItemNaturally(location, item); // Drop items at player's location
         }
     }
 }
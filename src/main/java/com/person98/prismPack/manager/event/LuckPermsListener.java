@@ -0,0 +1,21 @@
+package com.person98.prismPack.manager.event;
+
+import com.person98.prismPack.PrismPack;
+import com.person98.prismPack.manager.PlayerCapabilities;
+import net.luckperms.api.LuckPermsProvider;
+import net.luckperms.api.event.user.UserDataRecalculateEvent;
+
+/**
+ * Drops cached capabilities as soon as LuckPerms recalculates a player's permissions.
+ * Only created when LuckPerms is installed.
+ */
+public class LuckPermsListener {
+
+    /**
+     * Subscribes to LuckPerms permission changes.
+     */
+    public LuckPermsListener() {
+        LuckPermsProvider.get().getEventBus().subscribe(PrismPack.getInstance(), UserDataRecalculateEvent.class,
+                event -> PlayerCapabilities.invalidate(event.getUser().getUniqueId()));
+    }
+}
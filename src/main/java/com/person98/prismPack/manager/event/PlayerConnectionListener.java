@@ -0,0 +1,70 @@
+package com.person98.prismPack.manager.event;
+
+import com.person98.prismPack.PrismPack;
+import com.person98.prismPack.manager.BackpackManager;
+import com.person98.prismPack.manager.Database;
+import com.person98.prismPack.manager.PlayerCapabilities;
+import com.person98.prismPack.manager.PlayerNameIndex;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Keeps per-player bookkeeping up to date as players connect.
+ * This records each player's name so it can be resolved while they are offline,
+ * keeps their cached capabilities in line with their permissions and keeps their
+ * backpack cached while they are online.
+ */
+public class PlayerConnectionListener implements Listener {
+
+    private final PrismPack plugin = PrismPack.getInstance();
+
+    /**
+     * Initializes the connection listener and registers event listeners.
+     */
+    public PlayerConnectionListener() {
+        Bukkit.getPluginManager().registerEvents(this, plugin);
+    }
+
+    /**
+     * Stores the joining player's current name, resolves their capabilities and prefetches their backpack.
+     *
+     * @param event The PlayerJoinEvent
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        PlayerCapabilities.invalidate(player.getUniqueId());
+        PlayerCapabilities.get(player);
+        if (!Database.isReady()) return; // Prefetched once the storage has started
+
+        PlayerNameIndex.update(player.getUniqueId(), player.getName());
+        BackpackManager.prefetch(player.getUniqueId());
+    }
+
+    /**
+     * Drops the cached capabilities of a player switching worlds, since permissions can be per world.
+     *
+     * @param event The PlayerChangedWorldEvent
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldChange(PlayerChangedWorldEvent event) {
+        PlayerCapabilities.invalidate(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * Drops the cached capabilities of a leaving player and lets their backpack expire from the cache.
+     *
+     * @param event The PlayerQuitEvent
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        PlayerCapabilities.invalidate(event.getPlayer().getUniqueId());
+        BackpackManager.release(event.getPlayer().getUniqueId());
+    }
+}
@@ -1,23 +1,21 @@
 package com.person98.prismPack.manager.ui;
 
 import com.person98.prismPack.PrismPack;
-import com.person98.prismPack.manager.BackpackManager;
 import com.person98.prismPack.manager.ConfigManager;
+import com.person98.prismPack.manager.PlayerCapabilities;
 import com.person98.prismPack.util.Lang;
-import net.kyori.adventure.text.minimessage.MiniMessage;
+import com.person98.prismPack.util.TaskScheduler;
 import org.bukkit.Bukkit;
-import org.bukkit.Material;
-import org.bukkit.OfflinePlayer;
-import org.bukkit.Sound;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.inventory.InventoryCloseEvent;
-import org.bukkit.inventory.Inventory;
+import org.bukkit.event.inventory.InventoryDragEvent;
 import org.bukkit.inventory.ItemStack;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Manages the administrative interface for viewing and modifying player backpacks.
@@ -26,57 +24,64 @@ import java.util.*;
 public class AdminBackpack implements Listener {
 
     private final PrismPack plugin = PrismPack.getInstance();
-    private final Map<UUID, UUID> adminToTargetMap = new HashMap<>(); // Map admin UUID to target player's UUID
-    private final Map<UUID, Inventory> openBackpacks = new HashMap<>(); // Track each opened backpack by target player
-    private final Set<Material> blockedItems; // List of blocked items from config
-    private final ConfigManager config;
+    private final Map<UUID, BackpackSession> adminToTargetMap = new ConcurrentHashMap<>(); // Map admin UUID to the target player's open page
 
     /**
      * Initializes the AdminBackpack system and registers event listeners.
-     * Loads blocked items from the configuration.
+     * Blocked items, titles and sounds are read from the current config when they are used,
+     * so they follow reloads.
      */
     public AdminBackpack() {
         Bukkit.getPluginManager().registerEvents(this, plugin);
-        this.config = ConfigManager.getInstance();
-        this.blockedItems = config.getBlockedItems();
     }
 
     /**
      * Opens a player's backpack for administrative inspection.
+     * Every page the player has stored can be browsed.
      * 
      * @param admin The administrator viewing the backpack
-     * @param targetPlayer The player whose backpack is being viewed (can be offline)
+     * @param targetUUID The UUID of the player whose backpack is being viewed (can be offline)
+     * @param targetName The last known name of that player
+     * @param pages The number of pages the player has stored
      */
-    public void openBackpackForAdmin(Player admin, OfflinePlayer targetPlayer) {
-        UUID targetUUID = targetPlayer.getUniqueId();
-        String guiTitle = getGuiTitle(targetPlayer);
-
-        // Load the target player's inventory from storage or initialize a new one
-        Inventory storedInventory = BackpackManager.loadInventory(targetUUID);
-        if (storedInventory == null) {
-            Lang.sendMessage(admin, Lang.LANG.NO_BACKPACK, "%player%", targetPlayer.getName());
+    public void openBackpackForAdmin(Player admin, UUID targetUUID, String targetName, int pages) {
+        if (pages == 0) {
+            Lang.sendMessage(admin, Lang.LANG.NO_BACKPACK, "%player%", targetName);
             return;
         }
 
-        Inventory backpack = Bukkit.createInventory(admin, storedInventory.getSize(), MiniMessage.miniMessage().deserialize(guiTitle));
-
-        // Set contents from the stored inventory
-        backpack.setContents(storedInventory.getContents());
-
-        // Map the admin to the target player and track the backpack inventory
-        adminToTargetMap.put(admin.getUniqueId(), targetUUID);
-        openBackpacks.put(targetUUID, backpack);
-
-        // Open the inventory for the admin
-        admin.openInventory(backpack);
+        showPage(admin, targetUUID, targetName, 0, pages);
 
         // Play the opening sound
         playOpeningSound(admin);
     }
 
+    /**
+     * Shows one page of the target player's backpack to an administrator.
+     * The page is laid out for its owner, so they see the same page if they open it too.
+     *
+     * @param admin The administrator viewing the backpack
+     * @param targetUUID The UUID of the player whose backpack is being viewed
+     * @param targetName The last known name of that player
+     * @param page The zero-based page to show
+     * @param pages The number of stored pages
+     */
+    private void showPage(Player admin, UUID targetUUID, String targetName, int page, int pages) {
+        // Join the page if the owner or another admin has it open, otherwise create it from the stored one
+        SessionRegistry.acquire(admin, targetUUID, page,
+                stored -> BackpackSession.forOwner(targetUUID, targetName, page, pages, stored),
+                session -> {
+                    // Map the admin to the target player's page and open it
+                    adminToTargetMap.put(admin.getUniqueId(), session);
+                    if (!SessionRegistry.open(admin, session)) {
+                        adminToTargetMap.remove(admin.getUniqueId(), session);
+                    }
+                });
+    }
+
     /**
      * Handles the closing of backpack inventories.
-     * Saves changes if the admin has edit permissions and cleans up tracking maps.
+     * Cleans up tracking maps, the page itself is saved by the {@link SessionRegistry}.
      * 
      * @param event The InventoryCloseEvent
      */
@@ -86,18 +91,10 @@ public class AdminBackpack implements Listener {
         UUID adminUUID = player.getUniqueId();
 
         // Check if the admin was viewing a target player's backpack
-        if (adminToTargetMap.containsKey(adminUUID)) {
-            UUID targetUUID = adminToTargetMap.get(adminUUID);
-            Inventory closedInventory = openBackpacks.get(targetUUID);
-
-            // Save the target player's backpack only if the admin has the permission to edit
-            if (player.hasPermission("backpack.others.edit")) {
-                BackpackManager.saveInventory(targetUUID, closedInventory);
-            }
-
+        BackpackSession view = adminToTargetMap.get(adminUUID);
+        if (view != null && view.getInventory() == event.getInventory()) {
             // Clean up after closing
             adminToTargetMap.remove(adminUUID);
-            openBackpacks.remove(targetUUID);
             playClosingSound(player);
         }
     }
@@ -114,31 +111,63 @@ public class AdminBackpack implements Listener {
         UUID adminUUID = player.getUniqueId();
 
         // Check if the admin is viewing another player's backpack
-        if (adminToTargetMap.containsKey(adminUUID)) {
-            if (!player.hasPermission("backpack.others.edit")) {
+        BackpackSession view = adminToTargetMap.get(adminUUID);
+        if (view != null) {
+            if (view.isNavigationSlot(event.getRawSlot())) {
+                event.setCancelled(true);
+                int targetPage = view.getTargetPage(event.getRawSlot());
+                if (targetPage != -1) {
+                    TaskScheduler.runFor(player, () -> switchPage(player, view, targetPage));
+                }
+            } else if (!PlayerCapabilities.get(player).editOthers()) {
                 event.setCancelled(true); // Block the click
+            } else {
+                view.setTouched(true);
             }
         }
     }
 
     /**
-     * Checks if an item is in the blocked items list.
-     * 
-     * @param item The ItemStack to check
-     * @return true if the item is blocked, false otherwise
+     * Blocks drags over the page controls and for admins without edit permission.
+     *
+     * @param event The InventoryDragEvent
      */
-    private boolean isBlockedItem(ItemStack item) {
-        return blockedItems.contains(item.getType());
+    @EventHandler
+    public void onInventoryDrag(InventoryDragEvent event) {
+        if (!(event.getWhoClicked() instanceof Player player)) return;
+
+        BackpackSession view = adminToTargetMap.get(player.getUniqueId());
+        if (view == null) return;
+
+        if (!PlayerCapabilities.get(player).editOthers()
+                || event.getRawSlots().stream().anyMatch(view::isNavigationSlot)) {
+            event.setCancelled(true);
+        } else {
+            view.setTouched(true);
+        }
     }
 
     /**
-     * Generates the GUI title for a player's backpack.
+     * Leaves the page an admin is viewing and shows another one.
+     *
+     * @param admin The administrator viewing the backpack
+     * @param view The page being left
+     * @param targetPage The page to show
+     */
+    private void switchPage(Player admin, BackpackSession view, int targetPage) {
+        if (adminToTargetMap.get(admin.getUniqueId()) != view) return; // Closed in the meantime
+
+        showPage(admin, view.getOwner(), view.getOwnerName(), targetPage, view.getPages());
+    }
+
+    /**
+     * Checks if an item is in the blocked items list.
      * 
-     * @param player The player whose backpack is being viewed
-     * @return The formatted GUI title string
+     * @param item The ItemStack to check
+     * @return true if the item is blocked, false otherwise
      */
-    private String getGuiTitle(OfflinePlayer player) {
-        return config.getBackpackTitle().replace("%player%", Objects.requireNonNull(player.getName()));
+    private boolean isBlockedItem(ItemStack item) {
+        return ConfigManager.getInstance().getBlockedItems().contains(item.getType());
     }
 
     /**
@@ -147,10 +176,7 @@ public class AdminBackpack implements Listener {
      * @param player The player to play the sound for
      */
     private void playOpeningSound(Player player) {
-        player.playSound(player.getLocation(), 
-            config.getOpenSound(), 
-            config.getOpenSoundVolume(), 
-            config.getOpenSoundPitch());
+        ConfigManager.getInstance().getOpenSound().play(player);
     }
 
     /**
@@ -159,9 +185,6 @@ public class AdminBackpack implements Listener {
      * @param player The player to play the sound for
      */
     private void playClosingSound(Player player) {
-        player.playSound(player.getLocation(), 
-            config.getCloseSound(), 
-            config.getCloseSoundVolume(), 
-            config.getCloseSoundPitch());
+        ConfigManager.getInstance().getCloseSound().play(player);
     }
 }
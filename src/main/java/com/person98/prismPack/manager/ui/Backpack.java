@@ -1,76 +1,91 @@
 package com.person98.prismPack.manager.ui;
 
 import com.person98.prismPack.PrismPack;
-import com.person98.prismPack.manager.BackpackManager;
 import com.person98.prismPack.manager.ConfigManager;
+import com.person98.prismPack.manager.PlayerCapabilities;
 import com.person98.prismPack.util.Lang;
-import net.kyori.adventure.text.minimessage.MiniMessage;
+import com.person98.prismPack.util.Metrics;
+import com.person98.prismPack.util.TaskScheduler;
 import org.bukkit.Bukkit;
-import org.bukkit.Material;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.ClickType;
+import org.bukkit.event.inventory.InventoryAction;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.inventory.InventoryCloseEvent;
-import org.bukkit.inventory.Inventory;
+import org.bukkit.event.inventory.InventoryDragEvent;
 import org.bukkit.inventory.ItemStack;
 
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Manages the backpack GUI interface and handles all inventory-related events.
  * This class is responsible for creating, displaying, and managing player backpack inventories,
- * including item restrictions and permission-based size control.
+ * including item restrictions and permission-based size and page control.
+ * Every page is loaded when it is shown and shared with anyone else viewing it through the
+ * {@link SessionRegistry}, which saves it once the last viewer leaves.
  */
 public class Backpack implements Listener {
 
     private final PrismPack plugin = PrismPack.getInstance();
-    private final Map<UUID, Inventory> openBackpacks = new HashMap<>(); // Track each player's opened backpack
-    private final Set<Material> blockedItems; // List of blocked items from config
-    private final ConfigManager config;
+    private final Map<UUID, BackpackSession> openBackpacks = new ConcurrentHashMap<>(); // Track each player's opened backpack page
 
     /**
      * Initializes the backpack system and registers event listeners.
-     * Loads blocked items from the configuration.
+     * The item filter, title and sounds are read from the current config when they are used,
+     * so they follow reloads.
      */
     public Backpack() {
         Bukkit.getPluginManager().registerEvents(this, plugin);
-        this.config = ConfigManager.getInstance();
-        this.blockedItems = config.getBlockedItems();
     }
 
     /**
-     * Opens a backpack inventory for a player.
-     * The size of the backpack is determined by the player's permissions.
-     * Loads existing contents if the player has previously saved items.
+     * Opens the first page of a player's backpack.
      *
      * @param player The player to open the backpack for
      */
     public void openBackpack(Player player) {
-        int size = getBackpackSize(player);
-        String guiTitle = getGuiTitle(player);
-
-        Inventory backpack = Bukkit.createInventory(player, size, MiniMessage.miniMessage().deserialize(guiTitle));
-
-        // Load the inventory from storage or initialize a new one
-        Inventory storedInventory = BackpackManager.loadInventory(player.getUniqueId());
-        if (storedInventory != null) {
-            backpack.setContents(storedInventory.getContents());
-        }
-
-        openBackpacks.put(player.getUniqueId(), backpack); // Store the opened backpack in the map
-        player.openInventory(backpack);
+        showPage(player, 0, true);
+    }
 
-        // Play the opening sound
-        playOpeningSound(player);
+    /**
+     * Shows one page of a player's backpack.
+     * The size of each page and the number of pages come from the player's cached capabilities.
+     * Only the shown page is loaded from storage, off the main thread, unless it is cached or
+     * already open for someone else.
+     *
+     * @param player The player to open the backpack for
+     * @param page The zero-based page to show
+     * @param playSound Whether to play the opening sound
+     */
+    private void showPage(Player player, int page, boolean playSound) {
+        long start = Metrics.start();
+        int pages = PlayerCapabilities.get(player).pages();
+        int shownPage = Math.max(0, Math.min(page, pages - 1));
+
+        // Join the open page or create it from the stored one
+        SessionRegistry.acquire(player, player.getUniqueId(), shownPage,
+                stored -> BackpackSession.forOwner(player.getUniqueId(), player.getName(), shownPage, pages, stored),
+                session -> {
+                    openBackpacks.put(player.getUniqueId(), session); // Store the opened page in the map
+                    if (!SessionRegistry.open(player, session)) {
+                        openBackpacks.remove(player.getUniqueId(), session);
+                        return;
+                    }
+
+                    if (playSound) {
+                        playOpeningSound(player);
+                    }
+                    Metrics.stop(Metrics.Timer.OPEN, start);
+                });
     }
 
     /**
      * Handles clicks within the backpack inventory.
-     * Prevents players from storing blocked items and handles hotbar key transfers.
+     * Prevents players from storing blocked items through any click type and handles page controls.
      *
      * @param event The inventory click event
      */
@@ -79,33 +94,66 @@ public class Backpack implements Listener {
         if (!(event.getWhoClicked() instanceof Player player)) return;
 
         UUID playerUUID = player.getUniqueId();
-        if (openBackpacks.containsKey(playerUUID)) {
-            ItemStack clickedItem = event.getCurrentItem();
-            ItemStack cursorItem = event.getCursor();
-            int hotbarButton = event.getHotbarButton();
-
-            // Check if the player is interacting with their backpack
-            if ((clickedItem != null && isBlockedItem(clickedItem)) ||
-                    (cursorItem != null && isBlockedItem(cursorItem))) {
+        BackpackSession view = openBackpacks.get(playerUUID);
+        if (view != null) {
+            // Page controls are never moved, clicking an arrow switches pages
+            if (view.isNavigationSlot(event.getRawSlot())) {
+                event.setCancelled(true);
+                int targetPage = view.getTargetPage(event.getRawSlot());
+                if (targetPage != -1) {
+                    TaskScheduler.runFor(player, () -> switchPage(player, view, targetPage));
+                }
+                return;
+            }
+
+            // Check the item that this click would move into the backpack
+            if (ConfigManager.getInstance().getItemFilter().isBlocked(getIncomingItem(event, player, view.getInventory().getSize()))) {
                 event.setCancelled(true);
                 Lang.sendMessage(player, Lang.LANG.BLACKLISTED_ITEM);
                 return;
             }
 
-            // Detect if the player is using number keys to move items from hotbar
-            if (hotbarButton >= 0 && hotbarButton <= 8) {
-                ItemStack hotbarItem = player.getInventory().getItem(hotbarButton);
-                if (hotbarItem != null && isBlockedItem(hotbarItem)) {
-                    event.setCancelled(true);
-                    Lang.sendMessage(player, Lang.LANG.BLACKLISTED_ITEM);
-                }
+            // Plain clicks in the player's own inventory don't change the page
+            if (event.getRawSlot() < view.getInventory().getSize() || event.isShiftClick()
+                    || event.getAction() == InventoryAction.COLLECT_TO_CURSOR) {
+                view.setTouched(true);
+            }
+        }
+    }
+
+    /**
+     * Prevents items from being dragged over the page controls and blocked items
+     * from being dragged into the backpack.
+     *
+     * @param event The inventory drag event
+     */
+    @EventHandler
+    public void onInventoryDrag(InventoryDragEvent event) {
+        if (!(event.getWhoClicked() instanceof Player player)) return;
+
+        BackpackSession view = openBackpacks.get(player.getUniqueId());
+        if (view == null) return;
+
+        boolean blocked = ConfigManager.getInstance().getItemFilter().isBlocked(event.getOldCursor());
+        for (int rawSlot : event.getRawSlots()) {
+            if (view.isNavigationSlot(rawSlot)) {
+                event.setCancelled(true);
+                return;
+            }
+            if (blocked && rawSlot < view.getInventory().getSize()) {
+                event.setCancelled(true);
+                Lang.sendMessage(player, Lang.LANG.BLACKLISTED_ITEM);
+                return;
+            }
+            if (rawSlot < view.getInventory().getSize()) {
+                view.setTouched(true);
             }
         }
     }
 
     /**
      * Handles the closing of backpack inventories.
-     * Saves the contents and plays closing sound effects.
+     * Plays the closing sound, the page itself is saved by the {@link SessionRegistry}.
      *
      * @param event The inventory close event
      */
@@ -114,54 +162,59 @@ public class Backpack implements Listener {
         if (!(event.getPlayer() instanceof Player player)) return;
         UUID playerUUID = player.getUniqueId();
 
-        // Check if the closed inventory is a tracked backpack
-        if (openBackpacks.containsKey(playerUUID)) {
-            Inventory closedInventory = openBackpacks.get(playerUUID);
-
-            // Save the backpack on close
-            BackpackManager.saveInventory(playerUUID, closedInventory);
-
-            // Remove the backpack from the map after saving
+        // Check if the closed inventory is the tracked backpack page
+        BackpackSession view = openBackpacks.get(playerUUID);
+        if (view != null && view.getInventory() == event.getInventory()) {
             openBackpacks.remove(playerUUID);
             playClosingSound(player);
         }
     }
 
     /**
-     * Checks if an item is in the blocked items list.
+     * Leaves the page a player is viewing and shows another one.
+     * The page being left is saved if the player was its last viewer.
      *
-     * @param item The item to check
-     * @return true if the item is blocked, false otherwise
+     * @param player The player browsing their backpack
+     * @param view The page being left
+     * @param targetPage The page to show
      */
-    private boolean isBlockedItem(ItemStack item) {
-        return blockedItems.contains(item.getType());
-    }
+    private void switchPage(Player player, BackpackSession view, int targetPage) {
+        if (openBackpacks.get(player.getUniqueId()) != view) return; // Closed in the meantime
 
-    /**
-     * Determines the size of a player's backpack based on their permissions.
-     * Permissions follow the format: backpack.size.X where X is 2-6
-     *
-     * @param player The player to check permissions for
-     * @return The size of the inventory (multiples of 9 from 9 to 54)
-     */
-    private int getBackpackSize(Player player) {
-        if (player.hasPermission("backpack.size.6")) return 54;
-        if (player.hasPermission("backpack.size.5")) return 45;
-        if (player.hasPermission("backpack.size.4")) return 36;
-        if (player.hasPermission("backpack.size.3")) return 27;
-        if (player.hasPermission("backpack.size.2")) return 18;
-        return 9; // Default size
+        showPage(player, targetPage, false);
     }
 
     /**
-     * Gets the customized GUI title for a player's backpack.
-     * Replaces the %player% placeholder with the player's name.
+     * Determines which item a click would move into the backpack.
+     * Covers placing the cursor, number keys, the offhand swap key and shift-clicks
+     * from the player's own inventory. Taking items out is always allowed.
      *
-     * @param player The player to get the title for
-     * @return The formatted GUI title
+     * @param event The inventory click event
+     * @param player The player who clicked
+     * @param topSize The size of the backpack inventory
+     * @return The incoming item, or null if nothing enters the backpack
      */
-    private String getGuiTitle(Player player) {
-        return config.getBackpackTitle().replace("%player%", player.getName());
+    private ItemStack getIncomingItem(InventoryClickEvent event, Player player, int topSize) {
+        boolean topClick = event.getRawSlot() >= 0 && event.getRawSlot() < topSize;
+
+        switch (event.getAction()) {
+            case PLACE_ALL, PLACE_SOME, PLACE_ONE, SWAP_WITH_CURSOR:
+                return topClick ? event.getCursor() : null;
+            case HOTBAR_SWAP, HOTBAR_MOVE_AND_READD:
+                if (!topClick) return null;
+                if (event.getClick() == ClickType.SWAP_OFFHAND || event.getHotbarButton() < 0) {
+                    return player.getInventory().getItemInOffHand();
+                }
+                return player.getInventory().getItem(event.getHotbarButton());
+            case MOVE_TO_OTHER_INVENTORY:
+                return topClick ? null : event.getCurrentItem();
+            case NOTHING, PICKUP_ALL, PICKUP_SOME, PICKUP_HALF, PICKUP_ONE, DROP_ALL_CURSOR, DROP_ONE_CURSOR,
+                 DROP_ALL_SLOT, DROP_ONE_SLOT, CLONE_STACK, COLLECT_TO_CURSOR:
+                return null;
+            default:
+                // Unknown actions are checked as if the cursor or clicked item moved in
+                return topClick ? event.getCursor() : event.getCurrentItem();
+        }
     }
 
     /**
@@ -171,10 +224,7 @@ public class Backpack implements Listener {
      * @param player The player to play the sound for
      */
     private void playOpeningSound(Player player) {
-        player.playSound(player.getLocation(), 
-            config.getOpenSound(), 
-            config.getOpenSoundVolume(), 
-            config.getOpenSoundPitch());
+        ConfigManager.getInstance().getOpenSound().play(player);
     }
 
     /**
@@ -184,9 +234,6 @@ public class Backpack implements Listener {
      * @param player The player to play the sound for
      */
     private void playClosingSound(Player player) {
-        player.playSound(player.getLocation(), 
-            config.getCloseSound(), 
-            config.getCloseSoundVolume(), 
-            config.getCloseSoundPitch());
+        ConfigManager.getInstance().getCloseSound().play(player);
     }
 }
@@ -0,0 +1,152 @@
+package com.person98.prismPack.manager.ui;
+
+import com.person98.prismPack.manager.BackpackManager;
+import com.person98.prismPack.manager.ConfigManager;
+import com.person98.prismPack.util.TaskScheduler;
+import org.bukkit.entity.HumanEntity;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Periodically saves backpack pages that are still open, so a crash only loses the
+ * changes made since the last autosave instead of everything since the page was opened.
+ * <p>
+ * Each run collects the open pages that changed since they were last saved. The pages
+ * are then copied on the main thread a few at a time, spread over as many ticks as needed
+ * to stay within the configured time budget per tick, and every tick's copies are handed
+ * to the database as one batch.
+ * <p>
+ * On Folia each page is copied on the thread of a player viewing it instead, since the
+ * pages are spread over regions that tick in parallel.
+ */
+public class BackpackAutosave {
+
+    private static final ArrayDeque<BackpackSession> pending = new ArrayDeque<>();
+    private static TaskScheduler.Task drainTask;
+
+    /**
+     * Schedules the autosave using the configured interval. Does nothing if autosave is disabled.
+     */
+    public static void start() {
+        long intervalTicks = 20L * ConfigManager.getInstance().getAutosaveInterval();
+        if (intervalTicks <= 0) return;
+
+        TaskScheduler.runGlobalTimer(BackpackAutosave::beginRun, intervalTicks, intervalTicks);
+    }
+
+    /**
+     * Saves every open page that changed right away, in one batch.
+     *
+     * @return The number of pages saved
+     */
+    public static int saveAll() {
+        if (TaskScheduler.isFolia()) {
+            return saveOnViewerThreads();
+        }
+
+        List<BackpackManager.PageSave> batch = snapshotAll();
+        BackpackManager.saveInventories(batch);
+        return batch.size();
+    }
+
+    /**
+     * Saves every open page that changed and waits until they are written.
+     * Used when the plugin is disabled, since asynchronous tasks can no longer run then.
+     */
+    public static void flush() {
+        BackpackManager.saveInventoriesNow(snapshotAll());
+    }
+
+    /**
+     * @return The number of open pages still waiting to be copied by the running autosave
+     */
+    public static int getPendingCount() {
+        return pending.size();
+    }
+
+    private static List<BackpackManager.PageSave> snapshotAll() {
+        pending.clear();
+        if (drainTask != null) {
+            drainTask.cancel();
+            drainTask = null;
+        }
+
+        List<BackpackManager.PageSave> batch = new ArrayList<>();
+        for (BackpackSession session : SessionRegistry.getSessions()) {
+            snapshot(session, batch);
+        }
+        return batch;
+    }
+
+    private static void beginRun() {
+        if (TaskScheduler.isFolia()) {
+            saveOnViewerThreads();
+            return;
+        }
+        if (!pending.isEmpty()) return; // The previous run is still going
+
+        for (BackpackSession session : SessionRegistry.getSessions()) {
+            if (session.isTouched()) {
+                pending.add(session);
+            }
+        }
+        if (!pending.isEmpty()) {
+            drainTask = TaskScheduler.runGlobalTimer(BackpackAutosave::drain, 1L, 1L);
+        }
+    }
+
+    private static void drain() {
+        long deadline = System.nanoTime() + ConfigManager.getInstance().getAutosaveTickBudgetMicros() * 1000L;
+        List<BackpackManager.PageSave> batch = new ArrayList<>();
+
+        // Always copy at least one page per tick so a tiny budget still makes progress
+        BackpackSession session;
+        while ((session = pending.poll()) != null) {
+            snapshot(session, batch);
+            if (System.nanoTime() >= deadline) break;
+        }
+        BackpackManager.saveInventories(batch);
+
+        if (pending.isEmpty() && drainTask != null) {
+            drainTask.cancel();
+            drainTask = null;
+        }
+    }
+
+    /**
+     * Saves every open page that changed on the thread of one of its viewers.
+     *
+     * @return The number of pages scheduled for saving
+     */
+    private static int saveOnViewerThreads() {
+        int scheduled = 0;
+        for (BackpackSession session : SessionRegistry.getSessions()) {
+            if (!session.isTouched()) continue;
+
+            // The viewers belong to other threads, so only a copy of the list is read
+            List<HumanEntity> viewers = new ArrayList<>(session.getInventory().getViewers());
+            if (viewers.isEmpty() || viewers.get(0) == null) continue;
+
+            TaskScheduler.runFor(viewers.get(0), () -> {
+                List<BackpackManager.PageSave> batch = new ArrayList<>(1);
+                snapshot(session, batch);
+                BackpackManager.saveInventories(batch);
+            });
+            scheduled++;
+        }
+        return scheduled;
+    }
+
+    /**
+     * Copies a page for saving if it changed since its last save and is still open.
+     * Closed pages have already been saved by the {@link SessionRegistry}.
+     */
+    private static void snapshot(BackpackSession session, List<BackpackManager.PageSave> batch) {
+        if (!session.isTouched() || !session.isOpen() || session.isDiscarded()) return;
+
+        session.setTouched(false);
+        batch.add(new BackpackManager.PageSave(session.getOwner(), session.getPage(), session.toStoredInventory()));
+    }
+}
@@ -0,0 +1,222 @@
+package com.person98.prismPack.manager.ui;
+
+import com.person98.prismPack.manager.ConfigManager;
+import com.person98.prismPack.manager.PlayerCapabilities;
+import lombok.Getter;
+import lombok.Setter;
+import net.kyori.adventure.text.Component;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.UUID;
+
+/**
+ * One live page of a backpack, shared by everyone viewing it.
+ * The owner and any admins looking at the same page see and edit the same inventory,
+ * and the page is saved once when its last viewer leaves. The layout (size, page count
+ * and title) always follows the owner, whoever opens the page first.
+ * <p>
+ * When the backpack has more than one page, a navigation row is added below the contents.
+ * Slots that are stored but fall outside the visible area, e.g. after the page count grew
+ * and the sixth row became the navigation row, are kept as they are when the page is saved.
+ */
+public class BackpackSession implements InventoryHolder {
+
+    static final int MAX_PAGED_SLOTS = 45;
+    private static final int ROW_SIZE = 9;
+    private static final int PREVIOUS_OFFSET = 0;
+    private static final int INDICATOR_OFFSET = 4;
+    private static final int NEXT_OFFSET = 8;
+
+    @Getter
+    private final UUID owner;
+    @Getter
+    private final String ownerName;
+    @Getter
+    private final int page;
+    @Getter
+    private final int pages;
+    @Getter
+    private final Component title;
+    @Getter
+    private final Inventory inventory;
+    private final int contentSize;
+    private final ItemStack[] stored;
+    @Getter
+    @Setter
+    private volatile boolean touched;
+    @Getter
+    private volatile boolean discarded;
+    private volatile int viewers; // Only changed by the SessionRegistry, one page at a time
+
+    /**
+     * Builds the inventory for one page.
+     *
+     * @param title The inventory title
+     * @param owner The UUID of the backpack owner
+     * @param ownerName The name of the backpack owner
+     * @param page The zero-based page number
+     * @param pages The number of pages that can be browsed
+     * @param size The number of content slots, a multiple of 9
+     * @param storedInventory The stored page, or null if it was never saved
+     */
+    BackpackSession(Component title, UUID owner, String ownerName, int page, int pages, int size, Inventory storedInventory) {
+        this.owner = owner;
+        this.ownerName = ownerName;
+        this.title = title;
+        this.page = page;
+        this.pages = pages;
+        this.contentSize = pages > 1 ? Math.min(size, MAX_PAGED_SLOTS) : size;
+        this.stored = storedInventory != null ? storedInventory.getContents() : new ItemStack[0];
+        this.inventory = Bukkit.createInventory(this, pages > 1 ? contentSize + ROW_SIZE : contentSize, title);
+
+        for (int slot = 0; slot < Math.min(contentSize, stored.length); slot++) {
+            inventory.setItem(slot, stored[slot]);
+        }
+        if (pages > 1) {
+            addNavigation();
+        }
+    }
+
+    /**
+     * Creates the session of a page laid out for its owner. An online owner's page count and size
+     * come from their capabilities, an offline owner's from what they have stored.
+     * Does no I/O, so it can run while the {@link SessionRegistry} holds the page.
+     *
+     * @param owner The UUID of the backpack owner
+     * @param ownerName The name of the backpack owner
+     * @param page The zero-based page number
+     * @param storedPages The number of pages the owner has stored, used if they are offline
+     * @param storedInventory The stored page, or null if it was never saved
+     * @return The new session
+     */
+    static BackpackSession forOwner(UUID owner, String ownerName, int page, int storedPages, Inventory storedInventory) {
+        Player player = Bukkit.getPlayer(owner);
+        int pages;
+        int size;
+        if (player != null) {
+            PlayerCapabilities.Snapshot capabilities = PlayerCapabilities.get(player);
+            pages = capabilities.pages();
+            size = capabilities.size();
+        } else {
+            pages = Math.max(storedPages, page + 1);
+            size = storedInventory != null ? storedInventory.getSize() : ConfigManager.getInstance().getDefaultSize();
+        }
+
+        Component title = ConfigManager.getInstance().getBackpackTitle().render(
+                "%player%", ownerName,
+                "%page%", String.valueOf(page + 1),
+                "%pages%", String.valueOf(pages));
+        return new BackpackSession(title, owner, ownerName, page, pages, size, storedInventory);
+    }
+
+    /**
+     * @return true while at least one player is viewing this page
+     */
+    public boolean isOpen() {
+        return viewers > 0;
+    }
+
+    /**
+     * Registers another viewer of this page.
+     */
+    void acquire() {
+        viewers++;
+    }
+
+    /**
+     * Unregisters a viewer of this page.
+     *
+     * @return true if this was the last viewer
+     */
+    boolean release() {
+        return --viewers <= 0;
+    }
+
+    /**
+     * Marks the page as replaced by a direct change to the stored backpack, so its
+     * contents are never saved again, even if a viewer is still attached.
+     */
+    void discard() {
+        discarded = true;
+        touched = false;
+    }
+
+    /**
+     * Checks whether a raw slot of the view belongs to the navigation row.
+     *
+     * @param rawSlot The raw slot from an inventory event
+     * @return true if the slot holds a navigation control or filler
+     */
+    boolean isNavigationSlot(int rawSlot) {
+        return pages > 1 && rawSlot >= contentSize && rawSlot < inventory.getSize();
+    }
+
+    /**
+     * Returns the page a click on the navigation row leads to.
+     *
+     * @param rawSlot The raw slot that was clicked
+     * @return The target page, or -1 if the slot is not an active control
+     */
+    int getTargetPage(int rawSlot) {
+        if (!isNavigationSlot(rawSlot)) return -1;
+
+        int offset = rawSlot - contentSize;
+        if (offset == PREVIOUS_OFFSET && page > 0) return page - 1;
+        if (offset == NEXT_OFFSET && page < pages - 1) return page + 1;
+        return -1;
+    }
+
+    /**
+     * Builds the inventory to store for this page, combining the visible contents with any
+     * stored slots that are not visible.
+     *
+     * @return The page contents to save
+     */
+    Inventory toStoredInventory() {
+        int size = contentSize;
+        for (int slot = contentSize; slot < stored.length; slot++) {
+            if (stored[slot] != null) {
+                size = stored.length;
+                break;
+            }
+        }
+
+        Inventory result = Bukkit.createInventory(null, size);
+        for (int slot = 0; slot < size; slot++) {
+            result.setItem(slot, slot < contentSize ? inventory.getItem(slot) : stored[slot]);
+        }
+        return result;
+    }
+
+    private void addNavigation() {
+        ConfigManager config = ConfigManager.getInstance();
+        ItemStack filler = createControl(Material.GRAY_STAINED_GLASS_PANE, Component.text(" "));
+        for (int offset = 0; offset < ROW_SIZE; offset++) {
+            inventory.setItem(contentSize + offset, filler);
+        }
+
+        if (page > 0) {
+            inventory.setItem(contentSize + PREVIOUS_OFFSET, createControl(Material.ARROW, config.getPreviousPageName().render()));
+        }
+        inventory.setItem(contentSize + INDICATOR_OFFSET, createControl(Material.PAPER, config.getPageIndicatorName().render(
+                "%page%", String.valueOf(page + 1),
+                "%pages%", String.valueOf(pages))));
+        if (page < pages - 1) {
+            inventory.setItem(contentSize + NEXT_OFFSET, createControl(Material.ARROW, config.getNextPageName().render()));
+        }
+    }
+
+    private static ItemStack createControl(Material material, Component name) {
+        ItemStack item = new ItemStack(material);
+        ItemMeta meta = item.getItemMeta();
+        meta.displayName(name);
+        item.setItemMeta(meta);
+        return item;
+    }
+}
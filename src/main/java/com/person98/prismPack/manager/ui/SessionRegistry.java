@@ -0,0 +1,293 @@
+package com.person98.prismPack.manager.ui;
+
+import com.person98.prismPack.PrismPack;
+import com.person98.prismPack.manager.BackpackManager;
+import com.person98.prismPack.util.TaskScheduler;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.InventoryCloseEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Keeps one live {@link BackpackSession} per open backpack page.
+ * Every viewer of a page, owner or admin, is attached to the same session, so edits are
+ * never made on separate copies. Sessions count their viewers and the page is saved
+ * once, if it changed, when the last viewer closes it.
+ * <p>
+ * On Folia viewers of the same page can be in different regions, so sessions are attached and
+ * detached atomically per page and viewers are always closed on their own thread.
+ */
+public class SessionRegistry implements Listener {
+
+    private static final Map<SessionKey, BackpackSession> sessions = new ConcurrentHashMap<>();
+    private static final long VIEWER_TIMEOUT_SECONDS = 5;
+
+    /**
+     * Registers the listener that detaches viewers when they close a backpack page.
+     */
+    public static void initialize() {
+        Bukkit.getPluginManager().registerEvents(new SessionRegistry(), PrismPack.getInstance());
+    }
+
+    /**
+     * Attaches a viewer to the live session of a page and then runs an action with it on the viewer's thread,
+     * which must open the session's inventory for the viewer, see {@link #open}.
+     * A page nobody is viewing is read off the main thread first unless it is cached, so sessions
+     * are only ever created from pages that are already in memory.
+     *
+     * @param viewer The player opening the page
+     * @param owner The UUID of the backpack owner
+     * @param page The zero-based page number
+     * @param factory Creates the session from the stored page, or null if it was never saved.
+     *                Runs while the page is held, so it must not do any I/O
+     * @param action Opens the acquired session for the viewer
+     */
+    static void acquire(Player viewer, UUID owner, int page, Function<Inventory, BackpackSession> factory,
+                        Consumer<BackpackSession> action) {
+        BackpackSession open = sessions.computeIfPresent(new SessionKey(owner, page), (key, session) -> {
+            session.acquire();
+            return session;
+        });
+        if (open != null) {
+            action.accept(open);
+            return;
+        }
+
+        // Pages of online players are all cached once they joined, so they open right away
+        Inventory[] warm = BackpackManager.getCachedPages(owner);
+        Inventory cached = warm != null ? (page < warm.length ? warm[page] : null) : BackpackManager.getFreshCachedPage(owner, page);
+        if (warm != null || cached != null) {
+            action.accept(acquire(owner, page, () -> factory.apply(cached)));
+            return;
+        }
+
+        TaskScheduler.runAsync(() -> {
+            Inventory loaded = BackpackManager.loadInventory(owner, page);
+            TaskScheduler.runFor(viewer, () -> {
+                if (!viewer.isOnline()) return;
+                action.accept(acquire(owner, page, () -> {
+                    // A save since the read replaced the cached page
+                    Inventory latest = BackpackManager.getCachedPage(owner, page);
+                    return factory.apply(latest != null ? latest : loaded);
+                }));
+            });
+        });
+    }
+
+    private static BackpackSession acquire(UUID owner, int page, Supplier<BackpackSession> factory) {
+        return sessions.compute(new SessionKey(owner, page), (key, session) -> {
+            BackpackSession acquired = session != null ? session : factory.get();
+            acquired.acquire();
+            return acquired;
+        });
+    }
+
+    /**
+     * Opens an acquired session for a viewer. If another plugin prevents the inventory from
+     * opening, the viewer is detached again.
+     *
+     * @param viewer The player to show the page to
+     * @param session The session acquired for the viewer
+     * @return true if the page was opened
+     */
+    static boolean open(Player viewer, BackpackSession session) {
+        viewer.openInventory(session.getInventory());
+        if (viewer.getOpenInventory().getTopInventory() != session.getInventory()) {
+            release(session);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The sessions of every open page
+     */
+    static Collection<BackpackSession> getSessions() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+
+    /**
+     * @return The number of open pages
+     */
+    public static int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Closes every open page of a player's backpack for all viewers, saving pending changes.
+     * Used before the stored backpack is changed directly, e.g. when it is cleaned, restored
+     * or dropped on death, so an open page can't write its stale contents back afterwards.
+     * On Folia, pages with viewers in other regions are discarded without saving and closed
+     * on the viewers' threads shortly after.
+     *
+     * @param owner The UUID of the backpack owner
+     */
+    public static void closeSessions(UUID owner) {
+        closeSessions(Collections.singleton(owner));
+    }
+
+    /**
+     * Closes every open page of several players' backpacks, see {@link #closeSessions(UUID)}.
+     *
+     * @param owners The UUIDs of the backpack owners
+     */
+    public static void closeSessions(Collection<UUID> owners) {
+        if (sessions.isEmpty()) return;
+
+        Set<UUID> ownerSet = owners instanceof Set<UUID> set ? set : new HashSet<>(owners);
+        List<BackpackSession> ownerSessions = new ArrayList<>();
+        for (BackpackSession session : sessions.values()) {
+            if (ownerSet.contains(session.getOwner())) {
+                ownerSessions.add(session);
+            }
+        }
+
+        for (BackpackSession session : ownerSessions) {
+            List<HumanEntity> viewers = new ArrayList<>(session.getInventory().getViewers());
+            boolean remoteViewers = false;
+            for (HumanEntity viewer : viewers) {
+                if (!TaskScheduler.isOwnedByCurrentThread(viewer)) {
+                    remoteViewers = true;
+                    break;
+                }
+            }
+            if (remoteViewers) {
+                // The page can't be saved from this thread, and must not be saved after the change
+                sessions.remove(new SessionKey(session.getOwner(), session.getPage()), session);
+                session.discard();
+            }
+
+            for (HumanEntity viewer : viewers) {
+                if (TaskScheduler.isOwnedByCurrentThread(viewer)) {
+                    viewer.closeInventory();
+                } else {
+                    TaskScheduler.runFor(viewer, () -> {
+                        if (viewer.getOpenInventory().getTopInventory() == session.getInventory()) {
+                            viewer.closeInventory();
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the open pages that a direct change is about to be applied to. Each page is checked,
+     * saved if it changed and closed on the thread of one of its viewers, so unlike
+     * {@link #closeSessions(Collection)} no pending changes are discarded on Folia.
+     * Pages whose current contents the change would leave alone stay open.
+     *
+     * @param pages The zero-based pages to change, per backpack owner
+     * @param changes Tells from a copy of a page's current contents whether the change applies to it
+     * @return Completes once every open page was checked, or skipped because its viewer left
+     */
+    public static CompletableFuture<Void> closeChanging(Map<UUID, Set<Integer>> pages, Predicate<ItemStack[]> changes) {
+        List<CompletableFuture<Void>> checks = new ArrayList<>();
+        for (BackpackSession session : sessions.values()) {
+            Set<Integer> ownerPages = pages.get(session.getOwner());
+            if (ownerPages == null || !ownerPages.contains(session.getPage())) continue;
+
+            // The viewers belong to other threads, so only a copy of the list is read
+            List<HumanEntity> viewers = new ArrayList<>(session.getInventory().getViewers());
+            if (viewers.isEmpty() || viewers.get(0) == null) continue; // Saved when it is released
+
+            CompletableFuture<Void> checked = new CompletableFuture<>();
+            TaskScheduler.runFor(viewers.get(0), () -> {
+                try {
+                    closeIfChanging(session, changes);
+                } finally {
+                    checked.complete(null);
+                }
+            });
+            // The task doesn't run if the viewer left, which closes and saves the page anyway
+            checks.add(checked.completeOnTimeout(null, VIEWER_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        return CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private static void closeIfChanging(BackpackSession session, Predicate<ItemStack[]> changes) {
+        if (session.isDiscarded() || !session.isOpen()) return;
+
+        Inventory contents = session.toStoredInventory();
+        if (!changes.test(contents.getContents())) return;
+
+        // Cached before the change is applied to the cached page
+        if (session.isTouched()) {
+            BackpackManager.saveInventory(session.getOwner(), session.getPage(), contents);
+        }
+        sessions.remove(new SessionKey(session.getOwner(), session.getPage()), session);
+        session.discard();
+
+        for (HumanEntity viewer : new ArrayList<>(session.getInventory().getViewers())) {
+            if (TaskScheduler.isOwnedByCurrentThread(viewer)) {
+                viewer.closeInventory();
+            } else {
+                TaskScheduler.runFor(viewer, () -> {
+                    if (viewer.getOpenInventory().getTopInventory() == session.getInventory()) {
+                        viewer.closeInventory();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * @param owner The UUID of the backpack owner
+     * @param page The zero-based page number
+     * @return true if a player is viewing the page
+     */
+    public static boolean isOpen(UUID owner, int page) {
+        return sessions.containsKey(new SessionKey(owner, page));
+    }
+
+    /**
+     * Detaches the viewer of a closed backpack page.
+     * Runs after the GUI listeners so they still see the session they were tracking.
+     *
+     * @param event The inventory close event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onInventoryClose(InventoryCloseEvent event) {
+        if (event.getInventory().getHolder() instanceof BackpackSession session) {
+            release(session);
+        }
+    }
+
+    private static void release(BackpackSession session) {
+        boolean[] last = new boolean[1];
+        sessions.compute(new SessionKey(session.getOwner(), session.getPage()), (key, current) -> {
+            last[0] = session.release();
+            return last[0] && current == session ? null : current;
+        });
+        if (!last[0] || session.isDiscarded()) return;
+
+        if (session.isTouched()) {
+            session.setTouched(false);
+            BackpackManager.saveInventory(session.getOwner(), session.getPage(), session.toStoredInventory());
+        }
+    }
+
+    private record SessionKey(UUID owner, int page) {
+    }
+}
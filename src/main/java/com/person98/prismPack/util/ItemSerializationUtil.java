@@ -6,13 +6,35 @@ import org.bukkit.util.io.BukkitObjectOutputStream;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Utility class for serializing and deserializing Bukkit ItemStacks to/from Base64 strings.
  * This allows for easy storage and retrieval of inventory contents in a string format.
+ * <p>
+ * Serialization writes the Base64 text straight into a buffer that is reused by every call on the
+ * same thread, so a save only allocates the resulting String besides the object stream itself.
+ * Equal stacks within one page are written once: a blob refers back to the first copy, and the
+ * slot layout reuses its payload.
+ * <p>
+ * A blob can also be built from the payloads of the slot layout, see {@link #joinItems(String[])},
+ * so a page whose slots were already serialized for the history isn't serialized a second time.
  */
 public class ItemSerializationUtil {
+
+    private static final char JOINED_PREFIX = '#'; // Not part of the Base64 alphabet
+    private static final char JOINED_SLOT_END = ',';
+    private static final char JOINED_REFERENCE = '^';
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_POOLED_BUFFER_SIZE = 256 * 1024; // Larger buffers are dropped after use
+
+    private static final ThreadLocal<EncodeBuffer> buffers = ThreadLocal.withInitial(EncodeBuffer::new);
+
     /**
      * Converts an array of ItemStacks into a Base64 encoded string.
      * 
@@ -20,20 +42,27 @@ public class ItemSerializationUtil {
      * @return A Base64 encoded string representing the items, or null if serialization fails
      */
     public static String serializeInventory(ItemStack[] items) {
+        long start = Metrics.start();
+        EncodeBuffer buffer = buffers.get();
         try {
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            BukkitObjectOutputStream bukkitOutputStream = new BukkitObjectOutputStream(byteArrayOutputStream);
+            BukkitObjectOutputStream bukkitOutputStream = new BukkitObjectOutputStream(Base64.getEncoder().wrap(buffer));
 
             bukkitOutputStream.writeInt(items.length);
             for (ItemStack item : items) {
-                bukkitOutputStream.writeObject(item);
+                // Writing the same instance again makes the stream refer back to it instead of encoding it twice
+                bukkitOutputStream.writeObject(item != null ? buffer.intern(item) : null);
             }
             bukkitOutputStream.close();
 
-            return Base64.getEncoder().encodeToString(byteArrayOutputStream.toByteArray());
+            String encoded = buffer.toEncodedString();
+            Metrics.stop(Metrics.Timer.SERIALIZE, start);
+            Metrics.record(Metrics.Size.SERIALIZED, encoded.length() / 4 * 3);
+            return encoded;
         } catch (Exception e) {
             PLogger.severe("Failed to serialize inventory: " + e);
             return null;
+        } finally {
+            buffer.release();
         }
     }
 
@@ -44,6 +73,11 @@ public class ItemSerializationUtil {
      * @return An array of ItemStacks, or an empty array if deserialization fails
      */
     public static ItemStack[] deserializeInventory(String inventoryString) {
+        if (isJoined(inventoryString)) {
+            return deserializeItems(splitItems(inventoryString));
+        }
+
+        long start = Metrics.start();
         try {
             byte[] data = Base64.getDecoder().decode(inventoryString);
             ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(data);
@@ -52,14 +86,257 @@ public class ItemSerializationUtil {
             int length = bukkitInputStream.readInt();
             ItemStack[] items = new ItemStack[length];
             for (int i = 0; i < length; i++) {
-                items[i] = (ItemStack) bukkitInputStream.readObject();
+                items[i] = unshare(items, i, (ItemStack) bukkitInputStream.readObject());
             }
             bukkitInputStream.close();
 
+            Metrics.stop(Metrics.Timer.DESERIALIZE, start);
+            Metrics.record(Metrics.Size.DESERIALIZED, data.length);
             return items;
         } catch (Exception e) {
             PLogger.severe("Failed to deserialize inventory: " + e);
             return new ItemStack[0];
         }
     }
+
+    /**
+     * Converts a single ItemStack into a Base64 encoded string.
+     *
+     * @param item The ItemStack to serialize, may be null for an empty slot
+     * @return A Base64 encoded string representing the item, or null if the item is null or serialization fails
+     */
+    public static String serializeItem(ItemStack item) {
+        if (item == null) return null;
+        EncodeBuffer buffer = buffers.get();
+        try {
+            return encodeItem(buffer, item);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Converts a Base64 encoded string produced by {@link #serializeItem(ItemStack)} back into an ItemStack.
+     *
+     * @param itemString The Base64 encoded string to deserialize
+     * @return The ItemStack, or null if the string is null or deserialization fails
+     */
+    public static ItemStack deserializeItem(String itemString) {
+        if (itemString == null) return null;
+        try {
+            byte[] data = Base64.getDecoder().decode(itemString);
+            BukkitObjectInputStream bukkitInputStream = new BukkitObjectInputStream(new ByteArrayInputStream(data));
+
+            ItemStack item = (ItemStack) bukkitInputStream.readObject();
+            bukkitInputStream.close();
+
+            return item;
+        } catch (Exception e) {
+            PLogger.severe("Failed to deserialize item: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Serializes every slot of an inventory on its own, as used by the slot storage layout and history.
+     *
+     * @param items The array of ItemStacks to serialize
+     * @return The Base64 payload of each slot, null for empty slots
+     */
+    public static String[] serializeItems(ItemStack[] items) {
+        long start = Metrics.start();
+        String[] payloads = new String[items.length];
+        EncodeBuffer buffer = buffers.get();
+        try {
+            for (int i = 0; i < items.length; i++) {
+                if (items[i] == null) continue;
+
+                // Equal stacks share one payload String
+                String payload = buffer.payloads.get(items[i]);
+                if (payload == null) {
+                    payload = encodeItem(buffer, items[i]);
+                    if (payload != null) buffer.payloads.put(items[i], payload);
+                }
+                payloads[i] = payload;
+            }
+        } finally {
+            buffer.release();
+        }
+        Metrics.stop(Metrics.Timer.SERIALIZE, start);
+        Metrics.record(Metrics.Size.SERIALIZED, decodedLength(payloads));
+        return payloads;
+    }
+
+    /**
+     * Deserializes payloads produced by {@link #serializeItems(ItemStack[])}.
+     *
+     * @param payloads The Base64 payload of each slot, null for empty slots
+     * @return The ItemStacks, with null for empty slots
+     */
+    public static ItemStack[] deserializeItems(String[] payloads) {
+        long start = Metrics.start();
+        ItemStack[] items = new ItemStack[payloads.length];
+        for (int i = 0; i < payloads.length; i++) {
+            items[i] = deserializeItem(payloads[i]);
+        }
+        Metrics.stop(Metrics.Timer.DESERIALIZE, start);
+        Metrics.record(Metrics.Size.DESERIALIZED, decodedLength(payloads));
+        return items;
+    }
+
+    /**
+     * Builds a blob from payloads produced by {@link #serializeItems(ItemStack[])} without serializing
+     * anything. Each slot is terminated by a comma, empty slots are left blank and a payload shared
+     * with an earlier slot is written as a reference to that slot.
+     * {@link #deserializeInventory(String)} and {@link PayloadView#ofBlob(String)} read such blobs as well.
+     *
+     * @param payloads The Base64 payload of each slot, null for empty slots
+     * @return The blob
+     */
+    public static String joinItems(String[] payloads) {
+        int length = 1 + payloads.length;
+        for (String payload : payloads) {
+            if (payload != null) length += payload.length();
+        }
+
+        StringBuilder joined = new StringBuilder(length).append(JOINED_PREFIX);
+        for (int slot = 0; slot < payloads.length; slot++) {
+            String payload = payloads[slot];
+            if (payload != null) {
+                int first = firstSlotOf(payloads, slot);
+                if (first < slot) {
+                    joined.append(JOINED_REFERENCE).append(first);
+                } else {
+                    joined.append(payload);
+                }
+            }
+            joined.append(JOINED_SLOT_END);
+        }
+        return joined.toString();
+    }
+
+    /**
+     * @param blob A stored blob
+     * @return true if the blob was built by {@link #joinItems(String[])}
+     */
+    static boolean isJoined(String blob) {
+        return !blob.isEmpty() && blob.charAt(0) == JOINED_PREFIX;
+    }
+
+    /**
+     * Splits a blob built by {@link #joinItems(String[])} back into the payload of each slot.
+     *
+     * @param blob The joined blob
+     * @return The Base64 payload of each slot, null for empty slots
+     */
+    static String[] splitItems(String blob) {
+        List<String> payloads = new ArrayList<>();
+        int start = 1;
+        for (int end = blob.indexOf(JOINED_SLOT_END, start); end != -1; end = blob.indexOf(JOINED_SLOT_END, start)) {
+            String payload = null;
+            if (end > start) {
+                payload = blob.charAt(start) == JOINED_REFERENCE ?
+                        payloads.get(Integer.parseInt(blob, start + 1, end, 10)) :
+                        blob.substring(start, end);
+            }
+            payloads.add(payload);
+            start = end + 1;
+        }
+        return payloads.toArray(new String[0]);
+    }
+
+    /**
+     * @return The first slot holding the same payload instance, which {@link #serializeItems} shares between equal stacks
+     */
+    private static int firstSlotOf(String[] payloads, int slot) {
+        for (int i = 0; i < slot; i++) {
+            if (payloads[i] == payloads[slot]) return i;
+        }
+        return slot;
+    }
+
+    /**
+     * Stacks that were written once and referred back to are read as one shared instance.
+     * Every slot after the first gets its own copy, so changing one slot never changes another.
+     *
+     * @param items The slots read so far
+     * @param slot The slot the item was read for
+     * @param item The item read for the slot
+     * @return The item, or a copy of it if an earlier slot holds the same instance
+     */
+    static ItemStack unshare(ItemStack[] items, int slot, ItemStack item) {
+        if (item == null) return null;
+        for (int i = 0; i < slot; i++) {
+            if (items[i] == item) return item.clone();
+        }
+        return item;
+    }
+
+    /**
+     * Encodes one item into the thread's buffer.
+     *
+     * @return The Base64 payload, or null if serialization fails
+     */
+    private static String encodeItem(EncodeBuffer buffer, ItemStack item) {
+        buffer.reset();
+        try {
+            BukkitObjectOutputStream bukkitOutputStream = new BukkitObjectOutputStream(Base64.getEncoder().wrap(buffer));
+
+            bukkitOutputStream.writeObject(item);
+            bukkitOutputStream.close();
+
+            return buffer.toEncodedString();
+        } catch (Exception e) {
+            PLogger.severe("Failed to serialize item: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * @return The number of bytes the payloads hold before Base64 encoding
+     */
+    private static long decodedLength(String[] payloads) {
+        long length = 0;
+        for (String payload : payloads) {
+            if (payload != null) length += payload.length() / 4 * 3;
+        }
+        return length;
+    }
+
+    /**
+     * A growable buffer for the Base64 text of one serialization, reused by every call on the same thread.
+     * Also holds the tables used to write equal stacks once.
+     */
+    private static final class EncodeBuffer extends ByteArrayOutputStream {
+        private final Map<ItemStack, ItemStack> stacks = new HashMap<>();
+        private final Map<ItemStack, String> payloads = new HashMap<>();
+
+        private EncodeBuffer() {
+            super(INITIAL_BUFFER_SIZE);
+        }
+
+        /**
+         * @return The first stack written in this call that is equal to the item, including its amount
+         */
+        private ItemStack intern(ItemStack item) {
+            ItemStack first = stacks.putIfAbsent(item, item);
+            return first != null ? first : item;
+        }
+
+        /**
+         * Base64 only uses ASCII, so the bytes can become the String's characters as they are.
+         */
+        private String toEncodedString() {
+            return new String(buf, 0, count, StandardCharsets.ISO_8859_1);
+        }
+
+        private void release() {
+            reset();
+            stacks.clear();
+            payloads.clear();
+            if (buf.length > MAX_POOLED_BUFFER_SIZE) {
+                buf = new byte[INITIAL_BUFFER_SIZE];
+            }
+        }
+    }
 }
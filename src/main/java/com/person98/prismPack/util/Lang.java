@@ -3,23 +3,26 @@ package com.person98.prismPack.util;
 
 import com.person98.prismPack.PrismPack;
 import lombok.Getter;
-import net.kyori.adventure.text.minimessage.MiniMessage;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
-import org.bukkit.entity.Player;
+import org.bukkit.command.CommandSender;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
 
 /**
  * Handles language configuration and message management for the plugin.
  * Loads and manages messages from lang.yml configuration file.
+ * Every message is parsed once when the file is loaded, see {@link MessageTemplate}.
  */
 public class Lang {
 
     private static File langFile;
     @Getter
     private static FileConfiguration langConfig;
+    private static volatile Map<LANG, MessageTemplate> templates = new EnumMap<>(LANG.class);
 
     /**
      * Sets up the language system by creating and loading the lang.yml file.
@@ -37,6 +40,19 @@ public class Lang {
 
         // Load the lang.yml configuration
         langConfig = YamlConfiguration.loadConfiguration(langFile);
+        parseTemplates();
+    }
+
+    /**
+     * Parses every message of the loaded lang.yml into a template.
+     * The map is swapped in as a whole so messages sent meanwhile see either the old or the new set.
+     */
+    private static void parseTemplates() {
+        Map<LANG, MessageTemplate> parsed = new EnumMap<>(LANG.class);
+        for (LANG type : LANG.values()) {
+            parsed.put(type, MessageTemplate.parse(langConfig.getString(type.getPath(), "<red>Message not found.")));
+        }
+        templates = parsed;
     }
 
     /**
@@ -52,7 +68,44 @@ public class Lang {
         PLAYER_NOT_FOUND("messages.playerNotFound"),
         OPENED_BACKPACK_OTHER("messages.openedBackpackOther"),
         RELOADED_CONFIG("messages.reloadedConfig"),
-        BLACKLISTED_ITEM("messages.blacklistedItem");
+        RELOAD_FAILED("messages.reloadFailed"),
+        BLACKLISTED_ITEM("messages.blacklistedItem"),
+        REBALANCE_STARTED("messages.rebalanceStarted"),
+        REBALANCE_RUNNING("messages.rebalanceRunning"),
+        REBALANCE_FINISHED("messages.rebalanceFinished"),
+        HISTORY_HEADER("messages.historyHeader"),
+        HISTORY_ENTRY("messages.historyEntry"),
+        HISTORY_EMPTY("messages.historyEmpty"),
+        HISTORY_DIFF_HEADER("messages.historyDiffHeader"),
+        HISTORY_DIFF_ENTRY("messages.historyDiffEntry"),
+        HISTORY_DIFF_NONE("messages.historyDiffNone"),
+        HISTORY_VERSION_NOT_FOUND("messages.historyVersionNotFound"),
+        HISTORY_RESTORED("messages.historyRestored"),
+        STORAGE_ERROR("messages.storageError"),
+        INVALID_MATERIAL("messages.invalidMaterial"),
+        FIND_HEADER("messages.findHeader"),
+        FIND_ENTRY("messages.findEntry"),
+        FIND_NONE("messages.findNone"),
+        INDEX_REBUILD_STARTED("messages.indexRebuildStarted"),
+        INDEX_REBUILD_RUNNING("messages.indexRebuildRunning"),
+        INDEX_REBUILD_FINISHED("messages.indexRebuildFinished"),
+        SAVED_OPEN_BACKPACKS("messages.savedOpenBackpacks"),
+        RATE_LIMITED("messages.rateLimited"),
+        STORAGE_BUSY("messages.storageBusy"),
+        STORAGE_STARTING("messages.storageStarting"),
+        STORAGE_UNAVAILABLE("messages.storageUnavailable"),
+        BULK_CONFIRM("messages.bulkConfirm"),
+        BULK_NOTHING_TO_CONFIRM("messages.bulkNothingToConfirm"),
+        BULK_STARTED("messages.bulkStarted"),
+        BULK_PROGRESS("messages.bulkProgress"),
+        BULK_FINISHED("messages.bulkFinished"),
+        BULK_CANCELLED("messages.bulkCancelled"),
+        BULK_CANCELLING("messages.bulkCancelling"),
+        BULK_RUNNING("messages.bulkRunning"),
+        BULK_NOT_RUNNING("messages.bulkNotRunning"),
+        STATS_HEADER("messages.statsHeader"),
+        STATS_VALUE("messages.statsValue"),
+        STATS_HISTOGRAM("messages.statsHistogram");
 
         private final String path;
 
@@ -66,20 +119,15 @@ public class Lang {
     }
 
     /**
-     * Sends a configured message to a player with optional placeholder replacements.
-     * Messages support MiniMessage formatting.
+     * Sends a configured message to a player or the console with optional placeholder replacements.
+     * Messages support MiniMessage formatting. Placeholder values are inserted as plain text.
      *
-     * @param player The player to send the message to
+     * @param sender The player or console to send the message to
      * @param messageType The type of message to send from the LANG enum
      * @param placeholders Optional placeholders in pairs (placeholder, value)
      */
-    public static void sendMessage(Player player, LANG messageType, String... placeholders) {
-        String message = langConfig.getString(messageType.getPath(), "<red>Message not found.");
-        // Replace placeholders if provided
-        for (int i = 0; i < placeholders.length; i += 2) {
-            message = message.replace(placeholders[i], placeholders[i + 1]);
-        }
-        player.sendMessage(MiniMessage.miniMessage().deserialize(message));
+    public static void sendMessage(CommandSender sender, LANG messageType, String... placeholders) {
+        sender.sendMessage(templates.get(messageType).render(placeholders));
     }
 
     /**
@@ -100,5 +148,6 @@ public class Lang {
      */
     public static void reloadLang() {
         langConfig = YamlConfiguration.loadConfiguration(langFile);
+        parseTemplates();
     }
 }
@@ -0,0 +1,135 @@
+package com.person98.prismPack.util;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
+import net.kyori.adventure.text.minimessage.tag.resolver.TagResolver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A MiniMessage string prepared once so it can be rendered cheaply many times.
+ * {@code %name%} placeholders are turned into {@code <name>} tags when the template is created
+ * and filled with unparsed {@link TagResolver}s when it is rendered, so placeholder values are
+ * never interpreted as MiniMessage. Templates without placeholders are parsed exactly once,
+ * and recently rendered values are kept so repeated messages skip parsing as well.
+ */
+public class MessageTemplate {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("%([A-Za-z0-9_-]+)%");
+    private static final int MAX_CACHED_RENDERS = 256;
+
+    private final String raw;
+    private final String template;
+    private final String[] names;
+    private final boolean inTagArguments;
+    private final Component staticComponent;
+    private final Map<List<String>, Component> rendered = new ConcurrentHashMap<>();
+
+    private MessageTemplate(String raw) {
+        this.raw = raw;
+
+        List<String> found = new ArrayList<>();
+        boolean insideTag = false;
+        StringBuilder converted = new StringBuilder(raw.length());
+        Matcher matcher = PLACEHOLDER.matcher(raw);
+        int last = 0;
+        while (matcher.find()) {
+            String name = matcher.group(1).toLowerCase();
+            // A placeholder inside a tag such as <click:run_command:/bp open %player%> can't become a tag itself
+            insideTag |= raw.lastIndexOf('<', matcher.start()) > raw.lastIndexOf('>', matcher.start());
+            if (!found.contains(name)) {
+                found.add(name);
+            }
+            converted.append(raw, last, matcher.start()).append('<').append(name).append('>');
+            last = matcher.end();
+        }
+        converted.append(raw, last, raw.length());
+
+        this.names = found.toArray(new String[0]);
+        this.inTagArguments = insideTag;
+        this.template = insideTag ? raw : converted.toString();
+        this.staticComponent = names.length == 0 ? MiniMessage.miniMessage().deserialize(raw) : null;
+    }
+
+    /**
+     * Prepares a MiniMessage string for rendering.
+     *
+     * @param raw The MiniMessage string with optional %placeholders%
+     * @return The prepared template
+     */
+    public static MessageTemplate parse(String raw) {
+        return new MessageTemplate(raw);
+    }
+
+    /**
+     * Renders the template with the given placeholder values.
+     * Placeholders the template doesn't use are ignored, and placeholders without a value are left as they are.
+     *
+     * @param placeholders Optional placeholders in pairs (placeholder, value), e.g. "%player%", "Steve"
+     * @return The rendered component
+     */
+    public Component render(String... placeholders) {
+        if (staticComponent != null) {
+            return staticComponent;
+        }
+
+        String[] values = new String[names.length];
+        for (int i = 0; i + 1 < placeholders.length; i += 2) {
+            String key = placeholders[i];
+            for (int j = 0; j < names.length; j++) {
+                if (key.length() == names[j].length() + 2 && key.regionMatches(true, 1, names[j], 0, names[j].length())) {
+                    values[j] = placeholders[i + 1];
+                    break;
+                }
+            }
+        }
+        for (int j = 0; j < names.length; j++) {
+            if (values[j] == null) {
+                values[j] = "%" + names[j] + "%";
+            }
+        }
+
+        List<String> key = Arrays.asList(values);
+        Component cached = rendered.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        Component component = inTagArguments ? renderReplaced(values) : renderResolved(values);
+        if (rendered.size() >= MAX_CACHED_RENDERS) {
+            rendered.clear();
+        }
+        rendered.put(key, component);
+        return component;
+    }
+
+    /**
+     * @return The MiniMessage string this template was created from
+     */
+    public String getRaw() {
+        return raw;
+    }
+
+    private Component renderResolved(String[] values) {
+        TagResolver[] resolvers = new TagResolver[names.length];
+        for (int j = 0; j < names.length; j++) {
+            resolvers[j] = Placeholder.unparsed(names[j], values[j]);
+        }
+        return MiniMessage.miniMessage().deserialize(template, resolvers);
+    }
+
+    private Component renderReplaced(String[] values) {
+        String message = template;
+        for (int j = 0; j < names.length; j++) {
+            message = message.replace("%" + names[j] + "%", values[j]);
+        }
+        return MiniMessage.miniMessage().deserialize(message);
+    }
+}
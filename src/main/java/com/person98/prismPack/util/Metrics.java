@@ -0,0 +1,212 @@
+package com.person98.prismPack.util;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A small registry of counters, histograms and gauges for the plugin's hot paths.
+ * Counters are {@link LongAdder}s and histograms are {@link LogHistogram}s, so recording never
+ * locks and costs a few atomic increments. Gauges are only evaluated when someone reads them.
+ * When disabled, timers don't even read the clock.
+ */
+public class Metrics {
+
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final Timer[] TIMERS = Timer.values();
+    private static final Size[] SIZES = Size.values();
+
+    private static final LongAdder[] counters = new LongAdder[COUNTERS.length];
+    private static final LogHistogram[] timers = new LogHistogram[TIMERS.length];
+    private static final LogHistogram[] sizes = new LogHistogram[SIZES.length];
+    private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private static volatile boolean enabled = true;
+
+    static {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        for (int i = 0; i < timers.length; i++) {
+            timers[i] = new LogHistogram();
+        }
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = new LogHistogram();
+        }
+    }
+
+    /**
+     * Events that are counted.
+     */
+    public enum Counter {
+        CACHE_HITS,
+        CACHE_MISSES,
+        CACHE_EVICTIONS,
+        SAVES_WRITTEN,
+        SAVES_SKIPPED,
+        SAVE_FAILURES,
+        POOL_TIMEOUTS
+    }
+
+    /**
+     * Operations whose duration is recorded.
+     */
+    public enum Timer {
+        OPEN,
+        DB_LOAD,
+        DB_SAVE,
+        SERIALIZE,
+        DESERIALIZE,
+        POOL_WAIT
+    }
+
+    /**
+     * Payloads whose size in bytes is recorded.
+     */
+    public enum Size {
+        SERIALIZED,
+        DESERIALIZED
+    }
+
+    /**
+     * Turns recording on or off. Values recorded so far are kept.
+     *
+     * @param enabled Whether to record
+     */
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Counts one event.
+     *
+     * @param counter The event
+     */
+    public static void increment(Counter counter) {
+        if (enabled) counters[counter.ordinal()].increment();
+    }
+
+    /**
+     * Starts timing an operation, to be passed to {@link #stop(Timer, long)}.
+     *
+     * @return The start time, or 0 if recording is disabled
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the duration of an operation started with {@link #start()}.
+     *
+     * @param timer The operation
+     * @param start The value returned by {@link #start()}
+     */
+    public static void stop(Timer timer, long start) {
+        if (start != 0) timers[timer.ordinal()].record(System.nanoTime() - start);
+    }
+
+    /**
+     * Records a duration measured elsewhere.
+     *
+     * @param timer The operation
+     * @param nanos The duration in nanoseconds
+     */
+    public static void record(Timer timer, long nanos) {
+        if (enabled) timers[timer.ordinal()].record(nanos);
+    }
+
+    /**
+     * Records the size of a payload.
+     *
+     * @param size The kind of payload
+     * @param bytes The size in bytes
+     */
+    public static void record(Size size, long bytes) {
+        if (enabled) sizes[size.ordinal()].record(bytes);
+    }
+
+    /**
+     * Registers a value that is computed when metrics are read, replacing one with the same name.
+     *
+     * @param name The name, in snake case
+     * @param gauge Computes the current value, must be safe to call from any thread
+     */
+    public static void registerGauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * @param counter The event
+     * @return How often the event happened since startup
+     */
+    public static long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    /**
+     * @param timer The operation
+     * @return The recorded durations in nanoseconds
+     */
+    public static LogHistogram.Snapshot snapshot(Timer timer) {
+        return timers[timer.ordinal()].snapshot();
+    }
+
+    /**
+     * @param size The kind of payload
+     * @return The recorded sizes in bytes
+     */
+    public static LogHistogram.Snapshot snapshot(Size size) {
+        return sizes[size.ordinal()].snapshot();
+    }
+
+    /**
+     * @return The current value of every gauge, by name
+     */
+    public static Map<String, Long> readGauges() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        gauges.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> values.put(entry.getKey(), entry.getValue().getAsLong()));
+        return values;
+    }
+
+    /**
+     * Reads every metric into one flat map, e.g. {@code cache_hits} or {@code db_load_p99_us}.
+     * Durations are in microseconds and sizes in bytes.
+     *
+     * @return The metric values by name, in a stable order
+     */
+    public static Map<String, Long> toMap() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Counter counter : COUNTERS) {
+            values.put(name(counter), get(counter));
+        }
+        for (Timer timer : TIMERS) {
+            putHistogram(values, name(timer), "_us", snapshot(timer), 1000);
+        }
+        for (Size size : SIZES) {
+            putHistogram(values, name(size) + "_size", "_bytes", snapshot(size), 1);
+        }
+        values.putAll(readGauges());
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * @return The name of a metric as used by {@link #toMap()}
+     */
+    public static String name(Enum<?> metric) {
+        return metric.name().toLowerCase();
+    }
+
+    private static void putHistogram(Map<String, Long> values, String name, String unit,
+                                     LogHistogram.Snapshot snapshot, long divisor) {
+        values.put(name + "_count", snapshot.getCount());
+        values.put(name + "_mean" + unit, snapshot.getMean() / divisor);
+        values.put(name + "_p50" + unit, snapshot.getPercentile(50) / divisor);
+        values.put(name + "_p99" + unit, snapshot.getPercentile(99) / divisor);
+        values.put(name + "_p999" + unit, snapshot.getPercentile(99.9) / divisor);
+        values.put(name + "_max" + unit, snapshot.getMax() / divisor);
+    }
+}
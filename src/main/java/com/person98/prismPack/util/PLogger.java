@@ -1,21 +1,44 @@
 package com.person98.prismPack.util;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * A custom logging utility that adds color and prefix support to standard Java logging.
+ * <p>
+ * Messages are handed to a background thread through a bounded queue, so the calling thread never
+ * formats them or waits for the console. When the queue is full, messages are dropped and counted.
+ * Warnings and errors that repeat within a minute, or errors caused by the same exception, are only
+ * logged the first time, followed by a summary of how often they occurred, so an unreachable database
+ * doesn't flood the console with a stack trace per save.
  */
 public class PLogger {
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final long REPEAT_WINDOW_MILLIS = 60_000L;
+    private static final int MAX_TRACKED_REPEATS = 512;
+
     private static Logger logger;
     private static String prefix;
     private static ConsoleColor color;
 
+    private static final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final Map<String, Repeat> repeats = new LinkedHashMap<>();
+    private static volatile Thread writer;
+
     public PLogger() {
     }
 
     /**
-     * Initializes the logger with the specified parameters.
+     * Initializes the logger with the specified parameters and starts the logging thread.
      * @param baseLogger The base Java logger to use
      * @param loggerPrefix The prefix to prepend to all log messages
      * @param loggerColor The color to use for the prefix
@@ -24,6 +47,30 @@ public class PLogger {
         logger = baseLogger;
         prefix = loggerPrefix;
         color = loggerColor;
+
+        if (writer == null) {
+            Thread thread = new Thread(PLogger::run, loggerPrefix + " Logger");
+            thread.setDaemon(true);
+            writer = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the logging thread after it has written every queued message and the pending
+     * repeat summaries. Messages logged afterwards are written on the calling thread.
+     */
+    public static void shutdown() {
+        Thread thread = writer;
+        if (thread == null) return;
+
+        writer = null;
+        thread.interrupt();
+        try {
+            thread.join(5000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -31,7 +78,16 @@ public class PLogger {
      * @param message The message to log
      */
     public static void info(String message) {
-        log(Level.INFO, message);
+        log(Level.INFO, () -> message, null);
+    }
+
+    /**
+     * Logs an informational message that is only built when it is written.
+     * The supplier runs on the logging thread, so it should only use values that don't change.
+     * @param message Builds the message to log
+     */
+    public static void info(Supplier<String> message) {
+        log(Level.INFO, message, null);
     }
 
     /**
@@ -39,7 +95,15 @@ public class PLogger {
      * @param message The message to log
      */
     public static void warning(String message) {
-        log(Level.WARNING, message);
+        log(Level.WARNING, () -> message, null);
+    }
+
+    /**
+     * Logs a warning message that is only built when it is written, see {@link #info(Supplier)}.
+     * @param message Builds the message to log
+     */
+    public static void warning(Supplier<String> message) {
+        log(Level.WARNING, message, null);
     }
 
     /**
@@ -48,11 +112,16 @@ public class PLogger {
      * @param throwable The throwable containing the stack trace (can be null)
      */
     public static void severe(String message, Throwable throwable) {
-        if (throwable != null) {
-            log(Level.SEVERE, message + "\n" + getStackTraceAsString(throwable));
-        } else {
-            log(Level.SEVERE, message);
-        }
+        log(Level.SEVERE, () -> message, throwable);
+    }
+
+    /**
+     * Logs a severe error message that is only built when it is written, see {@link #info(Supplier)}.
+     * @param message Builds the message to log
+     * @param throwable The throwable containing the stack trace (can be null)
+     */
+    public static void severe(Supplier<String> message, Throwable throwable) {
+        log(Level.SEVERE, message, throwable);
     }
 
     /**
@@ -68,24 +137,131 @@ public class PLogger {
      * @param message The message to log
      */
     public static void debug(String message) {
-        log(Level.FINE, message);
+        log(Level.FINE, () -> message, null);
     }
 
-    private static void log(Level level, String message) {
+    /**
+     * Logs a debug message that is only built when it is written, see {@link #info(Supplier)}.
+     * Nothing is built or queued if debug logging is off.
+     * @param message Builds the message to log
+     */
+    public static void debug(Supplier<String> message) {
+        log(Level.FINE, message, null);
+    }
+
+    private static void log(Level level, Supplier<String> message, Throwable throwable) {
         if (logger == null) {
             throw new IllegalStateException("PLogger has not been set up. Call setup() first.");
-        } else {
-            String coloredMessage = color + "[" + prefix + "] " + ConsoleColor.WHITE + message + "\u001b[0m";
-            logger.log(level, coloredMessage);
+        }
+        if (!logger.isLoggable(level)) return;
+
+        Entry entry = new Entry(level, message, throwable);
+        if (writer == null) {
+            write(entry);
+        } else if (!queue.offer(entry)) {
+            dropped.incrementAndGet();
         }
     }
 
-    private static String getStackTraceAsString(Throwable throwable) {
-        StringBuilder sb = new StringBuilder();
-        for (StackTraceElement element : throwable.getStackTrace()) {
-            sb.append("    at ").append(element.toString()).append("\n");
+    private static void run() {
+        while (writer == Thread.currentThread()) {
+            try {
+                Entry entry = queue.poll(1, TimeUnit.SECONDS);
+                if (entry != null) {
+                    write(entry);
+                }
+            } catch (InterruptedException e) {
+                break; // Shutting down
+            }
+            summarize(false);
+        }
+
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            write(entry);
+        }
+        summarize(true);
+    }
+
+    /**
+     * Writes one message, unless it is a warning or error that was already written within the repeat window.
+     */
+    private static synchronized void write(Entry entry) {
+        String message;
+        try {
+            message = entry.message().get();
+        } catch (RuntimeException e) {
+            message = "Failed to build log message: " + e;
+        }
+
+        if (entry.level().intValue() >= Level.WARNING.intValue()) {
+            // The same exception counts as a repeat even if the message names a different player or page
+            Throwable throwable = entry.throwable();
+            String key = entry.level().getName() + '|'
+                    + (throwable != null ? throwable.getClass().getName() + '|' + throwable.getMessage() : message);
+            Repeat repeat = repeats.get(key);
+            if (repeat != null) {
+                repeat.count++;
+                return;
+            }
+
+            if (repeats.size() >= MAX_TRACKED_REPEATS) {
+                Iterator<Map.Entry<String, Repeat>> eldest = repeats.entrySet().iterator();
+                writeSummary(eldest.next().getValue());
+                eldest.remove();
+            }
+            repeats.put(key, new Repeat(entry.level(), throwable != null ? message + ": " + throwable : message,
+                    System.currentTimeMillis()));
+        }
+
+        publish(entry.level(), message, entry.throwable());
+    }
+
+    /**
+     * Writes the summaries of repeated messages whose window has passed and reports dropped messages.
+     */
+    private static synchronized void summarize(boolean all) {
+        long now = System.currentTimeMillis();
+        Iterator<Repeat> iterator = repeats.values().iterator();
+        while (iterator.hasNext()) {
+            Repeat repeat = iterator.next();
+            if (!all && now - repeat.firstLogged < REPEAT_WINDOW_MILLIS) break; // Ordered by first logged
+            writeSummary(repeat);
+            iterator.remove();
+        }
+
+        long droppedCount = dropped.getAndSet(0);
+        if (droppedCount > 0) {
+            publish(Level.WARNING, "Dropped " + droppedCount + " log messages because logging fell behind", null);
+        }
+    }
+
+    private static void writeSummary(Repeat repeat) {
+        if (repeat.count == 0) return;
+
+        long seconds = Math.max(1, (System.currentTimeMillis() - repeat.firstLogged) / 1000);
+        publish(repeat.level, repeat.count + " more occurrences in the last " + seconds + "s of: " + repeat.message, null);
+    }
+
+    private static void publish(Level level, String message, Throwable throwable) {
+        String coloredMessage = color + "[" + prefix + "] " + ConsoleColor.WHITE + message + "\u001b[0m";
+        logger.log(level, coloredMessage, throwable);
+    }
+
+    private record Entry(Level level, Supplier<String> message, Throwable throwable) {
+    }
+
+    private static class Repeat {
+        private final Level level;
+        private final String message;
+        private final long firstLogged;
+        private long count;
+
+        private Repeat(Level level, String message, long firstLogged) {
+            this.level = level;
+            this.message = message;
+            this.firstLogged = firstLogged;
         }
-        return sb.toString();
     }
 
     public static enum ConsoleColor {
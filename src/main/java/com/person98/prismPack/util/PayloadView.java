@@ -0,0 +1,459 @@
+package com.person98.prismPack.util;
+
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.io.BukkitObjectInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamConstants;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * A read-only view of a stored backpack page that only deserializes items when they are accessed.
+ * <p>
+ * {@link #size()}, {@link #isEmpty()} and {@link #countOccupied()} never create an item. For the slot
+ * layout every slot is a payload of its own, so they only look at which payloads are null. For a blob,
+ * the serialized stream is walked once without creating objects to build a table of where each slot
+ * starts and whether it holds an item. Items in a blob refer back to class descriptions and strings
+ * written by earlier items, so {@link #get(int)} decodes the blob up to the requested slot, and every
+ * slot is decoded at most once.
+ * <p>
+ * Views are not thread safe and are meant to be used by one task and then dropped.
+ */
+public final class PayloadView {
+
+    private static final byte[] NO_DATA = new byte[0];
+
+    private final String blob;
+    private final String[] slots;
+    private ItemStack[] items; // Deserialized slots, for a blob created once it was walked
+
+    // Blob state, built on first use
+    private byte[] data;
+    private int[] slotOffsets; // Start of each slot in data, -1 for empty slots
+    private ObjectInputStream blobStream;
+    private int decodedSlots;
+
+    private PayloadView(String blob, String[] slots, ItemStack[] items) {
+        this.blob = blob;
+        this.slots = slots;
+        this.items = items;
+    }
+
+    /**
+     * @param blob A page produced by {@link ItemSerializationUtil#serializeInventory(ItemStack[])}
+     *             or {@link ItemSerializationUtil#joinItems(String[])}
+     * @return A view of the page
+     */
+    public static PayloadView ofBlob(String blob) {
+        if (ItemSerializationUtil.isJoined(blob)) {
+            return ofSlots(ItemSerializationUtil.splitItems(blob));
+        }
+        return new PayloadView(blob, null, null);
+    }
+
+    /**
+     * @param slots The payload of each slot produced by {@link ItemSerializationUtil#serializeItems(ItemStack[])},
+     *              null for empty slots
+     * @return A view of the page
+     */
+    public static PayloadView ofSlots(String[] slots) {
+        return new PayloadView(null, slots, new ItemStack[slots.length]);
+    }
+
+    /**
+     * @param contents Items that are already deserialized, e.g. a cached page. The array is not copied.
+     * @return A view of the items
+     */
+    public static PayloadView ofItems(ItemStack[] contents) {
+        return new PayloadView(null, null, contents);
+    }
+
+    /**
+     * @return The number of slots, or 0 if the page can't be read
+     */
+    public int size() {
+        if (blob == null) return items.length;
+        return scanBlob() ? slotOffsets.length : items().length;
+    }
+
+    /**
+     * @return true if no slot holds an item
+     */
+    public boolean isEmpty() {
+        return countOccupied() == 0;
+    }
+
+    /**
+     * @return The number of slots holding an item
+     */
+    public int countOccupied() {
+        int occupied = 0;
+        if (slots != null) {
+            for (String slot : slots) {
+                if (slot != null) occupied++;
+            }
+        } else if (blob == null) {
+            for (ItemStack item : items) {
+                if (item != null && !item.getType().isAir()) occupied++;
+            }
+        } else if (scanBlob()) {
+            for (int offset : slotOffsets) {
+                if (offset != -1) occupied++;
+            }
+        } else {
+            for (ItemStack item : items()) {
+                if (item != null) occupied++;
+            }
+        }
+        return occupied;
+    }
+
+    /**
+     * Deserializes one slot, or returns it if it was deserialized before.
+     *
+     * @param slot The slot
+     * @return The item, or null if the slot is empty or can't be read
+     */
+    public ItemStack get(int slot) {
+        if (slots != null) {
+            if (items[slot] == null && slots[slot] != null) {
+                items[slot] = ItemSerializationUtil.deserializeItem(slots[slot]);
+            }
+            return items[slot];
+        }
+        if (blob == null) return items[slot];
+        if (!scanBlob()) return items()[slot];
+
+        if (slotOffsets[slot] == -1) return null;
+        decodeBlobUpTo(slot);
+        return items[slot];
+    }
+
+    /**
+     * Deserializes every slot that wasn't accessed yet.
+     *
+     * @return The items, with null for empty slots. The array belongs to the view.
+     */
+    public ItemStack[] toArray() {
+        if (slots != null) {
+            for (int slot = 0; slot < slots.length; slot++) {
+                get(slot);
+            }
+            return items;
+        }
+        if (blob != null && scanBlob()) {
+            decodeBlobUpTo(slotOffsets.length - 1);
+        }
+        return items();
+    }
+
+    /**
+     * @return The items of the occupied slots, in slot order, without deserializing empty slots
+     */
+    public List<ItemStack> getItems() {
+        List<ItemStack> occupied = new ArrayList<>();
+        int size = size();
+        for (int slot = 0; slot < size; slot++) {
+            ItemStack item = get(slot);
+            if (item != null && !item.getType().isAir()) {
+                occupied.add(item);
+            }
+        }
+        return occupied;
+    }
+
+    /**
+     * Builds the slot table of a blob, once.
+     *
+     * @return false if the blob couldn't be walked, in which case it is deserialized as a whole
+     */
+    private boolean scanBlob() {
+        if (data != null) return slotOffsets != null;
+
+        try {
+            data = Base64.getDecoder().decode(blob);
+            slotOffsets = new StreamScanner(data).scanSlots();
+            items = new ItemStack[slotOffsets.length];
+            return true;
+        } catch (IOException | RuntimeException e) {
+            PLogger.debug(() -> "Falling back to a full decode of a backpack page: " + e);
+            if (data == null) data = NO_DATA;
+            return false;
+        }
+    }
+
+    /**
+     * @return Every item of a blob that couldn't be walked, deserialized at once
+     */
+    private ItemStack[] items() {
+        if (items == null) {
+            items = ItemSerializationUtil.deserializeInventory(blob);
+        }
+        return items;
+    }
+
+    /**
+     * Continues deserializing a blob up to and including a slot. Later slots stay untouched.
+     */
+    private void decodeBlobUpTo(int slot) {
+        if (slot < decodedSlots) return;
+
+        long start = Metrics.start();
+        try {
+            if (blobStream == null) {
+                blobStream = new BukkitObjectInputStream(new ByteArrayInputStream(data));
+                blobStream.readInt();
+            }
+            for (; decodedSlots <= slot; decodedSlots++) {
+                items[decodedSlots] = ItemSerializationUtil.unshare(items, decodedSlots, (ItemStack) blobStream.readObject());
+            }
+            if (decodedSlots == items.length) {
+                blobStream.close();
+                blobStream = null;
+                Metrics.record(Metrics.Size.DESERIALIZED, data.length);
+            }
+            Metrics.stop(Metrics.Timer.DESERIALIZE, start);
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            PLogger.severe("Failed to deserialize inventory: " + e);
+            decodedSlots = items.length; // Leave the remaining slots empty, like a failed full decode
+            blobStream = null;
+        }
+    }
+
+    /**
+     * Walks a Java serialization stream as written by BukkitObjectOutputStream without creating any
+     * objects, following the grammar of the object serialization specification. Only class descriptions
+     * are remembered, since skipping an object needs the fields of its class.
+     */
+    private static final class StreamScanner implements ObjectStreamConstants {
+        private static final Object OTHER_HANDLE = new Object();
+
+        private final byte[] data;
+        private final List<Object> handles = new ArrayList<>();
+        private int position;
+
+        private StreamScanner(byte[] data) {
+            this.data = data;
+        }
+
+        /**
+         * Reads the slot count written before the items, then finds where each item starts.
+         */
+        int[] scanSlots() throws IOException {
+            if (readShort() != (STREAM_MAGIC & 0xFFFF) || readShort() != STREAM_VERSION) {
+                throw new IOException("Not an object stream");
+            }
+            if (readByte() != TC_BLOCKDATA || readByte() != 4) {
+                throw new IOException("Missing slot count");
+            }
+
+            int length = readInt();
+            if (length < 0) throw new IOException("Negative slot count");
+            int[] offsets = new int[length];
+            for (int slot = 0; slot < length; slot++) {
+                check(1);
+                offsets[slot] = (data[position] & 0xFF) == TC_NULL ? -1 : position;
+                skipContent();
+            }
+            return offsets;
+        }
+
+        private void skipContent() throws IOException {
+            int token = readByte();
+            switch (token) {
+                case TC_NULL -> {
+                }
+                case TC_REFERENCE -> readInt();
+                case TC_STRING -> {
+                    handles.add(OTHER_HANDLE);
+                    skip(readShort());
+                }
+                case TC_LONGSTRING -> {
+                    handles.add(OTHER_HANDLE);
+                    skip(readLong());
+                }
+                case TC_CLASSDESC, TC_PROXYCLASSDESC -> {
+                    position--;
+                    readClassDesc();
+                }
+                case TC_CLASS -> {
+                    readClassDesc();
+                    handles.add(OTHER_HANDLE);
+                }
+                case TC_ENUM -> {
+                    readClassDesc();
+                    handles.add(OTHER_HANDLE);
+                    skipContent(); // Constant name
+                }
+                case TC_ARRAY -> {
+                    ClassDesc desc = readClassDesc();
+                    handles.add(OTHER_HANDLE);
+                    int length = readInt();
+                    char elementType = desc.name.charAt(1);
+                    if (elementType == 'L' || elementType == '[') {
+                        for (int i = 0; i < length; i++) {
+                            skipContent();
+                        }
+                    } else {
+                        skip((long) length * primitiveSize(elementType));
+                    }
+                }
+                case TC_OBJECT -> {
+                    ClassDesc desc = readClassDesc();
+                    handles.add(OTHER_HANDLE);
+                    skipClassData(desc);
+                }
+                case TC_BLOCKDATA -> skip(readByte());
+                case TC_BLOCKDATALONG -> skip(readInt());
+                case TC_RESET -> {
+                    handles.clear();
+                    skipContent();
+                }
+                default -> throw new IOException("Unsupported stream token " + token + " at " + (position - 1));
+            }
+        }
+
+        private ClassDesc readClassDesc() throws IOException {
+            int token = readByte();
+            switch (token) {
+                case TC_NULL:
+                    return null;
+                case TC_REFERENCE:
+                    if (handles.get(readInt() - baseWireHandle) instanceof ClassDesc desc) return desc;
+                    throw new IOException("Reference to a class description expected");
+                case TC_CLASSDESC: {
+                    ClassDesc desc = new ClassDesc(readUtf());
+                    skip(8); // serialVersionUID
+                    handles.add(desc);
+                    desc.flags = readByte();
+                    desc.fields = new char[readShort()];
+                    for (int i = 0; i < desc.fields.length; i++) {
+                        desc.fields[i] = (char) readByte();
+                        skip(readShort()); // Field name
+                        if (desc.fields[i] == 'L' || desc.fields[i] == '[') {
+                            skipContent(); // Field class name
+                        }
+                    }
+                    skipAnnotation();
+                    desc.superDesc = readClassDesc();
+                    return desc;
+                }
+                case TC_PROXYCLASSDESC: {
+                    ClassDesc desc = new ClassDesc(null);
+                    handles.add(desc);
+                    desc.flags = SC_SERIALIZABLE;
+                    desc.fields = new char[0];
+                    int interfaces = readInt();
+                    for (int i = 0; i < interfaces; i++) {
+                        skip(readShort());
+                    }
+                    skipAnnotation();
+                    desc.superDesc = readClassDesc();
+                    return desc;
+                }
+                default:
+                    throw new IOException("Class description expected at " + (position - 1));
+            }
+        }
+
+        private void skipClassData(ClassDesc desc) throws IOException {
+            if ((desc.flags & SC_EXTERNALIZABLE) != 0) {
+                if ((desc.flags & SC_BLOCK_DATA) == 0) throw new IOException("Old externalizable format");
+                skipAnnotation();
+                return;
+            }
+
+            // Superclasses first
+            List<ClassDesc> hierarchy = new ArrayList<>();
+            for (ClassDesc current = desc; current != null; current = current.superDesc) {
+                hierarchy.add(current);
+            }
+            for (int i = hierarchy.size() - 1; i >= 0; i--) {
+                ClassDesc current = hierarchy.get(i);
+                if ((current.flags & SC_SERIALIZABLE) == 0) continue;
+
+                // Descriptions list primitive fields before object fields, in the order they are written
+                for (char type : current.fields) {
+                    if (type == 'L' || type == '[') {
+                        skipContent();
+                    } else {
+                        skip(primitiveSize(type));
+                    }
+                }
+                if ((current.flags & SC_WRITE_METHOD) != 0) {
+                    skipAnnotation();
+                }
+            }
+        }
+
+        private void skipAnnotation() throws IOException {
+            while (true) {
+                check(1);
+                if ((data[position] & 0xFF) == TC_ENDBLOCKDATA) break;
+                skipContent();
+            }
+            position++;
+        }
+
+        private static int primitiveSize(char type) throws IOException {
+            return switch (type) {
+                case 'B', 'Z' -> 1;
+                case 'C', 'S' -> 2;
+                case 'I', 'F' -> 4;
+                case 'J', 'D' -> 8;
+                default -> throw new IOException("Unknown field type " + type);
+            };
+        }
+
+        private String readUtf() throws IOException {
+            int length = readShort();
+            check(length);
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private int readByte() throws IOException {
+            check(1);
+            return data[position++] & 0xFF;
+        }
+
+        private int readShort() throws IOException {
+            return readByte() << 8 | readByte();
+        }
+
+        private int readInt() throws IOException {
+            return readShort() << 16 | readShort();
+        }
+
+        private long readLong() throws IOException {
+            return (long) readInt() << 32 | readInt() & 0xFFFFFFFFL;
+        }
+
+        private void skip(long bytes) throws IOException {
+            if (bytes < 0) throw new IOException("Negative length");
+            check(bytes);
+            position += (int) bytes;
+        }
+
+        private void check(long bytes) throws IOException {
+            if (position + bytes > data.length) throw new IOException("Truncated stream");
+        }
+    }
+
+    private static final class ClassDesc {
+        private final String name;
+        private int flags;
+        private char[] fields;
+        private ClassDesc superDesc;
+
+        private ClassDesc(String name) {
+            this.name = name;
+        }
+    }
+}
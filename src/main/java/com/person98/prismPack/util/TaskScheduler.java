@@ -0,0 +1,224 @@
+package com.person98.prismPack.util;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the plugin's tasks on Paper and on Folia.
+ * <p>
+ * On Paper, everything that touches the world runs on the main thread through the Bukkit scheduler.
+ * On Folia there is no main thread: tasks for a player run on the thread of the region the player is in,
+ * tasks at a location on the thread of that location's region, and server wide tasks on the global region.
+ * The implementation is picked once when the plugin is enabled.
+ */
+public class TaskScheduler {
+
+    private static Platform platform;
+
+    /**
+     * A scheduled task that can be cancelled.
+     */
+    public interface Task {
+        void cancel();
+    }
+
+    /**
+     * Picks the scheduler of the server the plugin runs on.
+     *
+     * @param plugin The plugin that owns the tasks
+     */
+    public static void initialize(Plugin plugin) {
+        platform = isFolia() ? new FoliaPlatform(plugin) : new BukkitPlatform(plugin);
+    }
+
+    /**
+     * @return true if the server runs regions on separate threads
+     */
+    public static boolean isFolia() {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Runs a task off the server threads, for database work and other blocking calls.
+     *
+     * @param task The task to run
+     */
+    public static void runAsync(Runnable task) {
+        platform.runAsync(task);
+    }
+
+    /**
+     * Repeats a task off the server threads.
+     *
+     * @param task The task to run
+     * @param delayTicks The ticks before the first run
+     * @param periodTicks The ticks between runs
+     * @return The scheduled task
+     */
+    public static Task runAsyncTimer(Runnable task, long delayTicks, long periodTicks) {
+        return platform.runAsyncTimer(task, delayTicks, periodTicks);
+    }
+
+    /**
+     * Runs a task that isn't tied to a player or location, on the main thread or the global region.
+     *
+     * @param task The task to run
+     */
+    public static void runGlobal(Runnable task) {
+        platform.runGlobal(task);
+    }
+
+    /**
+     * Repeats a task that isn't tied to a player or location, on the main thread or the global region.
+     *
+     * @param task The task to run
+     * @param delayTicks The ticks before the first run, at least 1
+     * @param periodTicks The ticks between runs
+     * @return The scheduled task
+     */
+    public static Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks) {
+        return platform.runGlobalTimer(task, delayTicks, periodTicks);
+    }
+
+    /**
+     * Runs a task on the thread that owns an entity, e.g. to open an inventory for a player.
+     * The task doesn't run if the entity is removed first, e.g. because the player logged out.
+     *
+     * @param entity The entity the task works with
+     * @param task The task to run
+     */
+    public static void runFor(Entity entity, Runnable task) {
+        platform.runFor(entity, task);
+    }
+
+    /**
+     * Runs a task on the thread that owns a location, e.g. to drop items there.
+     *
+     * @param location The location the task works with
+     * @param task The task to run
+     */
+    public static void runAt(Location location, Runnable task) {
+        platform.runAt(location, task);
+    }
+
+    /**
+     * @param entity The entity to check
+     * @return true if the current thread may work with the entity right away
+     */
+    public static boolean isOwnedByCurrentThread(Entity entity) {
+        return platform.isOwnedByCurrentThread(entity);
+    }
+
+    private interface Platform {
+        void runAsync(Runnable task);
+
+        Task runAsyncTimer(Runnable task, long delayTicks, long periodTicks);
+
+        void runGlobal(Runnable task);
+
+        Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks);
+
+        void runFor(Entity entity, Runnable task);
+
+        void runAt(Location location, Runnable task);
+
+        boolean isOwnedByCurrentThread(Entity entity);
+    }
+
+    private record BukkitPlatform(Plugin plugin) implements Platform {
+
+        @Override
+        public void runAsync(Runnable task) {
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, task);
+        }
+
+        @Override
+        public Task runAsyncTimer(Runnable task, long delayTicks, long periodTicks) {
+            BukkitTask bukkitTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, task, delayTicks, periodTicks);
+            return bukkitTask::cancel;
+        }
+
+        @Override
+        public void runGlobal(Runnable task) {
+            Bukkit.getScheduler().runTask(plugin, task);
+        }
+
+        @Override
+        public Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks) {
+            BukkitTask bukkitTask = Bukkit.getScheduler().runTaskTimer(plugin, task, delayTicks, periodTicks);
+            return bukkitTask::cancel;
+        }
+
+        @Override
+        public void runFor(Entity entity, Runnable task) {
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                if (entity.isValid()) {
+                    task.run();
+                }
+            });
+        }
+
+        @Override
+        public void runAt(Location location, Runnable task) {
+            Bukkit.getScheduler().runTask(plugin, task);
+        }
+
+        @Override
+        public boolean isOwnedByCurrentThread(Entity entity) {
+            return Bukkit.isPrimaryThread();
+        }
+    }
+
+    private record FoliaPlatform(Plugin plugin) implements Platform {
+
+        @Override
+        public void runAsync(Runnable task) {
+            Bukkit.getAsyncScheduler().runNow(plugin, scheduledTask -> task.run());
+        }
+
+        @Override
+        public Task runAsyncTimer(Runnable task, long delayTicks, long periodTicks) {
+            ScheduledTask scheduledTask = Bukkit.getAsyncScheduler().runAtFixedRate(plugin, t -> task.run(),
+                    delayTicks * 50L, periodTicks * 50L, TimeUnit.MILLISECONDS);
+            return scheduledTask::cancel;
+        }
+
+        @Override
+        public void runGlobal(Runnable task) {
+            Bukkit.getGlobalRegionScheduler().execute(plugin, task);
+        }
+
+        @Override
+        public Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks) {
+            ScheduledTask scheduledTask = Bukkit.getGlobalRegionScheduler().runAtFixedRate(plugin, t -> task.run(),
+                    Math.max(1L, delayTicks), periodTicks);
+            return scheduledTask::cancel;
+        }
+
+        @Override
+        public void runFor(Entity entity, Runnable task) {
+            entity.getScheduler().execute(plugin, task, null, 1L);
+        }
+
+        @Override
+        public void runAt(Location location, Runnable task) {
+            Bukkit.getRegionScheduler().execute(plugin, location, task);
+        }
+
+        @Override
+        public boolean isOwnedByCurrentThread(Entity entity) {
+            return Bukkit.isOwnedByCurrentRegion(entity);
+        }
+    }
+}
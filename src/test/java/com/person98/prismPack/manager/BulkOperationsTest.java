@@ -0,0 +1,107 @@
+package com.person98.prismPack.manager;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import com.person98.prismPack.BackpackFixtures;
+import com.person98.prismPack.BenchmarkServer;
+import com.person98.prismPack.util.ItemSerializationUtil;
+import com.person98.prismPack.util.PayloadView;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs bulk operations over pages that are only stored, not cached, so they are rewritten in storage.
+ */
+class BulkOperationsTest {
+
+    @BeforeAll
+    static void startServer() {
+        BenchmarkServer.start();
+    }
+
+    @Test
+    void cleanAllEmptiesStoredBlobs() throws Exception {
+        UUID full = UUID.randomUUID();
+        UUID empty = UUID.randomUUID();
+        store(full, 0, BackpackFixtures.FULL_ENCHANTED.create(54));
+        store(full, 1, BackpackFixtures.HALF_FULL.create(27));
+        store(empty, 0, new ItemStack[54]);
+
+        BulkOperations.Result result = run(BulkOperations.Operation.cleanAll());
+
+        assertEquals(BulkOperations.Status.FINISHED, result.status());
+        assertTrue(result.changed() >= 2, "Both occupied pages should be changed");
+        assertStoredEmpty(full, 0, 54);
+        assertStoredEmpty(full, 1, 27);
+        assertStoredEmpty(empty, 0, 54);
+    }
+
+    @Test
+    void removeMaterialKeepsOtherItems() throws Exception {
+        UUID owner = UUID.randomUUID();
+        ItemStack[] items = new ItemStack[27];
+        items[0] = new ItemStack(Material.DIAMOND, 10);
+        items[5] = new ItemStack(Material.STONE, 64);
+        items[26] = new ItemStack(Material.DIAMOND, 1);
+        store(owner, 0, items);
+
+        BulkOperations.Result result = run(BulkOperations.Operation.removeMaterial(Material.DIAMOND));
+
+        assertEquals(BulkOperations.Status.FINISHED, result.status());
+        PayloadView view = BackpackManager.loadPayload(owner, 0);
+        assertNotNull(view);
+        assertEquals(27, view.size());
+        assertEquals(1, view.countOccupied());
+        assertEquals(Material.STONE, view.get(5).getType());
+    }
+
+    /**
+     * Writes a page directly to storage, bypassing the cache.
+     */
+    private static void store(UUID owner, int page, ItemStack[] items) throws SQLException {
+        Database.Shard shard = Database.getShard(owner);
+        try (Connection connection = shard.getConnection()) {
+            int playerId = BackpackManager.getOrCreatePlayerId(connection, owner);
+            BackpackManager.writeBackpack(connection, shard, playerId, page,
+                    ItemSerializationUtil.serializeInventory(items), new Timestamp(System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Runs an operation off the test thread while ticking the server, since every batch waits for the main thread.
+     */
+    private static BulkOperations.Result run(BulkOperations.Operation operation) throws InterruptedException {
+        CompletableFuture<BulkOperations.Result> result = CompletableFuture.supplyAsync(
+                () -> BulkOperations.run(operation, (done, total, eta) -> {
+                }));
+        while (!result.isDone()) {
+            MockBukkit.getMock().getScheduler().performOneTick();
+            Thread.sleep(1);
+        }
+        MockBukkit.getMock().getScheduler().waitAsyncTasksFinished();
+        return result.join();
+    }
+
+    private static void assertStoredEmpty(UUID owner, int page, int size) throws SQLException {
+        assertNull(BackpackManager.getCachedPage(owner, page), "The page should not have been cached");
+        PayloadView view = BackpackManager.loadPayload(owner, page);
+        assertNotNull(view);
+        assertEquals(size, view.size());
+        assertTrue(view.isEmpty(), "Page " + page + " of " + owner + " should be empty");
+
+        BackpackManager.StoredBackpack stored = BackpackManager.readBackpack(Database.getShard(owner), owner, page);
+        assertNull(stored.slotPayloads(), "A cleared blob should not be converted to the slot layout");
+    }
+}
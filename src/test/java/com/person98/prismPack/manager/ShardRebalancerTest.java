@@ -0,0 +1,260 @@
+package com.person98.prismPack.manager;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import com.person98.prismPack.BenchmarkServer;
+import com.person98.prismPack.PrismPack;
+import com.person98.prismPack.util.ItemSerializationUtil;
+import com.person98.prismPack.util.PayloadView;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Stores backpacks on a single shard, appends a second shard and rebalances, like an admin
+ * would with /bp rebalance. Every player must then be found on their shard, with their pages,
+ * history and index entries, and nowhere else.
+ */
+class ShardRebalancerTest {
+
+    private static final String SECOND_SHARD = "rebalance-test-shard.db";
+
+    private static PrismPack plugin;
+
+    @BeforeAll
+    static void startServer() {
+        plugin = BenchmarkServer.start();
+    }
+
+    @AfterAll
+    static void restoreShards() throws Exception {
+        useShards(List.of());
+        new File(plugin.getDataFolder(), SECOND_SHARD).delete();
+    }
+
+    @Test
+    void rebalanceMovesEverythingToTheRoutedShard() throws Exception {
+        useShards(List.of());
+        List<UUID> owners = new ArrayList<>(players(0, 4));
+        owners.addAll(players(1, 4));
+        for (int i = 0; i < owners.size(); i++) {
+            save(owners.get(i), i);
+        }
+
+        // Every page removed, only the history and index entries are left
+        UUID emptied = players(1, 1).get(0);
+        save(emptied, 0);
+        deletePages(emptied);
+
+        useTwoShards();
+        assertTrue(ShardRebalancer.rebalance() >= 4, "The players routed to the new shard should be moved");
+
+        Map<UUID, Integer> diamonds = new HashMap<>();
+        for (ItemIndexManager.IndexHit hit : ItemIndexManager.find(Material.DIAMOND.name(), "", 10_000, 0)) {
+            diamonds.merge(hit.owner(), hit.amount(), Integer::sum);
+        }
+
+        for (int i = 0; i < owners.size(); i++) {
+            UUID owner = owners.get(i);
+            Database.Shard shard = Database.getShard(owner);
+            assertOnlyOn(shard, owner);
+
+            PayloadView first = view(shard, owner, 0);
+            assertEquals(27, first.size());
+            assertEquals(i + 1, first.get(0).getAmount());
+            assertEquals(Material.STONE, first.get(5).getType());
+            PayloadView second = view(shard, owner, 1);
+            assertEquals(54, second.size());
+            assertEquals(Material.DIAMOND, second.get(53).getType());
+
+            assertFalse(HistoryManager.listVersions(owner, 10, 0).isEmpty(), "The history of " + owner + " should be moved");
+            int held = diamonds.getOrDefault(owner, 0);
+            assertEquals(i + 2, held, "The index entries of " + owner + " should be moved");
+        }
+
+        Database.Shard shard = Database.getShard(emptied);
+        assertEquals(1, shard.getIndex());
+        assertOnlyOn(shard, emptied);
+        assertFalse(HistoryManager.listVersions(emptied, 10, 0).isEmpty(), "History without pages should be moved");
+        int held = diamonds.getOrDefault(emptied, 0);
+        assertEquals(2, held, "Index entries without pages should be moved");
+
+        for (Database.Shard each : Database.getShards()) {
+            assertEquals(0, countOrphans(each, "backpack_history"), "History left behind on shard " + each.getIndex());
+            assertEquals(0, countOrphans(each, "backpack_item_index"), "Index entries left behind on shard " + each.getIndex());
+        }
+
+        assertEquals(0, ShardRebalancer.rebalance(), "A second rebalance should have nothing to move");
+    }
+
+    @Test
+    void loadMovesBackpackFromTheOldShard() throws Exception {
+        useShards(List.of());
+        UUID owner = players(1, 1).get(0);
+        store(owner, 0, 5);
+
+        useTwoShards();
+        Inventory loaded = BackpackManager.loadInventory(owner, 0);
+
+        assertNotNull(loaded, "The backpack should be found on the old shard");
+        assertEquals(6, loaded.getItem(0).getAmount());
+        assertOnlyOn(Database.getShard(owner), owner);
+    }
+
+    @Test
+    void pageCountMovesBackpackFromTheOldShard() throws Exception {
+        useShards(List.of());
+        UUID owner = players(1, 1).get(0);
+        store(owner, 0, 1);
+        store(owner, 2, 3);
+
+        useTwoShards();
+
+        assertEquals(3, BackpackManager.getStoredPageCount(owner), "Pages on the old shard should be counted");
+        assertOnlyOn(Database.getShard(owner), owner);
+        Inventory loaded = BackpackManager.loadInventory(owner, 2);
+        assertNotNull(loaded, "Every page should be moved, not just the first");
+        assertEquals(4, loaded.getItem(0).getAmount());
+    }
+
+    /**
+     * @return Players that are routed to a shard once there are two shards
+     */
+    private static List<UUID> players(int shard, int count) {
+        List<UUID> players = new ArrayList<>(count);
+        while (players.size() < count) {
+            UUID player = UUID.randomUUID();
+            if (Database.getShardIndex(player, 2) == shard) {
+                players.add(player);
+            }
+        }
+        return players;
+    }
+
+    /**
+     * Saves two pages through the regular save path, which also records history and indexes them.
+     */
+    private static void save(UUID owner, int i) {
+        Inventory first = Bukkit.createInventory(null, 27);
+        first.setItem(0, new ItemStack(Material.DIAMOND, i + 1));
+        first.setItem(5, new ItemStack(Material.STONE, 64));
+        Inventory second = Bukkit.createInventory(null, 54);
+        second.setItem(53, new ItemStack(Material.DIAMOND, 1));
+
+        BackpackManager.saveInventoriesNow(List.of(
+                new BackpackManager.PageSave(owner, 0, first),
+                new BackpackManager.PageSave(owner, 1, second)));
+    }
+
+    /**
+     * Writes a page directly to the player's current shard, bypassing the cache.
+     */
+    private static void store(UUID owner, int page, int i) throws SQLException {
+        ItemStack[] items = new ItemStack[27];
+        items[0] = new ItemStack(Material.DIAMOND, i + 1);
+        items[5] = new ItemStack(Material.STONE, 64);
+
+        Database.Shard shard = Database.getShard(owner);
+        try (Connection connection = shard.getConnection()) {
+            int playerId = BackpackManager.getOrCreatePlayerId(connection, owner);
+            BackpackManager.writeBackpack(connection, shard, playerId, page,
+                    ItemSerializationUtil.serializeInventory(items), new Timestamp(System.currentTimeMillis()));
+        }
+    }
+
+    private static void deletePages(UUID owner) throws SQLException {
+        try (Connection connection = Database.getConnection(owner)) {
+            int playerId = BackpackManager.getPlayerId(connection, owner);
+            for (String table : List.of("backpack_slots", "backpacks")) {
+                try (PreparedStatement ps = connection.prepareStatement("DELETE FROM " + table + " WHERE owner = ?")) {
+                    ps.setInt(1, playerId);
+                    ps.executeUpdate();
+                }
+            }
+        }
+    }
+
+    private static void useTwoShards() throws Exception {
+        useShards(List.of(
+                Map.of("type", "sqlite", "path", ConfigManager.getInstance().getSqlitePath()),
+                Map.of("type", "sqlite", "path", SECOND_SHARD)));
+    }
+
+    /**
+     * Switches the plugin to other shards the way a restart would, and keeps the stored data.
+     */
+    private static void useShards(List<Map<String, Object>> shards) throws Exception {
+        File file = new File(plugin.getDataFolder(), "config.yml");
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(file);
+        config.set("shards", shards);
+        config.save(file);
+        await(ConfigManager.reload());
+
+        Database.close();
+        Database.initialize();
+        BackpackManager.initialize();
+        HistoryManager.initialize();
+        ItemIndexManager.initialize();
+    }
+
+    private static void assertOnlyOn(Database.Shard shard, UUID owner) throws SQLException {
+        for (Database.Shard each : Database.getShards()) {
+            try (Connection connection = each.getConnection()) {
+                int playerId = BackpackManager.getPlayerId(connection, owner);
+                assertEquals(each == shard, playerId != -1, owner + " on shard " + each.getIndex());
+            }
+        }
+    }
+
+    private static PayloadView view(Database.Shard shard, UUID owner, int page) throws SQLException {
+        BackpackManager.StoredBackpack stored = BackpackManager.readBackpack(shard, owner, page);
+        assertNotNull(stored, "Page " + page + " of " + owner + " should be on shard " + shard.getIndex());
+        return stored.view();
+    }
+
+    /**
+     * Counts rows whose owner no longer exists on the shard.
+     */
+    private static int countOrphans(Database.Shard shard, String table) throws SQLException {
+        try (Connection connection = shard.getConnection();
+             PreparedStatement ps = connection.prepareStatement("SELECT COUNT(*) FROM " + table + " t " +
+                     "WHERE NOT EXISTS (SELECT 1 FROM backpack_players p WHERE p.player_id = t.owner)");
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * Waits for a future while ticking the server, in case it is completed from a scheduled task.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws InterruptedException {
+        while (!future.isDone()) {
+            MockBukkit.getMock().getScheduler().performOneTick();
+            Thread.sleep(1);
+        }
+        return future.join();
+    }
+}
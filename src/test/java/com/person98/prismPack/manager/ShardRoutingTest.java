@@ -0,0 +1,89 @@
+package com.person98.prismPack.manager;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that players are routed to shards by a stable jump hash, since stored backpacks
+ * are only found again if every release routes them to the same shard.
+ */
+class ShardRoutingTest {
+
+    private static final int[] SHARD_COUNTS = {1, 2, 3, 4, 5, 8, 16, 100};
+    private static final int PLAYERS = 10_000;
+
+    @Test
+    void routingMatchesKnownShards() {
+        assertRoutes("00000000-0000-0000-0000-000000000000", 0, 0, 0, 0, 0, 0, 0, 0);
+        assertRoutes("069a79f4-44e9-4726-a5be-fca90e38aaf5", 0, 0, 0, 0, 0, 0, 0, 92);
+        assertRoutes("853c80ef-3c37-49fd-aa49-938b674adae6", 0, 1, 2, 2, 2, 2, 10, 29);
+        assertRoutes("f84c6a79-0a4e-45e0-879b-cd49ebd4c4e2", 0, 0, 0, 3, 3, 5, 5, 36);
+        assertRoutes("61699b2e-d327-4a01-9f1e-0ea8c3f06bc6", 0, 1, 1, 1, 1, 1, 8, 43);
+    }
+
+    @Test
+    void addingShardOnlyMovesPlayersToIt() {
+        UUID[] players = randomPlayers();
+        for (int shards = 1; shards < 32; shards++) {
+            int moved = 0;
+            for (UUID player : players) {
+                int before = Database.getShardIndex(player, shards);
+                int after = Database.getShardIndex(player, shards + 1);
+                if (after != before) {
+                    assertEquals(shards, after, "A moved player must go to the new shard");
+                    moved++;
+                }
+            }
+
+            double expected = (double) PLAYERS / (shards + 1);
+            assertTrue(Math.abs(moved - expected) < expected * 0.25,
+                    "Growing to " + (shards + 1) + " shards moved " + moved + " players, expected about " + (int) expected);
+        }
+    }
+
+    @Test
+    void playersAreSpreadEvenly() {
+        UUID[] players = randomPlayers();
+        for (int shards : SHARD_COUNTS) {
+            if (shards > 16) continue; // Too few players per shard to compare
+
+            int[] counts = new int[shards];
+            for (UUID player : players) {
+                int index = Database.getShardIndex(player, shards);
+                assertTrue(index >= 0 && index < shards, "Shard index " + index + " is out of range");
+                counts[index]++;
+            }
+
+            double expected = (double) PLAYERS / shards;
+            for (int index = 0; index < shards; index++) {
+                assertTrue(Math.abs(counts[index] - expected) < expected * 0.2,
+                        "Shard " + index + " of " + shards + " got " + counts[index] + " players, expected about " + (int) expected);
+            }
+        }
+    }
+
+    private static void assertRoutes(String uuid, int... expected) {
+        UUID player = UUID.fromString(uuid);
+        for (int i = 0; i < SHARD_COUNTS.length; i++) {
+            assertEquals(expected[i], Database.getShardIndex(player, SHARD_COUNTS[i]),
+                    uuid + " with " + SHARD_COUNTS[i] + " shards");
+        }
+    }
+
+    /**
+     * @return The same pseudo-random players on every run
+     */
+    private static UUID[] randomPlayers() {
+        Random random = new Random(42);
+        UUID[] players = new UUID[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            players[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+        return players;
+    }
+}
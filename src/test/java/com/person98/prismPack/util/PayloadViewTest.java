@@ -0,0 +1,203 @@
+package com.person98.prismPack.util;
+
+import com.person98.prismPack.BackpackFixtures;
+import com.person98.prismPack.BenchmarkServer;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the stream walker of {@link PayloadView} against a full decode of the same blob.
+ */
+class PayloadViewTest {
+
+    @BeforeAll
+    static void startServer() {
+        BenchmarkServer.start();
+    }
+
+    static Stream<Arguments> contents() {
+        List<Arguments> contents = new ArrayList<>();
+        for (BackpackFixtures fixture : BackpackFixtures.values()) {
+            contents.add(Arguments.of(fixture.name() + "_27", fixture.create(27)));
+            contents.add(Arguments.of(fixture.name() + "_54", fixture.create(54)));
+        }
+        contents.add(Arguments.of("SPARSE", sparse()));
+        contents.add(Arguments.of("DUPLICATES", duplicates()));
+        contents.add(Arguments.of("NO_SLOTS", new ItemStack[0]));
+        return contents.stream();
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("contents")
+    void blobMatchesFullDecode(String name, ItemStack[] items) {
+        String blob = ItemSerializationUtil.serializeInventory(items);
+        ItemStack[] expected = ItemSerializationUtil.deserializeInventory(blob);
+        PayloadView view = PayloadView.ofBlob(blob);
+
+        assertEquals(items.length, expected.length);
+        assertEquals(expected.length, view.size());
+        assertEquals(countOccupied(expected), view.countOccupied());
+        assertEquals(countOccupied(expected) == 0, view.isEmpty());
+        for (int slot = 0; slot < expected.length; slot++) {
+            assertSameItem(expected[slot], view.get(slot), name + " slot " + slot);
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("contents")
+    void blobSlotsCanBeReadInAnyOrder(String name, ItemStack[] items) {
+        String blob = ItemSerializationUtil.serializeInventory(items);
+        ItemStack[] expected = ItemSerializationUtil.deserializeInventory(blob);
+        PayloadView view = PayloadView.ofBlob(blob);
+
+        for (int slot = expected.length - 1; slot >= 0; slot -= 3) {
+            assertSameItem(expected[slot], view.get(slot), name + " slot " + slot);
+        }
+        ItemStack[] all = view.toArray();
+        assertEquals(expected.length, all.length);
+        for (int slot = 0; slot < expected.length; slot++) {
+            assertSameItem(expected[slot], all[slot], name + " slot " + slot);
+        }
+        assertEquals(countOccupied(expected), view.getItems().size());
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("contents")
+    void slotLayoutMatchesFullDecode(String name, ItemStack[] items) {
+        String[] payloads = ItemSerializationUtil.serializeItems(items);
+        ItemStack[] expected = ItemSerializationUtil.deserializeItems(payloads);
+        PayloadView view = PayloadView.ofSlots(payloads);
+
+        assertEquals(expected.length, view.size());
+        assertEquals(countOccupied(expected), view.countOccupied());
+        for (int slot = 0; slot < expected.length; slot++) {
+            assertSameItem(expected[slot], view.get(slot), name + " slot " + slot);
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("contents")
+    void joinedSlotsMatchFullDecode(String name, ItemStack[] items) {
+        String blob = ItemSerializationUtil.joinItems(ItemSerializationUtil.serializeItems(items));
+        ItemStack[] expected = ItemSerializationUtil.deserializeInventory(ItemSerializationUtil.serializeInventory(items));
+        ItemStack[] decoded = ItemSerializationUtil.deserializeInventory(blob);
+        PayloadView view = PayloadView.ofBlob(blob);
+
+        assertEquals(expected.length, decoded.length);
+        assertEquals(expected.length, view.size());
+        assertEquals(countOccupied(expected), view.countOccupied());
+        for (int slot = 0; slot < expected.length; slot++) {
+            assertSameItem(expected[slot], decoded[slot], name + " slot " + slot);
+            assertSameItem(expected[slot], view.get(slot), name + " slot " + slot);
+        }
+    }
+
+    @Test
+    void equalStacksAreWrittenOnceAndReadAsCopies() {
+        ItemStack[] items = duplicates();
+        String blob = ItemSerializationUtil.serializeInventory(items);
+
+        ItemStack[] distinct = new ItemStack[items.length];
+        for (int slot = 0; slot < items.length; slot++) {
+            distinct[slot] = new ItemStack(Material.COBBLESTONE, 1 + slot);
+        }
+        assertTrue(blob.length() * 2 < ItemSerializationUtil.serializeInventory(distinct).length(),
+                "Repeated stacks should refer back to the first one");
+
+        ItemStack[] decoded = ItemSerializationUtil.deserializeInventory(blob);
+        PayloadView view = PayloadView.ofBlob(blob);
+        for (int slot = 1; slot < items.length; slot++) {
+            if (decoded[slot] == null) continue;
+            assertNotSame(decoded[0], decoded[slot]);
+            assertNotSame(view.get(0), view.get(slot));
+        }
+
+        decoded[1].setAmount(1);
+        assertEquals(64, decoded[0].getAmount());
+
+        String joined = ItemSerializationUtil.joinItems(ItemSerializationUtil.serializeItems(items));
+        assertTrue(joined.length() * 2 < ItemSerializationUtil.joinItems(ItemSerializationUtil.serializeItems(distinct)).length(),
+                "Repeated payloads should refer back to the first slot");
+        ItemStack[] joinedDecoded = ItemSerializationUtil.deserializeInventory(joined);
+        assertNotSame(joinedDecoded[0], joinedDecoded[1]);
+    }
+
+    @Test
+    void emptyPageNeedsNoItems() {
+        PayloadView view = PayloadView.ofBlob(ItemSerializationUtil.serializeInventory(new ItemStack[54]));
+
+        assertTrue(view.isEmpty());
+        assertEquals(54, view.size());
+        assertNull(view.get(53));
+        assertTrue(view.getItems().isEmpty());
+    }
+
+    @Test
+    void itemsViewSkipsAir() {
+        ItemStack[] items = new ItemStack[9];
+        items[2] = new ItemStack(Material.AIR);
+        items[4] = new ItemStack(Material.STONE, 3);
+        PayloadView view = PayloadView.ofItems(items);
+
+        assertEquals(1, view.countOccupied());
+        assertFalse(view.isEmpty());
+        assertEquals(1, view.getItems().size());
+    }
+
+    /**
+     * A page with a few items far apart and empty slots at both ends.
+     */
+    private static ItemStack[] sparse() {
+        ItemStack[] items = new ItemStack[54];
+        items[1] = new ItemStack(Material.DIAMOND, 5);
+        items[26] = BackpackFixtures.FULL_ENCHANTED.create(1)[0];
+        items[40] = new ItemStack(Material.OAK_LOG, 64);
+        return items;
+    }
+
+    /**
+     * A page mostly full of the same stack, with a few other stacks in between.
+     */
+    private static ItemStack[] duplicates() {
+        ItemStack cobblestone = new ItemStack(Material.COBBLESTONE, 64);
+        ItemStack[] items = new ItemStack[54];
+        for (int slot = 0; slot < items.length; slot++) {
+            if (slot % 10 == 9) {
+                items[slot] = new ItemStack(Material.IRON_INGOT, slot);
+            } else if (slot % 17 != 16) {
+                items[slot] = slot % 2 == 0 ? cobblestone : cobblestone.clone();
+            }
+        }
+        return items;
+    }
+
+    private static int countOccupied(ItemStack[] items) {
+        int occupied = 0;
+        for (ItemStack item : items) {
+            if (item != null) occupied++;
+        }
+        return occupied;
+    }
+
+    /**
+     * Compares items by their serialized form, since item meta doesn't always implement equals.
+     */
+    private static void assertSameItem(ItemStack expected, ItemStack actual, String message) {
+        assertEquals(ItemSerializationUtil.serializeItem(expected), ItemSerializationUtil.serializeItem(actual), message);
+    }
+}